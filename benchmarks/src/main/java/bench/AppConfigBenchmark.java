@@ -0,0 +1,35 @@
+package bench;
+
+import config.AppConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// The configuration lookups Publisher.publishAsync performs for every message
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppConfigBenchmark {
+    @Benchmark
+    public void publishPathLookups(Blackhole blackhole) {
+        blackhole.consume(AppConfig.getBoolean("enableFiltering", true));
+        blackhole.consume(AppConfig.getString("filterKeyword", "goal"));
+    }
+
+    @Benchmark
+    public int numericLookup() {
+        return AppConfig.getInt("publisher.window", 64);
+    }
+}
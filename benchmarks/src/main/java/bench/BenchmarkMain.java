@@ -0,0 +1,24 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar. Takes the usual JMH arguments and, unless a result
+// format is given, writes machine-readable results to jmh-result.json so runs can be
+// compared across versions.
+// Run with: java -jar benchmarks/target/benchmarks.jar [jmh options] [benchmark regex]
+public class BenchmarkMain {
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.addAll(List.of("-rf", "json"));
+            if (!jmhArgs.contains("-rff")) {
+                jmhArgs.addAll(List.of("-rff", DEFAULT_RESULT_FILE));
+            }
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import common.EpochClock;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.WireCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Frame encoding as done by Publisher.publish and decoding as done by the
+// Subscriber receive path
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"40", "1000"})
+    public int payloadChars;
+
+    private final byte[] topic = WireCodec.topicBytes("Sports");
+    private final byte[] keyword = "goal".getBytes(StandardCharsets.UTF_8);
+    private final Frame frame = new Frame();
+    private String payload;
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder("Messi scored a goal! ");
+        while (text.length() < payloadChars) {
+            text.append("The crowd goes wild. ");
+        }
+        payload = text.substring(0, payloadChars);
+        encodeBuffer = ByteBuffer.allocateDirect(WireCodec.MAX_DATAGRAM_SIZE);
+        encoded = ByteBuffer.allocateDirect(WireCodec.MAX_DATAGRAM_SIZE);
+        WireCodec.encode(encoded, MessageType.PUBLISH, topic, 42, PriorityLevel.HIGH, EpochClock.nowNanos(), payload);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encodePublish() {
+        encodeBuffer.clear();
+        WireCodec.encode(encodeBuffer, MessageType.PUBLISH, topic, 42, PriorityLevel.HIGH, EpochClock.nowNanos(), payload);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public boolean decodeAndFilter() {
+        encoded.position(0);
+        WireCodec.decode(encoded, frame);
+        return frame.topicEquals(topic) && frame.payloadContains(keyword);
+    }
+
+    @Benchmark
+    public String decodeToString() {
+        encoded.position(0);
+        WireCodec.decode(encoded, frame);
+        return frame.topic() + frame.payloadAsString();
+    }
+}
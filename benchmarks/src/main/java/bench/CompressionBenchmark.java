@@ -0,0 +1,126 @@
+package bench;
+
+import common.EpochClock;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.WireCodec;
+import common.compress.PayloadCodecs;
+import common.compress.PayloadCompressor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// CPU cost per message of each payload codec against the bytes it saves, on sports
+// updates like the ones the demos publish. compress is what Publisher adds to a send
+// (encode, then compress in place); decompress is what a subscriber adds to a delivery.
+// The ratio on the wire is packedBytes / plainBytes from the compress counters, whole frames
+// included; a codec that does not save an eighth leaves the payload as it was.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    private static final String[] PLAYERS = {"Messi", "Ronaldo", "Mbappe", "Haaland", "Salah", "Kane"};
+    private static final String[] EVENTS = {"scored a goal", "hit the post", "was shown a yellow card",
+            "won a penalty", "was substituted", "scored from a free kick"};
+    private static final String[] COLOURS = {"The crowd goes wild.", "The keeper had no chance.",
+            "VAR is checking the decision.", "The home fans are on their feet."};
+    // Phrases the topic repeats, as a deployment would put in its dictionary file
+    private static final String DICTIONARY = String.join(" ", COLOURS) + " " + String.join(" ", EVENTS)
+            + " " + String.join(" ", PLAYERS) + " minute ";
+    private static final int MESSAGES = 64;
+
+    // deflate+dict is deflate given the phrase dictionary
+    @Param({"none", "deflate", "deflate+dict", "lz"})
+    public String codec;
+
+    @Param({"40", "200", "1000"})
+    public int payloadChars;
+
+    private final byte[] topic = WireCodec.topicBytes("Sports");
+    private final Frame frame = new Frame();
+    private PayloadCompressor compressor;
+    private String[] messages;
+    private ByteBuffer[] compressed;
+    private ByteBuffer buffer;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+        public long plainBytes;
+        public long packedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            plainBytes = 0;
+            packedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        boolean withDictionary = codec.endsWith("+dict");
+        byte[] dictionary = withDictionary ? DICTIONARY.getBytes(StandardCharsets.UTF_8) : null;
+        compressor = PayloadCompressor.of(PayloadCodecs.byName(codec.replace("+dict", "")), dictionary, 0);
+
+        Random random = new Random(42);
+        messages = new String[MESSAGES];
+        compressed = new ByteBuffer[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < payloadChars) {
+                text.append(PLAYERS[random.nextInt(PLAYERS.length)]).append(' ')
+                        .append(EVENTS[random.nextInt(EVENTS.length)]).append(" in minute ")
+                        .append(1 + random.nextInt(90)).append("! ")
+                        .append(COLOURS[random.nextInt(COLOURS.length)]).append(' ');
+            }
+            messages[i] = text.substring(0, payloadChars);
+            compressed[i] = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+            WireCodec.encode(compressed[i], MessageType.PUBLISH, topic, i, PriorityLevel.HIGH,
+                    EpochClock.nowNanos(), messages[i]);
+            compressed[i].flip();
+            compressor.compress(compressed[i]);
+        }
+        buffer = ByteBuffer.allocateDirect(WireCodec.MAX_DATAGRAM_SIZE);
+    }
+
+    @Benchmark
+    public ByteBuffer compress(Bytes bytes) {
+        int index = next++ & (MESSAGES - 1);
+        buffer.clear();
+        WireCodec.encode(buffer, MessageType.PUBLISH, topic, index, PriorityLevel.HIGH, EpochClock.nowNanos(),
+                messages[index]);
+        buffer.flip();
+        int plain = buffer.remaining();
+        compressor.compress(buffer);
+        bytes.plainBytes += plain;
+        bytes.packedBytes += buffer.remaining();
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer decompress() {
+        ByteBuffer encoded = compressed[next++ & (MESSAGES - 1)];
+        WireCodec.decode(encoded.duplicate(), frame);
+        return PayloadCodecs.plainPayload(frame);
+    }
+}
@@ -0,0 +1,79 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import subscriber.DuplicateFilter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// DuplicateFilter cost per message for common arrival patterns. Ids start just
+// below Integer.MAX_VALUE so every run crosses the int wraparound.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DuplicateFilterBenchmark {
+    private static final int MESSAGES = 1 << 20;
+
+    // sequential, reordered (shuffled within blocks of 64), duplicated (every fourth message retransmitted)
+    @Param({"sequential", "reordered", "duplicated"})
+    public String pattern;
+
+    // Publisher sessions interleaved on the stream
+    @Param({"1", "512"})
+    public int sessions;
+
+    // Table slots; 64 slots with 512 sessions exercises eviction
+    @Param({"64", "1024"})
+    public int streams;
+
+    private final int[] ids = new int[MESSAGES];
+    private final long[] sessionIds = new long[MESSAGES];
+    private DuplicateFilter filter;
+
+    @Setup
+    public void setup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int start = Integer.MAX_VALUE - MESSAGES / 2;
+        for (int i = 0; i < MESSAGES; i++) {
+            ids[i] = pattern.equals("duplicated") && (i & 3) == 0 && i > 0
+                    ? start + i - random.nextInt(1, 16) : start + i;
+            sessionIds[i] = 1 + random.nextInt(sessions);
+        }
+        if (pattern.equals("reordered")) {
+            for (int block = 0; block + 64 <= MESSAGES; block += 64) {
+                for (int i = block + 63; i > block; i--) {
+                    int j = block + random.nextInt(i - block + 1);
+                    int swap = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = swap;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long filterAll() {
+        filter = new DuplicateFilter(streams);
+        long duplicates = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            if (filter.isDuplicate(sessionIds[i], ids[i])) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+}
@@ -0,0 +1,144 @@
+package bench;
+
+import common.EpochClock;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.QoSLevel;
+import common.RoutingTable;
+import node.Node;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import publisher.Publisher;
+import subscriber.Subscriber;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Publisher to Subscriber over loopback for each QoS level. Binds port 5005, the default
+// endpoint.publish that Publisher sends to, so stop any running subscriber first.
+//   roundTrip: one message until it is ACKed, or delivered for AT_MOST_ONCE
+//   pipelined: PIPELINE messages in flight at once, limited by the publisher window
+// Each is run without batching and with 1400-byte batches at each linger time, which is the
+// trade-off batching makes: pipelined throughput against roundTrip latency. lingerMicros
+// has no effect when batchBytes is 0; narrow a run with e.g. -p batchBytes=1400.
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final int PIPELINE = 256;
+    private static final String PAYLOAD = "Messi scored a goal in the 89th minute!";
+    private static final long DELIVERY_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Param({"AT_MOST_ONCE", "AT_LEAST_ONCE", "EXACTLY_ONCE"})
+    public QoSLevel qos;
+
+    @Param({"0", "1400"})
+    public int batchBytes;
+
+    @Param({"0", "100", "1000", "5000"})
+    public long lingerMicros;
+
+    private Node receiver;
+    private Node sender;
+    private Subscriber subscriber;
+    private Publisher publisher;
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong deliveryNanos = new AtomicLong();
+    private volatile int lastDeliveredId;
+    private int nextId;
+
+    // Reported next to the score: messages that reached the subscriber and their mean one-way latency
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Delivery {
+        public long delivered;
+        public double meanLatencyMicros;
+
+        @Setup(Level.Iteration)
+        public void reset(EndToEndBenchmark bench) {
+            bench.delivered.set(0);
+            bench.deliveryNanos.set(0);
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect(EndToEndBenchmark bench) {
+            delivered = bench.delivered.get();
+            meanLatencyMicros = delivered == 0 ? 0 : bench.deliveryNanos.get() / (double) delivered / 1000.0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Quiet.silenceLogging();
+        receiver = new Node("bench-receiver", 5005);
+        subscriber = new Subscriber(receiver, Set.of("Sports"), null, RoutingTable.registry(), false, Duration.ZERO);
+        receiver.addListener((frame, from) -> {
+            if (frame.type() == MessageType.PUBLISH) {
+                deliveryNanos.addAndGet(EpochClock.nowNanos() - frame.timestampNanos());
+                delivered.incrementAndGet();
+                lastDeliveredId = frame.messageId();
+            }
+        });
+        sender = new Node("bench-publisher");
+        publisher = new Publisher(sender, "Sports", qos, PIPELINE);
+        if (batchBytes > 0) {
+            publisher.enableBatching(batchBytes, Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(lingerMicros)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        publisher.close();
+        subscriber.stop();
+        sender.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean roundTrip(Delivery delivery) {
+        int id = nextId++;
+        CompletableFuture<Boolean> result = publisher.publishAsync(PAYLOAD, id, PriorityLevel.HIGH);
+        if (qos == QoSLevel.AT_MOST_ONCE) {
+            // A batched message only counts as sent once its batch is
+            publisher.flush();
+            long deadline = System.nanoTime() + DELIVERY_TIMEOUT_NANOS;
+            while (lastDeliveredId != id && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        }
+        return result.join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(PIPELINE)
+    public int pipelined(Delivery delivery) {
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[PIPELINE];
+        for (int i = 0; i < PIPELINE; i++) {
+            pending[i] = publisher.publishAsync(PAYLOAD, nextId++, PriorityLevel.HIGH);
+        }
+        publisher.flush();
+        CompletableFuture.allOf(pending).join();
+        return PIPELINE;
+    }
+}
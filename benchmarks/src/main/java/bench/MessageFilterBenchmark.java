@@ -0,0 +1,82 @@
+package bench;
+
+import common.EpochClock;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.WireCodec;
+import common.filter.MessageFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// A compiled keyword filter against one payloadContains scan per keyword, for a
+// payload that matches none of the keywords (the worst case for both)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFilterBenchmark {
+    @Param({"1", "8", "48"})
+    public int keywords;
+
+    @Param({"200", "1000"})
+    public int payloadChars;
+
+    private final Frame frame = new Frame();
+    private MessageFilter filter;
+    private byte[][] needles;
+    private long now;
+
+    @Setup
+    public void setup() {
+        StringBuilder expression = new StringBuilder("any=");
+        needles = new byte[keywords][];
+        for (int i = 0; i < keywords; i++) {
+            String keyword = "keyword" + i;
+            expression.append(i == 0 ? "" : ",").append(keyword);
+            needles[i] = keyword.getBytes(StandardCharsets.UTF_8);
+        }
+        filter = MessageFilter.compile(expression.toString());
+
+        StringBuilder text = new StringBuilder();
+        while (text.length() < payloadChars) {
+            text.append("The crowd goes wild as the keeper saves again. ");
+        }
+        ByteBuffer encoded = ByteBuffer.allocateDirect(WireCodec.MAX_DATAGRAM_SIZE);
+        WireCodec.encode(encoded, MessageType.PUBLISH, WireCodec.topicBytes("Sports"), 7, PriorityLevel.HIGH,
+                EpochClock.nowNanos(), text.substring(0, payloadChars));
+        encoded.flip();
+        WireCodec.decode(encoded, frame);
+        now = EpochClock.nowNanos();
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return filter.matches(frame, now);
+    }
+
+    @Benchmark
+    public boolean linearScan() {
+        for (byte[] needle : needles) {
+            if (frame.payloadContains(needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import trace.Trace;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+// Keeps the hot-path logging of the code under test from flooding the benchmark
+// output. Log records and trace events are still created and formatted, so their cost
+// stays in the measurement; only the console write is dropped.
+final class Quiet {
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private Quiet() {
+    }
+
+    static void silenceLogging() {
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            root.removeHandler(handler);
+        }
+        root.addHandler(new FormattingSink());
+        Trace.setSink(DISCARD);
+    }
+
+    private static final class FormattingSink extends Handler {
+        private final Formatter formatter = new SimpleFormatter();
+
+        @Override
+        public void publish(LogRecord record) {
+            if (isLoggable(record)) {
+                DISCARD.print(formatter.format(record));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import common.EpochClock;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.RoutingTable;
+import common.WireCodec;
+import node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import subscriber.Subscriber;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Subscriber.onFrame for frames that are accepted or rejected by its topic,
+// priority and keyword filters. Accepted frames include the ACK send.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriberFilterBenchmark {
+    // matching: accepted and ACKed; keywordMiss/priorityMiss/otherTopic: dropped by that filter
+    @Param({"matching", "keywordMiss", "priorityMiss", "otherTopic"})
+    public String scenario;
+
+    private Node node;
+    private Subscriber subscriber;
+    private InetSocketAddress sender;
+    private final Frame frame = new Frame();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Quiet.silenceLogging();
+        node = new Node("bench-subscriber");
+        subscriber = new Subscriber(node, Set.of("Sports"), "goal", RoutingTable.registry(), true, Duration.ZERO);
+        // Nothing listens here, so ACKs leave the socket and are dropped by the kernel
+        sender = new InetSocketAddress(InetAddress.getLoopbackAddress(), 9);
+
+        String topic = scenario.equals("otherTopic") ? "Weather" : "Sports";
+        String text = scenario.equals("keywordMiss")
+                ? "Half time, nothing happened in the first 45 minutes"
+                : "Messi scored a goal in the 89th minute!";
+        PriorityLevel priority = scenario.equals("priorityMiss") ? PriorityLevel.LOW : PriorityLevel.HIGH;
+        ByteBuffer encoded = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+        WireCodec.encode(encoded, MessageType.PUBLISH, WireCodec.topicBytes(topic), 7, priority,
+                EpochClock.nowNanos(), text);
+        encoded.flip();
+        WireCodec.decode(encoded, frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        subscriber.stop();
+        node.close();
+    }
+
+    @Benchmark
+    public void onFrame() {
+        subscriber.onFrame(frame, sender);
+    }
+}
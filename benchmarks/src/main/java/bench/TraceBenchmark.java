@@ -0,0 +1,58 @@
+package bench;
+
+import common.Message.PriorityLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import trace.Trace;
+import trace.TraceEvent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// What the subscriber pays per accepted message to report it: a trace event against the
+// string-built log line it replaced. Trace lines are formatted on the writer thread and
+// discarded; the log line is formatted on the calling thread and discarded.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceBenchmark {
+    private static final Logger LOGGER = Logger.getLogger(TraceBenchmark.class.getName());
+
+    private final String node = "node2";
+    private final String topic = "sports/goals";
+    private final String payload = "Goal! Late winner in stoppage time";
+    private int messageId;
+
+    @Setup
+    public void setup() {
+        Quiet.silenceLogging();
+    }
+
+    @Benchmark
+    public void traced() {
+        Trace.record(TraceEvent.DELIVERED, node, topic, messageId++, PriorityLevel.HIGH.ordinal(), 1_000);
+    }
+
+    // A DEBUG event with the category at INFO: the cost of tracing left in but turned down
+    @Benchmark
+    public void belowLevel() {
+        Trace.record(TraceEvent.FRAME_RECEIVED, node, topic, 1, messageId++, payload.length());
+    }
+
+    @Benchmark
+    public void logged() {
+        LOGGER.info("🎉 [Subscriber-" + node + "] Cheers! Accepted message: \"" + payload
+                + "\" | Priority: " + PriorityLevel.HIGH + " (ID: " + messageId++ + ")");
+    }
+}
@@ -0,0 +1,96 @@
+package registry;
+
+import common.EpochClock;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.SubscribeRequest;
+import common.WireCodec;
+import common.filter.MessageFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Registry fan-out of one PUBLISH to N subscribers, as run by the egress thread.
+// Lives in the registry package to reach its internals; subscribers are distinct
+// 127.x.y.z loopback addresses, so every forward is a real datagram send. With
+// filterGroups > 0 each subscriber pushes down one of that many keyword filters and
+// the message matches only one group.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryFanOutBenchmark {
+    @Param({"1", "100", "10000"})
+    public int subscribers;
+
+    @Param({"0", "10"})
+    public int filterGroups;
+
+    private DatagramSocket socket;
+    private PriorityEgress.Entry publish;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        stdout = System.out;
+        // Registry prints every forward; keep the formatting cost but drop the output
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        socket = new DatagramSocket();
+        // A topic per trial keeps runs independent of the static subscription table
+        byte[] topic = WireCodec.topicBytes("bench/fanout/" + subscribers + "/" + filterGroups);
+
+        Frame subscribe = new Frame();
+        ByteBuffer buffer = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+        for (int i = 0; i < subscribers; i++) {
+            SubscribeRequest request = filterGroups == 0 ? SubscribeRequest.live()
+                    : SubscribeRequest.live().withFilter(MessageFilter.compile("any=team" + i % filterGroups));
+            buffer.clear();
+            request.encode(buffer, topic);
+            buffer.flip();
+            WireCodec.decode(buffer, subscribe);
+            InetSocketAddress address = new InetSocketAddress(
+                    InetAddress.getByAddress(new byte[] {127, 1, (byte) (i >> 8), (byte) i}), 5003);
+            Registry.processMessage(subscribe, address, socket);
+        }
+
+        ByteBuffer encoded = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+        WireCodec.encode(encoded, MessageType.PUBLISH, topic, 1, PriorityLevel.MEDIUM, EpochClock.nowNanos(),
+                "Messi scored a goal for team0 in the 89th minute!");
+        encoded.flip();
+        Frame frame = new Frame();
+        WireCodec.decode(encoded, frame);
+        publish = PriorityEgress.Entry.copyOf(frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        socket.close();
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void fanOut() {
+        Registry.forward(publish, socket);
+    }
+}
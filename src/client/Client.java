@@ -2,12 +2,16 @@ package client;
 
 import java.net.DatagramSocket;
 import java.net.DatagramPacket;
-import java.net.InetAddress;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import common.EpochClock;
+import common.MessageType;
+import common.RoutingTable;
+import common.WireCodec;
 import common.Message.PriorityLevel;
 
 public class Client {
-    private static final int REGISTRY_PORT = 5001; // ✅ Updated to match the correct Registry port
+    private final RoutingTable.Route registry = RoutingTable.registry();
     private final DatagramSocket socket;
 
     public Client() throws IOException {
@@ -17,14 +21,14 @@ public class Client {
     public void sendMessage(String topic, String content, PriorityLevel priority) {
         try {
             int messageId = (int) (Math.random() * 1000); // ✅ Random message ID for testing
-            String message = "PUBLISH:" + topic + ":" + content + ":" + messageId + ":" + priority + ":" + java.time.LocalDateTime.now();
-            byte[] buffer = message.getBytes();
+            ByteBuffer frame = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+            WireCodec.encode(frame, MessageType.PUBLISH, WireCodec.topicBytes(topic), messageId,
+                    priority, EpochClock.nowNanos(), content);
 
             DatagramPacket packet = new DatagramPacket(
-                    buffer,
-                    buffer.length,
-                    InetAddress.getLocalHost(),
-                    REGISTRY_PORT
+                    frame.array(),
+                    frame.position(),
+                    registry.address()
             );
 
             socket.send(packet);
@@ -0,0 +1,71 @@
+package common;
+
+import java.nio.ByteBuffer;
+
+// Payload layout of aggregated ACK and ACK_CONFIRM frames, which acknowledge many message
+// IDs of one topic at once:
+//   u16 count | count x (i32 first, i32 last)
+// The ranges are inclusive, sorted and disjoint. The first one is the cumulative part: it
+// runs from the lowest ID still being acknowledged through every ID received after it
+// without a gap, and its last ID is also the frame's message ID. The others are selective,
+// for what arrived beyond a gap. An ACK_CONFIRM echoes the ranges of the ACK it confirms.
+// An ACK with an empty payload acknowledges just its message ID, as before.
+public final class AckRanges {
+    // 64 ranges keep an ACK under 600 bytes
+    public static final int MAX_RANGES = 64;
+    private static final int RANGE_SIZE = 8;
+
+    private AckRanges() {
+    }
+
+    public static int encodedSize(int topicLength, int ranges) {
+        return WireCodec.frameSize(topicLength, 2 + Math.min(ranges, MAX_RANGES) * RANGE_SIZE);
+    }
+
+    // Writes the lowest MAX_RANGES ranges of the set; returns how many
+    public static int encode(ByteBuffer dst, MessageType type, byte[] topic, IdRangeSet ids) {
+        int count = Math.min(ids.ranges(), MAX_RANGES);
+        int start = dst.position();
+        WireCodec.beginAck(dst, type, topic, count == 0 ? 0 : ids.last(0));
+        dst.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            dst.putInt(ids.first(i)).putInt(ids.last(i));
+        }
+        WireCodec.endFrame(dst, start);
+        return count;
+    }
+
+    // An ACK_CONFIRM carrying the same ranges as the given ACK
+    public static void encodeConfirm(ByteBuffer dst, byte[] topic, Frame ack) {
+        int count = count(ack);
+        int start = dst.position();
+        WireCodec.beginAck(dst, MessageType.ACK_CONFIRM, topic, ack.messageId());
+        dst.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            dst.putInt(first(ack, i)).putInt(last(ack, i));
+        }
+        WireCodec.endFrame(dst, start);
+    }
+
+    // Whether the frame carries ranges rather than a single message ID
+    public static boolean isAggregate(Frame frame) {
+        int length = frame.payloadLength();
+        if (length < 2) {
+            return false;
+        }
+        int count = frame.buffer().getShort(frame.payloadOffset()) & 0xFFFF;
+        return length == 2 + count * RANGE_SIZE;
+    }
+
+    public static int count(Frame frame) {
+        return frame.buffer().getShort(frame.payloadOffset()) & 0xFFFF;
+    }
+
+    public static int first(Frame frame, int range) {
+        return frame.buffer().getInt(frame.payloadOffset() + 2 + range * RANGE_SIZE);
+    }
+
+    public static int last(Frame frame, int range) {
+        return frame.buffer().getInt(frame.payloadOffset() + 2 + range * RANGE_SIZE + 4);
+    }
+}
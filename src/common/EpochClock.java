@@ -0,0 +1,22 @@
+package common;
+
+// Allocation-free wall clock with nanosecond resolution.
+// The epoch offset is captured once and advanced with System.nanoTime(),
+// so every timestamp on the wire costs a single nanoTime() call.
+public final class EpochClock {
+    private static final long BASE_EPOCH_NANOS;
+    private static final long BASE_NANO_TIME;
+
+    static {
+        java.time.Instant now = java.time.Instant.now();
+        BASE_NANO_TIME = System.nanoTime();
+        BASE_EPOCH_NANOS = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private EpochClock() {
+    }
+
+    public static long nowNanos() {
+        return BASE_EPOCH_NANOS + (System.nanoTime() - BASE_NANO_TIME);
+    }
+}
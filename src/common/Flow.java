@@ -0,0 +1,53 @@
+package common;
+
+import common.Message.PriorityLevel;
+
+import java.nio.ByteBuffer;
+
+// Payload layout of FLOW frames, which carry back-pressure against the direction of the data.
+//   u8 kind
+//   CREDIT     subscriber -> registry        i32 messages per second, i32 burst
+//   SLOW_DOWN  registry -> publisher/server  i32 messages per second, i32 hold millis
+// A CREDIT has an empty topic and covers everything sent to that subscriber; a SLOW_DOWN
+// names the topic whose publishers should not exceed the rate for the next hold millis.
+// Both are repeated while they apply, so losing one only delays the effect.
+public final class Flow {
+    public static final byte CREDIT = 1;
+    public static final byte SLOW_DOWN = 2;
+
+    private static final byte[] NO_TOPIC = new byte[0];
+    private static final int PAYLOAD_LENGTH = 9;
+
+    private Flow() {
+    }
+
+    public static ByteBuffer encodeCredit(int ratePerSecond, int burst) {
+        return encode(NO_TOPIC, CREDIT, ratePerSecond, burst);
+    }
+
+    public static ByteBuffer encodeSlowDown(byte[] topic, int ratePerSecond, int holdMillis) {
+        return encode(topic, SLOW_DOWN, ratePerSecond, holdMillis);
+    }
+
+    private static ByteBuffer encode(byte[] topic, byte kind, int first, int second) {
+        ByteBuffer frame = ByteBuffer.allocate(WireCodec.FIXED_HEADER_SIZE + topic.length + 4 + PAYLOAD_LENGTH);
+        byte[] payload = ByteBuffer.allocate(PAYLOAD_LENGTH).put(kind).putInt(first).putInt(second).array();
+        WireCodec.encode(frame, MessageType.FLOW, topic, 0, PriorityLevel.HIGH, EpochClock.nowNanos(),
+                payload, 0, payload.length);
+        return frame.flip();
+    }
+
+    // 0 for a payload of the wrong size
+    public static byte kind(Frame frame) {
+        return frame.payloadLength() == PAYLOAD_LENGTH ? frame.buffer().get(frame.payloadOffset()) : 0;
+    }
+
+    public static int ratePerSecond(Frame frame) {
+        return frame.buffer().getInt(frame.payloadOffset() + 1);
+    }
+
+    // Burst of a CREDIT, hold millis of a SLOW_DOWN
+    public static int limit(Frame frame) {
+        return frame.buffer().getInt(frame.payloadOffset() + 5);
+    }
+}
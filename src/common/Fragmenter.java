@@ -0,0 +1,61 @@
+package common;
+
+import config.AppConfig;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Splits frames larger than the MTU into FRAGMENT datagrams. Every fragment but the
+// last is exactly mtu bytes, so fragment i of a split starts at i * mtu. Frames that
+// fit are never touched.
+public final class Fragmenter {
+    private final int mtu;
+    // Group ids only need to differ between messages in flight from one sender
+    private final AtomicInteger groupIds = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+
+    public Fragmenter(int mtu) {
+        if (mtu <= WireCodec.FRAGMENT_OVERHEAD || mtu > WireCodec.MAX_DATAGRAM_SIZE) {
+            throw new IllegalArgumentException("MTU must be between " + (WireCodec.FRAGMENT_OVERHEAD + 1)
+                    + " and " + WireCodec.MAX_DATAGRAM_SIZE + " bytes: " + mtu);
+        }
+        this.mtu = mtu;
+    }
+
+    public static Fragmenter fromConfig() {
+        return new Fragmenter(AppConfig.getInt("transport.mtu", 1400));
+    }
+
+    public int mtu() {
+        return mtu;
+    }
+
+    public boolean fits(int frameLength) {
+        return frameLength <= mtu;
+    }
+
+    public int nextGroupId() {
+        return groupIds.getAndIncrement();
+    }
+
+    public int fragmentCount(int frameLength) {
+        return WireCodec.fragmentCount(frameLength, mtu);
+    }
+
+    // Encodes fragment index of the frame between position and limit into dst
+    public void encode(ByteBuffer dst, ByteBuffer frame, int groupId, int index) {
+        WireCodec.encodeFragment(dst, frame, groupId, index, mtu);
+    }
+
+    // Encodes every fragment back to back into one buffer, for senders that reuse the
+    // split across many targets; the frame's position is left unchanged
+    public ByteBuffer split(ByteBuffer frame) {
+        int count = fragmentCount(frame.remaining());
+        ByteBuffer fragments = ByteBuffer.allocate(frame.remaining() + count * WireCodec.FRAGMENT_OVERHEAD);
+        int groupId = nextGroupId();
+        for (int i = 0; i < count; i++) {
+            encode(fragments, frame, groupId, i);
+        }
+        return fragments.flip();
+    }
+}
@@ -0,0 +1,253 @@
+package common;
+
+import common.Message.PriorityLevel;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Reusable view of one decoded frame. Fields point into the buffer that was
+// decoded, so a Frame is only valid until that buffer is reused.
+public final class Frame {
+    private ByteBuffer buffer;
+    private int start;
+    private int length;
+    private MessageType type;
+    private byte flags;
+    private PriorityLevel priority;
+    private int messageId;
+    private long timestampNanos;
+    private long sessionId;
+    private int originOffset;
+    private int topicOffset;
+    private int topicLength;
+    private int payloadOffset;
+    private int payloadLength;
+    private String topic;
+
+    void set(ByteBuffer buffer, int start, int length, MessageType type, byte flags,
+            PriorityLevel priority, int messageId, long timestampNanos, long sessionId, int originOffset,
+            int topicOffset, int topicLength, int payloadOffset, int payloadLength) {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = length;
+        this.type = type;
+        this.flags = flags;
+        this.priority = priority;
+        this.messageId = messageId;
+        this.timestampNanos = timestampNanos;
+        this.sessionId = sessionId;
+        this.originOffset = originOffset;
+        this.topicOffset = topicOffset;
+        this.topicLength = topicLength;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+        this.topic = null;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    // Offset of the first frame byte in buffer()
+    public int start() {
+        return start;
+    }
+
+    // Encoded size of the whole frame
+    public int length() {
+        return length;
+    }
+
+    public MessageType type() {
+        return type;
+    }
+
+    public byte flags() {
+        return flags;
+    }
+
+    public PriorityLevel priority() {
+        return priority;
+    }
+
+    public int messageId() {
+        return messageId;
+    }
+
+    public long timestampNanos() {
+        return timestampNanos;
+    }
+
+    // Publisher session of an exactly-once frame, 0 when absent
+    public long sessionId() {
+        return sessionId;
+    }
+
+    public boolean hasSession() {
+        return (flags & WireCodec.FLAG_SESSION) != 0;
+    }
+
+    public boolean hasOrigin() {
+        return (flags & WireCodec.FLAG_ORIGIN) != 0;
+    }
+
+    // Publisher the registry forwarded this frame for, null when absent; allocates
+    public InetSocketAddress origin() {
+        if (!hasOrigin()) {
+            return null;
+        }
+        byte[] address = new byte[buffer.get(originOffset) & 0xFF];
+        buffer.get(originOffset + 1, address);
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address),
+                    buffer.getShort(originOffset + 1 + address.length) & 0xFFFF);
+        } catch (UnknownHostException e) {
+            return null;  // decode only accepts 4- and 16-byte addresses
+        }
+    }
+
+    // Whether the frame names this origin, without allocating
+    public boolean originEquals(byte[] address, int port) {
+        if (!hasOrigin() || (buffer.get(originOffset) & 0xFF) != address.length
+                || (buffer.getShort(originOffset + 1 + address.length) & 0xFFFF) != port) {
+            return false;
+        }
+        for (int i = 0; i < address.length; i++) {
+            if (buffer.get(originOffset + 1 + i) != address[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isCompressed() {
+        return (flags & WireCodec.FLAG_COMPRESSED) != 0;
+    }
+
+    public int topicOffset() {
+        return topicOffset;
+    }
+
+    public int topicLength() {
+        return topicLength;
+    }
+
+    public int payloadOffset() {
+        return payloadOffset;
+    }
+
+    public int payloadLength() {
+        return payloadLength;
+    }
+
+    // Interned through a small cache, so repeated topics do not allocate
+    public String topic() {
+        if (topic == null) {
+            topic = TopicCache.lookup(buffer, topicOffset, topicLength);
+        }
+        return topic;
+    }
+
+    public boolean topicEquals(byte[] expected) {
+        if (expected.length != topicLength) {
+            return false;
+        }
+        for (int i = 0; i < topicLength; i++) {
+            if (buffer.get(topicOffset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Plain byte search over the payload, no decoding involved
+    public boolean payloadContains(byte[] needle) {
+        int last = payloadOffset + payloadLength - needle.length;
+        outer:
+        for (int i = payloadOffset; i <= last; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buffer.get(i + j) != needle[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Copies the encoded frame into dst at its position
+    public void copyTo(ByteBuffer dst) {
+        for (int i = 0; i < length; i++) {
+            dst.put(buffer.get(start + i));
+        }
+    }
+
+    // Allocates; meant for display and for consumers that need the text
+    public String payloadAsString() {
+        return decodeUtf8(buffer, payloadOffset, payloadLength);
+    }
+
+    static String decodeUtf8(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return type + "[topic=" + topic() + ", id=" + messageId + ", priority=" + priority
+                + ", payload=" + payloadLength + "B]";
+    }
+
+    // Direct-mapped cache of topic bytes -> String shared by all frames.
+    // Entries are immutable, so racing writers can only cause an extra miss.
+    private static final class TopicCache {
+        private static final int SIZE = 1024;
+        private static final Entry[] ENTRIES = new Entry[SIZE];
+
+        private static final class Entry {
+            final byte[] bytes;
+            final String topic;
+
+            Entry(byte[] bytes, String topic) {
+                this.bytes = bytes;
+                this.topic = topic;
+            }
+        }
+
+        static String lookup(ByteBuffer buffer, int offset, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buffer.get(offset + i);
+            }
+            int index = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            Entry entry = ENTRIES[index];
+            if (entry != null && matches(entry.bytes, buffer, offset, length)) {
+                return entry.topic;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            String topic = new String(bytes, StandardCharsets.UTF_8);
+            ENTRIES[index] = new Entry(bytes, topic);
+            return topic;
+        }
+
+        private static boolean matches(byte[] bytes, ByteBuffer buffer, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
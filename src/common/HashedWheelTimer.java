@@ -0,0 +1,146 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+// Hashed timing wheel with O(1) schedule and cancel. Timeouts are intrusive: callers
+// extend Timeout and keep the object (e.g. inside a pooled slot), so rescheduling
+// allocates nothing. Expiry is accurate to one tick.
+// A timeout cancelled or rescheduled while its expiry is already being delivered may
+// still run once, so expire() must check that the work is still wanted.
+public final class HashedWheelTimer {
+    private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+    private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private static final class Shared {
+        static final HashedWheelTimer INSTANCE = new HashedWheelTimer("wheel-timer", DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public abstract static class Timeout {
+        private Timeout prev;
+        private Timeout next;
+        private long deadlineTick;
+        private int bucket = -1;
+
+        // Runs on the timer thread; keep it short
+        protected abstract void expire();
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] buckets;
+    private final long startNanos = System.nanoTime();
+    // Next tick to process; guarded by this
+    private long tick;
+    private int pending;
+
+    public HashedWheelTimer(String name, long tickNanos, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1 || tickNanos <= 0) {
+            throw new IllegalArgumentException("Wheel size must be a power of two and the tick positive");
+        }
+        this.tickNanos = tickNanos;
+        this.mask = wheelSize - 1;
+        this.buckets = new Timeout[wheelSize];
+        Thread worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Process-wide timer shared by publishers and subscribers
+    public static HashedWheelTimer shared() {
+        return Shared.INSTANCE;
+    }
+
+    // Schedules the timeout, moving it if it is already scheduled
+    public synchronized void schedule(Timeout timeout, long delayNanos) {
+        if (timeout.bucket >= 0) {
+            unlink(timeout);
+        }
+        long deadlineTick = (System.nanoTime() - startNanos + Math.max(0, delayNanos)) / tickNanos;
+        timeout.deadlineTick = Math.max(deadlineTick, tick);
+        int bucket = (int) (timeout.deadlineTick & mask);
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        pending++;
+    }
+
+    // Returns false if the timeout was not scheduled
+    public synchronized boolean cancel(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    // Read under the timer's lock, since the timer thread unlinks timeouts as they expire
+    public synchronized boolean isScheduled(Timeout timeout) {
+        return timeout.bucket >= 0;
+    }
+
+    public synchronized int pending() {
+        return pending;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        pending--;
+    }
+
+    private void run() {
+        ArrayList<Timeout> expired = new ArrayList<>();
+        while (true) {
+            long sleepNanos;
+            synchronized (this) {
+                sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+                if (sleepNanos <= 0) {
+                    collectExpired(expired);
+                }
+            }
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            for (int i = 0; i < expired.size(); i++) {
+                try {
+                    expired.get(i).expire();
+                } catch (RuntimeException e) {
+                    LOGGER.severe("🚨 Timer task failed: " + e);
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    // Entries further than one rotation away stay in the bucket until their round comes
+    private void collectExpired(ArrayList<Timeout> expired) {
+        Timeout timeout = buckets[(int) (tick & mask)];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= tick) {
+                unlink(timeout);
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+        tick++;
+    }
+}
@@ -0,0 +1,157 @@
+package common;
+
+// A set of message IDs kept as sorted, disjoint, inclusive ranges, so a run of consecutive
+// IDs costs one range however long it is. Holds at most maxRanges ranges; adding an ID that
+// would need one more drops the lowest range first. IDs are ordered as plain ints.
+//
+// Not thread-safe.
+public final class IdRangeSet {
+    private final int[] firsts;
+    private final int[] lasts;
+    private int count;
+
+    public IdRangeSet(int maxRanges) {
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("Must hold at least one range, got " + maxRanges);
+        }
+        this.firsts = new int[maxRanges];
+        this.lasts = new int[maxRanges];
+    }
+
+    // Returns false if the ID was already in the set
+    public boolean add(int id) {
+        int index = search(id);
+        if (index >= 0) {
+            return false;
+        }
+        int insert = -index - 1;
+        boolean joinsLower = insert > 0 && lasts[insert - 1] == id - 1 && id != Integer.MIN_VALUE;
+        boolean joinsUpper = insert < count && firsts[insert] == id + 1 && id != Integer.MAX_VALUE;
+        if (joinsLower && joinsUpper) {
+            lasts[insert - 1] = lasts[insert];
+            removeAt(insert);
+        } else if (joinsLower) {
+            lasts[insert - 1] = id;
+        } else if (joinsUpper) {
+            firsts[insert] = id;
+        } else {
+            if (count == firsts.length) {
+                if (insert == 0) {
+                    return true;  // It would be the lowest range itself
+                }
+                removeAt(0);
+                insert--;
+            }
+            System.arraycopy(firsts, insert, firsts, insert + 1, count - insert);
+            System.arraycopy(lasts, insert, lasts, insert + 1, count - insert);
+            firsts[insert] = id;
+            lasts[insert] = id;
+            count++;
+        }
+        return true;
+    }
+
+    public boolean contains(int id) {
+        return search(id) >= 0;
+    }
+
+    // Removes every ID from first to last inclusive
+    public void remove(int first, int last) {
+        if (first > last) {
+            return;
+        }
+        int inside = search(first);
+        if (inside >= 0 && firsts[inside] < first && lasts[inside] > last) {
+            // Splits one range in two; when there is no room for both, the lower part goes
+            if (count == firsts.length) {
+                firsts[inside] = last + 1;
+                return;
+            }
+            System.arraycopy(firsts, inside + 1, firsts, inside + 2, count - inside - 1);
+            System.arraycopy(lasts, inside + 1, lasts, inside + 2, count - inside - 1);
+            firsts[inside + 1] = last + 1;
+            lasts[inside + 1] = lasts[inside];
+            lasts[inside] = first - 1;
+            count++;
+            return;
+        }
+        int write = 0;
+        for (int read = 0; read < count; read++) {
+            int f = firsts[read];
+            int l = lasts[read];
+            if (l < first || f > last) {
+                firsts[write] = f;
+                lasts[write] = l;
+                write++;
+            } else if (f < first) {
+                firsts[write] = f;
+                lasts[write] = first - 1;
+                write++;
+            } else if (l > last) {
+                firsts[write] = last + 1;
+                lasts[write] = l;
+                write++;
+            }
+        }
+        count = write;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // Number of ranges, not IDs
+    public int ranges() {
+        return count;
+    }
+
+    public int first(int range) {
+        return firsts[range];
+    }
+
+    public int last(int range) {
+        return lasts[range];
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(firsts, index + 1, firsts, index, count - index - 1);
+        System.arraycopy(lasts, index + 1, lasts, index, count - index - 1);
+        count--;
+    }
+
+    // Index of the range holding id, or -(insertion point) - 1
+    private int search(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lasts[mid] < id) {
+                low = mid + 1;
+            } else if (firsts[mid] > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(firsts[i]);
+            if (lasts[i] != firsts[i]) {
+                text.append('-').append(lasts[i]);
+            }
+        }
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,45 @@
+package common;
+
+// Frame types carried in the binary wire header
+public enum MessageType {
+    PUBLISH(1),
+    SUBSCRIBE(2),
+    ACK(3),
+    // Several complete frames packed into one datagram
+    BATCH(4),
+    // Publisher's receipt for an ACK so the subscriber stops re-sending it
+    ACK_CONFIRM(5),
+    // One MTU-sized piece of a frame too large for a single datagram
+    FRAGMENT(6),
+    // Metrics query; the reply is a STATS frame whose payload is the text report
+    STATS(7),
+    // Registry-to-registry traffic: gossip, and frames forwarded to their topic's owner
+    CLUSTER(8),
+    // Multicast fan-out: group joins, sequenced frames sent to a group, and repair requests
+    MULTICAST(9),
+    // Back-pressure: subscriber receive credit, and slow-down requests to publishers
+    FLOW(10);
+
+    private static final MessageType[] BY_CODE = new MessageType[256];
+
+    static {
+        for (MessageType type : values()) {
+            BY_CODE[type.code & 0xFF] = type;
+        }
+    }
+
+    private final byte code;
+
+    MessageType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    // Returns null for unknown codes so receivers can drop the frame
+    public static MessageType fromCode(byte code) {
+        return BY_CODE[code & 0xFF];
+    }
+}
@@ -0,0 +1,166 @@
+package common;
+
+import common.Message.PriorityLevel;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+// Payload layout of MULTICAST frames. A registry that fans a topic out over IP multicast
+// numbers the frames it sends to the group for that topic from 1. The frame's topic is the
+// stream's topic and its message id the stream id, which is random per registry and topic,
+// so a restarted registry's numbering is never mistaken for the old one.
+//   u8 kind
+//   JOIN       registry -> subscriber   ip group, i64 first sequence, i32 repair window,
+//                                       u16 port the group's frames are sent to
+//   JOINED     subscriber -> registry   nothing further
+//   DATA       registry -> group        i64 sequence, then the PUBLISH frame as received
+//   HEARTBEAT  registry -> group        i64 last sequence sent
+//   NACK       subscriber -> registry   u16 n, n x (i64 first, i64 last) missing sequences
+// ip = u8 length (4 or 16) + bytes. Repairs are the same DATA frames, sent to the
+// subscriber directly.
+public final class Multicast {
+    // Join this group; sequences from the first one on are yours to receive or repair
+    public static final byte JOIN = 1;
+    // The subscriber is in the group, so the registry stops repeating the JOIN
+    public static final byte JOINED = 2;
+    public static final byte DATA = 3;
+    // Sent while a stream is idle so a lost last frame is still noticed
+    public static final byte HEARTBEAT = 4;
+    public static final byte NACK = 5;
+
+    public static final int MAX_NACK_RANGES = 64;
+    // Kind and sequence in front of the carried frame
+    public static final int DATA_OVERHEAD = 9;
+
+    // A decoded JOIN
+    public static final class Join {
+        public final InetAddress group;
+        public final long firstSequence;
+        public final int repairWindow;
+        public final int port;
+
+        Join(InetAddress group, long firstSequence, int repairWindow, int port) {
+            this.group = group;
+            this.firstSequence = firstSequence;
+            this.repairWindow = repairWindow;
+            this.port = port;
+        }
+    }
+
+    private Multicast() {
+    }
+
+    public static ByteBuffer encodeJoin(byte[] topic, int streamId, InetAddress group, int port, long firstSequence,
+            int repairWindow) {
+        byte[] ip = group.getAddress();
+        ByteBuffer frame = begin(topic, streamId, PriorityLevel.HIGH, JOIN, 1 + ip.length + 8 + 4 + 2);
+        frame.put((byte) ip.length).put(ip);
+        frame.putLong(firstSequence);
+        frame.putInt(repairWindow);
+        frame.putShort((short) port);
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeJoined(byte[] topic, int streamId) {
+        return begin(topic, streamId, PriorityLevel.HIGH, JOINED, 0).flip();
+    }
+
+    // Wraps the encoded PUBLISH frame in frame[offset, offset + length)
+    public static ByteBuffer encodeData(byte[] topic, int streamId, long sequence, PriorityLevel priority,
+            byte[] frame, int offset, int length) {
+        ByteBuffer data = begin(topic, streamId, priority, DATA, 8 + length);
+        data.putLong(sequence);
+        data.put(frame, offset, length);
+        return data.flip();
+    }
+
+    public static ByteBuffer encodeHeartbeat(byte[] topic, int streamId, long lastSequence) {
+        ByteBuffer frame = begin(topic, streamId, PriorityLevel.LOW, HEARTBEAT, 8);
+        frame.putLong(lastSequence);
+        return frame.flip();
+    }
+
+    // Ranges are inclusive; only the first count of firsts and lasts are sent
+    public static ByteBuffer encodeNack(byte[] topic, int streamId, long[] firsts, long[] lasts, int count) {
+        count = Math.min(count, MAX_NACK_RANGES);
+        ByteBuffer frame = begin(topic, streamId, PriorityLevel.HIGH, NACK, 2 + count * 16);
+        frame.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            frame.putLong(firsts[i]);
+            frame.putLong(lasts[i]);
+        }
+        return frame.flip();
+    }
+
+    private static ByteBuffer begin(byte[] topic, int streamId, PriorityLevel priority, byte kind, int bodyLength) {
+        ByteBuffer frame = ByteBuffer.allocate(WireCodec.FIXED_HEADER_SIZE + topic.length + 4 + 1 + bodyLength);
+        WireCodec.beginMulticast(frame, topic, streamId, priority, EpochClock.nowNanos());
+        frame.put(kind);
+        frame.putInt(frame.position() - 5, 1 + bodyLength);
+        return frame;
+    }
+
+    // Offset of the carried frame in an encoded DATA frame
+    public static int dataOffset(int topicLength) {
+        return WireCodec.FIXED_HEADER_SIZE + topicLength + 4 + DATA_OVERHEAD;
+    }
+
+    // 0 for an empty payload, which no kind uses
+    public static byte kind(Frame frame) {
+        return frame.payloadLength() > 0 ? frame.buffer().get(frame.payloadOffset()) : 0;
+    }
+
+    // Sequence of a DATA frame, last sequence of a HEARTBEAT; -1 when the payload is too short
+    public static long sequence(Frame frame) {
+        return frame.payloadLength() >= DATA_OVERHEAD ? frame.buffer().getLong(frame.payloadOffset() + 1) : -1;
+    }
+
+    // Decodes the PUBLISH frame a DATA frame carries; returns false when it is malformed
+    public static boolean decodeData(Frame data, Frame carried) {
+        int end = data.payloadOffset() + data.payloadLength();
+        return data.payloadLength() > DATA_OVERHEAD
+                && WireCodec.decode(data.buffer(), data.payloadOffset() + DATA_OVERHEAD, end, carried)
+                && carried.type() == MessageType.PUBLISH;
+    }
+
+    // Returns null when the payload is malformed
+    public static Join decodeJoin(Frame frame) {
+        ByteBuffer buffer = frame.buffer();
+        int cursor = frame.payloadOffset() + 1;
+        int end = frame.payloadOffset() + frame.payloadLength();
+        if (cursor >= end) {
+            return null;
+        }
+        int length = buffer.get(cursor++) & 0xFF;
+        if ((length != 4 && length != 16) || cursor + length + 14 > end) {
+            return null;
+        }
+        byte[] ip = new byte[length];
+        buffer.get(cursor, ip);
+        cursor += length;
+        try {
+            return new Join(InetAddress.getByAddress(ip), buffer.getLong(cursor), buffer.getInt(cursor + 8),
+                    buffer.getShort(cursor + 12) & 0xFFFF);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    // Number of ranges in a NACK, 0 when the payload is malformed
+    public static int nackRanges(Frame frame) {
+        if (frame.payloadLength() < 3) {
+            return 0;
+        }
+        int count = frame.buffer().getShort(frame.payloadOffset() + 1) & 0xFFFF;
+        return 3 + count * 16 <= frame.payloadLength() ? Math.min(count, MAX_NACK_RANGES) : 0;
+    }
+
+    public static long nackFirst(Frame frame, int range) {
+        return frame.buffer().getLong(frame.payloadOffset() + 3 + range * 16);
+    }
+
+    public static long nackLast(Frame frame, int range) {
+        return frame.buffer().getLong(frame.payloadOffset() + 3 + range * 16 + 8);
+    }
+}
@@ -0,0 +1,206 @@
+package common;
+
+import config.AppConfig;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Rebuilds frames sent as FRAGMENT datagrams. Each chunk is copied once, straight
+// to its final offset in a pooled buffer, so completing a message costs no extra
+// concatenation. Partial messages expire after a timeout, and the bytes held by
+// partial messages are capped: the oldest partial is evicted to make room.
+// Frames that fit in one datagram never pass through here.
+public final class Reassembler {
+    private static final Logger LOGGER = Logger.getLogger(Reassembler.class.getName());
+    // Free buffers kept per power-of-two size class
+    private static final int BUFFERS_PER_CLASS = 4;
+    private static final int MIN_CLASS_BYTES = 1 << 16;
+
+    private final int maxMessageBytes;
+    private final long memoryCapBytes;
+    private final long timeoutNanos;
+    private final HashedWheelTimer timer;
+    // Insertion order is age order, which is what eviction under the memory cap wants
+    private final LinkedHashMap<Long, Partial> partials = new LinkedHashMap<>();
+    private final ArrayDeque<Partial> freePartials = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer>[] freeBuffers;
+    private long bytesHeld;
+    private long completed;
+    private long expired;
+    private long evicted;
+
+    // One message being rebuilt; its own expiry timeout
+    private final class Partial extends HashedWheelTimer.Timeout {
+        long key;
+        InetSocketAddress sender;
+        ByteBuffer buffer;
+        long[] received = new long[4];
+        int count;
+        int remaining;
+
+        @Override
+        protected void expire() {
+            synchronized (Reassembler.this) {
+                if (partials.get(key) == this) {
+                    expired++;
+                    discard(this);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Reassembler(int maxMessageBytes, long memoryCapBytes, long timeoutNanos, HashedWheelTimer timer) {
+        this.maxMessageBytes = maxMessageBytes;
+        this.memoryCapBytes = memoryCapBytes;
+        this.timeoutNanos = timeoutNanos;
+        this.timer = timer;
+        this.freeBuffers = new ArrayDeque[sizeClass(Math.max(maxMessageBytes, MIN_CLASS_BYTES)) + 1];
+        for (int i = 0; i < freeBuffers.length; i++) {
+            freeBuffers[i] = new ArrayDeque<>();
+        }
+    }
+
+    public static Reassembler fromConfig() {
+        return new Reassembler(
+                AppConfig.getInt("transport.maxMessageBytes", 16 * 1024 * 1024),
+                AppConfig.getLong("transport.reassemblyMemoryBytes", 64L * 1024 * 1024),
+                TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("transport.reassemblyTimeoutMs", 5000)),
+                HashedWheelTimer.shared());
+    }
+
+    // Stores the fragment's chunk. Returns the rebuilt frame (position 0, limit at its
+    // length) once the last fragment arrives, otherwise null. Give it back with release().
+    public synchronized ByteBuffer accept(Frame fragment, InetSocketAddress sender) {
+        if (!WireCodec.isWellFormedFragment(fragment)) {
+            return null;
+        }
+        int total = WireCodec.fragmentTotalLength(fragment);
+        int count = WireCodec.fragmentCount(fragment);
+        if (total > maxMessageBytes || total > memoryCapBytes) {
+            LOGGER.warning("⚠️ Dropping fragment of a " + total + "-byte message from " + sender + " (too large)");
+            return null;
+        }
+        long key = ((long) sender.hashCode() << 32) | (fragment.messageId() & 0xFFFFFFFFL);
+        Partial partial = partials.get(key);
+        if (partial != null && (!partial.sender.equals(sender) || partial.buffer.limit() != total
+                || partial.count != count)) {
+            // A different message under the same key; the old one cannot complete any more
+            discard(partial);
+            partial = null;
+        }
+        if (partial == null) {
+            partial = start(key, sender, total, count);
+        }
+        int index = WireCodec.fragmentIndex(fragment);
+        long bit = 1L << (index & 63);
+        if ((partial.received[index >>> 6] & bit) != 0) {
+            return null;  // Duplicate fragment, e.g. from a retransmission
+        }
+        partial.received[index >>> 6] |= bit;
+        partial.buffer.put(WireCodec.fragmentOffset(fragment), fragment.buffer(),
+                WireCodec.fragmentChunkOffset(fragment), WireCodec.fragmentChunkLength(fragment));
+        if (--partial.remaining > 0) {
+            return null;
+        }
+        ByteBuffer frame = partial.buffer;
+        partial.buffer = null;
+        partials.remove(key);
+        timer.cancel(partial);
+        bytesHeld -= frame.capacity();
+        freePartials.push(partial);
+        completed++;
+        return frame;
+    }
+
+    private Partial start(long key, InetSocketAddress sender, int total, int count) {
+        int capacity = classBytes(sizeClass(total));
+        Iterator<Partial> oldest = partials.values().iterator();
+        while (bytesHeld + capacity > memoryCapBytes && oldest.hasNext()) {
+            Partial victim = oldest.next();
+            oldest.remove();
+            evicted++;
+            release(victim);
+        }
+        Partial partial = freePartials.isEmpty() ? new Partial() : freePartials.pop();
+        partial.key = key;
+        partial.sender = sender;
+        partial.count = count;
+        partial.remaining = count;
+        int words = (count + 63) >>> 6;
+        if (partial.received.length < words) {
+            partial.received = new long[words];
+        } else {
+            Arrays.fill(partial.received, 0, words, 0L);
+        }
+        partial.buffer = acquire(total);
+        bytesHeld += partial.buffer.capacity();
+        partials.put(key, partial);
+        timer.schedule(partial, timeoutNanos);
+        return partial;
+    }
+
+    private void discard(Partial partial) {
+        partials.remove(partial.key);
+        release(partial);
+    }
+
+    // Returns the partial's buffer and the partial itself to their pools
+    private void release(Partial partial) {
+        timer.cancel(partial);
+        bytesHeld -= partial.buffer.capacity();
+        recycle(partial.buffer);
+        partial.buffer = null;
+        freePartials.push(partial);
+    }
+
+    // Hands back a frame returned by accept once the caller is done with it
+    public synchronized void release(ByteBuffer frame) {
+        recycle(frame);
+    }
+
+    private ByteBuffer acquire(int length) {
+        int sizeClass = sizeClass(length);
+        ByteBuffer buffer = freeBuffers[sizeClass].poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(classBytes(sizeClass));
+        }
+        buffer.clear().limit(length);
+        return buffer;
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass < freeBuffers.length && freeBuffers[sizeClass].size() < BUFFERS_PER_CLASS) {
+            freeBuffers[sizeClass].push(buffer);
+        }
+    }
+
+    private static int sizeClass(int length) {
+        int bytes = Math.max(length, MIN_CLASS_BYTES);
+        return 32 - Integer.numberOfLeadingZeros(bytes - 1) - 16;
+    }
+
+    private static int classBytes(int sizeClass) {
+        return MIN_CLASS_BYTES << sizeClass;
+    }
+
+    public synchronized int partialCount() {
+        return partials.size();
+    }
+
+    public synchronized long bytesHeld() {
+        return bytesHeld;
+    }
+
+    public synchronized String stats() {
+        return "completed=" + completed + " expired=" + expired + " evicted=" + evicted
+                + " partial=" + partials.size() + " held=" + bytesHeld + "B";
+    }
+}
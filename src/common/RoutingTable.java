@@ -0,0 +1,181 @@
+package common;
+
+import config.AppConfig;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Named endpoints, resolved once and kept resolved. Senders hold a Route and read its
+// address for every datagram, so no name lookup happens on a send path; a background thread
+// re-resolves host names every endpoint.refreshMs and swaps the new address in when it
+// changes. The shared table reads endpoint.<name>=host:port, e.g. endpoint.registry.
+public final class RoutingTable {
+    private static final Logger LOGGER = Logger.getLogger(RoutingTable.class.getName());
+
+    // Where subscribers register, and where the server and clients forward messages
+    public static final String REGISTRY = "registry";
+    // The relay in front of the registry
+    public static final String SERVER = "server";
+    // Where publishers send their messages
+    public static final String PUBLISH = "publish";
+
+    private static final class Shared {
+        static final RoutingTable INSTANCE = new RoutingTable(
+                TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("endpoint.refreshMs", 30000)));
+    }
+
+    // A resolved endpoint; the address changes only when a refresh finds a new one
+    public static final class Route {
+        private final String name;
+        private final String host;
+        private final int port;
+        private volatile InetSocketAddress address;
+
+        private Route(String name, String host, int port) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.address = resolve(host, port);
+        }
+
+        private Route(String name, InetSocketAddress address) {
+            this.name = name;
+            this.host = address.getHostString();
+            this.port = address.getPort();
+            this.address = address;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int port() {
+            return port;
+        }
+
+        // Unresolved only while the host has never resolved; sends to it fail until it does
+        public InetSocketAddress address() {
+            return address;
+        }
+
+        private void refresh() {
+            InetSocketAddress current = address;
+            InetSocketAddress fresh = resolve(host, port);
+            if (fresh.isUnresolved() || fresh.equals(current)) {
+                return;
+            }
+            address = fresh;
+            LOGGER.info("🔁 Endpoint " + name + " (" + host + ") now resolves to " + fresh);
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + address;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+
+    public RoutingTable(long refreshNanos) {
+        if (refreshNanos > 0) {
+            ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("endpoint-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, refreshNanos, refreshNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static RoutingTable shared() {
+        return Shared.INSTANCE;
+    }
+
+    public static Route registry() {
+        return shared().route(REGISTRY);
+    }
+
+    // Replaces any route of the same name; holders of the old Route keep its address
+    public Route register(String name, String host, int port) {
+        Route route = new Route(name, host, port);
+        routes.put(name, route);
+        return route;
+    }
+
+    public Route register(String name, InetSocketAddress address) {
+        Route route = new Route(name, address);
+        routes.put(name, route);
+        return route;
+    }
+
+    // Routes not registered yet come from endpoint.<name>, or the given default
+    public Route route(String name, String defaultHostPort) {
+        Route route = routes.get(name);
+        if (route != null) {
+            return route;
+        }
+        return routes.computeIfAbsent(name, n -> parse(n, AppConfig.getString("endpoint." + n, defaultHostPort)));
+    }
+
+    public Route route(String name) {
+        return route(name, defaultFor(name));
+    }
+
+    private static String defaultFor(String name) {
+        switch (name) {
+            case REGISTRY:
+                return "localhost:5001";
+            case SERVER:
+                return "localhost:5007";
+            case PUBLISH:
+                return "localhost:5005";
+            default:
+                throw new IllegalArgumentException("No endpoint." + name + " configured");
+        }
+    }
+
+    // host:port, with IPv6 literals in brackets: [::1]:5001
+    static Route parse(String name, String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon <= 0 || colon == hostPort.length() - 1) {
+            throw new IllegalArgumentException("endpoint." + name + " must be host:port, got \"" + hostPort + "\"");
+        }
+        String host = hostPort.substring(0, colon).trim();
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(hostPort.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("endpoint." + name + " has a bad port: \"" + hostPort + "\"");
+        }
+        return new Route(name, host, port);
+    }
+
+    private static InetSocketAddress resolve(String host, int port) {
+        try {
+            return new InetSocketAddress(InetAddress.getByName(host), port);
+        } catch (UnknownHostException e) {
+            LOGGER.warning("⚠️ Cannot resolve " + host + ": " + e.getMessage() + "; will retry");
+            return InetSocketAddress.createUnresolved(host, port);
+        }
+    }
+
+    private void refresh() {
+        for (Route route : routes.values()) {
+            try {
+                route.refresh();
+            } catch (RuntimeException e) {
+                LOGGER.warning("⚠️ Refreshing endpoint " + route.name + " failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package common;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs tasks one at a time, in the order they were offered, on a shared executor. Many of
+// these can share one pool (or virtual threads) while each keeps its own order; at most
+// one task of each is running or queued on the executor at any time.
+public final class SerialExecutor {
+    private static final int DRAIN_BATCH = 64;
+
+    private final Executor executor;
+    private final int capacity;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    public SerialExecutor(Executor executor, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, got " + capacity);
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    // Returns false, and drops the task, when capacity tasks are already waiting
+    public boolean offer(Runnable task) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        tasks.offer(task);
+        schedule();
+        return true;
+    }
+
+    public int backlog() {
+        return size.get();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(drain);
+        }
+    }
+
+    // Runs up to DRAIN_BATCH tasks and then yields the thread, so a busy queue cannot hold
+    // a pool thread forever. A task that throws ends the round; the rest run in the next one.
+    private void drain() {
+        try {
+            Runnable task;
+            for (int i = 0; i < DRAIN_BATCH && (task = tasks.poll()) != null; i++) {
+                size.decrementAndGet();
+                task.run();
+            }
+        } finally {
+            scheduled.set(false);
+            // Also catches a task offered after the last poll but before the flag was cleared
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package common;
+
+import common.Message.PriorityLevel;
+import common.filter.MessageFilter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Options carried in the payload of a SUBSCRIBE frame as (u8 tag, u16 length, value)
+// entries. Unknown tags are skipped, so new options stay compatible with old registries.
+public final class SubscribeRequest {
+    public enum ReplayMode {
+        NONE,
+        FROM_OFFSET,  // replay the topic log starting at an offset (0 = oldest retained)
+        FROM_TIME     // replay everything appended at or after an epoch-nanos timestamp
+    }
+
+    private static final byte TAG_REPLAY_OFFSET = 1;
+    private static final byte TAG_REPLAY_TIME = 2;
+    // UTF-8 MessageFilter expression the registry applies before forwarding
+    private static final byte TAG_FILTER = 3;
+    private static final int OPTION_HEADER = 3;
+    private static final int MAX_OPTION_LENGTH = 0xFFFF;
+
+    private static final SubscribeRequest LIVE = new SubscribeRequest(ReplayMode.NONE, 0L, MessageFilter.ACCEPT_ALL);
+
+    private final ReplayMode replayMode;
+    private final long replayFrom;
+    private final MessageFilter filter;
+
+    private SubscribeRequest(ReplayMode replayMode, long replayFrom, MessageFilter filter) {
+        this.replayMode = replayMode;
+        this.replayFrom = replayFrom;
+        this.filter = filter;
+    }
+
+    public static SubscribeRequest live() {
+        return LIVE;
+    }
+
+    public static SubscribeRequest fromOffset(long offset) {
+        return new SubscribeRequest(ReplayMode.FROM_OFFSET, Math.max(0L, offset), MessageFilter.ACCEPT_ALL);
+    }
+
+    public static SubscribeRequest fromTime(long epochNanos) {
+        return new SubscribeRequest(ReplayMode.FROM_TIME, epochNanos, MessageFilter.ACCEPT_ALL);
+    }
+
+    // Lets the registry drop messages this subscriber would reject before they are sent
+    public SubscribeRequest withFilter(MessageFilter filter) {
+        if (filter.expression().getBytes(StandardCharsets.UTF_8).length > MAX_OPTION_LENGTH) {
+            throw new IllegalArgumentException("Filter too long to push to the registry: " + filter);
+        }
+        return new SubscribeRequest(replayMode, replayFrom, filter);
+    }
+
+    public ReplayMode replayMode() {
+        return replayMode;
+    }
+
+    public long replayFrom() {
+        return replayFrom;
+    }
+
+    public MessageFilter filter() {
+        return filter;
+    }
+
+    public int encodedSize(int topicLength) {
+        return WireCodec.frameSize(topicLength, optionsSize());
+    }
+
+    private int optionsSize() {
+        int size = replayMode == ReplayMode.NONE ? 0 : OPTION_HEADER + 8;
+        if (!filter.acceptsAll()) {
+            size += OPTION_HEADER + filter.expression().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    public void encode(ByteBuffer dst, byte[] topic) {
+        byte[] options = new byte[optionsSize()];
+        ByteBuffer payload = ByteBuffer.wrap(options);
+        if (replayMode != ReplayMode.NONE) {
+            payload.put(replayMode == ReplayMode.FROM_OFFSET ? TAG_REPLAY_OFFSET : TAG_REPLAY_TIME);
+            payload.putShort((short) 8);
+            payload.putLong(replayFrom);
+        }
+        if (!filter.acceptsAll()) {
+            byte[] expression = filter.expression().getBytes(StandardCharsets.UTF_8);
+            payload.put(TAG_FILTER);
+            payload.putShort((short) expression.length);
+            payload.put(expression);
+        }
+        WireCodec.encode(dst, MessageType.SUBSCRIBE, topic, 0, PriorityLevel.LOW,
+                EpochClock.nowNanos(), options, 0, options.length);
+    }
+
+    // Reads the options of a decoded SUBSCRIBE frame; malformed options are ignored.
+    // A filter the registry cannot compile is dropped too: the subscriber still filters
+    // on its own, so the worst case is the traffic it received before push-down.
+    public static SubscribeRequest decode(Frame frame) {
+        ByteBuffer buffer = frame.buffer();
+        int cursor = frame.payloadOffset();
+        int end = cursor + frame.payloadLength();
+        SubscribeRequest request = LIVE;
+        MessageFilter filter = MessageFilter.ACCEPT_ALL;
+        while (cursor + OPTION_HEADER <= end) {
+            byte tag = buffer.get(cursor);
+            int length = buffer.getShort(cursor + 1) & 0xFFFF;
+            int value = cursor + OPTION_HEADER;
+            if (value + length > end) {
+                break;
+            }
+            if (tag == TAG_REPLAY_OFFSET && length == 8) {
+                request = fromOffset(buffer.getLong(value));
+            } else if (tag == TAG_REPLAY_TIME && length == 8) {
+                request = fromTime(buffer.getLong(value));
+            } else if (tag == TAG_FILTER) {
+                byte[] expression = new byte[length];
+                buffer.get(value, expression);
+                try {
+                    filter = MessageFilter.compile(new String(expression, StandardCharsets.UTF_8));
+                } catch (IllegalArgumentException e) {
+                    filter = MessageFilter.ACCEPT_ALL;
+                }
+            }
+            cursor = value + length;
+        }
+        return filter.acceptsAll() ? request : request.withFilter(filter);
+    }
+
+    @Override
+    public String toString() {
+        String replay = replayMode == ReplayMode.NONE ? "live" : replayMode + " " + replayFrom;
+        return filter.acceptsAll() ? replay : replay + ", filter " + filter;
+    }
+}
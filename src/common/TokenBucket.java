@@ -0,0 +1,67 @@
+package common;
+
+// Classic token bucket: tokens accrue at a fixed rate up to the burst size and each send
+// takes one. Time is passed in (System.nanoTime readings) so callers read the clock once
+// for a whole round of sends. Not thread-safe; callers lock around it.
+public final class TokenBucket {
+    private double tokensPerNano;
+    private double burst;
+    private double tokens;
+    private long lastNanos;
+
+    // Starts full
+    public TokenBucket(double ratePerSecond, double burst, long nowNanos) {
+        this.lastNanos = nowNanos;
+        setRate(ratePerSecond, burst, nowNanos);
+        this.tokens = this.burst;
+    }
+
+    // Tokens already earned are kept, up to the new burst size
+    public void setRate(double ratePerSecond, double burst, long nowNanos) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        refill(nowNanos);
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+    }
+
+    public boolean tryTake(long nowNanos) {
+        refill(nowNanos);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    // Takes a token even if that leaves the bucket in debt, and returns how long the
+    // caller has to wait before using it; 0 when it was available
+    public long reserve(long nowNanos) {
+        refill(nowNanos);
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    // How long until tryTake would succeed
+    public long nanosUntilToken(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    public double ratePerSecond() {
+        return tokensPerNano * 1e9;
+    }
+
+    public double burst() {
+        return burst;
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos > lastNanos) {
+            tokens = Math.min(burst, tokens + (nowNanos - lastNanos) * tokensPerNano);
+            lastNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable trie of topic filters such as "sports/+/goals" or "sports/#".
+// add/remove return a new trie that shares every untouched branch with the old
+// one, so readers can keep using a trie while a writer builds the next version.
+public final class TopicTrie<T> {
+    public static final char SEPARATOR = '/';
+    public static final String SINGLE_LEVEL = "+";
+    public static final String MULTI_LEVEL = "#";
+
+    private static final TopicTrie<?> EMPTY = new TopicTrie<>(new TrieNode<>(Map.of(), Set.of()), 0);
+
+    private static final class TrieNode<T> {
+        final Map<String, TrieNode<T>> children;
+        final Set<T> values;
+
+        TrieNode(Map<String, TrieNode<T>> children, Set<T> values) {
+            this.children = children;
+            this.values = values;
+        }
+
+        boolean isEmpty() {
+            return children.isEmpty() && values.isEmpty();
+        }
+    }
+
+    // A node being changed by addAll; untouched parts stay shared with the original node
+    private static final class Builder<T> {
+        final TrieNode<T> original;
+        Map<String, Builder<T>> children;
+        Set<T> values;
+
+        Builder(TrieNode<T> original) {
+            this.original = original;
+        }
+
+        Builder<T> child(String level) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(level, l -> new Builder<>(original.children.getOrDefault(l,
+                    new TrieNode<>(Map.of(), Set.of()))));
+        }
+
+        Set<T> values() {
+            if (values == null) {
+                values = new LinkedHashSet<>(original.values);
+            }
+            return values;
+        }
+
+        TrieNode<T> build() {
+            Map<String, TrieNode<T>> builtChildren = original.children;
+            if (children != null) {
+                Map<String, TrieNode<T>> copy = new HashMap<>(original.children);
+                for (Map.Entry<String, Builder<T>> child : children.entrySet()) {
+                    copy.put(child.getKey(), child.getValue().build());
+                }
+                builtChildren = Collections.unmodifiableMap(copy);
+            }
+            return new TrieNode<>(builtChildren, values == null ? original.values : Collections.unmodifiableSet(values));
+        }
+    }
+
+    private final TrieNode<T> root;
+    private final int size;
+
+    private TopicTrie(TrieNode<T> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> TopicTrie<T> empty() {
+        return (TopicTrie<T>) EMPTY;
+    }
+
+    // Number of (filter, value) pairs
+    public int size() {
+        return size;
+    }
+
+    public TopicTrie<T> add(String filter, T value) {
+        String[] levels = validate(filter);
+        TrieNode<T> updated = add(root, levels, 0, value);
+        return updated == root ? this : new TopicTrie<>(updated, size + 1);
+    }
+
+    // Adds many (filter, value) pairs at once. add copies the path to a filter, and the
+    // filter's value set, for every pair; this copies each node it touches once, which is
+    // what makes loading a large table linear.
+    public TopicTrie<T> addAll(Map<String, ? extends Collection<T>> filters) {
+        Builder<T> builder = new Builder<>(root);
+        int added = 0;
+        for (Map.Entry<String, ? extends Collection<T>> entry : filters.entrySet()) {
+            Builder<T> node = builder;
+            for (String level : validate(entry.getKey())) {
+                node = node.child(level);
+            }
+            for (T value : entry.getValue()) {
+                if (node.values().add(value)) {
+                    added++;
+                }
+            }
+        }
+        return added == 0 ? this : new TopicTrie<>(builder.build(), size + added);
+    }
+
+    public TopicTrie<T> remove(String filter, T value) {
+        String[] levels = validate(filter);
+        TrieNode<T> updated = remove(root, levels, 0, value);
+        if (updated == root) {
+            return this;
+        }
+        return new TopicTrie<>(updated == null ? new TrieNode<>(Map.of(), Set.of()) : updated, size - 1);
+    }
+
+    // Collects the values of every filter matching the concrete topic
+    public void match(String topic, Collection<T> out) {
+        match(root, split(topic), 0, out);
+    }
+
+    public Set<T> match(String topic) {
+        Set<T> out = new LinkedHashSet<>();
+        match(topic, out);
+        return out;
+    }
+
+    private static <T> TrieNode<T> add(TrieNode<T> node, String[] levels, int depth, T value) {
+        if (depth == levels.length) {
+            if (node.values.contains(value)) {
+                return node;
+            }
+            Set<T> values = new LinkedHashSet<>(node.values);
+            values.add(value);
+            return new TrieNode<>(node.children, Collections.unmodifiableSet(values));
+        }
+        TrieNode<T> child = node.children.get(levels[depth]);
+        TrieNode<T> updatedChild = add(child == null ? new TrieNode<>(Map.of(), Set.of()) : child,
+                levels, depth + 1, value);
+        if (updatedChild == child) {
+            return node;
+        }
+        return new TrieNode<>(withChild(node.children, levels[depth], updatedChild), node.values);
+    }
+
+    // Returns null when the node becomes empty so it can be pruned
+    private static <T> TrieNode<T> remove(TrieNode<T> node, String[] levels, int depth, T value) {
+        TrieNode<T> updated;
+        if (depth == levels.length) {
+            if (!node.values.contains(value)) {
+                return node;
+            }
+            Set<T> values = new LinkedHashSet<>(node.values);
+            values.remove(value);
+            updated = new TrieNode<>(node.children, Collections.unmodifiableSet(values));
+        } else {
+            TrieNode<T> child = node.children.get(levels[depth]);
+            if (child == null) {
+                return node;
+            }
+            TrieNode<T> updatedChild = remove(child, levels, depth + 1, value);
+            if (updatedChild == child) {
+                return node;
+            }
+            updated = new TrieNode<>(withChild(node.children, levels[depth], updatedChild), node.values);
+        }
+        return updated.isEmpty() ? null : updated;
+    }
+
+    private static <T> Map<String, TrieNode<T>> withChild(Map<String, TrieNode<T>> children,
+            String level, TrieNode<T> child) {
+        Map<String, TrieNode<T>> copy = new HashMap<>(children);
+        if (child == null) {
+            copy.remove(level);
+        } else {
+            copy.put(level, child);
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static <T> void match(TrieNode<T> node, String[] levels, int depth, Collection<T> out) {
+        // "a/#" also matches "a" itself
+        TrieNode<T> multi = node.children.get(MULTI_LEVEL);
+        if (multi != null) {
+            out.addAll(multi.values);
+        }
+        if (depth == levels.length) {
+            out.addAll(node.values);
+            return;
+        }
+        TrieNode<T> exact = node.children.get(levels[depth]);
+        if (exact != null) {
+            match(exact, levels, depth + 1, out);
+        }
+        TrieNode<T> single = node.children.get(SINGLE_LEVEL);
+        if (single != null) {
+            match(single, levels, depth + 1, out);
+        }
+    }
+
+    public static boolean isWildcard(String filter) {
+        return filter.indexOf('+') >= 0 || filter.indexOf('#') >= 0;
+    }
+
+    // True when the filter (possibly with wildcards) matches the concrete topic
+    public static boolean matches(String filter, String topic) {
+        String[] pattern = split(filter);
+        String[] levels = split(topic);
+        for (int i = 0; i < pattern.length; i++) {
+            if (pattern[i].equals(MULTI_LEVEL)) {
+                return true;
+            }
+            if (i >= levels.length || !(pattern[i].equals(SINGLE_LEVEL) || pattern[i].equals(levels[i]))) {
+                return false;
+            }
+        }
+        return pattern.length == levels.length;
+    }
+
+    // Splits a filter and rejects misplaced wildcards
+    public static String[] validate(String filter) {
+        String[] levels = split(filter);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.equals(MULTI_LEVEL) ? i != levels.length - 1
+                    : !level.equals(SINGLE_LEVEL) && isWildcard(level)) {
+                throw new IllegalArgumentException("Invalid topic filter: " + filter);
+            }
+        }
+        return levels;
+    }
+
+    private static String[] split(String topic) {
+        int count = 1;
+        for (int i = 0; i < topic.length(); i++) {
+            if (topic.charAt(i) == SEPARATOR) {
+                count++;
+            }
+        }
+        String[] levels = new String[count];
+        int start = 0;
+        int index = 0;
+        for (int i = 0; i <= topic.length(); i++) {
+            if (i == topic.length() || topic.charAt(i) == SEPARATOR) {
+                levels[index++] = topic.substring(start, i);
+                start = i + 1;
+            }
+        }
+        return levels;
+    }
+}
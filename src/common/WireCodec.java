@@ -0,0 +1,398 @@
+package common;
+
+import common.Message.PriorityLevel;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Binary, length-prefixed frame shared by every sender and receiver.
+//
+// Layout (big-endian):
+//   u16 magic | u8 version | u8 type | u8 flags | u8 priority
+//   i32 messageId | i64 timestamp (epoch nanos)
+//   [i64 sessionId, only with FLAG_SESSION]
+//   [u8 addressLength | address | u16 port, only with FLAG_ORIGIN]
+//   u16 topicLength | topic bytes (UTF-8)
+//   i32 payloadLength | payload bytes
+//
+// A BATCH frame has an empty topic, the entry count as its message id and a
+// payload of (u16 length, frame) entries.
+//
+// A FRAGMENT frame carries one slice of a larger encoded frame. It has an empty
+// topic, a per-sender group id as its message id, the original priority and
+// timestamp, and a payload of:
+//   u16 index | u16 count | i32 offset | i32 totalLength | chunk bytes
+//
+// Encoders write at the buffer's position and advance it; decode only records
+// offsets into the source buffer so no intermediate Strings are produced.
+public final class WireCodec {
+    public static final short MAGIC = (short) 0xDD51;
+    public static final byte VERSION = 1;
+
+    // Publisher session for exactly-once delivery
+    public static final byte FLAG_SESSION = 0x01;
+    // Payload compressed by a PayloadCodec; see common.compress.PayloadCodecs for its layout
+    public static final byte FLAG_COMPRESSED = 0x02;
+    // Address of the publisher a registry forwarded the frame for; subscribers ACK it there
+    public static final byte FLAG_ORIGIN = 0x04;
+
+    public static final int FIXED_HEADER_SIZE = 20;
+    public static final int SESSION_SIZE = 8;
+    public static final int MAX_TOPIC_LENGTH = 0xFFFF;
+    public static final int MAX_DATAGRAM_SIZE = 65_507;
+
+    public static final int BATCH_HEADER_SIZE = FIXED_HEADER_SIZE + 4;
+    public static final int BATCH_ENTRY_OVERHEAD = 2;
+
+    public static final int FRAGMENT_HEADER_SIZE = 12;
+    // Bytes of a FRAGMENT datagram that are not chunk data
+    public static final int FRAGMENT_OVERHEAD = FIXED_HEADER_SIZE + 4 + FRAGMENT_HEADER_SIZE;
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    private static final int FLAGS_OFFSET = 4;
+    private static final int PRIORITY_OFFSET = 5;
+    private static final int MESSAGE_ID_OFFSET = 6;
+    private static final int TIMESTAMP_OFFSET = 10;
+    private static final int OPTIONAL_OFFSET = 18;
+
+    private static final byte[] NO_TOPIC = new byte[0];
+    private static final PriorityLevel[] PRIORITIES = PriorityLevel.values();
+
+    private WireCodec() {
+    }
+
+    // Size of a frame with the given topic and payload lengths (session included)
+    public static int frameSize(int topicLength, int payloadLength) {
+        return FIXED_HEADER_SIZE + SESSION_SIZE + topicLength + 4 + payloadLength;
+    }
+
+    public static void encode(ByteBuffer dst, MessageType type, byte[] topic, int messageId,
+            PriorityLevel priority, long timestampNanos, byte[] payload, int offset, int length) {
+        encode(dst, type, topic, messageId, priority, timestampNanos, 0L, payload, offset, length);
+    }
+
+    // A sessionId of 0 means the frame carries no session
+    public static void encode(ByteBuffer dst, MessageType type, byte[] topic, int messageId,
+            PriorityLevel priority, long timestampNanos, long sessionId, byte[] payload, int offset, int length) {
+        putHeader(dst, type, topic, messageId, priority, timestampNanos, sessionId);
+        dst.putInt(length);
+        dst.put(payload, offset, length);
+    }
+
+    public static void encode(ByteBuffer dst, MessageType type, byte[] topic, int messageId,
+            PriorityLevel priority, long timestampNanos, CharSequence payload) {
+        encode(dst, type, topic, messageId, priority, timestampNanos, 0L, payload);
+    }
+
+    // Encodes a text payload straight into the buffer as UTF-8
+    public static void encode(ByteBuffer dst, MessageType type, byte[] topic, int messageId,
+            PriorityLevel priority, long timestampNanos, long sessionId, CharSequence payload) {
+        putHeader(dst, type, topic, messageId, priority, timestampNanos, sessionId);
+        int lengthPosition = dst.position();
+        dst.putInt(0);
+        int written = putUtf8(dst, payload);
+        dst.putInt(lengthPosition, written);
+    }
+
+    public static void encodeSubscribe(ByteBuffer dst, byte[] topic) {
+        putHeader(dst, MessageType.SUBSCRIBE, topic, 0, PriorityLevel.LOW, EpochClock.nowNanos(), 0L);
+        dst.putInt(0);
+    }
+
+    public static void encodeAck(ByteBuffer dst, byte[] topic, int messageId) {
+        putHeader(dst, MessageType.ACK, topic == null ? NO_TOPIC : topic, messageId,
+                PriorityLevel.LOW, EpochClock.nowNanos(), 0L);
+        dst.putInt(0);
+    }
+
+    public static void encodeAckConfirm(ByteBuffer dst, byte[] topic, int messageId) {
+        putHeader(dst, MessageType.ACK_CONFIRM, topic, messageId, PriorityLevel.LOW, EpochClock.nowNanos(), 0L);
+        dst.putInt(0);
+    }
+
+    // Starts an empty batch at the buffer's position
+    public static void beginBatch(ByteBuffer dst) {
+        putHeader(dst, MessageType.BATCH, NO_TOPIC, 0, PriorityLevel.LOW, EpochClock.nowNanos(), 0L);
+        dst.putInt(0);
+    }
+
+    // Starts a CLUSTER frame at the buffer's position; write the payload, then call endFrame
+    public static void beginCluster(ByteBuffer dst, PriorityLevel priority) {
+        putHeader(dst, MessageType.CLUSTER, NO_TOPIC, 0, priority, EpochClock.nowNanos(), 0L);
+        dst.putInt(0);
+    }
+
+    // Starts a MULTICAST frame at the buffer's position; write the payload, then call endFrame
+    public static void beginMulticast(ByteBuffer dst, byte[] topic, int streamId, PriorityLevel priority,
+            long timestampNanos) {
+        putHeader(dst, MessageType.MULTICAST, topic, streamId, priority, timestampNanos, 0L);
+        dst.putInt(0);
+    }
+
+    // Starts an ACK or ACK_CONFIRM frame at the buffer's position; write the payload, then call endFrame
+    public static void beginAck(ByteBuffer dst, MessageType type, byte[] topic, int messageId) {
+        putHeader(dst, type, topic, messageId, PriorityLevel.LOW, EpochClock.nowNanos(), 0L);
+        dst.putInt(0);
+    }
+
+    // Sets the payload length of a frame without a session, started at frameStart, to end at the position
+    public static void endFrame(ByteBuffer dst, int frameStart) {
+        int lengthOffset = frameStart + FIXED_HEADER_SIZE + (dst.getShort(frameStart + OPTIONAL_OFFSET) & 0xFFFF);
+        dst.putInt(lengthOffset, dst.position() - lengthOffset - 4);
+    }
+
+    // Swaps the payload of a frame decoded from dst for length bytes of src and adds flag to
+    // its flags. The frame has to end at dst's limit, which moves to the new end.
+    public static void replacePayload(ByteBuffer dst, Frame frame, byte flag, byte[] src, int offset, int length) {
+        dst.put(frame.start() + FLAGS_OFFSET, (byte) (frame.flags() | flag));
+        dst.putInt(frame.payloadOffset() - 4, length);
+        dst.put(frame.payloadOffset(), src, offset, length);
+        dst.limit(frame.payloadOffset() + length);
+    }
+
+    // Copy of a decoded frame with origin added to its header. A frame that already names
+    // its origin, e.g. one forwarded twice, is copied as it is.
+    public static byte[] copyWithOrigin(Frame frame, InetSocketAddress origin) {
+        ByteBuffer src = frame.buffer();
+        if (frame.hasOrigin() || origin.isUnresolved()) {
+            byte[] copy = new byte[frame.length()];
+            src.get(frame.start(), copy);
+            return copy;
+        }
+        byte[] address = origin.getAddress().getAddress();
+        int head = OPTIONAL_OFFSET + (frame.hasSession() ? SESSION_SIZE : 0);
+        int extra = 1 + address.length + 2;
+        byte[] copy = new byte[frame.length() + extra];
+        src.get(frame.start(), copy, 0, head);
+        copy[FLAGS_OFFSET] |= FLAG_ORIGIN;
+        copy[head] = (byte) address.length;
+        System.arraycopy(address, 0, copy, head + 1, address.length);
+        copy[head + 1 + address.length] = (byte) (origin.getPort() >>> 8);
+        copy[head + 2 + address.length] = (byte) origin.getPort();
+        src.get(frame.start() + head, copy, head + extra, frame.length() - head);
+        return copy;
+    }
+
+    // Appends the frame between frame.position() and frame.limit() to the batch that
+    // starts at batchStart. Returns false, leaving both buffers untouched, if it does not fit.
+    public static boolean appendToBatch(ByteBuffer batch, int batchStart, ByteBuffer frame) {
+        int length = frame.remaining();
+        if (length > 0xFFFF || batch.remaining() < BATCH_ENTRY_OVERHEAD + length) {
+            return false;
+        }
+        batch.putShort((short) length);
+        // The batch travels at the highest priority it contains
+        byte priority = frame.get(frame.position() + PRIORITY_OFFSET);
+        if (priority > batch.get(batchStart + PRIORITY_OFFSET)) {
+            batch.put(batchStart + PRIORITY_OFFSET, priority);
+        }
+        batch.put(frame);
+        int countOffset = batchStart + MESSAGE_ID_OFFSET;
+        batch.putInt(countOffset, batch.getInt(countOffset) + 1);
+        batch.putInt(batchStart + FIXED_HEADER_SIZE, batch.position() - batchStart - BATCH_HEADER_SIZE);
+        return true;
+    }
+
+    // Decodes the batch entry at cursor into frame and returns the cursor of the next
+    // entry, or -1 once the batch is exhausted or an entry is malformed.
+    // Iterate with: for (int c = batch.payloadOffset(); (c = nextBatchEntry(batch, c, frame)) >= 0; )
+    public static int nextBatchEntry(Frame batch, int cursor, Frame frame) {
+        int end = batch.payloadOffset() + batch.payloadLength();
+        if (cursor + BATCH_ENTRY_OVERHEAD > end) {
+            return -1;
+        }
+        ByteBuffer buffer = batch.buffer();
+        int entryStart = cursor + BATCH_ENTRY_OVERHEAD;
+        int entryEnd = entryStart + (buffer.getShort(cursor) & 0xFFFF);
+        if (entryEnd > end || !decode(buffer, entryStart, entryEnd, frame) || frame.type() == MessageType.BATCH) {
+            return -1;
+        }
+        return entryEnd;
+    }
+
+    // Chunk bytes carried by each fragment when datagrams are limited to mtu bytes
+    public static int fragmentChunkSize(int mtu) {
+        return mtu - FRAGMENT_OVERHEAD;
+    }
+
+    public static int fragmentCount(int frameLength, int mtu) {
+        int chunk = fragmentChunkSize(mtu);
+        return (frameLength + chunk - 1) / chunk;
+    }
+
+    // Encodes fragment number index of the frame between frame.position() and frame.limit()
+    // without moving the frame's position; the chunk is copied once, straight into dst
+    public static void encodeFragment(ByteBuffer dst, ByteBuffer frame, int groupId, int index, int mtu) {
+        int start = frame.position();
+        int total = frame.remaining();
+        int chunk = fragmentChunkSize(mtu);
+        int count = (total + chunk - 1) / chunk;
+        if (chunk <= 0 || count > MAX_FRAGMENTS || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Cannot split " + total + " bytes into " + mtu + "-byte fragments");
+        }
+        int offset = index * chunk;
+        int length = Math.min(chunk, total - offset);
+        int priority = frame.get(start + PRIORITY_OFFSET) & 0xFF;
+        putHeader(dst, MessageType.FRAGMENT, NO_TOPIC, groupId,
+                PRIORITIES[Math.min(priority, PRIORITIES.length - 1)], frame.getLong(start + TIMESTAMP_OFFSET), 0L);
+        dst.putInt(FRAGMENT_HEADER_SIZE + length);
+        dst.putShort((short) index);
+        dst.putShort((short) count);
+        dst.putInt(offset);
+        dst.putInt(total);
+        dst.put(dst.position(), frame, start + offset, length);
+        dst.position(dst.position() + length);
+    }
+
+    // Fragment header accessors; only meaningful when isWellFormedFragment holds
+    public static boolean isWellFormedFragment(Frame fragment) {
+        if (fragment.type() != MessageType.FRAGMENT || fragment.payloadLength() < FRAGMENT_HEADER_SIZE) {
+            return false;
+        }
+        int count = fragmentCount(fragment);
+        int offset = fragmentOffset(fragment);
+        int total = fragmentTotalLength(fragment);
+        return fragmentIndex(fragment) < count && offset >= 0 && total > 0
+                && offset + fragmentChunkLength(fragment) <= total;
+    }
+
+    public static int fragmentIndex(Frame fragment) {
+        return fragment.buffer().getShort(fragment.payloadOffset()) & 0xFFFF;
+    }
+
+    public static int fragmentCount(Frame fragment) {
+        return fragment.buffer().getShort(fragment.payloadOffset() + 2) & 0xFFFF;
+    }
+
+    public static int fragmentOffset(Frame fragment) {
+        return fragment.buffer().getInt(fragment.payloadOffset() + 4);
+    }
+
+    public static int fragmentTotalLength(Frame fragment) {
+        return fragment.buffer().getInt(fragment.payloadOffset() + 8);
+    }
+
+    public static int fragmentChunkOffset(Frame fragment) {
+        return fragment.payloadOffset() + FRAGMENT_HEADER_SIZE;
+    }
+
+    public static int fragmentChunkLength(Frame fragment) {
+        return fragment.payloadLength() - FRAGMENT_HEADER_SIZE;
+    }
+
+    // Type and message id of the frame being carried, readable from fragment 0 alone
+    public static MessageType fragmentedType(Frame firstFragment) {
+        return MessageType.fromCode(firstFragment.buffer().get(fragmentChunkOffset(firstFragment) + 3));
+    }
+
+    public static int fragmentedMessageId(Frame firstFragment) {
+        return firstFragment.buffer().getInt(fragmentChunkOffset(firstFragment) + MESSAGE_ID_OFFSET);
+    }
+
+    private static void putHeader(ByteBuffer dst, MessageType type, byte[] topic, int messageId,
+            PriorityLevel priority, long timestampNanos, long sessionId) {
+        if (topic.length > MAX_TOPIC_LENGTH) {
+            throw new IllegalArgumentException("Topic exceeds " + MAX_TOPIC_LENGTH + " bytes");
+        }
+        dst.putShort(MAGIC);
+        dst.put(VERSION);
+        dst.put(type.code());
+        dst.put(sessionId != 0 ? FLAG_SESSION : 0);
+        dst.put((byte) priority.ordinal());
+        dst.putInt(messageId);
+        dst.putLong(timestampNanos);
+        if (sessionId != 0) {
+            dst.putLong(sessionId);
+        }
+        dst.putShort((short) topic.length);
+        dst.put(topic);
+    }
+
+    // Decodes the frame between src.position() and src.limit() into the reusable frame.
+    // Returns false for anything that is not a well-formed frame of this version.
+    public static boolean decode(ByteBuffer src, Frame frame) {
+        return decode(src, src.position(), src.limit(), frame);
+    }
+
+    // Decodes the frame between start and limit, e.g. one carried inside another frame's payload
+    public static boolean decode(ByteBuffer src, int start, int limit, Frame frame) {
+        if (limit - start < FIXED_HEADER_SIZE + 4
+                || src.getShort(start) != MAGIC
+                || src.get(start + 2) != VERSION) {
+            return false;
+        }
+        MessageType type = MessageType.fromCode(src.get(start + 3));
+        int priority = src.get(start + PRIORITY_OFFSET) & 0xFF;
+        if (type == null || priority >= PRIORITIES.length) {
+            return false;
+        }
+        byte flags = src.get(start + FLAGS_OFFSET);
+        int cursor = start + OPTIONAL_OFFSET;
+        long sessionId = 0L;
+        if ((flags & FLAG_SESSION) != 0) {
+            if (cursor + SESSION_SIZE + 2 > limit) {
+                return false;
+            }
+            sessionId = src.getLong(cursor);
+            cursor += SESSION_SIZE;
+        }
+        int originOffset = 0;
+        if ((flags & FLAG_ORIGIN) != 0) {
+            int addressLength = cursor < limit ? src.get(cursor) & 0xFF : 0;
+            if ((addressLength != 4 && addressLength != 16) || cursor + 1 + addressLength + 2 + 2 > limit) {
+                return false;
+            }
+            originOffset = cursor;
+            cursor += 1 + addressLength + 2;
+        }
+        int topicLength = src.getShort(cursor) & 0xFFFF;
+        int topicOffset = cursor + 2;
+        int payloadLengthOffset = topicOffset + topicLength;
+        if (payloadLengthOffset + 4 > limit) {
+            return false;
+        }
+        int payloadLength = src.getInt(payloadLengthOffset);
+        int payloadOffset = payloadLengthOffset + 4;
+        if (payloadLength < 0 || payloadLength > limit - payloadOffset) {
+            return false;
+        }
+        frame.set(src, start, payloadOffset + payloadLength - start, type, flags,
+                PRIORITIES[priority], src.getInt(start + MESSAGE_ID_OFFSET), src.getLong(start + TIMESTAMP_OFFSET),
+                sessionId, originOffset, topicOffset, topicLength, payloadOffset, payloadLength);
+        return true;
+    }
+
+    public static byte[] topicBytes(String topic) {
+        return topic.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Writes UTF-8 without going through String.getBytes; returns the number of bytes written
+    public static int putUtf8(ByteBuffer dst, CharSequence text) {
+        int start = dst.position();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                dst.put((byte) c);
+            } else if (c < 0x800) {
+                dst.put((byte) (0xC0 | (c >> 6)));
+                dst.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                dst.put((byte) (0xF0 | (codePoint >> 18)));
+                dst.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                dst.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                dst.put((byte) '?');
+            } else {
+                dst.put((byte) (0xE0 | (c >> 12)));
+                dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return dst.position() - start;
+    }
+}
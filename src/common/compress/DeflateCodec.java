@@ -0,0 +1,68 @@
+package common.compress;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Raw deflate (no zlib header or checksum, which would cost six bytes per message) with an
+// optional preset dictionary. Short messages have little history of their own to match
+// against; a dictionary of the phrases a topic repeats gives them some. One Deflater and
+// one Inflater per thread, since creating them allocates native memory.
+final class DeflateCodec implements PayloadCodec {
+    static final byte ID = 1;
+
+    // Messages are small, so the higher levels find little more and cost more
+    private static final int LEVEL = Deflater.BEST_SPEED;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(LEVEL, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public boolean usesDictionary() {
+        return true;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int maxLength,
+            byte[] dictionary) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(src, srcOffset, length);
+        deflater.finish();
+        int written = deflater.deflate(dst, dstOffset, maxLength);
+        return deflater.finished() ? written : -1;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int originalLength,
+            byte[] dictionary) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(src, srcOffset, length);
+        try {
+            int restored = inflater.inflate(dst, dstOffset, originalLength);
+            if (restored != originalLength || !inflater.finished()) {
+                throw new IllegalArgumentException("Deflated payload restored " + restored + " of "
+                        + originalLength + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt deflated payload: " + e.getMessage());
+        }
+    }
+}
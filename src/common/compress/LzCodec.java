@@ -0,0 +1,168 @@
+package common.compress;
+
+import java.util.Arrays;
+
+// Byte-oriented LZ77 in the style of LZ4: no entropy coding, a single hash probe per
+// position and copies on decode, so it runs many times faster than deflate for a somewhat
+// worse ratio. The output is a run of sequences:
+//   token (literal count << 4 | match length - 4) | more literal count | literals
+//   | u16 offset (little-endian) | more match length
+// where a nibble of 15 continues in the following bytes, 255 at a time, and the last
+// sequence stops after its literals. Dictionaries are not used.
+final class LzCodec implements PayloadCodec {
+    static final byte ID = 2;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int MAX_HASH_BITS = 12;
+    private static final int MIN_HASH_BITS = 6;
+    // Sized to the input per call, so a short message clears a short table
+    private static final ThreadLocal<int[]> TABLE = ThreadLocal.withInitial(() -> new int[1 << MAX_HASH_BITS]);
+
+    @Override
+    public String name() {
+        return "lz";
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int maxLength,
+            byte[] dictionary) {
+        int hashBits = Math.max(MIN_HASH_BITS, Math.min(MAX_HASH_BITS, 32 - Integer.numberOfLeadingZeros(length)));
+        int[] table = TABLE.get();
+        Arrays.fill(table, 0, 1 << hashBits, -1);
+        int end = srcOffset + length;
+        int dstEnd = dstOffset + maxLength;
+        int anchor = srcOffset;
+        int in = srcOffset;
+        int out = dstOffset;
+        while (in + MIN_MATCH <= end) {
+            int sequence = readInt(src, in);
+            int hash = (sequence * 0x9E3779B1) >>> (32 - hashBits);
+            int candidate = table[hash];
+            table[hash] = in;
+            if (candidate < 0 || in - candidate > MAX_OFFSET || readInt(src, candidate) != sequence) {
+                in++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (in + matchLength < end && src[candidate + matchLength] == src[in + matchLength]) {
+                matchLength++;
+            }
+            out = writeSequence(src, anchor, in - anchor, in - candidate, matchLength, dst, out, dstEnd);
+            if (out < 0) {
+                return -1;
+            }
+            in += matchLength;
+            anchor = in;
+        }
+        if (anchor < end) {
+            out = writeSequence(src, anchor, end - anchor, 0, 0, dst, out, dstEnd);
+            if (out < 0) {
+                return -1;
+            }
+        }
+        return out - dstOffset;
+    }
+
+    // A matchLength of 0 writes the literals only; returns the new end, or -1 past dstEnd
+    private static int writeSequence(byte[] src, int literals, int literalCount, int offset, int matchLength,
+            byte[] dst, int out, int dstEnd) {
+        int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        // Worst case: token, both length extensions, the literals and the offset
+        if (out + 1 + literalCount / 255 + 1 + literalCount + 2 + matchCode / 255 + 1 > dstEnd) {
+            return -1;
+        }
+        dst[out++] = (byte) (Math.min(literalCount, 15) << 4 | Math.min(matchCode, 15));
+        out = writeLength(literalCount, dst, out);
+        System.arraycopy(src, literals, dst, out, literalCount);
+        out += literalCount;
+        if (matchLength == 0) {
+            return out;
+        }
+        dst[out++] = (byte) offset;
+        dst[out++] = (byte) (offset >>> 8);
+        return writeLength(matchCode, dst, out);
+    }
+
+    private static int writeLength(int value, byte[] dst, int out) {
+        if (value < 15) {
+            return out;
+        }
+        value -= 15;
+        while (value >= 255) {
+            dst[out++] = (byte) 255;
+            value -= 255;
+        }
+        dst[out++] = (byte) value;
+        return out;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int originalLength,
+            byte[] dictionary) {
+        int in = srcOffset;
+        int end = srcOffset + length;
+        int out = dstOffset;
+        int dstEnd = dstOffset + originalLength;
+        while (in < end) {
+            int token = src[in++] & 0xFF;
+            int literalCount = token >>> 4;
+            if (literalCount == 15) {
+                int b;
+                do {
+                    if (in == end) {
+                        throw new IllegalArgumentException("LZ payload ends inside a length");
+                    }
+                    b = src[in++] & 0xFF;
+                    literalCount += b;
+                } while (b == 255);
+            }
+            if (literalCount > end - in || literalCount > dstEnd - out) {
+                throw new IllegalArgumentException("LZ literals run past the payload");
+            }
+            System.arraycopy(src, in, dst, out, literalCount);
+            in += literalCount;
+            out += literalCount;
+            if (in == end) {
+                break;
+            }
+            if (end - in < 2) {
+                throw new IllegalArgumentException("LZ payload ends inside an offset");
+            }
+            int offset = (src[in] & 0xFF) | (src[in + 1] & 0xFF) << 8;
+            in += 2;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (in == end) {
+                        throw new IllegalArgumentException("LZ payload ends inside a length");
+                    }
+                    b = src[in++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (offset == 0 || offset > out - dstOffset || matchLength > dstEnd - out) {
+                throw new IllegalArgumentException("LZ match out of range");
+            }
+            // Byte by byte, since a match may overlap the bytes it produces
+            for (int from = out - offset, stop = out + matchLength; out < stop; ) {
+                dst[out++] = dst[from++];
+            }
+        }
+        if (out != dstEnd) {
+            throw new IllegalArgumentException("LZ payload restored " + (out - dstOffset) + " of "
+                    + originalLength + " bytes");
+        }
+    }
+
+    private static int readInt(byte[] bytes, int at) {
+        return (bytes[at] & 0xFF) | (bytes[at + 1] & 0xFF) << 8 | (bytes[at + 2] & 0xFF) << 16 | bytes[at + 3] << 24;
+    }
+}
@@ -0,0 +1,36 @@
+package common.compress;
+
+// Leaves payloads as they are. Topics set to it are never compressed; the codec itself
+// only copies, which makes it the baseline in benchmarks.
+final class NoneCodec implements PayloadCodec {
+    static final byte ID = 0;
+
+    @Override
+    public String name() {
+        return "none";
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int maxLength,
+            byte[] dictionary) {
+        if (length > maxLength) {
+            return -1;
+        }
+        System.arraycopy(src, srcOffset, dst, dstOffset, length);
+        return length;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int originalLength,
+            byte[] dictionary) {
+        if (length != originalLength) {
+            throw new IllegalArgumentException("Stored payload of " + length + " bytes, expected " + originalLength);
+        }
+        System.arraycopy(src, srcOffset, dst, dstOffset, length);
+    }
+}
@@ -0,0 +1,30 @@
+package common.compress;
+
+// A payload compression algorithm. The built-in ones are "none", "deflate" and "lz";
+// others are found with ServiceLoader, listed in META-INF/services/common.compress.PayloadCodec.
+// Implementations are stateless or keep their state per thread: any thread may call them.
+public interface PayloadCodec {
+    // The name topics select it by in their compression setting
+    String name();
+
+    // Written in front of every payload it compressed. Unique among the codecs loaded, and
+    // the same on every node: it is how a receiver knows which codec to decompress with.
+    byte id();
+
+    // Whether a dictionary passed to it changes the output; codecs that ignore it are
+    // given none, so their payloads do not name one
+    default boolean usesDictionary() {
+        return false;
+    }
+
+    // Compresses length bytes of src into dst and returns the number of bytes written, or
+    // -1 when the result would take more than maxLength bytes. The dictionary is null or
+    // the same bytes decompress will be given.
+    int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int maxLength,
+            byte[] dictionary);
+
+    // Restores exactly originalLength bytes into dst. Throws IllegalArgumentException when
+    // src is not a valid compressed payload of that length.
+    void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int originalLength,
+            byte[] dictionary);
+}
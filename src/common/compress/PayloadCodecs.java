@@ -0,0 +1,142 @@
+package common.compress;
+
+import common.Frame;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+
+// The codecs this process knows, by name and by wire id, and the dictionaries it has been
+// configured with, by id. A frame with WireCodec.FLAG_COMPRESSED carries a payload of:
+//   u8 codec id | i32 dictionary id (0 = none) | i32 original length | compressed bytes
+// A receiver needs the same codec and dictionary to read it; one that lacks either cannot,
+// and reports the payload as unreadable rather than guessing.
+public final class PayloadCodecs {
+    private static final Logger LOGGER = Logger.getLogger(PayloadCodecs.class.getName());
+
+    public static final int HEADER_SIZE = 9;
+    // Larger claims are taken as corrupt rather than allocated
+    public static final int MAX_ORIGINAL_LENGTH = 1 << 24;
+    private static final int MAX_DICTIONARIES = 256;
+
+    public static final PayloadCodec NONE = new NoneCodec();
+
+    private static final Map<String, PayloadCodec> BY_NAME = new HashMap<>();
+    private static final PayloadCodec[] BY_ID = new PayloadCodec[128];
+    private static final Map<Integer, byte[]> DICTIONARIES = new ConcurrentHashMap<>();
+
+    // Decompressed payloads are read from here until the thread's next call
+    private static final ThreadLocal<ByteBuffer> PLAIN = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+    private static final ThreadLocal<byte[]> PACKED = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    static {
+        register(NONE);
+        register(new DeflateCodec());
+        register(new LzCodec());
+        for (PayloadCodec codec : ServiceLoader.load(PayloadCodec.class)) {
+            register(codec);
+        }
+    }
+
+    private PayloadCodecs() {
+    }
+
+    private static void register(PayloadCodec codec) {
+        String name = codec.name().toLowerCase(Locale.ROOT);
+        int id = codec.id();
+        if (id < 0 || BY_ID[id] != null || BY_NAME.containsKey(name)) {
+            LOGGER.warning("⚠️ Ignoring payload codec " + name + " (id " + id + "): the name or id is taken");
+            return;
+        }
+        BY_ID[id] = codec;
+        BY_NAME.put(name, codec);
+    }
+
+    // Null for a name no loaded codec has
+    public static PayloadCodec byName(String name) {
+        return BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    // Makes a dictionary available for decompression and returns its id, the Adler-32 of
+    // its bytes. Returns 0 once MAX_DICTIONARIES are known; payloads are then compressed
+    // without it.
+    public static int addDictionary(byte[] dictionary) {
+        Adler32 checksum = new Adler32();
+        checksum.update(dictionary);
+        int id = (int) checksum.getValue();
+        if (id == 0) {
+            id = 1;
+        }
+        if (DICTIONARIES.containsKey(id)) {
+            return id;
+        }
+        if (DICTIONARIES.size() >= MAX_DICTIONARIES) {
+            LOGGER.warning("⚠️ " + MAX_DICTIONARIES + " compression dictionaries are loaded; not adding another");
+            return 0;
+        }
+        DICTIONARIES.putIfAbsent(id, dictionary.clone());
+        return id;
+    }
+
+    // The frame's payload as sent: its own bytes, or the decompressed ones in a buffer
+    // owned by the calling thread, valid until its next call. Reads between position and
+    // limit. Throws IllegalArgumentException when the payload cannot be restored.
+    public static ByteBuffer plainPayload(Frame frame) {
+        if (!frame.isCompressed()) {
+            return frame.buffer().duplicate().limit(frame.payloadOffset() + frame.payloadLength())
+                    .position(frame.payloadOffset());
+        }
+        ByteBuffer source = frame.buffer();
+        int offset = frame.payloadOffset();
+        int length = frame.payloadLength();
+        if (length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Compressed payload shorter than its header");
+        }
+        int id = source.get(offset);
+        PayloadCodec codec = id < 0 ? null : BY_ID[id];
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown payload codec " + id);
+        }
+        int dictionaryId = source.getInt(offset + 1);
+        byte[] dictionary = dictionaryId == 0 ? null : DICTIONARIES.get(dictionaryId);
+        if (dictionaryId != 0 && dictionary == null) {
+            throw new IllegalArgumentException("Unknown compression dictionary " + Integer.toHexString(dictionaryId));
+        }
+        int originalLength = source.getInt(offset + 5);
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH) {
+            throw new IllegalArgumentException("Compressed payload claims " + originalLength + " bytes");
+        }
+        int packedLength = length - HEADER_SIZE;
+        byte[] packed;
+        int packedOffset;
+        if (source.hasArray()) {
+            packed = source.array();
+            packedOffset = source.arrayOffset() + offset + HEADER_SIZE;
+        } else {
+            packed = scratch(PACKED, packedLength);
+            packedOffset = 0;
+            source.get(offset + HEADER_SIZE, packed, 0, packedLength);
+        }
+        ByteBuffer plain = PLAIN.get();
+        if (plain.capacity() < originalLength) {
+            plain = ByteBuffer.allocate(originalLength);
+            PLAIN.set(plain);
+        }
+        codec.decompress(packed, packedOffset, packedLength, plain.array(), 0, originalLength, dictionary);
+        return plain.clear().limit(originalLength);
+    }
+
+    static byte[] scratch(ThreadLocal<byte[]> holder, int length) {
+        byte[] bytes = holder.get();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            holder.set(bytes);
+        }
+        return bytes;
+    }
+}
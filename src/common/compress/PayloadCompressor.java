@@ -0,0 +1,97 @@
+package common.compress;
+
+import common.Frame;
+import common.WireCodec;
+
+import java.nio.ByteBuffer;
+
+// How one topic's payloads are compressed: a codec, an optional dictionary and the size
+// below which payloads are sent as they are. Payloads the codec cannot shrink by at least
+// an eighth are sent as they are too, so a topic of incompressible data only pays for the
+// attempt. Immutable.
+public final class PayloadCompressor {
+    public static final PayloadCompressor NONE = new PayloadCompressor(PayloadCodecs.NONE, null, 0, 0);
+
+    private static final ThreadLocal<byte[]> PLAIN = ThreadLocal.withInitial(() -> new byte[1024]);
+    private static final ThreadLocal<byte[]> PACKED = ThreadLocal.withInitial(() -> new byte[1024]);
+    private static final ThreadLocal<Frame> FRAME = ThreadLocal.withInitial(Frame::new);
+
+    private final PayloadCodec codec;
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    private final int minBytes;
+
+    private PayloadCompressor(PayloadCodec codec, byte[] dictionary, int dictionaryId, int minBytes) {
+        this.codec = codec;
+        this.dictionary = dictionary;
+        this.dictionaryId = dictionaryId;
+        this.minBytes = minBytes;
+    }
+
+    // A null dictionary, or one the codec does not use, is left out
+    public static PayloadCompressor of(PayloadCodec codec, byte[] dictionary, int minBytes) {
+        if (codec == PayloadCodecs.NONE) {
+            return NONE;
+        }
+        if (dictionary == null || dictionary.length == 0 || !codec.usesDictionary()) {
+            return new PayloadCompressor(codec, null, 0, minBytes);
+        }
+        int id = PayloadCodecs.addDictionary(dictionary);
+        return new PayloadCompressor(codec, id == 0 ? null : dictionary.clone(), id, minBytes);
+    }
+
+    public boolean enabled() {
+        return codec != PayloadCodecs.NONE;
+    }
+
+    public PayloadCodec codec() {
+        return codec;
+    }
+
+    // Compresses the payload of the encoded frame between position and limit in place when
+    // that pays off, marking the frame with WireCodec.FLAG_COMPRESSED and moving the limit.
+    // Returns whether it did.
+    public boolean compress(ByteBuffer encoded) {
+        if (!enabled()) {
+            return false;
+        }
+        Frame frame = FRAME.get();
+        if (!WireCodec.decode(encoded.duplicate(), frame) || frame.isCompressed()) {
+            return false;
+        }
+        int length = frame.payloadLength();
+        int maxPacked = length - length / 8 - PayloadCodecs.HEADER_SIZE;
+        if (length < minBytes || maxPacked <= 0) {
+            return false;
+        }
+        byte[] plain = PayloadCodecs.scratch(PLAIN, length);
+        encoded.get(frame.payloadOffset(), plain, 0, length);
+        byte[] packed = PayloadCodecs.scratch(PACKED, PayloadCodecs.HEADER_SIZE + maxPacked);
+        int written = codec.compress(plain, 0, length, packed, PayloadCodecs.HEADER_SIZE, maxPacked, dictionary);
+        if (written < 0) {
+            return false;
+        }
+        packed[0] = codec.id();
+        putInt(packed, 1, dictionaryId);
+        putInt(packed, 5, length);
+        WireCodec.replacePayload(encoded, frame, WireCodec.FLAG_COMPRESSED, packed, 0,
+                PayloadCodecs.HEADER_SIZE + written);
+        return true;
+    }
+
+    private static void putInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled()) {
+            return "none";
+        }
+        return codec.name() + (dictionary != null ? " with dictionary " + Integer.toHexString(dictionaryId) : "")
+                + " from " + minBytes + " bytes";
+    }
+}
@@ -0,0 +1,112 @@
+package common.filter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+// Aho-Corasick automaton over bytes. Every keyword is found in one pass over the
+// input, however many there are. Bytes are first mapped to a class (bytes that occur
+// in no keyword share class 0), which keeps the fully expanded transition table small.
+// Case folding, when enabled, covers ASCII letters only; other bytes match exactly.
+final class KeywordMatcher {
+    static final int MAX_KEYWORDS = Long.SIZE;
+    // Row of the start state
+    static final int START = 0;
+
+    private final int[] classOf = new int[256];
+    // next[row + class], where a state's row is state * classes. Entries hold the target's
+    // row, negated when keywords end there, so the scan loop tests one sign per byte.
+    // The table is complete, so a step never follows failure links.
+    private final int[] next;
+    // Keywords ending at each state, including those reached through failure links
+    private final long[] output;
+    private final int classCount;
+
+    KeywordMatcher(List<byte[]> keywords, boolean ignoreCase) {
+        if (keywords.size() > MAX_KEYWORDS) {
+            throw new IllegalArgumentException("At most " + MAX_KEYWORDS + " keywords per filter, got " + keywords.size());
+        }
+        int classes = 1;
+        int states = 1;
+        for (byte[] keyword : keywords) {
+            states += keyword.length;
+            for (byte b : keyword) {
+                int folded = fold(b & 0xFF, ignoreCase);
+                if (classOf[folded] == 0) {
+                    classOf[folded] = classes++;
+                }
+            }
+        }
+        if (ignoreCase) {
+            for (int c = 'A'; c <= 'Z'; c++) {
+                classOf[c] = classOf[c + ('a' - 'A')];
+            }
+        }
+        this.classCount = classes;
+
+        // Build the trie; -1 marks a missing edge until the BFS below fills it in
+        int[] table = new int[states * classes];
+        Arrays.fill(table, -1);
+        long[] out = new long[states];
+        int used = 1;
+        for (int k = 0; k < keywords.size(); k++) {
+            int state = START;
+            for (byte b : keywords.get(k)) {
+                int edge = state * classes + classOf[b & 0xFF];
+                if (table[edge] < 0) {
+                    table[edge] = used++;
+                }
+                state = table[edge];
+            }
+            out[state] |= 1L << k;
+        }
+
+        int[] fail = new int[used];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < classes; c++) {
+            int child = table[c];
+            if (child < 0) {
+                table[c] = START;
+            } else {
+                fail[child] = START;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            out[state] |= out[fail[state]];
+            for (int c = 0; c < classes; c++) {
+                int edge = state * classes + c;
+                int child = table[edge];
+                int viaFail = table[fail[state] * classes + c];
+                if (child < 0) {
+                    table[edge] = viaFail;
+                } else {
+                    fail[child] = viaFail;
+                    queue.add(child);
+                }
+            }
+        }
+        this.next = new int[used * classes];
+        for (int edge = 0; edge < next.length; edge++) {
+            int target = table[edge];
+            next[edge] = out[target] != 0 ? -target * classes : target * classes;
+        }
+        this.output = Arrays.copyOf(out, used);
+    }
+
+    private static int fold(int b, boolean ignoreCase) {
+        return ignoreCase && b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    // Takes and returns a row; a negative result means keywords end there, and the
+    // row to continue from is its negation
+    int step(int row, byte b) {
+        return next[row + classOf[b & 0xFF]];
+    }
+
+    // Bit k is set when keyword k ends at the state of this (non-negated) row
+    long output(int row) {
+        return output[row / classCount];
+    }
+}
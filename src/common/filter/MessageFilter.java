@@ -0,0 +1,518 @@
+package common.filter;
+
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.TopicTrie;
+import common.compress.PayloadCodecs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+// A compiled message filter. Clauses are separated by whitespace and must all hold:
+//
+//   any=goal,"red card"     payload contains at least one keyword (keyword= is an alias)
+//   all=goal,penalty        payload contains every keyword
+//   none=spoiler            payload contains none of the keywords
+//   priority>=MEDIUM        also priority=HIGH and priority<=MEDIUM
+//   topic=sports/#,news/+   topic matches one of the patterns
+//   age<30s                 also age<=500ms; units ns, ms, s, m and h
+//   case=sensitive          keywords match exactly instead of ignoring ASCII case
+//
+// Every keyword of every clause goes into one Aho-Corasick automaton, so the payload
+// is scanned once however many keywords there are. Evaluation reads the encoded frame
+// in place and allocates nothing; the cheap header predicates run before the scan.
+public final class MessageFilter {
+    // Why a frame was rejected, or ACCEPT
+    public enum Verdict {
+        ACCEPT, TOPIC, PRIORITY, AGE, CONTENT
+    }
+
+    private enum GroupMode {
+        ANY, ALL, NONE
+    }
+
+    private static final PriorityLevel[] PRIORITIES = PriorityLevel.values();
+    public static final MessageFilter ACCEPT_ALL = compile("");
+
+    private final String expression;
+    private final byte[][][] topicPatterns;
+    private final int minPriority;
+    private final int maxPriority;
+    private final long maxAgeNanos;
+    private final KeywordMatcher keywords;
+    private final GroupMode[] groupModes;
+    private final long[] groupMasks;
+    // Keywords that can still change the verdict once seen
+    private final long decidingMask;
+
+    private MessageFilter(Builder builder) {
+        this.expression = builder.canonical();
+        this.topicPatterns = new byte[builder.topics.size()][][];
+        int t = 0;
+        for (String pattern : builder.topics) {
+            String[] levels = TopicTrie.validate(pattern);
+            byte[][] encoded = new byte[levels.length][];
+            for (int i = 0; i < levels.length; i++) {
+                encoded[i] = levels[i].getBytes(StandardCharsets.UTF_8);
+            }
+            topicPatterns[t++] = encoded;
+        }
+        this.minPriority = builder.minPriority;
+        this.maxPriority = builder.maxPriority;
+        this.maxAgeNanos = builder.maxAgeNanos;
+
+        List<String> distinct = new ArrayList<>();
+        this.groupModes = new GroupMode[builder.groups.size()];
+        this.groupMasks = new long[builder.groups.size()];
+        long deciding = 0;
+        for (int g = 0; g < groupModes.length; g++) {
+            Group group = builder.groups.get(g);
+            groupModes[g] = group.mode;
+            for (String keyword : group.keywords) {
+                int index = distinct.indexOf(keyword);
+                if (index < 0) {
+                    index = distinct.size();
+                    distinct.add(keyword);
+                }
+                groupMasks[g] |= 1L << index;
+            }
+            deciding |= groupMasks[g];
+        }
+        this.decidingMask = deciding;
+        List<byte[]> encoded = new ArrayList<>(distinct.size());
+        for (String keyword : distinct) {
+            encoded.add(keyword.getBytes(StandardCharsets.UTF_8));
+        }
+        this.keywords = encoded.isEmpty() ? null : new KeywordMatcher(encoded, !builder.caseSensitive);
+    }
+
+    public static MessageFilter compile(String expression) {
+        Builder builder = new Builder();
+        for (String clause : tokenize(expression == null ? "" : expression, ' ', true)) {
+            builder.clause(clause);
+        }
+        return new MessageFilter(builder);
+    }
+
+    // The filter the old subscriber options described: one keyword, HIGH only and a time limit
+    public static MessageFilter of(String keyword, boolean highPriorityOnly, Duration maxAge) {
+        Builder builder = new Builder();
+        if (keyword != null && !keyword.isEmpty()) {
+            builder.groups.add(new Group(GroupMode.ANY, List.of(keyword)));
+        }
+        if (highPriorityOnly) {
+            builder.minPriority = PriorityLevel.HIGH.ordinal();
+        }
+        if (maxAge != null && !maxAge.isZero() && !maxAge.isNegative()) {
+            builder.maxAgeNanos = maxAge.toNanos();
+        }
+        return new MessageFilter(builder);
+    }
+
+    public boolean matches(Frame frame, long nowNanos) {
+        return evaluate(frame, nowNanos) == Verdict.ACCEPT;
+    }
+
+    public Verdict evaluate(Frame frame, long nowNanos) {
+        if (topicPatterns.length > 0 && !topicMatches(frame)) {
+            return Verdict.TOPIC;
+        }
+        int priority = frame.priority().ordinal();
+        if (priority < minPriority || priority > maxPriority) {
+            return Verdict.PRIORITY;
+        }
+        if (nowNanos - frame.timestampNanos() > maxAgeNanos) {
+            return Verdict.AGE;
+        }
+        if (keywords != null && !contentMatches(frame)) {
+            return Verdict.CONTENT;
+        }
+        return Verdict.ACCEPT;
+    }
+
+    // Compressed payloads are matched on their decompressed bytes; one that cannot be
+    // decompressed matches nothing
+    private boolean contentMatches(Frame frame) {
+        if (!frame.isCompressed()) {
+            return contentMatches(frame.buffer(), frame.payloadOffset(), frame.payloadLength());
+        }
+        ByteBuffer plain;
+        try {
+            plain = PayloadCodecs.plainPayload(frame);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return contentMatches(plain, plain.position(), plain.remaining());
+    }
+
+    private boolean contentMatches(ByteBuffer buffer, int offset, int length) {
+        KeywordMatcher matcher = keywords;
+        long found = 0;
+        int row = KeywordMatcher.START;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            row = matcher.step(row, buffer.get(i));
+            if (row >= 0) {
+                continue;
+            }
+            row = -row;
+            long hit = matcher.output(row) & ~found;
+            if (hit != 0) {
+                found |= hit;
+                // Stop once nothing left unseen could change the outcome
+                if (decided(found)) {
+                    return accepts(found);
+                }
+            }
+        }
+        return accepts(found);
+    }
+
+    // True when the verdict can no longer change whatever else the payload contains
+    private boolean decided(long found) {
+        boolean allSatisfied = true;
+        for (int g = 0; g < groupModes.length; g++) {
+            long hits = found & groupMasks[g];
+            switch (groupModes[g]) {
+                case NONE:
+                    if (hits != 0) {
+                        return true;
+                    }
+                    allSatisfied = false;
+                    break;
+                case ANY:
+                    allSatisfied &= hits != 0;
+                    break;
+                default:
+                    allSatisfied &= hits == groupMasks[g];
+                    break;
+            }
+        }
+        return allSatisfied || (found & decidingMask) == decidingMask;
+    }
+
+    private boolean accepts(long found) {
+        for (int g = 0; g < groupModes.length; g++) {
+            long hits = found & groupMasks[g];
+            boolean holds = groupModes[g] == GroupMode.ANY ? hits != 0
+                    : groupModes[g] == GroupMode.ALL ? hits == groupMasks[g]
+                    : hits == 0;
+            if (!holds) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Byte-level version of TopicTrie.matches, so the topic is never decoded
+    private boolean topicMatches(Frame frame) {
+        ByteBuffer buffer = frame.buffer();
+        int end = frame.topicOffset() + frame.topicLength();
+        patterns:
+        for (byte[][] pattern : topicPatterns) {
+            int position = frame.topicOffset();
+            for (byte[] level : pattern) {
+                if (isWildcard(level, '#')) {
+                    return true;
+                }
+                if (position > end) {
+                    continue patterns;  // The topic has fewer levels than the pattern
+                }
+                int levelEnd = position;
+                while (levelEnd < end && buffer.get(levelEnd) != TopicTrie.SEPARATOR) {
+                    levelEnd++;
+                }
+                if (!isWildcard(level, '+') && !regionEquals(buffer, position, levelEnd, level)) {
+                    continue patterns;
+                }
+                position = levelEnd + 1;
+            }
+            if (position == end + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWildcard(byte[] level, char wildcard) {
+        return level.length == 1 && level[0] == wildcard;
+    }
+
+    private static boolean regionEquals(ByteBuffer buffer, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(from + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean acceptsAll() {
+        return expression.isEmpty();
+    }
+
+    // Canonical form; equal filters compile from equal expressions
+    public String expression() {
+        return expression;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MessageFilter && ((MessageFilter) other).expression.equals(expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return acceptsAll() ? "<all>" : expression;
+    }
+
+    private static final class Group {
+        final GroupMode mode;
+        final List<String> keywords;
+
+        Group(GroupMode mode, List<String> keywords) {
+            this.mode = mode;
+            this.keywords = keywords;
+        }
+    }
+
+    private static final class Builder {
+        final TreeSet<String> topics = new TreeSet<>();
+        final List<Group> groups = new ArrayList<>();
+        int minPriority;
+        int maxPriority = PRIORITIES.length - 1;
+        long maxAgeNanos = Long.MAX_VALUE;
+        boolean caseSensitive;
+
+        void clause(String clause) {
+            int op = 0;
+            while (op < clause.length() && Character.isLetter(clause.charAt(op))) {
+                op++;
+            }
+            int valueStart = op;
+            while (valueStart < clause.length() && "<>=".indexOf(clause.charAt(valueStart)) >= 0) {
+                valueStart++;
+            }
+            String field = clause.substring(0, op).toLowerCase(Locale.ROOT);
+            String operator = clause.substring(op, valueStart);
+            String value = clause.substring(valueStart);
+            if (value.isEmpty()) {
+                throw invalid(clause, "missing value");
+            }
+            switch (field) {
+                case "any":
+                case "keyword":
+                    group(clause, operator, GroupMode.ANY, value);
+                    break;
+                case "all":
+                    group(clause, operator, GroupMode.ALL, value);
+                    break;
+                case "none":
+                    group(clause, operator, GroupMode.NONE, value);
+                    break;
+                case "topic":
+                    expect(clause, operator, "=");
+                    topics.addAll(tokenize(value, ',', false));
+                    break;
+                case "priority":
+                    priority(clause, operator, value);
+                    break;
+                case "age":
+                    long nanos = parseDuration(clause, value);
+                    if (operator.equals("<")) {
+                        nanos--;
+                    } else {
+                        expect(clause, operator, "<=");
+                    }
+                    maxAgeNanos = Math.min(maxAgeNanos, nanos);
+                    break;
+                case "case":
+                    expect(clause, operator, "=");
+                    if (!value.equalsIgnoreCase("sensitive") && !value.equalsIgnoreCase("insensitive")) {
+                        throw invalid(clause, "expected sensitive or insensitive");
+                    }
+                    caseSensitive = value.equalsIgnoreCase("sensitive");
+                    break;
+                default:
+                    throw invalid(clause, "unknown field '" + field + "'");
+            }
+        }
+
+        private void group(String clause, String operator, GroupMode mode, String value) {
+            expect(clause, operator, "=");
+            List<String> words = tokenize(value, ',', false);
+            if (words.isEmpty() || words.contains("")) {
+                throw invalid(clause, "empty keyword");
+            }
+            groups.add(new Group(mode, words));
+        }
+
+        private void priority(String clause, String operator, String value) {
+            int level;
+            try {
+                level = PriorityLevel.valueOf(value.toUpperCase(Locale.ROOT)).ordinal();
+            } catch (IllegalArgumentException e) {
+                throw invalid(clause, "unknown priority '" + value + "'");
+            }
+            switch (operator) {
+                case "=":
+                    minPriority = Math.max(minPriority, level);
+                    maxPriority = Math.min(maxPriority, level);
+                    break;
+                case ">=":
+                    minPriority = Math.max(minPriority, level);
+                    break;
+                case "<=":
+                    maxPriority = Math.min(maxPriority, level);
+                    break;
+                default:
+                    throw invalid(clause, "expected =, >= or <=");
+            }
+        }
+
+        // Clauses in a fixed order and keyword lists sorted, lower-cased unless case matters
+        String canonical() {
+            StringBuilder text = new StringBuilder();
+            if (!topics.isEmpty()) {
+                text.append(" topic=").append(String.join(",", topics));
+            }
+            if (minPriority == maxPriority) {
+                text.append(" priority=").append(PRIORITIES[minPriority]);
+            } else {
+                if (minPriority > 0) {
+                    text.append(" priority>=").append(PRIORITIES[minPriority]);
+                }
+                if (maxPriority < PRIORITIES.length - 1) {
+                    text.append(" priority<=").append(PRIORITIES[maxPriority]);
+                }
+            }
+            if (maxAgeNanos != Long.MAX_VALUE) {
+                text.append(" age<=").append(maxAgeNanos).append("ns");
+            }
+            if (caseSensitive && !groups.isEmpty()) {
+                text.append(" case=sensitive");
+            }
+            List<String> rendered = new ArrayList<>();
+            for (int g = 0; g < groups.size(); g++) {
+                Group group = groups.get(g);
+                TreeSet<String> words = new TreeSet<>();
+                for (String keyword : group.keywords) {
+                    words.add(caseSensitive ? keyword : asciiLowerCase(keyword));
+                }
+                groups.set(g, new Group(group.mode, new ArrayList<>(words)));
+                StringBuilder clause = new StringBuilder(group.mode.name().toLowerCase(Locale.ROOT)).append('=');
+                for (String word : words) {
+                    clause.append(clause.charAt(clause.length() - 1) == '=' ? "" : ",").append(quote(word));
+                }
+                rendered.add(clause.toString());
+            }
+            rendered.sort(null);
+            for (String clause : rendered) {
+                text.append(' ').append(clause);
+            }
+            return text.toString().trim();
+        }
+    }
+
+    private static void expect(String clause, String operator, String expected) {
+        if (!operator.equals(expected)) {
+            throw invalid(clause, "expected '" + expected + "'");
+        }
+    }
+
+    private static long parseDuration(String clause, String value) {
+        int unit = 0;
+        while (unit < value.length() && Character.isDigit(value.charAt(unit))) {
+            unit++;
+        }
+        if (unit == 0) {
+            throw invalid(clause, "expected a duration such as 30s");
+        }
+        long amount = Long.parseLong(value.substring(0, unit));
+        switch (value.substring(unit)) {
+            case "ns":
+                return amount;
+            case "ms":
+                return Duration.ofMillis(amount).toNanos();
+            case "s":
+                return Duration.ofSeconds(amount).toNanos();
+            case "m":
+                return Duration.ofMinutes(amount).toNanos();
+            case "h":
+                return Duration.ofHours(amount).toNanos();
+            default:
+                throw invalid(clause, "unknown unit in '" + value + "'");
+        }
+    }
+
+    private static String quote(String keyword) {
+        boolean plain = !keyword.isEmpty();
+        for (int i = 0; i < keyword.length() && plain; i++) {
+            char c = keyword.charAt(i);
+            plain = c != ',' && c != '"' && !Character.isWhitespace(c);
+        }
+        return plain ? keyword : '"' + keyword + '"';
+    }
+
+    // Matching folds ASCII only, so the canonical form must not fold anything else
+    private static String asciiLowerCase(String keyword) {
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] += 'a' - 'A';
+            }
+        }
+        return new String(chars);
+    }
+
+    // Splits on the separator outside double quotes; blank tokens are skipped when
+    // splitting on whitespace
+    private static List<String> tokenize(String text, char separator, boolean keepQuotes) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean pending = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                pending = true;
+                if (keepQuotes) {
+                    token.append(c);
+                }
+            } else if (!quoted && (c == separator || (separator == ' ' && Character.isWhitespace(c)))) {
+                if (pending || separator != ' ') {
+                    tokens.add(token.toString());
+                }
+                token.setLength(0);
+                pending = false;
+            } else {
+                token.append(c);
+                pending = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in filter: " + text);
+        }
+        if (pending || (separator != ' ' && !tokens.isEmpty())) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static IllegalArgumentException invalid(String clause, String reason) {
+        return new IllegalArgumentException("Invalid filter clause '" + clause + "': " + reason);
+    }
+}
@@ -1,65 +1,175 @@
 package config;
 
-import java.util.Properties;
-import java.io.InputStream;
 import java.io.IOException;
-import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
+// The configuration is read into an immutable ConfigSnapshot; the static getters read the
+// current one. When config.properties is a file (rather than inside a jar) it is watched,
+// and an edit swaps in a new snapshot unless it has values that do not parse, in which case
+// the previous one stays. Without a config.properties every setting takes its default.
 public class AppConfig {
-    private static final Properties properties = new Properties();
+    private static final String FILE_NAME = "config.properties";
+    private static final Path FALLBACK = Paths.get("src/main/resources/config.properties");
+    // Editors often write a file in several steps; changes are read once they have settled
+    private static final long SETTLE_MILLIS = 100;
+
+    private static volatile ConfigSnapshot current;
 
     static {
+        Properties properties = new Properties();
+        Path file = null;
         try {
             // Attempt to load config.properties from the classpath
             System.err.println("🔍 Looking for config.properties in classpath...");
-            InputStream input = AppConfig.class.getClassLoader().getResourceAsStream("config.properties");
-
-            if (input == null) {
-                System.err.println("❌ config.properties not found in classpath; trying file system...");
-                input = new FileInputStream("src/main/resources/config.properties");
-                if (input == null) {
-                    throw new IOException("Configuration file not found: config.properties.");
+            URL resource = AppConfig.class.getClassLoader().getResource(FILE_NAME);
+            if (resource != null && "file".equals(resource.getProtocol())) {
+                file = Paths.get(resource.toURI());
+            } else if (resource != null) {
+                try (InputStream input = resource.openStream()) {
+                    properties.load(input);
                 }
+            } else if (Files.isRegularFile(FALLBACK)) {
+                System.err.println("❌ config.properties not found in classpath; trying file system...");
+                file = FALLBACK;
             }
-
-            properties.load(input);
-            System.err.println("✅ Successfully loaded config.properties.");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            throw new RuntimeException("Failed to load configuration file", ex);
+            if (file != null) {
+                properties = read(file);
+            }
+            if (resource == null && file == null) {
+                System.err.println("⚠️ No config.properties found; using defaults");
+            } else {
+                System.err.println("✅ Successfully loaded config.properties.");
+            }
+        } catch (IOException | URISyntaxException e) {
+            System.err.println("⚠️ Failed to load config.properties (" + e.getMessage() + "); using defaults");
+            properties = new Properties();
+            file = null;
+        }
+        List<String> problems = new ArrayList<>();
+        current = ConfigSnapshot.parse(properties, 0, problems);
+        for (String problem : problems) {
+            System.err.println("⚠️ " + problem);
+        }
+        if (file != null && current.getBoolean("config.watch", true)) {
+            startWatching(file);
         }
     }
 
+    // One volatile read; hold on to the result to see a consistent set of values
+    public static ConfigSnapshot snapshot() {
+        return current;
+    }
+
     // Get integer values from config with a default fallback
     public static int getInt(String key, int defaultValue) {
-        String value = properties.getProperty(key);
-        try {
-            return value != null ? Integer.parseInt(value) : defaultValue;
-        } catch (NumberFormatException e) {
-            System.err.println("⚠️ Invalid format for key: " + key + ". Using default: " + defaultValue);
-            return defaultValue;
-        }
+        return current.getInt(key, defaultValue);
     }
 
     // Get long values from config with a default fallback
     public static long getLong(String key, long defaultValue) {
-        String value = properties.getProperty(key);
-        try {
-            return value != null ? Long.parseLong(value) : defaultValue;
-        } catch (NumberFormatException e) {
-            System.err.println("⚠️ Invalid format for key: " + key + ". Using default: " + defaultValue);
-            return defaultValue;
-        }
+        return current.getLong(key, defaultValue);
     }
 
     // Get string values from config with a default fallback
     public static String getString(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        return current.getString(key, defaultValue);
     }
 
     // Get boolean values from config with a default fallback
     public static boolean getBoolean(String key, boolean defaultValue) {
-        String value = properties.getProperty(key);
-        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+        return current.getBoolean(key, defaultValue);
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        }
+        return properties;
+    }
+
+    private static void startWatching(Path file) {
+        Thread watcher = new Thread(() -> watch(file.toAbsolutePath()), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static void watch(Path file) {
+        Path directory = file.getParent();
+        try (WatchService service = directory.getFileSystem().newWatchService()) {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.err.println("👀 Watching " + file + " for changes");
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = touches(key, file);
+                if (!key.reset()) {
+                    System.err.println("⚠️ " + directory + " is gone; no longer watching config.properties");
+                    return;
+                }
+                if (!changed) {
+                    continue;
+                }
+                // Collapse the rest of this write into one reload
+                WatchKey more;
+                while ((more = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    touches(more, file);
+                    more.reset();
+                }
+                reload(file);
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot watch " + file + ": " + e.getMessage());
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean touches(WatchKey key, Path file) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                touched = true;
+            }
+        }
+        return touched;
+    }
+
+    private static void reload(Path file) {
+        Properties properties;
+        try {
+            properties = read(file);
+        } catch (IOException e) {
+            System.err.println("❌ Cannot read " + file + " (" + e.getMessage() + "); keeping the current configuration");
+            return;
+        }
+        ConfigSnapshot previous = current;
+        List<String> problems = new ArrayList<>();
+        ConfigSnapshot next = ConfigSnapshot.parse(properties, previous.version() + 1, problems);
+        if (!problems.isEmpty()) {
+            for (String problem : problems) {
+                System.err.println("❌ " + problem);
+            }
+            System.err.println("❌ Not applying the edited config.properties; keeping version " + previous.version());
+            return;
+        }
+        if (next.sameContents(previous)) {
+            return;
+        }
+        current = next;
+        System.err.println("🔄 Reloaded config.properties (version " + next.version() + ")");
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// An immutable view of config.properties as it was when it was read. Topic settings are
+// parsed and checked when the snapshot is built, so reading them on a send path costs a
+// map lookup; the plain getters parse on every call and are meant for start-up. AppConfig
+// swaps in a new snapshot when the file changes, so a component that keeps derived state
+// compares the snapshot it built that state from with AppConfig.snapshot().
+public final class ConfigSnapshot {
+    private final Map<String, String> values;
+    private final long version;
+    private final TopicSettings defaults;
+    private final Map<String, TopicSettings> topics;
+
+    private ConfigSnapshot(Map<String, String> values, long version, TopicSettings defaults,
+            Map<String, TopicSettings> topics) {
+        this.values = values;
+        this.version = version;
+        this.defaults = defaults;
+        this.topics = topics;
+    }
+
+    // Values that do not parse are added to problems and replaced by their defaults
+    static ConfigSnapshot parse(Properties source, long version, List<String> problems) {
+        // A plain map, so reads do not contend on the Properties lock
+        Map<String, String> values = new HashMap<>();
+        for (String key : source.stringPropertyNames()) {
+            values.put(key, source.getProperty(key));
+        }
+        TopicSettings defaults = TopicSettings.defaults(values, problems);
+        Map<String, TopicSettings> topics = new HashMap<>();
+        for (String key : values.keySet()) {
+            String topic = topicOf(key);
+            if (topic != null && !topics.containsKey(topic)) {
+                topics.put(topic, TopicSettings.of(topic, defaults, values, problems));
+            }
+        }
+        return new ConfigSnapshot(Collections.unmodifiableMap(values), version, defaults,
+                Collections.unmodifiableMap(topics));
+    }
+
+    // topic.<name>.<setting>; the name may itself contain dots
+    private static String topicOf(String key) {
+        if (!key.startsWith("topic.")) {
+            return null;
+        }
+        int dot = key.lastIndexOf('.');
+        if (dot <= "topic.".length()) {
+            return null;
+        }
+        String setting = key.substring(dot + 1);
+        for (String name : TopicSettings.NAMES) {
+            if (name.equals(setting)) {
+                return key.substring("topic.".length(), dot);
+            }
+        }
+        return null;
+    }
+
+    // Counts the reloads; 0 is the configuration the process started with
+    public long version() {
+        return version;
+    }
+
+    public TopicSettings topic(String topic) {
+        if (topics.isEmpty()) {
+            return defaults;
+        }
+        TopicSettings settings = topics.get(topic);
+        return settings != null ? settings : defaults;
+    }
+
+    public TopicSettings defaults() {
+        return defaults;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Invalid format for key: " + key + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = values.get(key);
+        try {
+            return value != null ? Long.parseLong(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Invalid format for key: " + key + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public String getString(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    boolean sameContents(ConfigSnapshot other) {
+        return values.equals(other.values);
+    }
+}
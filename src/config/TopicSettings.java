@@ -0,0 +1,285 @@
+package config;
+
+import common.Message.PriorityLevel;
+import common.QoSLevel;
+import common.compress.PayloadCodec;
+import common.compress.PayloadCodecs;
+import common.compress.PayloadCompressor;
+import common.filter.MessageFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+// One topic's tunables, parsed and checked once per snapshot. Each comes from
+// topic.<name>.<setting> when set and from the global key otherwise:
+//   qos           publisher.qos           QoS of publishers created without one
+//   window        publisher.window        unacknowledged messages per publisher
+//   maxRetries    publisher.maxRetries    retransmissions before a message fails; the
+//                                         deprecated top-level maxRetries stands in for it
+//   batchBytes    publisher.batchBytes    0 sends every frame on its own
+//   lingerMicros  publisher.lingerMicros  how long a partial batch waits
+//   filter        publisher.filter        MessageFilter expression applied before sending
+//   priority      (none)                  priority the registry queues the topic's messages at
+//   compression   publisher.compression   payload codec: none, deflate, lz or a loaded one
+//   compressionMinBytes                   payloads shorter than this are not compressed
+//                 publisher.compressionMinBytes
+//   dictionary    publisher.dictionary    file of sample text deflate starts from; receivers
+//                                         need the same file to read what it compressed
+public final class TopicSettings {
+    static final String[] NAMES = {"qos", "window", "maxRetries", "batchBytes", "lingerMicros", "filter", "priority",
+            "compression", "compressionMinBytes", "dictionary"};
+
+    private final QoSLevel qos;
+    private final int window;
+    private final int maxRetries;
+    private final int batchBytes;
+    private final long lingerMicros;
+    private final MessageFilter filter;
+    private final PriorityLevel priority;
+    private final PayloadCodec codec;
+    private final int compressionMinBytes;
+    private final String dictionaryPath;
+    private final byte[] dictionary;
+    private final PayloadCompressor compressor;
+
+    private TopicSettings(QoSLevel qos, int window, int maxRetries, int batchBytes, long lingerMicros,
+            MessageFilter filter, PriorityLevel priority, PayloadCodec codec, int compressionMinBytes,
+            String dictionaryPath, byte[] dictionary) {
+        this.qos = qos;
+        this.window = window;
+        this.maxRetries = maxRetries;
+        this.batchBytes = batchBytes;
+        this.lingerMicros = lingerMicros;
+        this.filter = filter;
+        this.priority = priority;
+        this.codec = codec;
+        this.compressionMinBytes = compressionMinBytes;
+        this.dictionaryPath = dictionaryPath;
+        this.dictionary = dictionary;
+        this.compressor = PayloadCompressor.of(codec, dictionary, compressionMinBytes);
+    }
+
+    // Settings every topic starts from; the older enableFiltering/filterKeyword pair
+    // still applies when publisher.filter is not set, and maxRetries when
+    // publisher.maxRetries is not
+    static TopicSettings defaults(Map<String, String> properties, List<String> problems) {
+        Reader reader = new Reader(properties, "publisher.", problems);
+        MessageFilter filter = reader.filter(null);
+        if (filter == null) {
+            filter = Boolean.parseBoolean(properties.getOrDefault("enableFiltering", "true").trim())
+                    ? MessageFilter.of(properties.getOrDefault("filterKeyword", "goal"), false, null)
+                    : MessageFilter.ACCEPT_ALL;
+        }
+        return new TopicSettings(
+                reader.qos(QoSLevel.AT_LEAST_ONCE),
+                reader.positiveInt("window", 64),
+                reader.nonNegativeInt("maxRetries", legacyMaxRetries(properties, problems)),
+                reader.nonNegativeInt("batchBytes", 0),
+                reader.nonNegativeLong("lingerMicros", 1000),
+                filter,
+                null,
+                reader.codec(PayloadCodecs.NONE),
+                reader.nonNegativeInt("compressionMinBytes", 64),
+                reader.path("dictionary", ""),
+                reader.dictionary(null));
+    }
+
+    private static int legacyMaxRetries(Map<String, String> properties, List<String> problems) {
+        if (!properties.containsKey("maxRetries")) {
+            return 5;
+        }
+        if (properties.containsKey("publisher.maxRetries")) {
+            System.err.println("⚠️ maxRetries is deprecated and ignored since publisher.maxRetries is set");
+            return 5;
+        }
+        System.err.println("⚠️ maxRetries is deprecated; set publisher.maxRetries instead");
+        return new Reader(properties, "", problems).nonNegativeInt("maxRetries", 5);
+    }
+
+    // A topic's overrides on top of the defaults
+    static TopicSettings of(String topic, TopicSettings defaults, Map<String, String> properties,
+            List<String> problems) {
+        Reader reader = new Reader(properties, "topic." + topic + ".", problems);
+        MessageFilter filter = reader.filter(defaults.filter);
+        return new TopicSettings(
+                reader.qos(defaults.qos),
+                reader.positiveInt("window", defaults.window),
+                reader.nonNegativeInt("maxRetries", defaults.maxRetries),
+                reader.nonNegativeInt("batchBytes", defaults.batchBytes),
+                reader.nonNegativeLong("lingerMicros", defaults.lingerMicros),
+                filter,
+                reader.priority(defaults.priority),
+                reader.codec(defaults.codec),
+                reader.nonNegativeInt("compressionMinBytes", defaults.compressionMinBytes),
+                reader.path("dictionary", defaults.dictionaryPath),
+                reader.dictionary(defaults.dictionary));
+    }
+
+    public QoSLevel qos() {
+        return qos;
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    public int batchBytes() {
+        return batchBytes;
+    }
+
+    public long lingerMicros() {
+        return lingerMicros;
+    }
+
+    public MessageFilter filter() {
+        return filter;
+    }
+
+    public PayloadCompressor compressor() {
+        return compressor;
+    }
+
+    // The topic's configured priority, or the one the message was published with
+    public PriorityLevel priorityOr(PriorityLevel published) {
+        return priority != null ? priority : published;
+    }
+
+    // Whether a publisher has to re-apply its batching
+    public boolean sameBatching(TopicSettings other) {
+        return other != null && batchBytes == other.batchBytes && lingerMicros == other.lingerMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "qos=" + qos + ", window=" + window + ", maxRetries=" + maxRetries + ", batchBytes=" + batchBytes
+                + ", lingerMicros=" + lingerMicros + ", filter=" + filter + ", priority=" + priority
+                + ", compression=" + compressor;
+    }
+
+    // Reads one prefix's keys; bad values are reported and replaced by the fallback
+    private static final class Reader {
+        private final Map<String, String> properties;
+        private final String prefix;
+        private final List<String> problems;
+
+        Reader(Map<String, String> properties, String prefix, List<String> problems) {
+            this.properties = properties;
+            this.prefix = prefix;
+            this.problems = problems;
+        }
+
+        private String value(String name) {
+            String value = properties.get(prefix + name);
+            return value == null ? null : value.trim();
+        }
+
+        QoSLevel qos(QoSLevel fallback) {
+            String value = value("qos");
+            if (value == null || value.isEmpty()) {
+                return fallback;
+            }
+            try {
+                return QoSLevel.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return invalid("qos", value, fallback);
+            }
+        }
+
+        PriorityLevel priority(PriorityLevel fallback) {
+            String value = value("priority");
+            if (value == null || value.isEmpty()) {
+                return fallback;
+            }
+            try {
+                return PriorityLevel.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return invalid("priority", value, fallback);
+            }
+        }
+
+        PayloadCodec codec(PayloadCodec fallback) {
+            String value = value("compression");
+            if (value == null || value.isEmpty()) {
+                return fallback;
+            }
+            PayloadCodec codec = PayloadCodecs.byName(value);
+            if (codec == null) {
+                invalid("compression", value, fallback.name());
+                return fallback;
+            }
+            return codec;
+        }
+
+        String path(String name, String fallback) {
+            String value = value(name);
+            return value == null ? fallback : value;
+        }
+
+        // The dictionary file's bytes; an empty path means none
+        byte[] dictionary(byte[] fallback) {
+            String value = value("dictionary");
+            if (value == null) {
+                return fallback;
+            }
+            if (value.isEmpty()) {
+                return null;
+            }
+            try {
+                return Files.readAllBytes(Path.of(value));
+            } catch (IOException | RuntimeException e) {
+                invalid("dictionary", value + " (cannot be read)", fallback == null ? "none" : "the default");
+                return fallback;
+            }
+        }
+
+        MessageFilter filter(MessageFilter fallback) {
+            String value = value("filter");
+            if (value == null || value.isEmpty()) {
+                return fallback;
+            }
+            try {
+                return MessageFilter.compile(value);
+            } catch (IllegalArgumentException e) {
+                return invalid("filter", value + " (" + e.getMessage() + ")", fallback);
+            }
+        }
+
+        int positiveInt(String name, int fallback) {
+            long parsed = nonNegativeLong(name, fallback);
+            if (parsed == 0 || parsed > Integer.MAX_VALUE) {
+                return invalid(name, value(name), fallback);
+            }
+            return (int) parsed;
+        }
+
+        int nonNegativeInt(String name, int fallback) {
+            long parsed = nonNegativeLong(name, fallback);
+            return parsed > Integer.MAX_VALUE ? invalid(name, value(name), fallback) : (int) parsed;
+        }
+
+        long nonNegativeLong(String name, long fallback) {
+            String value = value(name);
+            if (value == null || value.isEmpty()) {
+                return fallback;
+            }
+            try {
+                long parsed = Long.parseLong(value);
+                return parsed < 0 ? invalid(name, value, fallback) : parsed;
+            } catch (NumberFormatException e) {
+                return invalid(name, value, fallback);
+            }
+        }
+
+        private <T> T invalid(String name, String value, T fallback) {
+            problems.add(prefix + name + "=" + value + " is not valid; using " + fallback);
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package loadgen;
+
+import common.EpochClock;
+import common.Message.PriorityLevel;
+import common.QoSLevel;
+import common.RoutingTable;
+import common.filter.MessageFilter;
+import config.AppConfig;
+import config.TopicSettings;
+import metrics.Histogram;
+import node.Node;
+import publisher.Publisher;
+import registry.Registry;
+import subscriber.ReceivedMessage;
+import subscriber.Subscriber;
+import trace.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives publishers and subscribers over loopback against the registry at endpoint.registry
+// (or one started in this process with --registry=embedded) and reports throughput, loss,
+// duplicates, reordering and latency every interval and for the whole run.
+//
+// With a --rate the run is open-loop: every message has a send time fixed by the schedule,
+// and its latency is measured from that time rather than from when it actually went out. A
+// stalled publisher (a full window, a slow-down request) therefore shows up as latency for
+// every message it held back, instead of quietly lowering the rate. --rate=0 publishes as
+// fast as the window allows and measures from the actual send.
+//
+// Every payload starts with "publisher:topic:sequence:sendEpochNanos|" and is padded to
+// the drawn size; sizes smaller than that header are rounded up to it.
+public final class LoadGenerator {
+    private static final String TOPIC_PREFIX = "load/";
+    // Gaps shorter than this are spun rather than parked, since parking overshoots them
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final LoadOptions options;
+    private final String[] topics;
+    private final StreamTracker[] trackers;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // How far the publishers fell behind their schedule
+    private final LongAccumulator behindNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicReference<Histogram> interval = new AtomicReference<>(new Histogram("interval"));
+    private final Histogram total = new Histogram("latency");
+    // Epoch time before which latencies are warm-up and left out of the total
+    private volatile long measureFromEpochNanos = Long.MAX_VALUE;
+    private final long epochOffsetNanos = EpochClock.nowNanos() - System.nanoTime();
+
+    private LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.topics = new String[options.topics];
+        for (int i = 0; i < topics.length; i++) {
+            topics[i] = TOPIC_PREFIX + i;
+        }
+        this.trackers = new StreamTracker[options.subscribers];
+        for (int i = 0; i < trackers.length; i++) {
+            trackers[i] = new StreamTracker(options.publishers * options.topics);
+        }
+    }
+
+    // Usage: LoadGenerator [--publishers=N] [--subscribers=M] [--topics=T] [--rate=MSG_PER_SEC]
+    //   [--duration=30s] [--warmup=5s] [--interval=1s] [--drain=2s] [--payload=N|MIN-MAX|exp:MEAN]
+    //   [--priorities=LOW,MEDIUM,HIGH weights] [--qos=LEVEL] [--window=N] [--registry=external|embedded]
+    //   [--filter=EXPRESSION] [--trace=OFF|WARN|INFO|DEBUG]
+    // Exits with 1 when nothing sent was delivered, which is a broken setup rather than a measurement
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.exit(new LoadGenerator(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws InterruptedException {
+        for (Trace.Category category : Trace.Category.values()) {
+            Trace.setLevel(category, options.traceLevel);
+        }
+        RoutingTable.Route registry = RoutingTable.registry();
+        if (options.embeddedRegistry) {
+            startRegistry(registry.port());
+        }
+        System.out.println("🏋️ Load run: " + options + " against " + registry.address());
+
+        List<Node> nodes = new ArrayList<>();
+        List<Subscriber> subscribers = new ArrayList<>();
+        Set<String> topicSet = Set.of(topics);
+        for (int i = 0; i < options.subscribers; i++) {
+            Node node = new Node("load-sub-" + i, 0);
+            StreamTracker tracker = trackers[i];
+            nodes.add(node);
+            subscribers.add(new Subscriber(node, topicSet, MessageFilter.ACCEPT_ALL, registry,
+                    message -> onMessage(tracker, message)));
+        }
+        // Let the subscriptions reach the registry before anything is published
+        Thread.sleep(500);
+
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + options.durationNanos;
+        measureFromEpochNanos = toEpoch(startNanos + options.warmupNanos);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.publishers; i++) {
+            Node node = new Node("load-pub-" + i, 0);
+            nodes.add(node);
+            Publisher[] publishers = new Publisher[topics.length];
+            for (int t = 0; t < topics.length; t++) {
+                publishers[t] = createPublisher(node, topics[t], registry);
+            }
+            int index = i;
+            Thread thread = new Thread(() -> publish(index, publishers, startNanos, endNanos), "load-pub-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+
+        report(startNanos, endNanos + options.drainNanos);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        boolean delivered = summarize();
+        subscribers.forEach(Subscriber::stop);
+        nodes.forEach(Node::close);
+        return delivered;
+    }
+
+    // The topics' configured publisher filters are meant for the demos; a load run lets
+    // everything through unless --filter says otherwise
+    private Publisher createPublisher(Node node, String topic, RoutingTable.Route registry) {
+        TopicSettings settings = AppConfig.snapshot().topic(topic);
+        QoSLevel qos = options.qos != null ? options.qos : settings.qos();
+        int window = options.window > 0 ? options.window : settings.window();
+        Publisher publisher = new Publisher(node, topic, qos, window, registry);
+        publisher.setFilter(options.filter != null ? options.filter : MessageFilter.ACCEPT_ALL);
+        return publisher;
+    }
+
+    private static void startRegistry(int port) throws InterruptedException {
+        Thread thread = new Thread(() -> Registry.main(new String[] {String.valueOf(port)}), "load-registry");
+        thread.setDaemon(true);
+        thread.start();
+        Thread.sleep(500);
+    }
+
+    // One publisher's messages, spread round-robin over the topics
+    private void publish(int index, Publisher[] publishers, long startNanos, long endNanos) {
+        Random random = new Random(index);
+        double periodNanos = options.openLoop() ? 1e9 * options.publishers / options.rate : 0;
+        long[] sequences = new long[topics.length];
+        StringBuilder text = new StringBuilder();
+        for (long i = 0; ; i++) {
+            long intended = options.openLoop() ? startNanos + (long) (i * periodNanos) : System.nanoTime();
+            if (intended - endNanos >= 0) {
+                break;
+            }
+            waitUntil(intended);
+            int topic = (int) (i % topics.length);
+            long sequence = sequences[topic]++;
+            PriorityLevel priority = options.nextPriority(random);
+            String message = payload(text, index, topic, sequence, toEpoch(intended), options.payload.next(random));
+            sent.increment();
+            publishers[topic].publishAsync(message, (int) sequence, priority).thenAccept(delivered -> {
+                if (!delivered) {
+                    failed.increment();
+                }
+            });
+            behindNanos.accumulate(System.nanoTime() - intended);
+        }
+        for (Publisher publisher : publishers) {
+            publisher.flush();
+        }
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static String payload(StringBuilder text, int publisher, int topic, long sequence, long sendEpochNanos,
+            int size) {
+        text.setLength(0);
+        text.append(publisher).append(':').append(topic).append(':').append(sequence).append(':')
+                .append(sendEpochNanos).append('|');
+        while (text.length() < size) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    // Runs on the subscriber's callback, one message at a time per subscriber
+    private void onMessage(StreamTracker tracker, ReceivedMessage message) {
+        long now = EpochClock.nowNanos();
+        String content = message.content();
+        int first = content.indexOf(':');
+        int second = content.indexOf(':', first + 1);
+        int third = content.indexOf(':', second + 1);
+        int end = content.indexOf('|', third + 1);
+        if (first < 0 || second < 0 || third < 0 || end < 0) {
+            return;  // Not one of ours
+        }
+        int publisher;
+        int topic;
+        long sequence;
+        long sendEpochNanos;
+        try {
+            publisher = Integer.parseInt(content, 0, first, 10);
+            topic = Integer.parseInt(content, first + 1, second, 10);
+            sequence = Long.parseLong(content, second + 1, third, 10);
+            sendEpochNanos = Long.parseLong(content, third + 1, end, 10);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (publisher >= options.publishers || topic >= options.topics) {
+            return;
+        }
+        tracker.record(publisher * options.topics + topic, sequence);
+        long latency = now - sendEpochNanos;
+        interval.get().record(latency);
+        if (sendEpochNanos >= measureFromEpochNanos) {
+            total.record(latency);
+        }
+    }
+
+    // Prints one line per interval until the deadline
+    private void report(long startNanos, long untilNanos) {
+        System.out.println(String.format("%8s %10s %12s %8s %8s %9s %9s %9s %9s %9s",
+                "time", "sent/s", "delivered/s", "failed", "dup", "reordered", "p50 µs", "p99 µs", "p99.9 µs",
+                "max µs"));
+        long lastSent = 0;
+        long lastDelivered = 0;
+        long next = startNanos + options.intervalNanos;
+        while (next - untilNanos <= 0) {
+            waitUntil(next);
+            Histogram window = interval.getAndSet(new Histogram("interval"));
+            long sentNow = sent.sum();
+            long deliveredNow = delivered();
+            double seconds = options.intervalNanos / 1e9;
+            System.out.println(String.format("%7.1fs %10.0f %12.0f %8d %8d %9d %9d %9d %9d %9d",
+                    (next - startNanos) / 1e9, (sentNow - lastSent) / seconds,
+                    (deliveredNow - lastDelivered) / seconds, failed.sum(), duplicates(), reordered(),
+                    window.getP50Micros(), window.getP99Micros(), window.getP999Micros(), window.getMaxMicros()));
+            lastSent = sentNow;
+            lastDelivered = deliveredNow;
+            next += options.intervalNanos;
+        }
+    }
+
+    // Returns false when messages were sent and none arrived
+    private boolean summarize() {
+        long sentTotal = sent.sum();
+        long expected = sentTotal * options.subscribers;
+        long delivered = delivered();
+        long lost = Math.max(0, expected - delivered);
+        System.out.println("📊 Sent " + sentTotal + " (" + failed.sum() + " failed), delivered " + delivered
+                + " of " + expected + ", lost " + lost
+                + String.format(" (%.3f%%)", expected == 0 ? 0 : 100.0 * lost / expected)
+                + ", duplicates " + duplicates() + ", reordered " + reordered());
+        if (options.openLoop()) {
+            System.out.println("📊 Publishers fell at most " + TimeUnit.NANOSECONDS.toMillis(behindNanos.get())
+                    + " ms behind schedule; latencies are measured from the scheduled send time");
+        }
+        System.out.println("📊 " + total + " (after " + TimeUnit.NANOSECONDS.toSeconds(options.warmupNanos)
+                + "s warm-up)");
+        if (expected > 0 && delivered == 0) {
+            System.err.println("❌ Nothing was delivered: check that the registry is reachable"
+                    + (options.filter == null ? "" : " and that --filter " + options.filter + " accepts the payloads"));
+            return false;
+        }
+        return true;
+    }
+
+    private long toEpoch(long nanoTime) {
+        return nanoTime + epochOffsetNanos;
+    }
+
+    private long delivered() {
+        long sum = 0;
+        for (StreamTracker tracker : trackers) {
+            sum += tracker.received();
+        }
+        return sum;
+    }
+
+    private long duplicates() {
+        long sum = 0;
+        for (StreamTracker tracker : trackers) {
+            sum += tracker.duplicates();
+        }
+        return sum;
+    }
+
+    private long reordered() {
+        long sum = 0;
+        for (StreamTracker tracker : trackers) {
+            sum += tracker.reordered();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,232 @@
+package loadgen;
+
+import common.Message.PriorityLevel;
+import common.QoSLevel;
+import common.filter.MessageFilter;
+import trace.Trace;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Command-line settings of a load run, given as --name=value
+final class LoadOptions {
+    // Payload sizes in bytes: fixed (256), uniform (64-1024) or exponential around a mean (exp:512)
+    static final class PayloadSizes {
+        private final String spec;
+        private final int min;
+        private final int max;
+        private final double mean;
+
+        private PayloadSizes(String spec, int min, int max, double mean) {
+            this.spec = spec;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        static PayloadSizes parse(String spec) {
+            try {
+                if (spec.startsWith("exp:")) {
+                    int mean = Integer.parseInt(spec.substring(4));
+                    // The tail is cut at 16 means so one draw cannot dwarf the rest
+                    return new PayloadSizes(spec, 0, mean * 16, mean);
+                }
+                int dash = spec.indexOf('-');
+                if (dash > 0) {
+                    int min = Integer.parseInt(spec.substring(0, dash));
+                    int max = Integer.parseInt(spec.substring(dash + 1));
+                    if (min > max) {
+                        throw new IllegalArgumentException("--payload range is reversed: " + spec);
+                    }
+                    return new PayloadSizes(spec, min, max, 0);
+                }
+                int size = Integer.parseInt(spec);
+                return new PayloadSizes(spec, size, size, 0);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--payload must be N, MIN-MAX or exp:MEAN, got " + spec);
+            }
+        }
+
+        int next(Random random) {
+            if (mean > 0) {
+                return (int) Math.min(max, -mean * Math.log(1 - random.nextDouble()));
+            }
+            return min == max ? min : min + random.nextInt(max - min + 1);
+        }
+
+        @Override
+        public String toString() {
+            return spec;
+        }
+    }
+
+    int publishers = 1;
+    int subscribers = 1;
+    int topics = 1;
+    // Messages per second over all publishers; 0 runs closed-loop, as fast as the window allows
+    long rate = 1000;
+    long durationNanos = TimeUnit.SECONDS.toNanos(30);
+    // Latencies before this are left out of the summary
+    long warmupNanos = TimeUnit.SECONDS.toNanos(5);
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1);
+    // How long to wait for stragglers before counting losses
+    long drainNanos = TimeUnit.SECONDS.toNanos(2);
+    PayloadSizes payload = PayloadSizes.parse("128");
+    // Relative weights of LOW, MEDIUM and HIGH
+    int[] priorityWeights = {1, 1, 1};
+    // Null takes each topic's configured QoS
+    QoSLevel qos;
+    // 0 takes each topic's configured window
+    int window;
+    boolean embeddedRegistry;
+    // Publisher filter for the run; null lets everything through, whatever the topics' settings say
+    MessageFilter filter;
+    // Tracing every message would cost more than the messages themselves
+    Trace.Level traceLevel = Trace.Level.WARN;
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1).trim();
+            switch (name) {
+                case "publishers":
+                    options.publishers = positive(name, value);
+                    break;
+                case "subscribers":
+                    options.subscribers = positive(name, value);
+                    break;
+                case "topics":
+                    options.topics = positive(name, value);
+                    break;
+                case "rate":
+                    options.rate = Long.parseLong(value);
+                    break;
+                case "duration":
+                    options.durationNanos = duration(value);
+                    break;
+                case "warmup":
+                    options.warmupNanos = duration(value);
+                    break;
+                case "interval":
+                    options.intervalNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(100), duration(value));
+                    break;
+                case "drain":
+                    options.drainNanos = duration(value);
+                    break;
+                case "payload":
+                    options.payload = PayloadSizes.parse(value);
+                    break;
+                case "priorities":
+                    options.priorityWeights = weights(value);
+                    break;
+                case "qos":
+                    options.qos = QoSLevel.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "window":
+                    options.window = positive(name, value);
+                    break;
+                case "registry":
+                    if (!value.equals("embedded") && !value.equals("external")) {
+                        throw new IllegalArgumentException("--registry must be embedded or external");
+                    }
+                    options.embeddedRegistry = value.equals("embedded");
+                    break;
+                case "filter":
+                    options.filter = value.isEmpty() ? null : MessageFilter.compile(value);
+                    break;
+                case "trace":
+                    options.traceLevel = Trace.Level.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        if (options.rate < 0) {
+            throw new IllegalArgumentException("--rate cannot be negative");
+        }
+        return options;
+    }
+
+    boolean openLoop() {
+        return rate > 0;
+    }
+
+    PriorityLevel nextPriority(Random random) {
+        int total = 0;
+        for (int weight : priorityWeights) {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        PriorityLevel[] levels = PriorityLevel.values();
+        for (int i = 0; i < levels.length; i++) {
+            pick -= priorityWeights[i];
+            if (pick < 0) {
+                return levels[i];
+            }
+        }
+        return levels[levels.length - 1];
+    }
+
+    private static int positive(String name, String value) {
+        int parsed = Integer.parseInt(value);
+        if (parsed < 1) {
+            throw new IllegalArgumentException("--" + name + " must be at least 1");
+        }
+        return parsed;
+    }
+
+    // 500ms, 30s, 10m, 2h; a bare number is seconds
+    static long duration(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("ms")) {
+            return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(lower.substring(0, lower.length() - 2)));
+        }
+        char unit = lower.charAt(lower.length() - 1);
+        String number = Character.isDigit(unit) ? lower : lower.substring(0, lower.length() - 1);
+        long amount = Long.parseLong(number);
+        switch (unit) {
+            case 'h':
+                return TimeUnit.HOURS.toNanos(amount);
+            case 'm':
+                return TimeUnit.MINUTES.toNanos(amount);
+            default:
+                return TimeUnit.SECONDS.toNanos(amount);
+        }
+    }
+
+    private static int[] weights(String value) {
+        String[] parts = value.split(",");
+        int levels = PriorityLevel.values().length;
+        if (parts.length != levels) {
+            throw new IllegalArgumentException("--priorities takes " + levels + " weights (LOW,MEDIUM,HIGH)");
+        }
+        int[] weights = new int[levels];
+        int total = 0;
+        for (int i = 0; i < levels; i++) {
+            weights[i] = Integer.parseInt(parts[i].trim());
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("--priorities weights cannot be negative");
+            }
+            total += weights[i];
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("--priorities needs at least one non-zero weight");
+        }
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        return publishers + " publishers, " + subscribers + " subscribers, " + topics + " topics, "
+                + (openLoop() ? rate + " msg/s open-loop" : "closed-loop") + ", payload " + payload
+                + " bytes, priorities " + priorityWeights[0] + ":" + priorityWeights[1] + ":" + priorityWeights[2]
+                + ", QoS " + (qos == null ? "per topic" : qos) + (filter == null ? "" : ", filter " + filter) + ", "
+                + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s";
+    }
+}
@@ -0,0 +1,79 @@
+package loadgen;
+
+import java.util.Arrays;
+
+// What one subscriber received of every (publisher, topic) stream. Each stream keeps its
+// highest sequence number and a window of the WINDOW_BITS before it, so a run of any length
+// costs a fixed 128 bytes per stream. A sequence number below the highest is a reordering;
+// one already in the window is a duplicate. Numbers that fell behind the window are counted
+// as received and reordered, since they can no longer be checked.
+//
+// Written by the subscriber's handler, one message at a time; the counters may be read
+// from any thread.
+final class StreamTracker {
+    private static final int WINDOW_BITS = 1024;
+    private static final int WORDS = WINDOW_BITS / 64;
+
+    private final long[] highest;
+    private final long[] bitmaps;
+    private volatile long received;
+    private volatile long duplicates;
+    private volatile long reordered;
+
+    StreamTracker(int streams) {
+        this.highest = new long[streams];
+        this.bitmaps = new long[streams * WORDS];
+        Arrays.fill(highest, -1);
+    }
+
+    void record(int stream, long sequence) {
+        int base = stream * WORDS;
+        long top = highest[stream];
+        if (sequence > top) {
+            // Clear the bits the window slides over
+            long clearFrom = Math.max(top + 1, sequence - WINDOW_BITS + 1);
+            for (long s = clearFrom; s < sequence; s++) {
+                bitmaps[base + bitIndex(s) / 64] &= ~(1L << (bitIndex(s) % 64));
+            }
+            highest[stream] = sequence;
+            set(base, sequence);
+            received++;
+            return;
+        }
+        if (top - sequence >= WINDOW_BITS) {
+            received++;
+            reordered++;
+            return;
+        }
+        int bit = bitIndex(sequence);
+        if ((bitmaps[base + bit / 64] & (1L << (bit % 64))) != 0) {
+            duplicates++;
+            return;
+        }
+        set(base, sequence);
+        received++;
+        reordered++;
+    }
+
+    private void set(int base, long sequence) {
+        int bit = bitIndex(sequence);
+        bitmaps[base + bit / 64] |= 1L << (bit % 64);
+    }
+
+    private static int bitIndex(long sequence) {
+        return (int) (sequence % WINDOW_BITS);
+    }
+
+    // Distinct messages, duplicates left out
+    long received() {
+        return received;
+    }
+
+    long duplicates() {
+        return duplicates;
+    }
+
+    long reordered() {
+        return reordered;
+    }
+}
@@ -0,0 +1,16 @@
+package metrics;
+
+// JMX view of a latency histogram
+public interface HistogramMBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+}
@@ -0,0 +1,103 @@
+package metrics;
+
+import common.Message.PriorityLevel;
+import common.TopicTrie;
+import config.AppConfig;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+// Process-wide message counters per topic and priority, plus latency histograms.
+// Recording only touches striped counters; nothing is aggregated until somebody reads,
+// through JMX (domain "dds") or a STATS query, so unread metrics cost almost nothing.
+public final class Metrics {
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    public enum Event {
+        PUBLISHED, FORWARDED, DELIVERED, FILTERED, DROPPED, RETRIED, ACKED;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final String DOMAIN = "dds";
+    private static final boolean JMX_ENABLED = AppConfig.getBoolean("metrics.jmx.enabled", true);
+    private static final int MAX_TOPICS = AppConfig.getInt("metrics.maxTopics", 10_000);
+    // Topics beyond the cap share one entry, so a stream of unique topics cannot grow the map
+    private static final String OVERFLOW_TOPIC = "<other>";
+    private static final ConcurrentHashMap<String, TopicMetrics> TOPICS = new ConcurrentHashMap<>();
+    private static final Histogram DELIVERY_LATENCY = histogram("publishToDelivery");
+    private static final Histogram ACK_RTT = histogram("ackRtt");
+
+    private Metrics() {
+    }
+
+    public static TopicMetrics topic(String topic) {
+        TopicMetrics metrics = TOPICS.get(topic);
+        if (metrics != null) {
+            return metrics;
+        }
+        return TOPICS.computeIfAbsent(TOPICS.size() < MAX_TOPICS ? topic : OVERFLOW_TOPIC, Metrics::create);
+    }
+
+    public static void record(String topic, Event event, PriorityLevel priority) {
+        topic(topic).record(event, priority);
+    }
+
+    // Publish timestamp to subscriber acceptance, across hosts as far as their clocks agree
+    public static Histogram deliveryLatency() {
+        return DELIVERY_LATENCY;
+    }
+
+    // First send to ACK at the publisher, for messages that were not retransmitted
+    public static Histogram ackRtt() {
+        return ACK_RTT;
+    }
+
+    // Text report of the histograms and of every topic matching the filter ("" = all)
+    public static String report(String topicFilter) {
+        StringBuilder text = new StringBuilder();
+        text.append("latency ").append(DELIVERY_LATENCY).append('\n');
+        text.append("latency ").append(ACK_RTT).append('\n');
+        List<String> topics = new ArrayList<>(TOPICS.keySet());
+        topics.sort(null);
+        for (String topic : topics) {
+            if (topicFilter.isEmpty() || TopicTrie.matches(topicFilter, topic)) {
+                text.append(TOPICS.get(topic).describe(new StringBuilder())).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static TopicMetrics create(String topic) {
+        TopicMetrics metrics = new TopicMetrics(topic);
+        register(metrics, "type=Topic,name=" + ObjectName.quote(topic));
+        return metrics;
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        register(histogram, "type=Latency,name=" + name);
+        return histogram;
+    }
+
+    private static void register(Object mbean, String properties) {
+        if (!JMX_ENABLED) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(DOMAIN + ":" + properties));
+        } catch (JMException e) {
+            LOGGER.fine("⚠️ Could not register metrics MBean " + properties + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package metrics;
+
+import common.EpochClock;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.WireCodec;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// STATS over UDP. A STATS frame sent to the Registry or NewServer port is answered with
+// a STATS frame carrying the text report; the request topic narrows the report with a
+// topic filter such as "sports/#" and the reply echoes the request's message ID.
+//
+//   java -cp core/target/classes metrics.StatsQuery localhost 5001 [topic-filter]
+public final class StatsQuery {
+    private static final int TIMEOUT_MS = 2000;
+
+    private StatsQuery() {
+    }
+
+    // Encodes the reply datagram; reports that would not fit in one are cut short
+    public static ByteBuffer reply(Frame request) {
+        byte[] topic = WireCodec.topicBytes(request.topic());
+        byte[] report = Metrics.report(request.topic()).getBytes(StandardCharsets.UTF_8);
+        int room = WireCodec.MAX_DATAGRAM_SIZE - WireCodec.frameSize(topic.length, 0);
+        ByteBuffer reply = ByteBuffer.allocate(WireCodec.frameSize(topic.length, Math.min(report.length, room)));
+        WireCodec.encode(reply, MessageType.STATS, topic, request.messageId(), PriorityLevel.LOW,
+                EpochClock.nowNanos(), report, 0, Math.min(report.length, room));
+        return reply.flip();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: StatsQuery <host> <port> [topic-filter]");
+            System.exit(2);
+        }
+        byte[] topic = WireCodec.topicBytes(args.length > 2 ? args[2] : "");
+        ByteBuffer request = ByteBuffer.allocate(WireCodec.frameSize(topic.length, 0));
+        WireCodec.encode(request, MessageType.STATS, topic, 1, PriorityLevel.LOW, EpochClock.nowNanos(),
+                new byte[0], 0, 0);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(TIMEOUT_MS);
+            socket.send(new DatagramPacket(request.array(), request.position(),
+                    new InetSocketAddress(args[0], Integer.parseInt(args[1]))));
+            byte[] buffer = new byte[WireCodec.MAX_DATAGRAM_SIZE];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            socket.receive(packet);
+            Frame reply = new Frame();
+            if (WireCodec.decode(ByteBuffer.wrap(buffer, 0, packet.getLength()), reply)
+                    && reply.type() == MessageType.STATS) {
+                System.out.print(reply.payloadAsString());
+            } else {
+                System.err.println("❌ Unexpected reply from " + packet.getSocketAddress());
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("❌ No STATS reply from " + args[0] + ":" + args[1] + " within " + TIMEOUT_MS + " ms");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package metrics;
+
+import common.Message.PriorityLevel;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Event counters of one topic, split by priority. Counting is a LongAdder increment,
+// which stays uncontended when several threads record for the same topic.
+// Exposed to JMX as attributes such as "Delivered" and "DeliveredHigh".
+public final class TopicMetrics implements DynamicMBean {
+    private static final Metrics.Event[] EVENTS = Metrics.Event.values();
+    private static final PriorityLevel[] PRIORITIES = PriorityLevel.values();
+    private static final MBeanInfo INFO = describe();
+
+    private final String topic;
+    private final LongAdder[] counters = new LongAdder[EVENTS.length * PRIORITIES.length];
+
+    TopicMetrics(String topic) {
+        this.topic = topic;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public void record(Metrics.Event event, PriorityLevel priority) {
+        counters[event.ordinal() * PRIORITIES.length + priority.ordinal()].increment();
+    }
+
+    public void record(Metrics.Event event, PriorityLevel priority, long amount) {
+        counters[event.ordinal() * PRIORITIES.length + priority.ordinal()].add(amount);
+    }
+
+    public long count(Metrics.Event event, PriorityLevel priority) {
+        return counters[event.ordinal() * PRIORITIES.length + priority.ordinal()].sum();
+    }
+
+    public long count(Metrics.Event event) {
+        long total = 0;
+        for (PriorityLevel priority : PRIORITIES) {
+            total += count(event, priority);
+        }
+        return total;
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    // One line: totals per event, then the per-priority split of non-zero counts
+    String describe(StringBuilder line) {
+        line.append("topic ").append(topic);
+        for (Metrics.Event event : EVENTS) {
+            line.append(' ').append(event.label()).append('=').append(count(event));
+        }
+        for (PriorityLevel priority : PRIORITIES) {
+            StringBuilder split = new StringBuilder();
+            for (Metrics.Event event : EVENTS) {
+                long count = count(event, priority);
+                if (count > 0) {
+                    split.append(split.length() == 0 ? "" : ",").append(event.label()).append('=').append(count);
+                }
+            }
+            if (split.length() > 0) {
+                line.append(' ').append(priority).append('[').append(split).append(']');
+            }
+        }
+        return line.toString();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (Metrics.Event event : EVENTS) {
+            String name = attributeName(event, null);
+            if (attribute.equals(name)) {
+                return count(event);
+            }
+            for (PriorityLevel priority : PRIORITIES) {
+                if (attribute.equals(attributeName(event, priority))) {
+                    return count(event, priority);
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Skipped, as the DynamicMBean contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+            throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return INFO;
+    }
+
+    private static String attributeName(Metrics.Event event, PriorityLevel priority) {
+        String base = event.label().substring(0, 1).toUpperCase(Locale.ROOT) + event.label().substring(1);
+        if (priority == null) {
+            return base;
+        }
+        String level = priority.name();
+        return base + level.charAt(0) + level.substring(1).toLowerCase(Locale.ROOT);
+    }
+
+    private static MBeanInfo describe() {
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[EVENTS.length * (PRIORITIES.length + 1)];
+        int i = 0;
+        for (Metrics.Event event : EVENTS) {
+            attributes[i++] = new MBeanAttributeInfo(attributeName(event, null), "long",
+                    "Messages " + event.label() + ", all priorities", true, false, false);
+            for (PriorityLevel priority : PRIORITIES) {
+                attributes[i++] = new MBeanAttributeInfo(attributeName(event, priority), "long",
+                        "Messages " + event.label() + " at " + priority, true, false, false);
+            }
+        }
+        return new MBeanInfo(TopicMetrics.class.getName(), "Per-topic message counters", attributes,
+                new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+}
@@ -1,12 +1,19 @@
 package newclient;
 
+import common.EpochClock;
+import common.MessageType;
+import common.RoutingTable;
+import common.WireCodec;
+import common.Message.PriorityLevel;
+
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class NewClient {
     private static final Logger LOGGER = Logger.getLogger(NewClient.class.getName());
-    private static final int REGISTRY_PORT = 5003;
+    private static final RoutingTable.Route REGISTRY = RoutingTable.registry();
 
     public static void main(String[] args) {
         try (DatagramSocket socket = new DatagramSocket()) {
@@ -21,9 +28,10 @@ public class NewClient {
     }
 
     private static void sendMessage(DatagramSocket socket, String topic, String message, int messageId) throws Exception {
-        String msg = "PUBLISH:" + topic + ":" + message + ":" + messageId;
-        byte[] buffer = msg.getBytes();
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, InetAddress.getLocalHost(), REGISTRY_PORT);
+        ByteBuffer frame = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+        WireCodec.encode(frame, MessageType.PUBLISH, WireCodec.topicBytes(topic), messageId,
+                PriorityLevel.MEDIUM, EpochClock.nowNanos(), message);
+        DatagramPacket packet = new DatagramPacket(frame.array(), frame.position(), REGISTRY.address());
         socket.send(packet);
         LOGGER.info("📤 Sent: " + message + " to topic: " + topic);
     }
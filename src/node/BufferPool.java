@@ -0,0 +1,39 @@
+package node;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Fixed-size pool of direct buffers. acquire() never blocks: when the pool is
+// empty a new buffer is allocated, and release() drops buffers beyond capacity.
+public final class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.offer(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize && buffer.isDirect()) {
+            buffer.clear();
+            free.offer(buffer);
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,72 @@
+package node;
+
+import config.AppConfig;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+// Where application callbacks run, chosen by node.callbacks:
+//   virtual  a virtual thread per task where the JVM has them (21+), else the pool
+//   pool     node.callbackThreads daemon threads shared by every node (0 = one per CPU)
+//   inline   on the node's receive thread, which stalls it for as long as the callback takes
+// The executor is built on first use and shared, so thousands of subscriptions cost queue
+// entries rather than threads.
+final class CallbackExecutor {
+    private static final Logger LOGGER = Logger.getLogger(CallbackExecutor.class.getName());
+
+    private static final class Shared {
+        static final Executor INSTANCE = fromConfig();
+    }
+
+    private CallbackExecutor() {
+    }
+
+    static Executor shared() {
+        return Shared.INSTANCE;
+    }
+
+    private static Executor fromConfig() {
+        String kind = AppConfig.getString("node.callbacks", "virtual").trim();
+        switch (kind) {
+            case "inline":
+                return Runnable::run;
+            case "pool":
+                return pool();
+            case "virtual":
+                Executor virtual = virtualThreads();
+                if (virtual != null) {
+                    return virtual;
+                }
+                LOGGER.info("ℹ️ Virtual threads are not available on this JVM; running callbacks on a pool");
+                return pool();
+            default:
+                throw new IllegalArgumentException("Unknown node.callbacks: " + kind);
+        }
+    }
+
+    // Looked up reflectively so the build keeps targeting Java 17
+    private static Executor virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Executor pool() {
+        int threads = AppConfig.getInt("node.callbackThreads", 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("node-callback-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
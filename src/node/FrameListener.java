@@ -0,0 +1,12 @@
+package node;
+
+import common.Frame;
+
+import java.net.InetSocketAddress;
+
+// Receives the frames decoded by a Node: every frame, or only those for the topics it was
+// added for. Called on the node's receive thread, and the frame is only valid for the
+// duration of the call.
+public interface FrameListener {
+    void onFrame(Frame frame, InetSocketAddress sender);
+}
@@ -1,63 +1,300 @@
 package node;
 
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import publisher.Publisher;
+import subscriber.MessageHandler;
 import subscriber.Subscriber;
+import common.Fragmenter;
+import common.Frame;
+import common.MessageType;
 import common.QoSLevel;
+import common.Reassembler;
+import common.RoutingTable;
+import common.TopicTrie;
+import common.WireCodec;
+import common.filter.MessageFilter;
 import java.time.Duration;
 import java.util.logging.Logger;
+import trace.Trace;
+import trace.TraceEvent;
 
-public class Node {
+public class Node implements AutoCloseable {
     private static final Logger LOGGER = Logger.getLogger(Node.class.getName());
+    private static final int BUFFER_POOL_SIZE = 64;
+    private static final FrameListener[] NO_LISTENERS = new FrameListener[0];
+
     private final String nodeName;
-    private final DatagramSocket socket;
+    private final UdpTransport transport;
+    // Copy-on-write so the receive loop iterates without locking or allocating
+    private volatile FrameListener[] listeners = NO_LISTENERS;
+    // Listeners added for a topic only see frames for it; also copy-on-write
+    private volatile Map<String, FrameListener[]> topicListeners = Map.of();
+    private volatile TopicTrie<FrameListener> wildcardListeners = TopicTrie.empty();
+    // Where application callbacks run, so slow handlers do not stall the receive loop
+    private final Executor callbacks;
+    // Only touched by the transport thread
+    private final Frame frame = new Frame();
+    private final Frame batchEntry = new Frame();
+    private final List<FrameListener> matched = new ArrayList<>();
+    private final Set<FrameListener> dispatched = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Frames over the MTU travel as fragments and are rebuilt before listeners see them
+    private final Fragmenter fragmenter = Fragmenter.fromConfig();
+    private final Reassembler reassembler = Reassembler.fromConfig();
 
     public Node(String nodeName) {
-        try {
-            this.nodeName = nodeName;
-            this.socket = new DatagramSocket();
-            LOGGER.info("✅ Node " + nodeName + " started on port " + socket.getLocalPort());
-        } catch (SocketException e) {
-            LOGGER.severe("❌ Error creating node: " + e.getMessage());
-            throw new RuntimeException(e);
-        }
+        this(nodeName, 0);
     }
 
     public Node(String nodeName, int port) {
+        this(nodeName, port, CallbackExecutor.shared());
+    }
+
+    public Node(String nodeName, int port, Executor callbacks) {
         try {
             this.nodeName = nodeName;
-            this.socket = new DatagramSocket(port);
-            LOGGER.info("✅ Node " + nodeName + " started on port " + port);
-        } catch (SocketException e) {
+            this.callbacks = callbacks;
+            BufferPool pool = new BufferPool(WireCodec.MAX_DATAGRAM_SIZE, BUFFER_POOL_SIZE);
+            this.transport = new UdpTransport(nodeName, port, pool, this::onDatagram);
+            transport.start();
+            LOGGER.info("✅ Node " + nodeName + " started on port " + transport.getLocalPort());
+        } catch (IOException e) {
             LOGGER.severe("❌ Error creating node: " + e.getMessage());
             throw new RuntimeException(e);
         }
     }
 
+    // Every datagram is decoded once and handed to all listeners; batches are
+    // unpacked so listeners only ever see individual frames
+    private void onDatagram(ByteBuffer data, InetSocketAddress sender) {
+        if (!WireCodec.decode(data, frame)) {
+            Trace.record(TraceEvent.MALFORMED, nodeName, sender, data.limit());
+            return;
+        }
+        if (frame.type() == MessageType.FRAGMENT) {
+            ByteBuffer whole = reassembler.accept(frame, sender);
+            if (whole == null) {
+                return;
+            }
+            try {
+                if (WireCodec.decode(whole, frame) && frame.type() != MessageType.FRAGMENT) {
+                    deliver(frame, sender);
+                }
+            } finally {
+                reassembler.release(whole);
+            }
+            return;
+        }
+        deliver(frame, sender);
+    }
+
+    private void deliver(Frame frame, InetSocketAddress sender) {
+        if (frame.type() != MessageType.BATCH) {
+            dispatch(frame, sender);
+            return;
+        }
+        int cursor = frame.payloadOffset();
+        while ((cursor = WireCodec.nextBatchEntry(frame, cursor, batchEntry)) >= 0) {
+            dispatch(batchEntry, sender);
+        }
+    }
+
+    private void dispatch(Frame decoded, InetSocketAddress sender) {
+        for (FrameListener listener : listeners) {
+            listener.onFrame(decoded, sender);
+        }
+        Map<String, FrameListener[]> exact = topicListeners;
+        TopicTrie<FrameListener> wildcards = wildcardListeners;
+        if (exact.isEmpty() && wildcards.size() == 0) {
+            return;
+        }
+        String topic = decoded.topic();
+        FrameListener[] forTopic = exact.get(topic);
+        if (wildcards.size() == 0) {
+            if (forTopic != null) {
+                for (FrameListener listener : forTopic) {
+                    listener.onFrame(decoded, sender);
+                }
+            }
+            return;
+        }
+        // A listener added for both the topic and a filter matching it still sees the frame once
+        matched.clear();
+        dispatched.clear();
+        if (forTopic != null) {
+            matched.addAll(Arrays.asList(forTopic));
+        }
+        wildcards.match(topic, matched);
+        for (int i = 0; i < matched.size(); i++) {
+            FrameListener listener = matched.get(i);
+            if (dispatched.add(listener)) {
+                listener.onFrame(decoded, sender);
+            }
+        }
+    }
+
+    public synchronized void addListener(FrameListener listener) {
+        FrameListener[] current = listeners;
+        FrameListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeListener(FrameListener listener) {
+        FrameListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                FrameListener[] updated = new FrameListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    // Only frames whose topic matches the filter reach the listener; "+" and "#" work as in
+    // subscriptions. Frames are parsed once and routed, however many listeners there are.
+    public synchronized void addListener(String topicFilter, FrameListener listener) {
+        if (TopicTrie.isWildcard(topicFilter)) {
+            wildcardListeners = wildcardListeners.add(topicFilter, listener);
+            return;
+        }
+        Map<String, FrameListener[]> updated = new HashMap<>(topicListeners);
+        FrameListener[] current = updated.getOrDefault(topicFilter, NO_LISTENERS);
+        FrameListener[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = listener;
+        updated.put(topicFilter, added);
+        topicListeners = updated;
+    }
+
+    public synchronized void removeListener(String topicFilter, FrameListener listener) {
+        if (TopicTrie.isWildcard(topicFilter)) {
+            wildcardListeners = wildcardListeners.remove(topicFilter, listener);
+            return;
+        }
+        FrameListener[] current = topicListeners.get(topicFilter);
+        if (current == null) {
+            return;
+        }
+        List<FrameListener> remaining = new ArrayList<>(Arrays.asList(current));
+        if (!remaining.remove(listener)) {
+            return;
+        }
+        Map<String, FrameListener[]> updated = new HashMap<>(topicListeners);
+        if (remaining.isEmpty()) {
+            updated.remove(topicFilter);
+        } else {
+            updated.put(topicFilter, remaining.toArray(NO_LISTENERS));
+        }
+        topicListeners = updated;
+    }
+
     public Publisher createPublisher(String topic, QoSLevel qos) {
         return new Publisher(this, topic, qos);
     }
 
-    public Subscriber createSubscriber(Set<String> topics, String filterKeyword, int port, 
+    // Subscribers register with the endpoint.registry route
+    public Subscriber createSubscriber(Set<String> topics, String filterKeyword,
             boolean highPriorityOnly, Duration timeLimit) {
-        return new Subscriber(this, topics, filterKeyword, port, highPriorityOnly, timeLimit);
+        return new Subscriber(this, topics, filterKeyword, RoutingTable.registry(), highPriorityOnly, timeLimit);
     }
 
     public Subscriber createSubscriber(String topic, String filterKeyword) {
-        return new Subscriber(this, Set.of(topic), filterKeyword, getPort(), false, Duration.ZERO);
+        return new Subscriber(this, Set.of(topic), filterKeyword, RoutingTable.registry(), false, Duration.ZERO);
+    }
+
+    // filter uses the MessageFilter language, e.g. "any=goal,penalty priority>=MEDIUM age<30s"
+    public Subscriber createSubscriber(Set<String> topics, String filter) {
+        return new Subscriber(this, topics, MessageFilter.compile(filter), RoutingTable.registry());
+    }
+
+    // The handler is called on the node's callback executor, one message at a time
+    public Subscriber createSubscriber(Set<String> topics, String filter, MessageHandler handler) {
+        return new Subscriber(this, topics, MessageFilter.compile(filter), RoutingTable.registry(), handler);
+    }
+
+    // Sends the bytes between position and limit; the caller keeps the buffer.
+    // Frames over the MTU are split into fragments, each sent from a pooled buffer.
+    public boolean send(ByteBuffer datagram, SocketAddress target) {
+        if (fragmenter.fits(datagram.remaining())) {
+            return transport.send(datagram, target);
+        }
+        int count = fragmenter.fragmentCount(datagram.remaining());
+        if (count > WireCodec.MAX_FRAGMENTS) {
+            LOGGER.warning("⚠️ Node " + nodeName + " cannot send a " + datagram.remaining() + "-byte frame");
+            return false;
+        }
+        int groupId = fragmenter.nextGroupId();
+        ByteBuffer fragment = acquireBuffer();
+        try {
+            for (int i = 0; i < count; i++) {
+                fragment.clear();
+                fragmenter.encode(fragment, datagram, groupId, i);
+                if (!transport.send(fragment.flip(), target)) {
+                    return false;
+                }
+            }
+        } finally {
+            releaseBuffer(fragment);
+        }
+        datagram.position(datagram.limit());
+        return true;
+    }
+
+    // Joins a multicast group whose frames are sent to the given port, on the given interface;
+    // joining a group twice is harmless
+    public boolean joinGroup(InetAddress group, int port, NetworkInterface networkInterface) {
+        try {
+            transport.join(group, port, networkInterface);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warning("⚠️ Node " + nodeName + " could not join group " + group.getHostAddress() + " on "
+                    + networkInterface.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public Executor callbackExecutor() {
+        return callbacks;
+    }
+
+    public ByteBuffer acquireBuffer() {
+        return transport.bufferPool().acquire();
+    }
+
+    public void releaseBuffer(ByteBuffer buffer) {
+        transport.bufferPool().release(buffer);
     }
 
     public int getPort() {
-        return socket.getLocalPort();
+        return transport.getLocalPort();
     }
 
-    public DatagramSocket getSocket() {
-        return socket;
+    public UdpTransport getTransport() {
+        return transport;
     }
 
     public String getName() {
         return nodeName;
     }
+
+    @Override
+    public void close() {
+        transport.close();
+        LOGGER.info("🛑 Node " + nodeName + " closed.");
+    }
 }
@@ -0,0 +1,241 @@
+package node;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Non-blocking UDP endpoint: one selector thread receives every datagram and
+// drains the send queue. Senders on any thread first try the channel directly
+// and only fall back to the queue (with a pooled copy) when the socket is full.
+public final class UdpTransport implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(UdpTransport.class.getName());
+    private static final int RECEIVE_BATCH = 64;
+    private static final int MAX_QUEUED_SENDS = 4096;
+    private static final int SOCKET_BUFFER_SIZE = 1 << 20;
+
+    // Called on the transport thread; data is only valid for the duration of the call
+    public interface DatagramHandler {
+        void onDatagram(ByteBuffer data, InetSocketAddress sender);
+    }
+
+    private static final class PendingSend {
+        final ByteBuffer buffer;
+        final SocketAddress target;
+
+        PendingSend(ByteBuffer buffer, SocketAddress target) {
+            this.buffer = buffer;
+            this.target = target;
+        }
+    }
+
+    private final String name;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final BufferPool pool;
+    private final ByteBuffer receiveBuffer;
+    private final DatagramHandler handler;
+    private final ConcurrentLinkedQueue<PendingSend> sendQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedSends = new AtomicInteger();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final LongAdder droppedSends = new LongAdder();
+    // Sockets receiving multicast groups on other ports than this one, by port; bound with
+    // SO_REUSEADDR so every node on the host can join. Only touched by the loop thread.
+    private final Map<Integer, DatagramChannel> groupChannels = new HashMap<>();
+    private final Thread loopThread;
+    private volatile boolean running = true;
+
+    public UdpTransport(String name, int port, BufferPool pool, DatagramHandler handler) throws IOException {
+        this.name = name;
+        this.pool = pool;
+        this.handler = handler;
+        this.receiveBuffer = ByteBuffer.allocateDirect(pool.bufferSize());
+        this.channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.key = channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.loopThread = new Thread(this::runLoop, "udp-" + name);
+        loopThread.setDaemon(true);
+    }
+
+    public void start() {
+        loopThread.start();
+    }
+
+    public int getLocalPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    public BufferPool bufferPool() {
+        return pool;
+    }
+
+    // Sends the bytes between position and limit. The caller keeps ownership of
+    // the buffer; it is copied only if the datagram has to be queued.
+    public boolean send(ByteBuffer datagram, SocketAddress target) {
+        try {
+            if (queuedSends.get() == 0 && channel.send(datagram, target) > 0) {
+                return true;
+            }
+        } catch (IOException | UnresolvedAddressException e) {
+            LOGGER.warning("🚨 [" + name + "] Send to " + target + " failed: " + e);
+            return false;
+        }
+        return enqueue(datagram, target);
+    }
+
+    private boolean enqueue(ByteBuffer datagram, SocketAddress target) {
+        if (queuedSends.incrementAndGet() > MAX_QUEUED_SENDS) {
+            queuedSends.decrementAndGet();
+            droppedSends.increment();
+            return false;
+        }
+        ByteBuffer copy = pool.acquire();
+        copy.put(datagram).flip();
+        sendQueue.offer(new PendingSend(copy, target));
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+        return true;
+    }
+
+    // Receives the group's datagrams sent to the port, on top of those addressed to this endpoint.
+    // Call on the loop thread, so the socket for a new port can be added to the selector.
+    public void join(InetAddress group, int port, NetworkInterface networkInterface) throws IOException {
+        DatagramChannel target = port == getLocalPort() ? channel : groupChannel(port);
+        target.join(group, networkInterface);
+    }
+
+    private DatagramChannel groupChannel(int port) throws IOException {
+        DatagramChannel group = groupChannels.get(port);
+        if (group != null) {
+            return group;
+        }
+        group = DatagramChannel.open();
+        try {
+            group.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            group.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+            group.bind(new InetSocketAddress(port));
+            group.configureBlocking(false);
+            group.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            group.close();
+            throw e;
+        }
+        groupChannels.put(port, group);
+        return group;
+    }
+
+    public int queuedSends() {
+        return queuedSends.get();
+    }
+
+    public long droppedSends() {
+        return droppedSends.sum();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                if (selector.select() > 0) {
+                    for (SelectionKey selected : selector.selectedKeys()) {
+                        if (selected.isValid() && selected.isReadable()) {
+                            receiveAll((DatagramChannel) selected.channel());
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+                wakeupPending.set(false);
+                flushQueue();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.severe("🚨 [" + name + "] Transport error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void receiveAll(DatagramChannel from) throws IOException {
+        for (int i = 0; i < RECEIVE_BATCH; i++) {
+            receiveBuffer.clear();
+            SocketAddress sender = from.receive(receiveBuffer);
+            if (sender == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            try {
+                handler.onDatagram(receiveBuffer, (InetSocketAddress) sender);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "🚨 [" + name + "] Handler failed for datagram from " + sender, e);
+            }
+        }
+    }
+
+    private void flushQueue() {
+        PendingSend pending;
+        while ((pending = sendQueue.peek()) != null) {
+            try {
+                if (channel.send(pending.buffer, pending.target) == 0) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            } catch (IOException e) {
+                LOGGER.warning("🚨 [" + name + "] Queued send to " + pending.target + " failed: " + e.getMessage());
+            }
+            sendQueue.poll();
+            queuedSends.decrementAndGet();
+            pool.release(pending.buffer);
+        }
+        if (key.isValid() && key.interestOps() != SelectionKey.OP_READ) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            if (loopThread.isAlive() && Thread.currentThread() != loopThread) {
+                loopThread.join(1000);
+            }
+            selector.close();
+            channel.close();
+            for (DatagramChannel group : groupChannels.values()) {
+                group.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.warning("⚠️ [" + name + "] Error closing transport: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package publisher;
+
+import common.Message.PriorityLevel;
+import common.WireCodec;
+import node.Node;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Packs frames for one destination into a single BATCH datagram. A batch is sent
+// when the next frame would not fit or when the linger deadline of its first
+// frame passes, whichever comes first. A queued frame counts as sent only once its
+// datagram is, so the listener hears about every frame when its batch goes out or fails.
+final class BatchAccumulator {
+    // Told how each frame went out; called after the accumulator's lock is let go
+    interface Listener {
+        // result is the one given to append, if any
+        void onSent(String message, int messageId, PriorityLevel priority, CompletableFuture<Boolean> result,
+                boolean sent);
+    }
+
+    // The frames of one datagram and whether it went out
+    private static final class Outcome {
+        final String[] messages;
+        final int[] messageIds;
+        final PriorityLevel[] priorities;
+        final CompletableFuture<Boolean>[] results;
+        final int count;
+        final boolean sent;
+
+        Outcome(String[] messages, int[] messageIds, PriorityLevel[] priorities,
+                CompletableFuture<Boolean>[] results, int count, boolean sent) {
+            this.messages = messages;
+            this.messageIds = messageIds;
+            this.priorities = priorities;
+            this.results = results;
+            this.count = count;
+            this.sent = sent;
+        }
+    }
+
+    private final Node node;
+    private final InetSocketAddress target;
+    private final ByteBuffer batch;
+    private final long lingerNanos;
+    private final ScheduledExecutorService timer;
+    private final Listener listener;
+    private int count;
+    // Bumped on every flush so a stale linger task does not flush a newer batch
+    private long generation;
+    // What was queued, per entry of the batch
+    private String[] messages = new String[16];
+    private int[] messageIds = new int[16];
+    private PriorityLevel[] priorities = new PriorityLevel[16];
+    private CompletableFuture<Boolean>[] results = newResults(16);
+
+    BatchAccumulator(Node node, InetSocketAddress target, int maxBatchBytes, long lingerNanos,
+            ScheduledExecutorService timer, Listener listener) {
+        this.node = node;
+        this.target = target;
+        this.batch = ByteBuffer.allocateDirect(maxBatchBytes);
+        this.lingerNanos = lingerNanos;
+        this.timer = timer;
+        this.listener = listener;
+    }
+
+    // Queues the frame between position and limit; frames too large for a batch go out alone
+    void append(ByteBuffer frame, String message, int messageId, PriorityLevel priority,
+            CompletableFuture<Boolean> result) {
+        Outcome flushed = null;
+        Outcome last;
+        synchronized (this) {
+            if (WireCodec.BATCH_HEADER_SIZE + WireCodec.BATCH_ENTRY_OVERHEAD + frame.remaining() > batch.capacity()) {
+                flushed = drain();
+                boolean sent = node.send(frame, target);
+                last = new Outcome(new String[] {message}, new int[] {messageId}, new PriorityLevel[] {priority},
+                        single(result), 1, sent);
+            } else {
+                if (count > 0 && !WireCodec.appendToBatch(batch, 0, frame)) {
+                    flushed = drain();
+                }
+                if (count == 0) {
+                    batch.clear();
+                    WireCodec.beginBatch(batch);
+                    WireCodec.appendToBatch(batch, 0, frame);
+                    if (lingerNanos > 0) {
+                        long scheduledGeneration = generation;
+                        timer.schedule(() -> flushIfCurrent(scheduledGeneration), lingerNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+                queue(message, messageId, priority, result);
+                last = lingerNanos <= 0 || batch.remaining() < WireCodec.BATCH_ENTRY_OVERHEAD + WireCodec.FIXED_HEADER_SIZE
+                        ? drain() : null;
+            }
+        }
+        report(flushed);
+        report(last);
+    }
+
+    private void flushIfCurrent(long scheduledGeneration) {
+        Outcome flushed;
+        synchronized (this) {
+            flushed = scheduledGeneration == generation ? drain() : null;
+        }
+        report(flushed);
+    }
+
+    void flush() {
+        Outcome flushed;
+        synchronized (this) {
+            flushed = drain();
+        }
+        report(flushed);
+    }
+
+    private void queue(String message, int messageId, PriorityLevel priority, CompletableFuture<Boolean> result) {
+        if (count == messageIds.length) {
+            int length = count * 2;
+            messages = Arrays.copyOf(messages, length);
+            messageIds = Arrays.copyOf(messageIds, length);
+            priorities = Arrays.copyOf(priorities, length);
+            results = Arrays.copyOf(results, length);
+        }
+        messages[count] = message;
+        messageIds[count] = messageId;
+        priorities[count] = priority;
+        results[count] = result;
+        count++;
+    }
+
+    // Sends the batch; called with the lock held. Null when nothing was queued.
+    private Outcome drain() {
+        if (count == 0) {
+            return null;
+        }
+        batch.flip();
+        if (count == 1) {
+            // A lone frame is sent without the batch wrapper
+            batch.position(WireCodec.BATCH_HEADER_SIZE + WireCodec.BATCH_ENTRY_OVERHEAD);
+        }
+        boolean sent = node.send(batch, target);
+        Outcome outcome = new Outcome(Arrays.copyOf(messages, count), Arrays.copyOf(messageIds, count),
+                Arrays.copyOf(priorities, count), Arrays.copyOf(results, count), count, sent);
+        Arrays.fill(messages, 0, count, null);
+        Arrays.fill(results, 0, count, null);
+        count = 0;
+        generation++;
+        return outcome;
+    }
+
+    private void report(Outcome outcome) {
+        if (outcome == null) {
+            return;
+        }
+        for (int i = 0; i < outcome.count; i++) {
+            listener.onSent(outcome.messages[i], outcome.messageIds[i], outcome.priorities[i], outcome.results[i],
+                    outcome.sent);
+        }
+    }
+
+    private static CompletableFuture<Boolean>[] single(CompletableFuture<Boolean> result) {
+        CompletableFuture<Boolean>[] results = newResults(1);
+        results[0] = result;
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Boolean>[] newResults(int length) {
+        return (CompletableFuture<Boolean>[]) new CompletableFuture<?>[length];
+    }
+}
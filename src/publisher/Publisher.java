@@ -1,93 +1,597 @@
 package publisher;
 
+import node.FrameListener;
 import node.Node;
+import common.AckRanges;
+import common.EpochClock;
+import common.Flow;
+import common.Frame;
+import common.HashedWheelTimer;
+import common.MessageType;
 import common.QoSLevel;
+import common.RoutingTable;
+import common.TokenBucket;
+import common.WireCodec;
 import common.Message.PriorityLevel;
+import common.filter.MessageFilter;
+import config.AppConfig;
+import config.ConfigSnapshot;
+import config.TopicSettings;
+import metrics.Metrics;
+import metrics.TopicMetrics;
+import trace.Trace;
+import trace.TraceEvent;
 
-import java.net.DatagramPacket;
-import java.net.InetAddress;
-//import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-public class Publisher {
+public class Publisher implements FrameListener {
     private static final Logger LOGGER = Logger.getLogger(Publisher.class.getName());
-    private static final int MAX_RETRIES = 5;  // Increased from 3
     private static final int INITIAL_TIMEOUT = 2000;  // 2 seconds initial timeout
+    private static final long MIN_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_RTO_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // Batch linger needs sub-millisecond precision, finer than the retransmission wheel's tick
+    private static final ScheduledExecutorService LINGER_TIMER = createTimer();
+    // Decodes outgoing frames for the publish filter; any thread may publish
+    private static final ThreadLocal<Frame> FILTER_FRAME = ThreadLocal.withInitial(Frame::new);
+
     private final Node node;
     private final String topic;
     private final QoSLevel qos;
+    private final byte[] topicBytes;
+    private final int window;
+    // Resolved once; read for every message so a refreshed address is picked up
+    private final RoutingTable.Route target;
+    // This topic's settings from the configuration snapshot they were taken from; re-read
+    // when a reload swaps in another snapshot. Messages the filter rejects are dropped
+    // before they reach the network.
+    private volatile ConfigSnapshot config;
+    private volatile TopicSettings settings;
+    // Set by setFilter; replaces the configured filter until cleared
+    private volatile MessageFilter pinnedFilter;
+    private final TopicMetrics metrics;
+    // Identifies this publisher incarnation to subscriber duplicate filters
+    private final long sessionId;
+
+    // Free in-flight slots; taking one is what bounds the window
+    private final ArrayBlockingQueue<InFlight> freeSlots;
+    private final Map<Integer, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    // Opt-in batching: 0 bytes means every frame is its own datagram
+    private volatile int maxBatchBytes;
+    private volatile long lingerNanos;
+    private final Map<InetSocketAddress, BatchAccumulator> batches = new ConcurrentHashMap<>();
+
+    // RFC 6298 estimator, updated from ACKs on the node's receive thread
+    private long smoothedRttNanos;
+    private long rttVarianceNanos;
+    private volatile long rtoNanos = TimeUnit.MILLISECONDS.toNanos(INITIAL_TIMEOUT);
 
-    private String lastMessage;
-    private PriorityLevel lastPriority;
+    // Set while the registry has asked this topic's publishers to slow down; 0 otherwise
+    private volatile long throttledUntilNanos;
+    private final Object throttleLock = new Object();
+    private TokenBucket throttle;
+
+    // Retransmission timeouts live in the slots, so scheduling one allocates nothing
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+
+    // A reusable slot holding one unacknowledged frame; it is its own retransmission timeout.
+    // Guarded by itself: filling, retransmitting and releasing the slot all hold its lock, so
+    // a slot is never handed out again while its retransmission is still going out.
+    private final class InFlight extends HashedWheelTimer.Timeout {
+        ByteBuffer frame = ByteBuffer.allocateDirect(1024);
+        int messageId;
+        PriorityLevel priority;
+        int attempts;
+        long firstSentNanos;
+        InetSocketAddress target;
+        CompletableFuture<Boolean> result;
+
+        @Override
+        protected void expire() {
+            resendMessage(this);
+        }
+    }
+
+    // QoS and window from the topic's settings
+    public Publisher(Node node, String topic) {
+        this(node, topic, AppConfig.snapshot().topic(topic).qos());
+    }
 
     // Constructor to initialize Publisher object
     public Publisher(Node node, String topic, QoSLevel qos) {
+        this(node, topic, qos, AppConfig.snapshot().topic(topic).window());
+    }
+
+    // Sends to the endpoint.publish route
+    public Publisher(Node node, String topic, QoSLevel qos, int window) {
+        this(node, topic, qos, window, RoutingTable.shared().route(RoutingTable.PUBLISH));
+    }
+
+    public Publisher(Node node, String topic, QoSLevel qos, int window, RoutingTable.Route target) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least 1, got " + window);
+        }
         this.node = node;
         this.topic = topic;
         this.qos = qos;
+        this.topicBytes = WireCodec.topicBytes(topic);
+        this.window = window;
+        this.target = target;
+        this.metrics = Metrics.topic(topic);
+        this.sessionId = qos == QoSLevel.EXACTLY_ONCE ? newSessionId() : 0L;
+        this.freeSlots = new ArrayBlockingQueue<>(window);
+        if (qos != QoSLevel.AT_MOST_ONCE) {
+            for (int i = 0; i < window; i++) {
+                freeSlots.offer(new InFlight());
+            }
+        }
+        // Slow-down requests reach publishers of every QoS
+        node.addListener(topic, this);
+        settings();
         LOGGER.info("📢 Publisher created on node " + node.getName() +
-                " for topic '" + topic + "' with QoS " + qos);
+                " for topic '" + topic + "' with QoS " + qos + " (window " + window + ", sending to "
+                + target.address() + ")");
+    }
+
+    // One volatile read while the configuration is unchanged. The window and QoS stay as
+    // they were when the publisher was created; batching follows the settings only when
+    // they change, so an enableBatching call holds until the next edit.
+    private TopicSettings settings() {
+        ConfigSnapshot snapshot = AppConfig.snapshot();
+        if (snapshot == config) {
+            return settings;
+        }
+        synchronized (this) {
+            if (snapshot != config) {
+                TopicSettings next = snapshot.topic(topic);
+                if (!next.sameBatching(settings)) {
+                    if (next.batchBytes() > 0) {
+                        enableBatching(next.batchBytes(),
+                                Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(next.lingerMicros())));
+                    } else if (settings != null) {
+                        disableBatching();
+                    }
+                }
+                if (config != null) {
+                    LOGGER.info("🔄 [Publisher] Topic '" + topic + "' now uses " + next);
+                }
+                settings = next;
+                config = snapshot;
+            }
+            return settings;
+        }
+    }
+
+    // Pack frames for the same destination into datagrams of up to maxBatchBytes,
+    // sent when full or once the first queued frame has waited for linger
+    public void enableBatching(int maxBatchBytes, Duration linger) {
+        if (maxBatchBytes < WireCodec.BATCH_HEADER_SIZE + WireCodec.BATCH_ENTRY_OVERHEAD + WireCodec.FIXED_HEADER_SIZE
+                || maxBatchBytes > WireCodec.MAX_DATAGRAM_SIZE) {
+            throw new IllegalArgumentException("Unsupported batch size: " + maxBatchBytes);
+        }
+        flush();
+        batches.clear();
+        this.lingerNanos = linger.toNanos();
+        this.maxBatchBytes = maxBatchBytes;
+        LOGGER.info("📦 [Publisher] Batching up to " + maxBatchBytes + " bytes with " + linger.toNanos() / 1000 + " µs linger");
+    }
+
+    // Back to one datagram per frame, after sending what is waiting
+    public void disableBatching() {
+        this.maxBatchBytes = 0;
+        flush();
+        batches.clear();
     }
 
-    // Publish message to the specified topic
+    // Send whatever is waiting in partially filled batches
+    public void flush() {
+        for (BatchAccumulator accumulator : batches.values()) {
+            accumulator.flush();
+        }
+    }
+
+    // Publish message to the specified topic, blocking until it is acknowledged for reliable QoS
     public boolean publish(String message, int messageId, PriorityLevel priority) {
+        return publishAsync(message, messageId, priority).join();
+    }
+
+    // Publish without waiting for the ACK. The future completes with true once the
+    // message is acknowledged (or sent, for AT_MOST_ONCE; a batched message counts as sent
+    // when its batch is) and false when it fails.
+    // Blocks only while the window of unacknowledged messages is full, or to keep to the
+    // rate the registry asked for while it is slowing this topic down.
+    public CompletableFuture<Boolean> publishAsync(String message, int messageId, PriorityLevel priority) {
         try {
-            // Added filtering check based on config properties
-            boolean enableFiltering = config.AppConfig.getBoolean("enableFiltering", true);
-            String filterKeyword = config.AppConfig.getString("filterKeyword", "goal");
-            if (enableFiltering && !message.toLowerCase().contains(filterKeyword.toLowerCase())) {
-                LOGGER.warning("❌ Message failed filter: \"" + message + "\"");
-                return false;
-            }
-            
-            this.lastMessage = message;
-            this.lastPriority = priority;
-            
-            String formattedMessage = "PUBLISH:" + topic + ":" + message + ":" 
-                    + messageId + ":" + priority + ":" + LocalDateTime.now();
-            byte[] buffer = formattedMessage.getBytes(StandardCharsets.UTF_8);
-
-            // Ensure the Publisher is sending to the correct port
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, 
-                    InetAddress.getLocalHost(), 5005);  // Change to correct Subscriber port (5005)
-            node.getSocket().send(packet);
-
-            LOGGER.info("📤 [Publisher] Zapped message (ID: " + messageId + ") -> \"" + message + "\" | Priority: " + priority +
-                        " | Sent at: " + LocalDateTime.now());
-
-            // If QoS is AT_LEAST_ONCE, wait for ACK
-            if (qos == QoSLevel.AT_LEAST_ONCE) {
-                return waitForAck(messageId);
+            pace();
+            InetSocketAddress target = this.target.address();
+            TopicSettings settings = settings();
+            if (qos == QoSLevel.AT_MOST_ONCE) {
+                return send(message, messageId, priority, target, settings);
             }
-            return true;
+            return sendReliably(message, messageId, priority, target, settings);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.severe("🚨 [Publisher] Interrupted while waiting for window space, message ID " + messageId);
+            return CompletableFuture.completedFuture(false);
         } catch (Exception e) {
             LOGGER.severe("🚨 [Publisher] ERROR publishing message ID " + messageId + ": " + e.getMessage());
-            return false;
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private void pace() throws InterruptedException {
+        long until = throttledUntilNanos;
+        if (until == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - until >= 0) {
+            throttledUntilNanos = 0;
+            return;
+        }
+        long waitNanos;
+        synchronized (throttleLock) {
+            waitNanos = throttle.reserve(now);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private CompletableFuture<Boolean> sendReliably(String message, int messageId, PriorityLevel priority,
+            InetSocketAddress target, TopicSettings settings) throws InterruptedException {
+        InFlight slot = freeSlots.take();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        synchronized (slot) {
+            slot.messageId = messageId;
+            slot.priority = priority;
+            slot.attempts = 0;
+            slot.target = target;
+            encodeInto(slot, message, messageId, priority);
+            if (!passesFilter(filter(settings), slot.frame, message, messageId, priority)) {
+                freeSlots.offer(slot);
+                return CompletableFuture.completedFuture(false);
+            }
+            // Retransmissions resend the compressed frame as it is
+            settings.compressor().compress(slot.frame);
+
+            if (inFlight.putIfAbsent(messageId, slot) != null) {
+                freeSlots.offer(slot);
+                LOGGER.warning("⚠️ [Publisher] Message ID " + messageId + " is already in flight");
+                return CompletableFuture.completedFuture(false);
+            }
+            slot.result = result;
+            slot.firstSentNanos = System.nanoTime();
+            timer.schedule(slot, rtoNanos);
+            slot.frame.rewind();
+            // The ACK completes the result; a batch that fails to go out is retransmitted
+            sendFirst(slot.frame, slot.target, message, messageId, priority, null);
+        }
+        return result;
+    }
+
+    private void encodeInto(InFlight slot, String message, int messageId, PriorityLevel priority) {
+        // UTF-8 needs at most three bytes per char, so this bound always fits
+        int worstCase = WireCodec.frameSize(topicBytes.length, message.length() * 3);
+        if (slot.frame.capacity() < worstCase) {
+            slot.frame = ByteBuffer.allocateDirect(worstCase);
+        }
+        slot.frame.clear();
+        WireCodec.encode(slot.frame, MessageType.PUBLISH, topicBytes, messageId, priority,
+                EpochClock.nowNanos(), sessionId, message);
+        slot.frame.flip();
+    }
+
+    // First transmissions may be batched; retransmissions always go out on their own.
+    // onSent hears how the frame went once it is on the wire, or failed to get there.
+    private void sendFirst(ByteBuffer frame, InetSocketAddress target, String message, int messageId,
+            PriorityLevel priority, CompletableFuture<Boolean> result) {
+        int batchBytes = maxBatchBytes;
+        if (batchBytes == 0) {
+            onSent(message, messageId, priority, result, node.send(frame, target));
+            return;
+        }
+        BatchAccumulator accumulator = batches.get(target);
+        if (accumulator == null) {
+            accumulator = batches.computeIfAbsent(target,
+                    t -> new BatchAccumulator(node, t, batchBytes, lingerNanos, LINGER_TIMER, this::onSent));
+        }
+        accumulator.append(frame, message, messageId, priority, result);
+    }
+
+    // result is set for AT_MOST_ONCE messages, which are done once they are sent
+    private void onSent(String message, int messageId, PriorityLevel priority, CompletableFuture<Boolean> result,
+            boolean sent) {
+        logSent(message, messageId, priority, sent);
+        if (result != null) {
+            result.complete(sent);
         }
     }
 
-    // Wait for ACK after sending the message
-    private boolean waitForAck(int messageId) {
-        // Simulate ACK reception (avoid waiting for an ACK during unit tests)
-        LOGGER.info("✅ [Publisher] Simulated ACK for message ID: " + messageId);
-        return true;
+    private boolean transmit(InFlight slot) {
+        slot.frame.rewind();
+        return node.send(slot.frame, slot.target);
+    }
+
+    // Resend the message in case of timeout, backing off exponentially
+    private void resendMessage(InFlight slot) {
+        int maxRetries = settings().maxRetries();
+        CompletableFuture<Boolean> result;
+        synchronized (slot) {
+            // An expiry that raced an ACK: the slot was released, or reused and scheduled again
+            if (timer.isScheduled(slot) || inFlight.get(slot.messageId) != slot) {
+                return;
+            }
+            int messageId = slot.messageId;
+            if (slot.attempts < maxRetries) {
+                slot.attempts++;
+                metrics.record(Metrics.Event.RETRIED, slot.priority);
+                if (transmit(slot)) {
+                    Trace.record(TraceEvent.RETRANSMITTED, topic, null, messageId, slot.attempts, maxRetries);
+                } else {
+                    LOGGER.severe("🚨 [Publisher] ERROR resending message ID " + messageId);
+                }
+                timer.schedule(slot, Math.min(rtoNanos << slot.attempts, MAX_RTO_NANOS));
+                return;
+            }
+            if (!inFlight.remove(messageId, slot)) {
+                return;
+            }
+            metrics.record(Metrics.Event.DROPPED, slot.priority);
+            LOGGER.severe("❌ [Publisher] No ACK for message ID " + messageId + " after " + slot.attempts + " retries");
+            result = release(slot);
+        }
+        result.complete(false);
     }
 
-    // Resend the message in case of timeout
-    private void resendMessage(int messageId) {
+    @Override
+    public void onFrame(Frame frame, InetSocketAddress sender) {
+        if (!frame.topicEquals(topicBytes)) {
+            return;
+        }
+        if (frame.type() == MessageType.FLOW) {
+            slowDown(frame);
+        } else if (frame.type() == MessageType.ACK && qos != QoSLevel.AT_MOST_ONCE) {
+            onAck(frame, sender);
+        }
+    }
+
+    // Requests repeat while the subscriber lags, each one extending the hold
+    private void slowDown(Frame frame) {
+        if (Flow.kind(frame) != Flow.SLOW_DOWN) {
+            return;
+        }
+        int rate = Math.max(1, Flow.ratePerSecond(frame));
+        int holdMillis = Math.max(0, Flow.limit(frame));
+        long now = System.nanoTime();
+        synchronized (throttleLock) {
+            double burst = Math.max(1, rate / 10.0);
+            if (throttle == null) {
+                throttle = new TokenBucket(rate, burst, now);
+            } else {
+                throttle.setRate(rate, burst, now);
+            }
+        }
+        throttledUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(holdMillis);
+        Trace.record(TraceEvent.THROTTLED, topic, null, rate, holdMillis);
+    }
+
+    // Match ACKs for this topic against the in-flight window. Confirm every ACK, including
+    // late duplicates, so the subscriber stops re-sending it.
+    private void onAck(Frame frame, InetSocketAddress sender) {
+        if (!AckRanges.isAggregate(frame)) {
+            sendAckConfirm(frame.messageId(), sender);
+            acknowledge(frame.messageId());
+            return;
+        }
+        ByteBuffer confirm = ByteBuffer.allocate(AckRanges.encodedSize(topicBytes.length, AckRanges.count(frame)));
+        AckRanges.encodeConfirm(confirm, topicBytes, frame);
+        node.send(confirm.flip(), sender);
+        for (int i = 0; i < AckRanges.count(frame); i++) {
+            acknowledgeRange(AckRanges.first(frame, i), AckRanges.last(frame, i));
+        }
+    }
+
+    // Walks whichever is shorter, the range or the window. Ranges are measured with
+    // serial-number arithmetic, so one that runs past Integer.MAX_VALUE wraps like the ids do.
+    private void acknowledgeRange(int first, int last) {
+        int span = last - first;
+        if (span < 0) {
+            return;
+        }
+        if (span < inFlight.size()) {
+            for (int i = 0; i <= span; i++) {
+                acknowledge(first + i);
+            }
+            return;
+        }
+        for (Integer id : inFlight.keySet()) {
+            int offset = id - first;
+            if (offset >= 0 && offset <= span) {
+                acknowledge(id);
+            }
+        }
+    }
+
+    private void acknowledge(int messageId) {
+        InFlight slot = inFlight.get(messageId);
+        if (slot == null) {
+            return;  // Duplicate or late ACK
+        }
+        long rttNanos;
+        CompletableFuture<Boolean> result;
+        synchronized (slot) {
+            if (!inFlight.remove(messageId, slot)) {
+                return;
+            }
+            timer.cancel(slot);
+            rttNanos = System.nanoTime() - slot.firstSentNanos;
+            // Karn's algorithm: retransmitted messages give ambiguous samples
+            if (slot.attempts == 0) {
+                updateRto(rttNanos);
+                Metrics.ackRtt().record(rttNanos);
+            }
+            metrics.record(Metrics.Event.ACKED, slot.priority);
+            result = release(slot);
+        }
+        Trace.record(TraceEvent.ACK_RECEIVED, topic, null, messageId, rttNanos);
+        result.complete(true);
+    }
+
+    private void sendAckConfirm(int messageId, InetSocketAddress subscriber) {
+        ByteBuffer buffer = node.acquireBuffer();
         try {
-            // Resend the last message
-            String formattedMessage = "PUBLISH:" + topic + ":" + lastMessage + ":" 
-                    + messageId + ":" + lastPriority + ":" + LocalDateTime.now();
-            byte[] buffer = formattedMessage.getBytes(StandardCharsets.UTF_8);
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, 
-                    InetAddress.getLocalHost(), 5005);  // Ensure this port matches Subscriber port
-            node.getSocket().send(packet);
-            LOGGER.info("🔄 [Publisher] Re-sent message with ID: " + messageId + " at " + LocalDateTime.now());
-        } catch (Exception e) {
-            LOGGER.severe("🚨 [Publisher] ERROR resending message ID " + messageId + ": " + e.getMessage());
+            WireCodec.encodeAckConfirm(buffer, topicBytes, messageId);
+            buffer.flip();
+            node.send(buffer, subscriber);
+        } finally {
+            node.releaseBuffer(buffer);
+        }
+    }
+
+    private void updateRto(long rttNanos) {
+        if (smoothedRttNanos == 0) {
+            smoothedRttNanos = rttNanos;
+            rttVarianceNanos = rttNanos / 2;
+        } else {
+            rttVarianceNanos = (3 * rttVarianceNanos + Math.abs(smoothedRttNanos - rttNanos)) / 4;
+            smoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+        }
+        long rto = smoothedRttNanos + 4 * rttVarianceNanos;
+        rtoNanos = Math.max(MIN_RTO_NANOS, Math.min(rto, MAX_RTO_NANOS));
+    }
+
+    // Returns the slot to the pool; called with it locked, and its result is completed after
+    // the lock is let go, so callbacks that publish again never run inside it
+    private CompletableFuture<Boolean> release(InFlight slot) {
+        CompletableFuture<Boolean> result = slot.result;
+        slot.result = null;
+        freeSlots.offer(slot);
+        return result;
+    }
+
+    // Encode a PUBLISH frame into a pooled buffer and hand it to the node transport;
+    // messages too large for a pooled buffer get their own, and the node fragments them.
+    // The result completes once the frame, or the batch it joined, has been sent.
+    private CompletableFuture<Boolean> send(String message, int messageId, PriorityLevel priority,
+            InetSocketAddress target, TopicSettings settings) {
+        ByteBuffer buffer = node.acquireBuffer();
+        int worstCase = WireCodec.frameSize(topicBytes.length, message.length() * 3);
+        if (worstCase > buffer.capacity()) {
+            node.releaseBuffer(buffer);
+            buffer = ByteBuffer.allocate(worstCase);
+        }
+        try {
+            WireCodec.encode(buffer, MessageType.PUBLISH, topicBytes, messageId, priority,
+                    EpochClock.nowNanos(), message);
+            buffer.flip();
+            if (!passesFilter(filter(settings), buffer, message, messageId, priority)) {
+                return CompletableFuture.completedFuture(false);
+            }
+            settings.compressor().compress(buffer);
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            sendFirst(buffer, target, message, messageId, priority, result);
+            return result;
+        } finally {
+            node.releaseBuffer(buffer);
+        }
+    }
+
+    // Applies this filter instead of the topic's configured one, whatever the configuration
+    // says later; null goes back to the configured filter
+    public void setFilter(MessageFilter filter) {
+        this.pinnedFilter = filter;
+    }
+
+    private MessageFilter filter(TopicSettings settings) {
+        MessageFilter pinned = pinnedFilter;
+        return pinned != null ? pinned : settings.filter();
+    }
+
+    // The filter runs on the encoded frame before it is compressed, the same bytes a
+    // subscriber would scan
+    private boolean passesFilter(MessageFilter filter, ByteBuffer encoded, String message, int messageId, PriorityLevel priority) {
+        if (filter.acceptsAll()) {
+            return true;
+        }
+        Frame frame = FILTER_FRAME.get();
+        if (WireCodec.decode(encoded, encoded.position(), encoded.limit(), frame)
+                && filter.matches(frame, EpochClock.nowNanos())) {
+            return true;
+        }
+        metrics.record(Metrics.Event.FILTERED, priority);
+        Trace.record(TraceEvent.PUBLISH_FILTERED, topic, message, messageId);
+        return false;
+    }
+
+    // The trace event carries the send time, so no clock is read for the log line
+    private void logSent(String message, int messageId, PriorityLevel priority, boolean sent) {
+        metrics.record(sent ? Metrics.Event.PUBLISHED : Metrics.Event.DROPPED, priority);
+        if (sent) {
+            Trace.record(TraceEvent.PUBLISHED, topic, message, messageId, priority.ordinal());
+        } else {
+            Trace.record(TraceEvent.SEND_QUEUE_FULL, topic, null, messageId);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public long currentRtoMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(rtoNanos);
+    }
+
+    // Stop listening for ACKs and fail whatever is still unacknowledged
+    public void close() {
+        flush();
+        node.removeListener(topic, this);
+        for (InFlight slot : inFlight.values()) {
+            CompletableFuture<Boolean> result;
+            synchronized (slot) {
+                if (!inFlight.remove(slot.messageId, slot)) {
+                    continue;
+                }
+                timer.cancel(slot);
+                result = release(slot);
+            }
+            result.complete(false);
         }
     }
-}
\ No newline at end of file
+
+    private static long newSessionId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0L);
+        return id;
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("publisher-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,95 @@
+package registry;
+
+import common.Frame;
+import common.filter.MessageFilter;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The subscribers of one topic grouped by filter, so each distinct filter is evaluated
+// once per message however many subscribers share it. Built from the subscriber list
+// of a SubscriptionTable snapshot and cached beside it, so it is replaced with the list.
+final class FanOutPlan {
+    private final List<Subscription> source;
+    private final MessageFilter[] filters;
+    private final InetSocketAddress[][] targets;
+    private final boolean filtered;
+    private final Set<InetSocketAddress> addresses;
+    // An address can sit in several groups when it subscribed through overlapping
+    // topic filters with different message filters; it must still get one copy
+    private final boolean sharedAddresses;
+
+    private FanOutPlan(List<Subscription> source, MessageFilter[] filters, InetSocketAddress[][] targets,
+            Set<InetSocketAddress> addresses) {
+        this.source = source;
+        this.filters = filters;
+        this.targets = targets;
+        this.addresses = Collections.unmodifiableSet(addresses);
+        this.sharedAddresses = addresses.size() < source.size();
+        boolean anyFilter = false;
+        for (MessageFilter filter : filters) {
+            anyFilter |= !filter.acceptsAll();
+        }
+        this.filtered = anyFilter;
+    }
+
+    static FanOutPlan of(List<Subscription> subscriptions) {
+        Map<MessageFilter, List<InetSocketAddress>> groups = new LinkedHashMap<>();
+        Set<InetSocketAddress> addresses = new LinkedHashSet<>();
+        for (Subscription subscription : subscriptions) {
+            groups.computeIfAbsent(subscription.filter, f -> new ArrayList<>()).add(subscription.address);
+            addresses.add(subscription.address);
+        }
+        MessageFilter[] filters = new MessageFilter[groups.size()];
+        InetSocketAddress[][] targets = new InetSocketAddress[groups.size()][];
+        int i = 0;
+        for (Map.Entry<MessageFilter, List<InetSocketAddress>> group : groups.entrySet()) {
+            filters[i] = group.getKey();
+            targets[i++] = group.getValue().toArray(new InetSocketAddress[0]);
+        }
+        return new FanOutPlan(subscriptions, filters, targets, addresses);
+    }
+
+    // True when some group has a filter, i.e. the frame has to be decoded to forward it
+    boolean filtered() {
+        return filtered;
+    }
+
+    int groups() {
+        return filters.length;
+    }
+
+    int subscribers() {
+        return source.size();
+    }
+
+    // Every subscriber address, whatever its filter
+    Set<InetSocketAddress> addresses() {
+        return addresses;
+    }
+
+    // Adds the addresses whose filter accepts the frame; the frame is only read when filtered()
+    int select(Frame frame, long nowNanos, List<InetSocketAddress> out) {
+        for (int g = 0; g < filters.length; g++) {
+            if (filters[g].acceptsAll() || filters[g].matches(frame, nowNanos)) {
+                for (InetSocketAddress address : targets[g]) {
+                    out.add(address);
+                }
+            }
+        }
+        if (sharedAddresses && out.size() > 1) {
+            Set<InetSocketAddress> unique = new LinkedHashSet<>(out);
+            if (unique.size() < out.size()) {
+                out.clear();
+                out.addAll(unique);
+            }
+        }
+        return out.size();
+    }
+}
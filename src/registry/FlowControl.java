@@ -0,0 +1,274 @@
+package registry;
+
+import common.Flow;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.TokenBucket;
+import common.WireCodec;
+import config.AppConfig;
+import metrics.Metrics;
+import trace.Trace;
+import trace.TraceEvent;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Credit-based pacing of unicast fan-out. A subscriber that advertises credit (a rate and a
+// burst it can take) gets a lane: a token bucket that paces the copies sent to it and a
+// bounded buffer for the copies that have to wait. When the buffer is full the oldest copy
+// of the lowest priority below the incoming one is shed, as in PriorityEgress. More than a
+// burst waiting (or half the buffer, if that is less) means the subscriber is falling
+// behind, and the topic's publishers are asked to slow down to the rate it advertised.
+// Subscribers that never advertise credit, and topics sent over multicast, are not paced.
+// A lane whose credit stops being renewed is flushed and closed.
+final class FlowControl {
+    private static final PriorityLevel[] LEVELS = PriorityLevel.values();
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAX_PUBLISHERS_PER_TOPIC = 16;
+    private static final int MAX_TOPICS = 1 << 16;
+
+    interface Sink {
+        void send(PriorityEgress.Entry entry, InetSocketAddress subscriber);
+    }
+
+    // One subscriber's pacing state; guarded by itself
+    private static final class Lane {
+        final InetSocketAddress subscriber;
+        final TokenBucket bucket;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ArrayDeque<PriorityEgress.Entry>[] queues = new ArrayDeque[LEVELS.length];
+        int size;
+        // Removed from the lanes after its credit expired; copies go straight out
+        boolean closed;
+        volatile long lastCreditNanos;
+
+        Lane(InetSocketAddress subscriber, TokenBucket bucket, long nowNanos) {
+            this.subscriber = subscriber;
+            this.bucket = bucket;
+            this.lastCreditNanos = nowNanos;
+            for (int i = 0; i < LEVELS.length; i++) {
+                queues[i] = new ArrayDeque<>();
+            }
+        }
+
+        PriorityEgress.Entry poll() {
+            for (int level = LEVELS.length - 1; level >= 0; level--) {
+                if (!queues[level].isEmpty()) {
+                    size--;
+                    return queues[level].pollFirst();
+                }
+            }
+            return null;
+        }
+    }
+
+    private final DatagramSocket socket;
+    private final Sink sink;
+    private final int bufferMessages;
+    private final long creditTimeoutNanos;
+    private final long signalIntervalNanos;
+    private final int holdMillis;
+    private final ConcurrentHashMap<InetSocketAddress, Lane> lanes = new ConcurrentHashMap<>();
+    // Where each topic's PUBLISH frames came from, for slow-down requests
+    private final ConcurrentHashMap<String, Set<InetSocketAddress>> publishers = new ConcurrentHashMap<>();
+    // Last slow-down request per topic; only touched by the egress thread
+    private final Map<String, Long> lastSignalNanos = new HashMap<>();
+    private final Thread pacer = new Thread(this::pace, "registry-pacer");
+
+    FlowControl(DatagramSocket socket, Sink sink, int bufferMessages, long creditTimeoutNanos,
+            long signalIntervalNanos, int holdMillis) {
+        if (bufferMessages < 1) {
+            throw new IllegalArgumentException("Flow control buffer must hold at least one message");
+        }
+        this.socket = socket;
+        this.sink = sink;
+        this.bufferMessages = bufferMessages;
+        this.creditTimeoutNanos = creditTimeoutNanos;
+        this.signalIntervalNanos = signalIntervalNanos;
+        this.holdMillis = holdMillis;
+        pacer.setDaemon(true);
+    }
+
+    // Null when registry.flow.enabled is off
+    static FlowControl fromConfig(DatagramSocket socket, Sink sink) {
+        if (!AppConfig.getBoolean("registry.flow.enabled", true)) {
+            return null;
+        }
+        return new FlowControl(socket, sink,
+                AppConfig.getInt("registry.flow.bufferMessages", 1024),
+                TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("registry.flow.creditTimeoutMs", 3000)),
+                TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("registry.flow.signalIntervalMs", 100)),
+                AppConfig.getInt("registry.flow.holdMs", 1000));
+    }
+
+    void start() {
+        pacer.start();
+    }
+
+    // A CREDIT from a subscriber; runs on the receive thread
+    void onCredit(Frame frame, InetSocketAddress subscriber) {
+        if (Flow.kind(frame) != Flow.CREDIT || Flow.ratePerSecond(frame) <= 0) {
+            return;
+        }
+        int rate = Flow.ratePerSecond(frame);
+        int burst = Math.max(1, Flow.limit(frame));
+        long now = System.nanoTime();
+        Lane lane = lanes.get(subscriber);
+        if (lane == null) {
+            lanes.put(subscriber, new Lane(subscriber, new TokenBucket(rate, burst, now), now));
+            System.out.println("🚦 Pacing subscriber " + subscriber + " at " + rate
+                    + " msg/s (burst " + burst + ")");
+            return;
+        }
+        synchronized (lane) {
+            lane.bucket.setRate(rate, burst, now);
+            lane.lastCreditNanos = now;
+        }
+    }
+
+    // Remembers where a topic's PUBLISH frames come from; runs on the receive thread
+    void recordPublisher(String topic, InetSocketAddress publisher) {
+        Set<InetSocketAddress> known = publishers.get(topic);
+        if (known == null) {
+            if (publishers.size() >= MAX_TOPICS) {
+                return;
+            }
+            known = publishers.computeIfAbsent(topic, t -> ConcurrentHashMap.newKeySet());
+        }
+        if (known.size() < MAX_PUBLISHERS_PER_TOPIC) {
+            known.add(publisher);
+        }
+    }
+
+    // Runs on the egress thread. Copies for paced subscribers are sent now if they have a
+    // token, queued otherwise, and removed from subscribers; the rest are the caller's to send.
+    void divert(PriorityEgress.Entry entry, List<InetSocketAddress> subscribers) {
+        if (lanes.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Iterator<InetSocketAddress> it = subscribers.iterator(); it.hasNext(); ) {
+            Lane lane = lanes.get(it.next());
+            if (lane == null) {
+                continue;
+            }
+            it.remove();
+            boolean wake;
+            boolean congested;
+            synchronized (lane) {
+                if (lane.closed || (lane.size == 0 && lane.bucket.tryTake(now))) {
+                    sink.send(entry, lane.subscriber);
+                    continue;
+                }
+                wake = lane.size == 0;
+                enqueue(lane, entry);
+                congested = lane.size >= Math.min(bufferMessages / 2, lane.bucket.burst());
+            }
+            if (wake) {
+                LockSupport.unpark(pacer);
+            }
+            if (congested) {
+                signal(entry.topic, lane, now);
+            }
+        }
+    }
+
+    // Called with the lane locked; the buffer sheds by priority once full
+    private void enqueue(Lane lane, PriorityEgress.Entry entry) {
+        int level = entry.priority.ordinal();
+        if (lane.size >= bufferMessages) {
+            PriorityEgress.Entry shed = null;
+            for (int lower = 0; lower < level && shed == null; lower++) {
+                shed = lane.queues[lower].pollFirst();
+            }
+            if (shed == null) {
+                shed(entry, lane);
+                return;
+            }
+            lane.size--;
+            shed(shed, lane);
+        }
+        lane.queues[level].addLast(entry);
+        lane.size++;
+    }
+
+    private void shed(PriorityEgress.Entry entry, Lane lane) {
+        Metrics.record(entry.topic, Metrics.Event.DROPPED, entry.priority);
+        Trace.record(TraceEvent.FLOW_SHED, lane.subscriber, entry.topic, entry.messageId, entry.priority.ordinal());
+    }
+
+    // Asks the topic's publishers, together, to stay under the lagging subscriber's rate
+    private void signal(String topic, Lane lane, long now) {
+        Long last = lastSignalNanos.get(topic);
+        if (last != null && now - last < signalIntervalNanos) {
+            return;
+        }
+        Set<InetSocketAddress> targets = publishers.get(topic);
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        if (lastSignalNanos.size() < MAX_TOPICS || last != null) {
+            lastSignalNanos.put(topic, now);
+        }
+        double laneRate;
+        synchronized (lane) {
+            laneRate = lane.bucket.ratePerSecond();
+        }
+        int rate = (int) Math.max(1, Math.min(Integer.MAX_VALUE, laneRate / targets.size()));
+        ByteBuffer request = Flow.encodeSlowDown(WireCodec.topicBytes(topic), rate, holdMillis);
+        for (InetSocketAddress publisher : targets) {
+            try {
+                socket.send(new DatagramPacket(request.array(), request.limit(), publisher));
+            } catch (Exception e) {
+                System.err.println("❌ Error sending slow-down to " + publisher + ": " + e.getMessage());
+            }
+        }
+        Trace.record(TraceEvent.SLOW_DOWN_SENT, lane.subscriber, topic, rate, targets.size());
+    }
+
+    // Sends queued copies as tokens come in, then sleeps until the next token is due
+    private void pace() {
+        while (true) {
+            long now = System.nanoTime();
+            long park = IDLE_PARK_NANOS;
+            for (Iterator<Lane> it = lanes.values().iterator(); it.hasNext(); ) {
+                Lane lane = it.next();
+                boolean expired = now - lane.lastCreditNanos > creditTimeoutNanos;
+                if (expired) {
+                    it.remove();
+                    System.out.println("🚦 Subscriber " + lane.subscriber
+                            + " stopped sending credit; no longer pacing it");
+                }
+                try {
+                    synchronized (lane) {
+                        PriorityEgress.Entry entry;
+                        while (lane.size > 0 && (expired || lane.bucket.tryTake(now))) {
+                            entry = lane.poll();
+                            sink.send(entry, lane.subscriber);
+                        }
+                        lane.closed = expired;
+                        if (lane.size > 0) {
+                            park = Math.min(park, lane.bucket.nanosUntilToken(now));
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("❌ Error pacing subscriber " + lane.subscriber + ": "
+                            + e.getMessage());
+                }
+            }
+            LockSupport.parkNanos(Math.max(park, MIN_PARK_NANOS));
+        }
+    }
+}
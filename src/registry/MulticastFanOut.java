@@ -0,0 +1,343 @@
+package registry;
+
+import common.Fragmenter;
+import common.Frame;
+import common.Multicast;
+import common.WireCodec;
+import config.AppConfig;
+import trace.Trace;
+import trace.TraceEvent;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Fans topics with many subscribers out over IP multicast: the registry sends each message
+// once to the topic's group and every subscriber picks it up there, instead of one send per
+// subscriber. Subscribers are told to join with a unicast JOIN. Group frames are numbered
+// per topic, the last repairWindow of them are kept, and subscribers that see a gap NACK
+// the missing numbers to get them re-sent directly. A subscriber that never confirms its
+// JOIN keeps getting unicast copies. A topic stays on its group once it has one.
+// Group frames go to one port, registry.multicast.port, which the JOIN names; subscribers
+// listening elsewhere open a shared socket on it. Subscribers that leave the topic's plan,
+// by unsubscribing or expiring, stop being members.
+final class MulticastFanOut {
+    private static final int MAX_JOIN_ATTEMPTS = 5;
+    // Heartbeats continue for this many rounds after a stream's last frame; subscribers
+    // re-send their NACKs on each one, so this is how often a lost tail gets asked for
+    private static final int IDLE_HEARTBEATS = 5;
+    private static final int MAX_STREAMS = 1 << 12;
+
+    private static final class Member {
+        final long firstSequence;
+        int joinAttempts;
+        boolean joined;
+        // Gave up on the JOIN; forwarded to like any other subscriber
+        boolean unicast;
+
+        Member(long firstSequence) {
+            this.firstSequence = firstSequence;
+        }
+    }
+
+    // One topic's group and numbering; guarded by itself, except plan which only the
+    // egress thread touches
+    private static final class Stream {
+        final String topic;
+        final byte[] topicBytes;
+        final int id = ThreadLocalRandom.current().nextInt();
+        final InetAddress group;
+        final ByteBuffer[] sent;
+        final Map<InetSocketAddress, Member> members = new HashMap<>();
+        FanOutPlan plan;
+        long nextSequence = 1;
+        long heartbeatSequence;
+        int idleRounds;
+
+        Stream(String topic, InetAddress group, int repairWindow) {
+            this.topic = topic;
+            this.topicBytes = WireCodec.topicBytes(topic);
+            this.group = group;
+            this.sent = new ByteBuffer[repairWindow];
+        }
+
+        // The frame with this sequence if it is still in the repair window
+        ByteBuffer frame(long sequence) {
+            if (sequence < 1 || sequence >= nextSequence || sequence < nextSequence - sent.length) {
+                return null;
+            }
+            return sent[(int) (sequence % sent.length)];
+        }
+    }
+
+    private final DatagramSocket socket;
+    private final Fragmenter fragmenter;
+    private final int groupPort;
+    private final int threshold;
+    private final int groupBase;
+    private final int groupCount;
+    private final int repairWindow;
+    private final long heartbeatNanos;
+    private final ConcurrentHashMap<String, Stream> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "registry-multicast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    MulticastFanOut(DatagramSocket socket, Fragmenter fragmenter, int groupPort, NetworkInterface networkInterface,
+            int ttl, int threshold, InetAddress groupBase, int groupCount, int repairWindow, long heartbeatNanos)
+            throws IOException {
+        byte[] base = groupBase.getAddress();
+        if (base.length != 4 || !groupBase.isMulticastAddress()) {
+            throw new IllegalArgumentException("Not an IPv4 multicast address: " + groupBase.getHostAddress());
+        }
+        if (threshold < 1 || groupCount < 1 || repairWindow < 1) {
+            throw new IllegalArgumentException("Multicast threshold, group count and repair window must be positive");
+        }
+        this.socket = socket;
+        this.fragmenter = fragmenter;
+        this.groupPort = groupPort;
+        this.threshold = threshold;
+        this.groupBase = ByteBuffer.wrap(base).getInt();
+        this.groupCount = groupCount;
+        this.repairWindow = repairWindow;
+        this.heartbeatNanos = heartbeatNanos;
+        if (networkInterface != null) {
+            socket.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+        }
+        socket.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+        socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+    }
+
+    // Null unless registry.multicast.enabled is set
+    static MulticastFanOut fromConfig(DatagramSocket socket, Fragmenter fragmenter) {
+        if (!AppConfig.getBoolean("registry.multicast.enabled", false)) {
+            return null;
+        }
+        String interfaceName = AppConfig.getString("multicast.interface", "lo");
+        String groupBase = AppConfig.getString("registry.multicast.groupBase", "239.255.42.0");
+        try {
+            NetworkInterface networkInterface = interfaceName.isBlank() ? null : NetworkInterface.getByName(interfaceName);
+            if (!interfaceName.isBlank() && networkInterface == null) {
+                throw new IllegalArgumentException("Unknown multicast.interface " + interfaceName);
+            }
+            return new MulticastFanOut(socket, fragmenter, AppConfig.getInt("registry.multicast.port", 5003),
+                    networkInterface,
+                    AppConfig.getInt("registry.multicast.ttl", 1),
+                    AppConfig.getInt("registry.multicast.threshold", 16),
+                    InetAddress.getByName(groupBase),
+                    AppConfig.getInt("registry.multicast.groupCount", 256),
+                    AppConfig.getInt("registry.multicast.repairWindow", 1024),
+                    TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("registry.multicast.heartbeatMs", 200)));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown registry.multicast.groupBase " + groupBase, e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot send multicast on " + interfaceName + ": " + e.getMessage(), e);
+        }
+    }
+
+    void start() {
+        timer.scheduleWithFixedDelay(this::tick, heartbeatNanos, heartbeatNanos, TimeUnit.NANOSECONDS);
+    }
+
+    int threshold() {
+        return threshold;
+    }
+
+    // Runs on the egress thread once the plan has selected at least one subscriber. Topics
+    // at or over the threshold are sent to their group once; selected is left holding only
+    // the subscribers that still need a unicast copy. Returns false, leaving selected
+    // alone, for topics that are not multicast.
+    boolean send(PriorityEgress.Entry entry, FanOutPlan plan, List<InetSocketAddress> selected) {
+        Stream stream = streams.get(entry.topic);
+        if (stream == null) {
+            if (plan.addresses().size() < threshold || streams.size() >= MAX_STREAMS) {
+                return false;
+            }
+            stream = new Stream(entry.topic, groupFor(entry.topic), repairWindow);
+            streams.put(entry.topic, stream);
+            System.out.println("📡 Topic " + entry.topic + " has " + plan.addresses().size()
+                    + " subscribers; fanning out over multicast group " + stream.group.getHostAddress());
+        }
+        ByteBuffer data;
+        synchronized (stream) {
+            if (stream.plan != plan) {
+                stream.plan = plan;
+                admit(stream, plan);
+            }
+            long sequence = stream.nextSequence++;
+            data = Multicast.encodeData(stream.topicBytes, stream.id, sequence, entry.priority,
+                    entry.frame, 0, entry.frame.length);
+            stream.sent[(int) (sequence % stream.sent.length)] = data;
+            Trace.record(TraceEvent.MULTICAST_SENT, stream.group, entry.topic, entry.messageId, sequence);
+            for (Iterator<InetSocketAddress> it = selected.iterator(); it.hasNext(); ) {
+                Member member = stream.members.get(it.next());
+                if (member != null && !member.unicast) {
+                    it.remove();
+                }
+            }
+        }
+        send(data.duplicate(), new InetSocketAddress(stream.group, groupPort));
+        return true;
+    }
+
+    // Subscribers new to the plan start at the next sequence and are sent a JOIN; members
+    // no longer in it are dropped. Called with the stream locked.
+    private void admit(Stream stream, FanOutPlan plan) {
+        Set<InetSocketAddress> addresses = plan.addresses();
+        stream.members.keySet().retainAll(addresses);
+        for (InetSocketAddress address : addresses) {
+            if (!stream.members.containsKey(address)) {
+                Member member = new Member(stream.nextSequence);
+                stream.members.put(address, member);
+                sendJoin(stream, address, member);
+            }
+        }
+    }
+
+    // JOINED and NACK frames from subscribers; runs on the receive thread
+    void onControl(Frame frame, InetSocketAddress from) {
+        Stream stream = streams.get(frame.topic());
+        if (stream == null || frame.messageId() != stream.id) {
+            return;
+        }
+        byte kind = Multicast.kind(frame);
+        if (kind == Multicast.JOINED) {
+            synchronized (stream) {
+                Member member = stream.members.get(from);
+                if (member != null && !member.joined && !member.unicast) {
+                    member.joined = true;
+                    System.out.println("📡 Subscriber " + from + " joined group "
+                            + stream.group.getHostAddress() + " for " + stream.topic);
+                }
+            }
+        } else if (kind == Multicast.NACK) {
+            repair(stream, frame, from);
+        }
+    }
+
+    // Re-sends the requested frames that are still in the window straight to the subscriber
+    private void repair(Stream stream, Frame nack, InetSocketAddress target) {
+        int ranges = Multicast.nackRanges(nack);
+        int budget = repairWindow;
+        for (int r = 0; r < ranges && budget > 0; r++) {
+            long last = Multicast.nackLast(nack, r);
+            for (long sequence = Multicast.nackFirst(nack, r); sequence <= last && budget > 0; sequence++) {
+                ByteBuffer data;
+                synchronized (stream) {
+                    data = stream.frame(sequence);
+                }
+                if (data != null) {
+                    send(data.duplicate(), target);
+                    budget--;
+                    Trace.record(TraceEvent.MULTICAST_REPAIRED, target, stream.topic, sequence);
+                }
+            }
+        }
+    }
+
+    // Repeats unanswered JOINs and sends heartbeats for streams that recently sent frames
+    private void tick() {
+        try {
+            for (Stream stream : streams.values()) {
+                ByteBuffer heartbeat = null;
+                synchronized (stream) {
+                    for (Map.Entry<InetSocketAddress, Member> entry : stream.members.entrySet()) {
+                        Member member = entry.getValue();
+                        if (member.joined || member.unicast) {
+                            continue;
+                        }
+                        if (member.joinAttempts >= MAX_JOIN_ATTEMPTS) {
+                            member.unicast = true;
+                            System.out.println("⚠️ Subscriber " + entry.getKey()
+                                    + " never joined group " + stream.group.getHostAddress() + " for " + stream.topic
+                                    + "; sending it unicast copies");
+                            catchUp(stream, entry.getKey(), member);
+                        } else {
+                            sendJoin(stream, entry.getKey(), member);
+                        }
+                    }
+                    long last = stream.nextSequence - 1;
+                    if (last != stream.heartbeatSequence) {
+                        stream.heartbeatSequence = last;
+                        stream.idleRounds = 0;
+                    }
+                    if (last > 0 && stream.idleRounds < IDLE_HEARTBEATS) {
+                        stream.idleRounds++;
+                        heartbeat = Multicast.encodeHeartbeat(stream.topicBytes, stream.id, last);
+                    }
+                }
+                if (heartbeat != null) {
+                    send(heartbeat, new InetSocketAddress(stream.group, groupPort));
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("❌ Multicast heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    // Unicasts the frames a subscriber that never joined missed while it was expected to,
+    // as far back as the repair window goes. Called with the stream locked.
+    private void catchUp(Stream stream, InetSocketAddress target, Member member) {
+        int offset = Multicast.dataOffset(stream.topicBytes.length);
+        for (long sequence = member.firstSequence; sequence < stream.nextSequence; sequence++) {
+            ByteBuffer data = stream.frame(sequence);
+            if (data != null) {
+                send(data.duplicate().position(offset), target);
+            }
+        }
+    }
+
+    // Called with the stream locked
+    private void sendJoin(Stream stream, InetSocketAddress subscriber, Member member) {
+        member.joinAttempts++;
+        send(Multicast.encodeJoin(stream.topicBytes, stream.id, stream.group, groupPort, member.firstSequence,
+                repairWindow), subscriber);
+    }
+
+    // Topics are spread over groupCount consecutive addresses from groupBase; subscribers
+    // drop frames of topics they did not join, so topics may share a group
+    private InetAddress groupFor(String topic) {
+        int hash = topic.hashCode() * 0x9E3779B9;
+        int address = groupBase + Math.floorMod(hash ^ (hash >>> 16), groupCount);
+        try {
+            return InetAddress.getByAddress(ByteBuffer.allocate(4).putInt(address).array());
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void send(ByteBuffer frame, InetSocketAddress target) {
+        try {
+            if (fragmenter.fits(frame.remaining())) {
+                socket.send(new DatagramPacket(frame.array(), frame.arrayOffset() + frame.position(),
+                        frame.remaining(), target));
+                return;
+            }
+            ByteBuffer fragments = fragmenter.split(frame);
+            for (int start = 0; start < fragments.limit(); start += fragmenter.mtu()) {
+                socket.send(new DatagramPacket(fragments.array(), start,
+                        Math.min(fragmenter.mtu(), fragments.limit() - start), target));
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Error sending multicast frame to " + target + ": " + e.getMessage());
+        }
+    }
+}
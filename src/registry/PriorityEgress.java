@@ -0,0 +1,263 @@
+package registry;
+
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.WireCodec;
+import config.AppConfig;
+import metrics.Metrics;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Per-priority egress queues between the Registry receive loop and fan-out.
+// All queues share one capacity; when it is exhausted the oldest message of the
+// lowest priority below the incoming one is shed, so LOW goes before MEDIUM and
+// HIGH is only ever refused, never evicted by lower traffic.
+final class PriorityEgress {
+    enum Mode {
+        // Always drain the highest non-empty queue first
+        STRICT,
+        // Weighted round robin; lower priorities get a guaranteed share and cannot starve
+        WEIGHTED
+    }
+
+    interface Sink {
+        void forward(Entry entry);
+    }
+
+    // A received frame copied out of the receive buffer
+    static final class Entry {
+        final byte[] frame;
+        final String topic;
+        final int messageId;
+        final PriorityLevel priority;
+        long enqueuedNanos;
+
+        Entry(byte[] frame, String topic, int messageId, PriorityLevel priority) {
+            this.frame = frame;
+            this.topic = topic;
+            this.messageId = messageId;
+            this.priority = priority;
+        }
+
+        static Entry copyOf(Frame frame) {
+            return copyOf(frame, frame.topic(), frame.priority());
+        }
+
+        // Queued at the given priority; the frame keeps the one it was published with
+        static Entry copyOf(Frame frame, String topic, PriorityLevel priority) {
+            byte[] bytes = new byte[frame.length()];
+            frame.buffer().get(frame.start(), bytes);
+            return new Entry(bytes, topic, frame.messageId(), priority);
+        }
+
+        // The copy names its publisher, so subscribers send their ACKs there
+        static Entry copyOf(Frame frame, String topic, PriorityLevel priority, InetSocketAddress publisher) {
+            return new Entry(WireCodec.copyWithOrigin(frame, publisher), topic, frame.messageId(), priority);
+        }
+    }
+
+    // Depth and wait-time counters of one priority queue
+    static final class QueueStats {
+        private final LongAdder enqueued = new LongAdder();
+        private final LongAdder forwarded = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private volatile long maxWaitNanos;
+        private volatile int depth;
+
+        int depth() {
+            return depth;
+        }
+
+        long enqueued() {
+            return enqueued.sum();
+        }
+
+        long shed() {
+            return shed.sum();
+        }
+
+        long meanWaitMicros() {
+            long count = forwarded.sum();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / count);
+        }
+
+        long maxWaitMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos);
+        }
+    }
+
+    private static final PriorityLevel[] LEVELS = PriorityLevel.values();
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Mode mode;
+    private final int capacity;
+    private final int[] weights;
+    private final int[] credits;
+    private final Sink sink;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Entry>[] queues = new ArrayDeque[LEVELS.length];
+    private final QueueStats[] stats = new QueueStats[LEVELS.length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int size;
+    private long lastReportNanos = System.nanoTime();
+
+    // Weights are indexed by PriorityLevel ordinal and only used in WEIGHTED mode
+    PriorityEgress(Mode mode, int capacity, int[] weights, Sink sink) {
+        if (weights.length != LEVELS.length) {
+            throw new IllegalArgumentException("Expected " + LEVELS.length + " weights");
+        }
+        this.mode = mode;
+        this.capacity = capacity;
+        this.weights = new int[LEVELS.length];
+        this.sink = sink;
+        for (int i = 0; i < LEVELS.length; i++) {
+            queues[i] = new ArrayDeque<>();
+            stats[i] = new QueueStats();
+            this.weights[i] = Math.max(1, weights[i]);
+        }
+        this.credits = this.weights.clone();
+    }
+
+    static PriorityEgress fromConfig(Sink sink) {
+        Mode mode = Mode.valueOf(AppConfig.getString("registry.egress.scheduler", "strict")
+                .trim().toUpperCase(Locale.ROOT));
+        int capacity = AppConfig.getInt("registry.egress.capacity", 8192);
+        String[] parts = AppConfig.getString("registry.egress.weights", "1,4,16").split(",");
+        int[] weights = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            weights[i] = Integer.parseInt(parts[i].trim());
+        }
+        return new PriorityEgress(mode, capacity, weights, sink);
+    }
+
+    void start() {
+        Thread forwarder = new Thread(this::drain, "registry-egress");
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    // Returns false if the entry itself was shed
+    boolean offer(Entry entry) {
+        int level = entry.priority.ordinal();
+        lock.lock();
+        try {
+            if (size >= capacity && !shedBelow(level)) {
+                stats[level].shed.increment();
+                Metrics.record(entry.topic, Metrics.Event.DROPPED, entry.priority);
+                return false;
+            }
+            entry.enqueuedNanos = System.nanoTime();
+            queues[level].addLast(entry);
+            stats[level].depth = queues[level].size();
+            stats[level].enqueued.increment();
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops the oldest entry of the lowest non-empty priority below level
+    private boolean shedBelow(int level) {
+        for (int lower = 0; lower < level; lower++) {
+            if (!queues[lower].isEmpty()) {
+                Entry shed = queues[lower].pollFirst();
+                Metrics.record(shed.topic, Metrics.Event.DROPPED, shed.priority);
+                stats[lower].depth = queues[lower].size();
+                stats[lower].shed.increment();
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            lock.lock();
+            try {
+                while (size == 0) {
+                    notEmpty.await();
+                }
+                entry = next();
+                size--;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            QueueStats queueStats = stats[entry.priority.ordinal()];
+            long waited = System.nanoTime() - entry.enqueuedNanos;
+            queueStats.waitNanos.add(waited);
+            queueStats.forwarded.increment();
+            if (waited > queueStats.maxWaitNanos) {
+                queueStats.maxWaitNanos = waited;
+            }
+            try {
+                sink.forward(entry);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Error forwarding message " + entry.messageId + ": " + e.getMessage());
+            }
+            if (System.nanoTime() - lastReportNanos > REPORT_INTERVAL_NANOS) {
+                lastReportNanos = System.nanoTime();
+                System.out.println("📊 Egress " + describe());
+            }
+        }
+    }
+
+    // Called with the lock held and at least one entry queued
+    private Entry next() {
+        if (mode == Mode.WEIGHTED) {
+            for (int pass = 0; pass < 2; pass++) {
+                for (int level = LEVELS.length - 1; level >= 0; level--) {
+                    if (credits[level] > 0 && !queues[level].isEmpty()) {
+                        credits[level]--;
+                        return take(level);
+                    }
+                }
+                // Every backlogged queue used its share for this round
+                System.arraycopy(weights, 0, credits, 0, weights.length);
+            }
+        }
+        for (int level = LEVELS.length - 1; level >= 0; level--) {
+            if (!queues[level].isEmpty()) {
+                return take(level);
+            }
+        }
+        throw new IllegalStateException("Egress queues are empty");
+    }
+
+    private Entry take(int level) {
+        Entry entry = queues[level].pollFirst();
+        stats[level].depth = queues[level].size();
+        return entry;
+    }
+
+    QueueStats stats(PriorityLevel priority) {
+        return stats[priority.ordinal()];
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    String describe() {
+        StringBuilder text = new StringBuilder();
+        for (int level = LEVELS.length - 1; level >= 0; level--) {
+            QueueStats queueStats = stats[level];
+            text.append(String.format("%s depth=%d wait avg=%dµs max=%dµs shed=%d  ", LEVELS[level],
+                    queueStats.depth(), queueStats.meanWaitMicros(), queueStats.maxWaitMicros(), queueStats.shed()));
+        }
+        return text.toString().trim();
+    }
+}
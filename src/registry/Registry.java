@@ -1,65 +1,515 @@
 package registry;
 
+import common.AckRanges;
+import common.Fragmenter;
+import common.Frame;
+import common.EpochClock;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.Reassembler;
+import common.SubscribeRequest;
+import common.WireCodec;
+import common.filter.MessageFilter;
+import config.AppConfig;
+import metrics.Metrics;
+import metrics.StatsQuery;
+import metrics.TopicMetrics;
+import registry.cluster.Cluster;
+import registry.log.LogManager;
+import registry.log.TopicLog;
+import trace.Trace;
+import trace.TraceEvent;
+
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class Registry {
-    private static final int REGISTRY_PORT = 5001;
-    private static final Map<String, Set<InetAddress>> topicSubscribers = new HashMap<>();
+    private static final int DEFAULT_PORT = 5001;
+    // Topic filters may use "+" for one level and "#" for the rest, e.g. "sports/+/goals"
+    // Each topic's subscribers are grouped by message filter once per subscription change
+    private static final SubscriptionTable<Subscription, FanOutPlan> topicSubscribers =
+            new SubscriptionTable<>(FanOutPlan::of);
+    // Current subscription of each subscriber address per topic filter, so a changed
+    // message filter replaces the old one; only touched by the receive thread
+    private static final Map<String, Map<InetSocketAddress, Subscription>> registrations = new HashMap<>();
+    // When each subscriber was last heard from (a SUBSCRIBE, credit or multicast control);
+    // only touched by the receive thread. Those silent for longer than the expiry are dropped.
+    private static final Map<InetSocketAddress, Long> lastHeard = new HashMap<>();
+    private static final long subscriptionExpiryNanos =
+            TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("registry.subscription.expiryMs", 60_000));
+    private static long nextExpiryCheck = System.nanoTime();
+    private static final Frame egressFrame = new Frame();
+    private static final List<InetSocketAddress> egressTargets = new ArrayList<>();
+    // Every published frame is appended here so subscribers can replay from an offset or time
+    private static LogManager topicLogs;
+    // Fan-out runs on the egress thread so HIGH frames can overtake a backlog of LOW ones
+    private static PriorityEgress egress;
+    // Topic ownership among registry instances; null when the registry runs without a socket loop
+    private static Cluster cluster;
+    // Sends topics with many subscribers to a multicast group; null unless enabled
+    private static MulticastFanOut multicast;
+    // Paces subscribers that advertise receive credit; null when flow control is off
+    private static FlowControl flow;
+    // Saves subscriptions so a restarted registry routes to them at once; null when disabled
+    private static SubscriptionStore subscriptionStore;
+    // Frames over the MTU arrive as fragments and leave as fragments
+    private static final Fragmenter fragmenter = Fragmenter.fromConfig();
+    private static final Reassembler reassembler = Reassembler.fromConfig();
+    // Replays read the log off the receive thread so live traffic keeps flowing
+    private static final ExecutorService replayExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "registry-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
 
+    // Usage: Registry [port [seed-host:port ...]]. Instances given each other as seeds
+    // (or through registry.cluster.seeds) split the topics between them.
     public static void main(String[] args) {
-        try (DatagramSocket socket = new DatagramSocket(REGISTRY_PORT)) {
-            System.out.println("✅ Registry started on port: " + REGISTRY_PORT);
-            byte[] buffer = new byte[1024];
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : AppConfig.getInt("registry.port", DEFAULT_PORT);
+        List<String> seeds = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : List.of();
+        // Extra instances on other ports get their own topic log directory
+        String logSuffix = port == AppConfig.getInt("registry.port", DEFAULT_PORT) ? "" : "-" + port;
+        try (DatagramSocket socket = new DatagramSocket(port);
+             LogManager logs = LogManager.fromConfig(logSuffix);
+             SubscriptionStore state = SubscriptionStore.fromConfig(logSuffix);
+             Cluster peers = Cluster.fromConfig(port, seeds, socket, fragmenter)) {
+            topicLogs = logs;
+            cluster = peers;
+            if (state != null) {
+                restore(state);
+                state.start();
+                subscriptionStore = state;
+            }
+            egress = PriorityEgress.fromConfig(entry -> forward(entry, socket));
+            egress.start();
+            flow = FlowControl.fromConfig(socket, (entry, subscriber) -> sendCopy(socket, entry, subscriber));
+            if (flow != null) {
+                flow.start();
+            }
+            multicast = MulticastFanOut.fromConfig(socket, fragmenter);
+            if (multicast != null) {
+                multicast.start();
+            }
+            Cluster.Listener listener = clusterListener(socket);
+            peers.start();
+            System.out.println("✅ Registry started on port: " + port + " (" + egress.mode() + " egress scheduling, "
+                    + peers.ring() + (multicast == null ? "" : ", multicast from "
+                    + multicast.threshold() + " subscribers") + ")");
+            byte[] buffer = new byte[WireCodec.MAX_DATAGRAM_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(buffer);
+            Frame frame = new Frame();
+            Frame batchEntry = new Frame();
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
 
             while (true) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                packet.setData(buffer);
                 socket.receive(packet);
-                String received = new String(packet.getData(), 0, packet.getLength());
-                processMessage(received, packet.getAddress(), socket);
+                view.limit(packet.getLength()).position(0);
+                if (!WireCodec.decode(view, frame)) {
+                    continue;
+                }
+                if (frame.type() == MessageType.STATS) {
+                    replyStats(socket, frame, packet);
+                    continue;
+                }
+                if (frame.type() != MessageType.FRAGMENT) {
+                    receive(frame, batchEntry, packet, socket, listener);
+                    continue;
+                }
+                // processMessage copies what it keeps, so the rebuilt frame goes straight back to the pool
+                ByteBuffer whole = reassembler.accept(frame, (InetSocketAddress) packet.getSocketAddress());
+                if (whole != null) {
+                    try {
+                        if (WireCodec.decode(whole, frame) && frame.type() != MessageType.FRAGMENT) {
+                            receive(frame, batchEntry, packet, socket, listener);
+                        }
+                    } finally {
+                        reassembler.release(whole);
+                    }
+                }
             }
         } catch (Exception e) {
             System.err.println("❌ Registry Error: " + e.getMessage());
         }
     }
 
-    private static void processMessage(String message, InetAddress senderAddress, DatagramSocket socket) {
-        String[] parts = message.split(":");
+    // The packet is the datagram (or last fragment) the frame arrived in
+    private static void receive(Frame frame, Frame batchEntry, DatagramPacket packet, DatagramSocket socket,
+            Cluster.Listener listener) {
+        InetSocketAddress senderAddress = (InetSocketAddress) packet.getSocketAddress();
+        if (subscriptionExpiryNanos > 0) {
+            long now = System.nanoTime();
+            if (now - nextExpiryCheck >= 0) {
+                expireSilent(now);
+                nextExpiryCheck = now + subscriptionExpiryNanos / 4;
+            }
+        }
+        if (frame.type() == MessageType.CLUSTER) {
+            cluster.onMessage(frame, senderAddress, listener);
+        } else if (frame.type() == MessageType.MULTICAST) {
+            lastHeard.replace(senderAddress, System.nanoTime());
+            if (multicast != null) {
+                multicast.onControl(frame, senderAddress);
+            }
+        } else if (frame.type() == MessageType.FLOW) {
+            lastHeard.replace(senderAddress, System.nanoTime());
+            if (flow != null) {
+                flow.onCredit(frame, senderAddress);
+            }
+        } else if (frame.type() == MessageType.ACK) {
+            confirmAck(socket, frame, senderAddress);
+        } else if (frame.type() == MessageType.BATCH) {
+            int cursor = frame.payloadOffset();
+            while ((cursor = WireCodec.nextBatchEntry(frame, cursor, batchEntry)) >= 0) {
+                if (flow != null && batchEntry.type() == MessageType.PUBLISH) {
+                    flow.recordPublisher(batchEntry.topic(), senderAddress);
+                }
+                processMessage(batchEntry, senderAddress, socket);
+            }
+        } else {
+            if (flow != null && frame.type() == MessageType.PUBLISH) {
+                flow.recordPublisher(frame.topic(), senderAddress);
+            }
+            processMessage(frame, senderAddress, socket);
+        }
+    }
+
+    // Package-private so benchmarks can drive the registry without a socket receive loop.
+    // Frames for topics another instance owns are forwarded there instead.
+    static void processMessage(Frame frame, InetSocketAddress senderAddress, DatagramSocket socket) {
+        if (cluster != null && (frame.type() == MessageType.PUBLISH || frame.type() == MessageType.SUBSCRIBE)
+                && !cluster.owns(frame.topic())) {
+            cluster.forward(frame, senderAddress);
+            return;
+        }
+        processOwned(frame, senderAddress, socket);
+    }
+
+    private static void processOwned(Frame frame, InetSocketAddress senderAddress, DatagramSocket socket) {
+        if (frame.type() == MessageType.SUBSCRIBE) {
+            String topic = frame.topic();
+            try {
+                SubscribeRequest request = SubscribeRequest.decode(frame);
+                if (register(topic, new Subscription(senderAddress, request.filter()))) {
+                    System.out.println("✅ Subscriber registered for topic: " + topic
+                            + (request.filter().acceptsAll() ? "" : " with filter " + request.filter()));
+                }
+                if (cluster != null) {
+                    cluster.recordSubscription(topic, senderAddress,
+                            request.filter().acceptsAll() ? "" : request.filter().expression());
+                }
+                if (request.replayMode() != SubscribeRequest.ReplayMode.NONE) {
+                    startReplay(topic, request, senderAddress, socket);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("❌ Rejected subscription: " + e.getMessage());
+            }
+        } else if (frame.type() == MessageType.PUBLISH) {
+            String topic = frame.topic();
+            Trace.record(TraceEvent.REGISTRY_RECEIVED, null, topic, frame.messageId(), frame.priority().ordinal(),
+                    frame.payloadLength());
+
+            if (topicLogs != null) {
+                topicLogs.append(topic, frame.buffer(), frame.start(), frame.length(), EpochClock.nowNanos());
+            }
+
+            // Shed messages are counted in the egress stats rather than logged one by one.
+            // A topic.<name>.priority setting overrides the priority it was published with.
+            PriorityLevel priority = AppConfig.snapshot().topic(topic).priorityOr(frame.priority());
+            egress.offer(PriorityEgress.Entry.copyOf(frame, topic, priority, senderAddress));
+        }
+    }
+
+    // Adds the subscription, replacing the subscriber's previous one for the same topic
+    // filter; returns whether it is new
+    private static boolean register(String topic, Subscription subscription) {
+        lastHeard.put(subscription.address, System.nanoTime());
+        boolean added = topicSubscribers.subscribe(topic, subscription);
+        Subscription previous = registrations.computeIfAbsent(topic, t -> new HashMap<>())
+                .put(subscription.address, subscription);
+        if (previous != null && !previous.equals(subscription)) {
+            topicSubscribers.unsubscribe(topic, previous);
+        }
+        if (added && subscriptionStore != null) {
+            subscriptionStore.record(topic, subscription.address,
+                    subscription.filter.acceptsAll() ? "" : subscription.filter.expression());
+        }
+        return added;
+    }
 
-        if (parts[0].equals("SUBSCRIBE") && parts.length == 2) {
-            String topic = parts[1];
-            topicSubscribers.computeIfAbsent(topic, k -> new HashSet<>()).add(senderAddress);
-            System.out.println("✅ Subscriber registered for topic: " + topic);
-        } else if (parts[0].equals("PUBLISH") && parts.length >= 4) {
-            String topic = parts[1];
-            String content = parts[2];
-            int messageId = Integer.parseInt(parts[3]);
+    // Drops every subscription of the subscribers not heard from within the expiry, so one
+    // that went away without a word stops being a fan-out target, here, on the other
+    // instances and after a restart
+    private static void expireSilent(long now) {
+        Set<InetSocketAddress> silent = new HashSet<>();
+        for (Map.Entry<InetSocketAddress, Long> heard : lastHeard.entrySet()) {
+            if (now - heard.getValue() > subscriptionExpiryNanos) {
+                silent.add(heard.getKey());
+            }
+        }
+        if (silent.isEmpty()) {
+            return;
+        }
+        lastHeard.keySet().removeAll(silent);
+        int expired = 0;
+        for (Iterator<Map.Entry<String, Map<InetSocketAddress, Subscription>>> topics =
+                registrations.entrySet().iterator(); topics.hasNext(); ) {
+            Map.Entry<String, Map<InetSocketAddress, Subscription>> topic = topics.next();
+            for (Iterator<Subscription> subscriptions = topic.getValue().values().iterator();
+                    subscriptions.hasNext(); ) {
+                Subscription subscription = subscriptions.next();
+                if (!silent.contains(subscription.address)) {
+                    continue;
+                }
+                subscriptions.remove();
+                topicSubscribers.unsubscribe(topic.getKey(), subscription);
+                if (subscriptionStore != null) {
+                    subscriptionStore.remove(topic.getKey(), subscription.address);
+                }
+                if (cluster != null) {
+                    cluster.recordRemoval(topic.getKey(), subscription.address);
+                }
+                expired++;
+            }
+            if (topic.getValue().isEmpty()) {
+                topics.remove();
+            }
+        }
+        System.out.println("🧹 Expired " + expired + " subscription(s) of " + silent.size()
+                + " subscriber(s) not heard from in " + TimeUnit.NANOSECONDS.toSeconds(subscriptionExpiryNanos) + " s");
+    }
 
-            System.out.println("📥 Registry received message: " + content);
+    // Loads the saved subscriptions into both tables in one swap, so the first publish after
+    // a restart already reaches every subscriber without waiting for them to resubscribe
+    private static void restore(SubscriptionStore state) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Map<InetSocketAddress, String>> saved = state.load();
+        // Subscribers mostly share a handful of filters, so each is compiled once
+        Map<String, MessageFilter> filters = new HashMap<>();
+        Map<String, List<Subscription>> subscriptions = new HashMap<>();
+        for (Map.Entry<String, Map<InetSocketAddress, String>> topic : saved.entrySet()) {
+            Map<InetSocketAddress, Subscription> bySubscriber = registrations.computeIfAbsent(topic.getKey(),
+                    t -> new HashMap<>());
+            List<Subscription> list = new ArrayList<>(topic.getValue().size());
+            for (Map.Entry<InetSocketAddress, String> subscriber : topic.getValue().entrySet()) {
+                Subscription subscription = new Subscription(subscriber.getKey(),
+                        filters.computeIfAbsent(subscriber.getValue(), Registry::compileSaved));
+                bySubscriber.put(subscriber.getKey(), subscription);
+                list.add(subscription);
+                // Restored subscribers get a full expiry to renew
+                lastHeard.put(subscriber.getKey(), start);
+            }
+            subscriptions.put(topic.getKey(), list);
+        }
+        int restored;
+        try {
+            restored = topicSubscribers.subscribeAll(subscriptions);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ Ignoring saved subscriptions: " + e.getMessage());
+            registrations.clear();
+            lastHeard.clear();
+            return;
+        }
+        if (restored > 0) {
+            System.out.println("📂 Restored " + restored + " subscriptions on " + saved.size() + " topic filters in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
 
-            if (!topicSubscribers.containsKey(topic)) {
-                System.out.println("⚠️ No subscribers for topic: " + topic);
+    private static MessageFilter compileSaved(String expression) {
+        try {
+            return expression.isEmpty() ? MessageFilter.ACCEPT_ALL : MessageFilter.compile(expression);
+        } catch (IllegalArgumentException e) {
+            return MessageFilter.ACCEPT_ALL;
+        }
+    }
+
+    // Subscriptions gossiped by other instances land in the same table, so whichever
+    // instance owns a topic, now or after a failover, knows all of its subscribers
+    private static Cluster.Listener clusterListener(DatagramSocket socket) {
+        return new Cluster.Listener() {
+            @Override
+            public void onSubscription(String topic, InetSocketAddress subscriber, String expression) {
+                MessageFilter filter;
+                try {
+                    filter = expression.isEmpty() ? MessageFilter.ACCEPT_ALL : MessageFilter.compile(expression);
+                } catch (IllegalArgumentException e) {
+                    filter = MessageFilter.ACCEPT_ALL;
+                }
+                if (register(topic, new Subscription(subscriber, filter))) {
+                    System.out.println("✅ Subscriber registered for topic: " + topic + " (via cluster)");
+                }
+            }
+
+            @Override
+            public void onUnsubscription(String topic, InetSocketAddress subscriber) {
+                Map<InetSocketAddress, Subscription> bySubscriber = registrations.get(topic);
+                Subscription removed = bySubscriber == null ? null : bySubscriber.remove(subscriber);
+                if (removed == null) {
+                    return;
+                }
+                if (bySubscriber.isEmpty()) {
+                    registrations.remove(topic);
+                }
+                topicSubscribers.unsubscribe(topic, removed);
+                if (subscriptionStore != null) {
+                    subscriptionStore.remove(topic, subscriber);
+                }
+                System.out.println("🧹 Subscriber removed from topic: " + topic + " (via cluster)");
+            }
+
+            @Override
+            public void onForwarded(Frame frame, InetSocketAddress originalSender) {
+                processOwned(frame, originalSender, socket);
+            }
+        };
+    }
+
+    // Runs on the egress thread; the frame is forwarded as received, so it is encoded exactly once.
+    // Subscriber filters are evaluated here, once per distinct filter, and only matching
+    // subscribers are sent to. Frames over the MTU are split once for every subscriber.
+    // Topics with enough subscribers for multicast are sent to their group instead.
+    static void forward(PriorityEgress.Entry entry, DatagramSocket socket) {
+        FanOutPlan plan = topicSubscribers.planOf(entry.topic);
+        if (plan == null) {
+            Trace.record(TraceEvent.NO_SUBSCRIBERS, null, entry.topic, entry.messageId);
+            return;
+        }
+        // Entries are copies of frames that already decoded once, so this cannot fail
+        if (plan.filtered()) {
+            WireCodec.decode(ByteBuffer.wrap(entry.frame), egressFrame);
+        }
+        List<InetSocketAddress> subscribers = egressTargets;
+        subscribers.clear();
+        plan.select(egressFrame, EpochClock.nowNanos(), subscribers);
+        TopicMetrics metrics = Metrics.topic(entry.topic);
+        if (subscribers.size() < plan.subscribers()) {
+            metrics.record(Metrics.Event.FILTERED, entry.priority, plan.subscribers() - subscribers.size());
+        }
+        if (subscribers.isEmpty()) {
+            return;  // Every subscriber's filter rejected it
+        }
+        metrics.record(Metrics.Event.FORWARDED, entry.priority, subscribers.size());
+        // Multicast topics go out once; what is left are subscribers that never joined the group
+        if (multicast != null && multicast.send(entry, plan, subscribers) && subscribers.isEmpty()) {
+            return;
+        }
+        // Subscribers that advertise credit get their copy when their pace allows
+        if (flow != null) {
+            flow.divert(entry, subscribers);
+            if (subscribers.isEmpty()) {
                 return;
             }
+        }
+        if (fragmenter.fits(entry.frame.length)) {
+            DatagramPacket packet = new DatagramPacket(entry.frame, entry.frame.length);
+            for (int i = 0; i < subscribers.size(); i++) {
+                forwardMessage(socket, packet, entry.messageId, subscribers.get(i));
+            }
+            return;
+        }
+        ByteBuffer fragments = fragmenter.split(ByteBuffer.wrap(entry.frame));
+        DatagramPacket packet = new DatagramPacket(fragments.array(), 0);
+        for (int i = 0; i < subscribers.size(); i++) {
+            for (int start = 0; start < fragments.limit(); start += fragmenter.mtu()) {
+                packet.setData(fragments.array(), start, Math.min(fragmenter.mtu(), fragments.limit() - start));
+                forwardMessage(socket, packet, entry.messageId, subscribers.get(i));
+            }
+        }
+    }
 
-            for (InetAddress subscriber : topicSubscribers.get(topic)) {
-                forwardMessage(socket, topic, content, messageId, subscriber);
+    // The end offset is taken on the log writer once every frame received before the subscription
+    // is stored, so no message falls between replay and live forwarding; frames still queued for
+    // egress may arrive twice
+    private static void startReplay(String filter, SubscribeRequest request, InetSocketAddress target,
+            DatagramSocket socket) {
+        if (topicLogs == null) {
+            System.err.println("⚠️ Replay requested for " + filter + " but the topic log is disabled");
+            return;
+        }
+        LogManager logs = topicLogs;
+        logs.afterQueued(() -> scheduleReplay(logs, filter, request, target, socket));
+    }
+
+    private static void scheduleReplay(LogManager logs, String filter, SubscribeRequest request,
+            InetSocketAddress target, DatagramSocket socket) {
+        for (TopicLog log : logs.logsMatching(filter)) {
+            long endOffset = log.nextOffset();
+            long fromOffset = request.replayMode() == SubscribeRequest.ReplayMode.FROM_TIME
+                    ? log.offsetForTime(request.replayFrom())
+                    : Math.max(request.replayFrom(), log.startOffset());
+            if (fromOffset < endOffset) {
+                replayExecutor.execute(new ReplayTask(log, fromOffset, endOffset, target, socket, fragmenter,
+                        request.filter()));
             }
         }
     }
 
-    private static void forwardMessage(DatagramSocket socket, String topic, String content, int messageId, InetAddress subscriberAddress) {
+    // Live copies name their publisher, so ACKs only end up here for messages replayed from
+    // the log, whose publishers have long stopped waiting. Confirming them stops the resends.
+    private static void confirmAck(DatagramSocket socket, Frame ack, InetSocketAddress subscriber) {
+        byte[] topic = WireCodec.topicBytes(ack.topic());
+        ByteBuffer confirm;
+        if (AckRanges.isAggregate(ack)) {
+            confirm = ByteBuffer.allocate(AckRanges.encodedSize(topic.length, AckRanges.count(ack)));
+            AckRanges.encodeConfirm(confirm, topic, ack);
+        } else {
+            confirm = ByteBuffer.allocate(WireCodec.frameSize(topic.length, 0));
+            WireCodec.encodeAckConfirm(confirm, topic, ack.messageId());
+        }
+        confirm.flip();
+        try {
+            socket.send(new DatagramPacket(confirm.array(), confirm.limit(), subscriber));
+        } catch (Exception e) {
+            System.err.println("❌ Error confirming ACK: " + e.getMessage());
+        }
+    }
+
+    // Answered on the receive thread; the report is built from counters, not from registry state
+    private static void replyStats(DatagramSocket socket, Frame request, DatagramPacket from) {
+        try {
+            ByteBuffer reply = StatsQuery.reply(request);
+            socket.send(new DatagramPacket(reply.array(), reply.limit(), from.getSocketAddress()));
+        } catch (Exception e) {
+            System.err.println("❌ Error answering STATS query: " + e.getMessage());
+        }
+    }
+
+    // One copy to one subscriber, as the pacer sends them
+    private static void sendCopy(DatagramSocket socket, PriorityEgress.Entry entry, InetSocketAddress subscriber) {
+        if (fragmenter.fits(entry.frame.length)) {
+            forwardMessage(socket, new DatagramPacket(entry.frame, entry.frame.length), entry.messageId, subscriber);
+            return;
+        }
+        ByteBuffer fragments = fragmenter.split(ByteBuffer.wrap(entry.frame));
+        DatagramPacket packet = new DatagramPacket(fragments.array(), 0);
+        for (int start = 0; start < fragments.limit(); start += fragmenter.mtu()) {
+            packet.setData(fragments.array(), start, Math.min(fragmenter.mtu(), fragments.limit() - start));
+            forwardMessage(socket, packet, entry.messageId, subscriber);
+        }
+    }
+
+    // Subscribers are addressed at the port their SUBSCRIBE came from
+    private static void forwardMessage(DatagramSocket socket, DatagramPacket packet, int messageId,
+            InetSocketAddress subscriberAddress) {
         try {
-            String forwardedMessage = "PUBLISH:" + topic + ":" + content + ":" + messageId;
-            byte[] buffer = forwardedMessage.getBytes();
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, subscriberAddress, 5003);
+            packet.setSocketAddress(subscriberAddress);
             socket.send(packet);
-            System.out.println("📤 Forwarded to Subscriber: " + content);
+            Trace.record(TraceEvent.REGISTRY_FORWARDED, null, subscriberAddress, messageId);
         } catch (Exception e) {
             System.err.println("❌ Error forwarding message: " + e.getMessage());
         }
@@ -0,0 +1,128 @@
+package registry;
+
+import common.EpochClock;
+import common.Fragmenter;
+import common.Frame;
+import common.WireCodec;
+import common.filter.MessageFilter;
+import registry.log.TopicLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+// Streams a range of a topic log to one subscriber. Stored frames are read in
+// bulk straight from the mapped segments and packed into BATCH datagrams, so a
+// replay costs one send per datagram rather than one per message. Datagrams are
+// kept to the MTU; frames larger than that are sent as fragments. The subscriber's
+// filter applies to replayed messages as it does to live ones.
+final class ReplayTask implements Runnable {
+    // Short pause after this many datagrams so a bulk replay does not overrun the subscriber's socket
+    private static final int DATAGRAMS_PER_PAUSE = 64;
+
+    private final TopicLog log;
+    private final long fromOffset;
+    private final long endOffset;
+    private final InetSocketAddress target;
+    private final DatagramSocket socket;
+    private final Fragmenter fragmenter;
+    private final MessageFilter filter;
+    private final Frame view = new Frame();
+    private final ByteBuffer batch;
+    private final DatagramPacket packet;
+    private int entries;
+    private int datagrams;
+
+    ReplayTask(TopicLog log, long fromOffset, long endOffset, InetSocketAddress target, DatagramSocket socket,
+            Fragmenter fragmenter, MessageFilter filter) {
+        this.log = log;
+        this.fromOffset = fromOffset;
+        this.endOffset = endOffset;
+        this.target = target;
+        this.socket = socket;
+        this.fragmenter = fragmenter;
+        this.filter = filter;
+        this.batch = ByteBuffer.allocate(fragmenter.mtu());
+        this.packet = new DatagramPacket(batch.array(), 0, target);
+    }
+
+    @Override
+    public void run() {
+        try {
+            long replayed = log.read(fromOffset, endOffset, this::add);
+            sendBatch();
+            System.out.println("⏪ Replayed " + replayed + " message(s) of " + log.topic() + " to " + target);
+        } catch (UncheckedIOException e) {
+            System.err.println("❌ Replay of " + log.topic() + " to " + target + " failed: " + e.getMessage());
+        }
+    }
+
+    private boolean add(long offset, long timestampNanos, ByteBuffer frame) {
+        if (!filter.acceptsAll() && (!WireCodec.decode(frame, view) || !filter.matches(view, EpochClock.nowNanos()))) {
+            return true;
+        }
+        if (entries > 0 && WireCodec.appendToBatch(batch, 0, frame)) {
+            entries++;
+            return true;
+        }
+        sendBatch();
+        if (WireCodec.BATCH_HEADER_SIZE + WireCodec.BATCH_ENTRY_OVERHEAD + frame.remaining() > batch.capacity()) {
+            // Too large to batch; mapped frames are copied since the packet needs a heap array
+            if (fragmenter.fits(frame.remaining())) {
+                send(copy(frame));
+            } else {
+                sendFragments(fragmenter.split(frame));
+            }
+            return true;
+        }
+        batch.clear();
+        WireCodec.beginBatch(batch);
+        WireCodec.appendToBatch(batch, 0, frame);
+        entries = 1;
+        return true;
+    }
+
+    private void sendBatch() {
+        if (entries == 0) {
+            return;
+        }
+        batch.flip();
+        if (entries == 1) {
+            batch.position(WireCodec.BATCH_HEADER_SIZE + WireCodec.BATCH_ENTRY_OVERHEAD);
+        }
+        send(batch);
+        entries = 0;
+    }
+
+    // Fragments are split back to back, each exactly mtu bytes except the last
+    private void sendFragments(ByteBuffer fragments) {
+        int total = fragments.limit();
+        for (int start = 0; start < total; start += fragmenter.mtu()) {
+            send(fragments.limit(Math.min(start + fragmenter.mtu(), total)).position(start));
+        }
+    }
+
+    private void send(ByteBuffer datagram) {
+        try {
+            packet.setData(datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining());
+            socket.send(packet);
+            if (++datagrams % DATAGRAMS_PER_PAUSE == 0) {
+                Thread.sleep(1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Replay interrupted", e));
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame.duplicate()).flip();
+        return copy;
+    }
+}
@@ -0,0 +1,37 @@
+package registry;
+
+import common.filter.MessageFilter;
+
+import java.net.InetSocketAddress;
+
+// One subscriber's registration for a topic filter, with the message filter it pushed
+// down. The address is the one its SUBSCRIBE came from, port included, so subscribers
+// sharing a host are told apart. Equal addresses with equal filters are the same subscription.
+final class Subscription {
+    final InetSocketAddress address;
+    final MessageFilter filter;
+
+    Subscription(InetSocketAddress address, MessageFilter filter) {
+        this.address = address;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Subscription)) {
+            return false;
+        }
+        Subscription that = (Subscription) other;
+        return address.equals(that.address) && filter.equals(that.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * address.hashCode() + filter.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return address.getAddress().getHostAddress() + ":" + address.getPort() + (filter.acceptsAll() ? "" : " [" + filter + "]");
+    }
+}
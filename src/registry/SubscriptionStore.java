@@ -0,0 +1,416 @@
+package registry;
+
+import config.AppConfig;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+// Keeps the registry's subscriptions across restarts as a snapshot plus a journal of the
+// changes made since. The receive thread only queues each change; a writer thread appends
+// it to the journal, forces the journal to disk every flush interval and, after
+// snapshotEvery changes, writes a new snapshot and empties the journal. The writer keeps
+// its own copy of the state to snapshot from, so it never reads the registry's tables.
+//
+// A change is "this subscriber's filter for this topic filter is now X" or "this subscriber
+// no longer has one", so replaying one that the snapshot already reflects does no harm: a
+// crash between writing a snapshot and emptying the journal loses nothing. A torn record at
+// the end of the journal, from a crash mid-write, ends the replay and is cut off before
+// appending resumes.
+//
+// Journal record: i32 body length | i32 CRC-32C of body | body
+//                 where the body is topic, address, u16 port and filter expression, the
+//                 expression's length being -1 for a removal
+// Snapshot:       i32 magic | i32 version | i32 expression count | expressions
+//                 | i32 topic count | per topic: topic, i32 subscriber count, subscribers
+//                 | i32 CRC-32C of everything before it
+// where a subscriber is an address, u16 port and i32 index of its filter expression,
+// strings are i32 length | UTF-8 and addresses are u8 length | bytes.
+final class SubscriptionStore implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SubscriptionStore.class.getName());
+    private static final int MAGIC = 0xDD55_0B5E;
+    private static final int VERSION = 1;
+    private static final String SNAPSHOT = "subscriptions.snapshot";
+    private static final String JOURNAL = "subscriptions.journal";
+    // Changes waiting for the writer; past this the receive thread drops them rather than wait
+    private static final int MAX_QUEUED = 1 << 16;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private static final class Change {
+        final String topic;
+        final InetSocketAddress subscriber;
+        // Null when the subscription was removed
+        final String expression;
+
+        Change(String topic, InetSocketAddress subscriber, String expression) {
+            this.topic = topic;
+            this.subscriber = subscriber;
+            this.expression = expression;
+        }
+    }
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final int snapshotEvery;
+    private final long flushIntervalNanos;
+    private final LinkedBlockingQueue<Change> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    // Topic filter -> subscriber -> filter expression; the writer's own copy once started
+    private final Map<String, Map<InetSocketAddress, String>> state = new HashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+    private FileChannel journal;
+    // Where the journal's valid records end, as found by load
+    private long journalEnd;
+    private int journaled;
+    private long dropped;
+    private volatile boolean running;
+    private Thread writer;
+
+    SubscriptionStore(Path dir, int snapshotEvery, long flushIntervalMs) throws IOException {
+        Files.createDirectories(dir);
+        this.snapshotPath = dir.resolve(SNAPSHOT);
+        this.journalPath = dir.resolve(JOURNAL);
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMs));
+    }
+
+    // Returns null when persistence is disabled in config.properties. Registry instances
+    // sharing a host and a config keep their state apart with a suffix.
+    static SubscriptionStore fromConfig(String directorySuffix) throws IOException {
+        if (!AppConfig.getBoolean("registry.state.enabled", true)) {
+            return null;
+        }
+        return new SubscriptionStore(
+                Paths.get(AppConfig.getString("registry.state.dir", "data/registry-state") + directorySuffix),
+                AppConfig.getInt("registry.state.snapshotEvery", 100_000),
+                AppConfig.getLong("registry.state.flushIntervalMs", 1000));
+    }
+
+    // The saved subscriptions, as topic filter -> subscriber -> filter expression. Call once,
+    // before start; the map belongs to the store afterwards.
+    Map<String, Map<InetSocketAddress, String>> load() throws IOException {
+        if (Files.exists(snapshotPath)) {
+            try {
+                readSnapshot(ByteBuffer.wrap(Files.readAllBytes(snapshotPath)));
+            } catch (IllegalArgumentException | BufferUnderflowException | UnknownHostException e) {
+                LOGGER.warning("⚠️ Ignoring unreadable subscription snapshot " + snapshotPath + ": " + e.getMessage());
+                state.clear();
+            }
+        }
+        if (Files.exists(journalPath)) {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+            journaled = replay(records);
+            journalEnd = records.position();
+            if (records.hasRemaining()) {
+                LOGGER.warning("⚠️ Dropping " + records.remaining() + " torn byte(s) at the end of " + journalPath);
+            }
+        }
+        return state;
+    }
+
+    void start() throws IOException {
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.truncate(journalEnd);
+        journal.position(journalEnd);
+        running = true;
+        writer = new Thread(this::writeLoop, "registry-state");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Called on the receive thread; never blocks
+    void record(String topic, InetSocketAddress subscriber, String expression) {
+        offer(new Change(topic, subscriber, expression));
+    }
+
+    void remove(String topic, InetSocketAddress subscriber) {
+        offer(new Change(topic, subscriber, null));
+    }
+
+    private void offer(Change change) {
+        if (!queue.offer(change) && dropped++ % 10_000 == 0) {
+            LOGGER.warning("⚠️ Subscription journal is " + MAX_QUEUED + " changes behind; " + dropped
+                    + " change(s) not saved");
+        }
+    }
+
+    private void writeLoop() {
+        long lastForce = System.nanoTime();
+        while (running || !queue.isEmpty()) {
+            try {
+                Change change = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                while (change != null) {
+                    append(change);
+                    change = queue.poll();
+                }
+                writeOut();
+                long now = System.nanoTime();
+                if (now - lastForce >= flushIntervalNanos) {
+                    journal.force(false);
+                    lastForce = now;
+                }
+                if (journaled >= snapshotEvery) {
+                    snapshot();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                LOGGER.severe("🚨 Error saving subscriptions to " + journalPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void append(Change change) throws IOException {
+        apply(change.topic, change.subscriber, change.expression);
+        byte[] topic = change.topic.getBytes(StandardCharsets.UTF_8);
+        byte[] address = change.subscriber.getAddress().getAddress();
+        byte[] expression = change.expression == null
+                ? new byte[0] : change.expression.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 4 + topic.length + 1 + address.length + 2 + 4 + expression.length;
+        if (bodyLength > MAX_RECORD_BYTES) {
+            return;
+        }
+        ensureRoom(8 + bodyLength);
+        int start = out.position();
+        out.position(start + 8);
+        putBytes(out, topic);
+        putAddress(out, address, change.subscriber.getPort());
+        if (change.expression == null) {
+            out.putInt(-1);
+        } else {
+            putBytes(out, expression);
+        }
+        crc.reset();
+        crc.update(out.array(), start + 8, bodyLength);
+        out.putInt(start, bodyLength);
+        out.putInt(start + 4, (int) crc.getValue());
+        journaled++;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (out.remaining() >= bytes) {
+            return;
+        }
+        writeOut();
+        if (out.capacity() < bytes) {
+            out = ByteBuffer.allocate(bytes);
+        }
+    }
+
+    private void writeOut() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            journal.write(out);
+        }
+        out.clear();
+    }
+
+    // Writes the writer's state next to the old snapshot, swaps it in and empties the journal
+    private void snapshot() throws IOException {
+        long start = System.nanoTime();
+        Map<String, Integer> expressions = new HashMap<>();
+        List<byte[]> expressionBytes = new ArrayList<>();
+        int subscribers = 0;
+        for (Map<InetSocketAddress, String> bySubscriber : state.values()) {
+            for (String expression : bySubscriber.values()) {
+                expressions.computeIfAbsent(expression, e -> {
+                    expressionBytes.add(e.getBytes(StandardCharsets.UTF_8));
+                    return expressionBytes.size() - 1;
+                });
+            }
+            subscribers += bySubscriber.size();
+        }
+        Path temporary = snapshotPath.resolveSibling(SNAPSHOT + ".tmp");
+        CRC32C checksum = new CRC32C();
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(expressionBytes.size());
+            for (byte[] expression : expressionBytes) {
+                buffer = room(file, buffer, checksum, 4 + expression.length);
+                putBytes(buffer, expression);
+            }
+            buffer = room(file, buffer, checksum, 4);
+            buffer.putInt(state.size());
+            for (Map.Entry<String, Map<InetSocketAddress, String>> topic : state.entrySet()) {
+                byte[] name = topic.getKey().getBytes(StandardCharsets.UTF_8);
+                buffer = room(file, buffer, checksum, 4 + name.length + 4);
+                putBytes(buffer, name);
+                buffer.putInt(topic.getValue().size());
+                for (Map.Entry<InetSocketAddress, String> subscriber : topic.getValue().entrySet()) {
+                    byte[] address = subscriber.getKey().getAddress().getAddress();
+                    buffer = room(file, buffer, checksum, 1 + address.length + 2 + 4);
+                    putAddress(buffer, address, subscriber.getKey().getPort());
+                    buffer.putInt(expressions.get(subscriber.getValue()));
+                }
+            }
+            flushTo(file, buffer, checksum);
+            buffer.clear();
+            buffer.putInt((int) checksum.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            file.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.position(0);
+        journal.force(true);
+        journaled = 0;
+        LOGGER.info("💾 Saved " + subscribers + " subscription(s) on " + state.size() + " topic filter(s) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private static ByteBuffer room(FileChannel file, ByteBuffer buffer, CRC32C checksum, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        flushTo(file, buffer, checksum);
+        buffer.clear();
+        return buffer.capacity() >= bytes ? buffer : ByteBuffer.allocate(bytes);
+    }
+
+    private static void flushTo(FileChannel file, ByteBuffer buffer, CRC32C checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.array(), 0, buffer.limit());
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    private void readSnapshot(ByteBuffer snapshot) throws UnknownHostException {
+        if (snapshot.remaining() < 16 || snapshot.getInt(0) != MAGIC || snapshot.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("not a version " + VERSION + " snapshot");
+        }
+        int end = snapshot.limit() - 4;
+        CRC32C checksum = new CRC32C();
+        checksum.update(snapshot.array(), 0, end);
+        if ((int) checksum.getValue() != snapshot.getInt(end)) {
+            throw new IllegalArgumentException("checksum mismatch");
+        }
+        snapshot.limit(end).position(8);
+        String[] expressions = new String[snapshot.getInt()];
+        for (int i = 0; i < expressions.length; i++) {
+            expressions[i] = getString(snapshot);
+        }
+        int topics = snapshot.getInt();
+        for (int t = 0; t < topics; t++) {
+            String topic = getString(snapshot);
+            int count = snapshot.getInt();
+            Map<InetSocketAddress, String> bySubscriber = new HashMap<>(count * 4 / 3 + 1);
+            for (int s = 0; s < count; s++) {
+                InetSocketAddress subscriber = getAddress(snapshot);
+                int expression = snapshot.getInt();
+                if (expression < 0 || expression >= expressions.length) {
+                    throw new IllegalArgumentException("expression index " + expression + " out of range");
+                }
+                bySubscriber.put(subscriber, expressions[expression]);
+            }
+            state.put(topic, bySubscriber);
+        }
+    }
+
+    // Applies records until the first one that is incomplete or fails its checksum, and
+    // leaves the buffer's position there; returns how many were applied
+    private int replay(ByteBuffer records) {
+        int applied = 0;
+        while (records.remaining() >= 8) {
+            int start = records.position();
+            int length = records.getInt(start);
+            if (length <= 0 || length > MAX_RECORD_BYTES || length > records.remaining() - 8) {
+                break;
+            }
+            crc.reset();
+            crc.update(records.array(), start + 8, length);
+            if ((int) crc.getValue() != records.getInt(start + 4)) {
+                break;
+            }
+            ByteBuffer body = records.duplicate().limit(start + 8 + length).position(start + 8);
+            try {
+                String topic = getString(body);
+                InetSocketAddress subscriber = getAddress(body);
+                boolean removed = body.remaining() >= 4 && body.getInt(body.position()) == -1;
+                String expression = removed ? null : getString(body);
+                apply(topic, subscriber, expression);
+            } catch (IllegalArgumentException | BufferUnderflowException | UnknownHostException e) {
+                break;
+            }
+            records.position(start + 8 + length);
+            applied++;
+        }
+        return applied;
+    }
+
+    private void apply(String topic, InetSocketAddress subscriber, String expression) {
+        if (expression != null) {
+            state.computeIfAbsent(topic, t -> new HashMap<>()).put(subscriber, expression);
+            return;
+        }
+        Map<InetSocketAddress, String> bySubscriber = state.get(topic);
+        if (bySubscriber != null && bySubscriber.remove(subscriber) != null && bySubscriber.isEmpty()) {
+            state.remove(topic);
+        }
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static void putAddress(ByteBuffer buffer, byte[] address, int port) {
+        buffer.put((byte) address.length).put(address).putShort((short) port);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("string of " + length + " bytes runs past the end");
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static InetSocketAddress getAddress(ByteBuffer buffer) throws UnknownHostException {
+        byte[] address = new byte[buffer.get() & 0xFF];
+        buffer.get(address);
+        return new InetSocketAddress(InetAddress.getByAddress(address), buffer.getShort() & 0xFFFF);
+    }
+
+    // Saves what is queued and takes a final snapshot, so the next start reads no journal
+    @Override
+    public void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive()) {
+            writeOut();
+            snapshot();
+        }
+        journal.close();
+    }
+}
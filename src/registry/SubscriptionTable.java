@@ -0,0 +1,123 @@
+package registry;
+
+import common.TopicTrie;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Subscription index for the publish path. Readers take the current snapshot
+// with one volatile read and never lock; writers serialize, build a new trie
+// and swap it in. Every snapshot memoizes the subscriber list per concrete
+// topic, so a topic is matched against the trie once per subscription change,
+// and beside it the plan the planner makes of that list, which is replaced
+// along with it.
+public final class SubscriptionTable<T, P> {
+    private static final int MAX_CACHED_TOPICS = 1 << 16;
+
+    private static final class Match<T, P> {
+        final List<T> subscribers;
+        // Made on first use; a race only builds the same plan twice
+        volatile P plan;
+
+        Match(List<T> subscribers) {
+            this.subscribers = subscribers;
+        }
+    }
+
+    private static final class Snapshot<T, P> {
+        final TopicTrie<T> trie;
+        final ConcurrentHashMap<String, Match<T, P>> matches = new ConcurrentHashMap<>();
+
+        Snapshot(TopicTrie<T> trie) {
+            this.trie = trie;
+        }
+    }
+
+    private final Function<List<T>, P> planner;
+    private volatile Snapshot<T, P> snapshot = new Snapshot<>(TopicTrie.empty());
+
+    public SubscriptionTable(Function<List<T>, P> planner) {
+        this.planner = planner;
+    }
+
+    // Returns false when the subscription already existed
+    public synchronized boolean subscribe(String filter, T subscriber) {
+        TopicTrie<T> current = snapshot.trie;
+        TopicTrie<T> updated = current.add(filter, subscriber);
+        if (updated == current) {
+            return false;
+        }
+        snapshot = new Snapshot<>(updated);
+        return true;
+    }
+
+    // Adds every subscriber listed per filter in one swap; returns how many were new
+    public synchronized int subscribeAll(Map<String, ? extends Collection<T>> subscribers) {
+        TopicTrie<T> current = snapshot.trie;
+        TopicTrie<T> updated = current.addAll(subscribers);
+        if (updated == current) {
+            return 0;
+        }
+        snapshot = new Snapshot<>(updated);
+        return updated.size() - current.size();
+    }
+
+    public synchronized boolean unsubscribe(String filter, T subscriber) {
+        TopicTrie<T> current = snapshot.trie;
+        TopicTrie<T> updated = current.remove(filter, subscriber);
+        if (updated == current) {
+            return false;
+        }
+        snapshot = new Snapshot<>(updated);
+        return true;
+    }
+
+    // Subscribers of a concrete topic; the returned list is shared and immutable
+    public List<T> subscribersOf(String topic) {
+        return match(topic).subscribers;
+    }
+
+    // The plan made of a concrete topic's subscribers, or null when it has none
+    public P planOf(String topic) {
+        Match<T, P> match = match(topic);
+        if (match.subscribers.isEmpty()) {
+            return null;
+        }
+        P plan = match.plan;
+        if (plan == null) {
+            plan = planner.apply(match.subscribers);
+            match.plan = plan;
+        }
+        return plan;
+    }
+
+    private Match<T, P> match(String topic) {
+        Snapshot<T, P> current = snapshot;
+        Match<T, P> cached = current.matches.get(topic);
+        if (cached != null) {
+            return cached;
+        }
+        Set<T> matched = new LinkedHashSet<>();
+        current.trie.match(topic, matched);
+        Match<T, P> result = new Match<>(List.copyOf(matched));
+        // Bound the memo so a stream of unique topics cannot grow it without limit
+        if (current.matches.size() < MAX_CACHED_TOPICS) {
+            Match<T, P> raced = current.matches.putIfAbsent(topic, result);
+            return raced != null ? raced : result;
+        }
+        return result;
+    }
+
+    public int size() {
+        return snapshot.trie.size();
+    }
+
+    public int cachedTopics() {
+        return snapshot.matches.size();
+    }
+}
@@ -0,0 +1,411 @@
+package registry.cluster;
+
+import common.EpochClock;
+import common.Fragmenter;
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.MessageType;
+import common.WireCodec;
+import config.AppConfig;
+import trace.Trace;
+import trace.TraceEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Membership, topic ownership and subscription replication for a group of registry
+// instances. Topics are partitioned over the live members by a consistent-hash ring; a
+// PUBLISH or SUBSCRIBE that reaches an instance that does not own its topic is forwarded,
+// once, to the owner. Each gossip round an instance talks to one random peer: heartbeats
+// keep the membership view current, and a digest of the newest subscription stamp seen per
+// origin lets the pair exchange exactly the entries the other lacks. Removals travel the same
+// way, as stamped tombstones that replace the subscription under the same last-writer-wins
+// rule, so a peer that missed one cannot teach the removed subscription back. Every instance
+// thus converges on the whole subscription table and can take over topics when an owner fails.
+// An instance without seeds or peers owns every topic and behaves like a lone registry.
+public final class Cluster implements Closeable {
+    // Called on the thread that passes frames to onMessage, never with the cluster locked
+    public interface Listener {
+        // A subscription recorded by another instance; filter is an expression, "" for none
+        void onSubscription(String topic, InetSocketAddress subscriber, String filter);
+
+        // A subscription another instance removed
+        void onUnsubscription(String topic, InetSocketAddress subscriber);
+
+        // A PUBLISH or SUBSCRIBE another instance forwarded here, with its original sender
+        void onForwarded(Frame frame, InetSocketAddress originalSender);
+    }
+
+    private static final int MAX_ENTRIES_PER_MESSAGE = 256;
+
+    private final InetSocketAddress self;
+    private final List<InetSocketAddress> seeds;
+    private final DatagramSocket socket;
+    private final Fragmenter fragmenter;
+    private final int virtualNodes;
+    private final long gossipIntervalNanos;
+    private final long failureTimeoutNanos;
+    private final ScheduledExecutorService gossipTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "registry-gossip");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Membership; guarded by this
+    private final Map<InetSocketAddress, Member> members = new HashMap<>();
+    // Starts at the clock so a restarted instance outranks the heartbeat peers remember
+    private long heartbeat = EpochClock.nowNanos();
+    private volatile HashRing ring;
+
+    // Replicated subscriptions and tombstones by topic and subscriber, indexed per origin in
+    // stamp order; guarded by this. Tombstones stay until a newer subscription replaces them.
+    private final Map<String, Gossip.Entry> entries = new HashMap<>();
+    private final Map<InetSocketAddress, TreeMap<Long, Gossip.Entry>> entriesByOrigin = new HashMap<>();
+    private final Map<InetSocketAddress, Long> digest = new HashMap<>();
+    private long lastStamp;
+    private int tombstones;
+
+    // Forwarding state, only touched by the thread that calls forward and onMessage
+    private final Frame forwarded = new Frame();
+    private final ByteBuffer forwardBuffer = ByteBuffer.allocate(WireCodec.MAX_DATAGRAM_SIZE);
+
+    private static final class Member {
+        long heartbeat;
+        long lastHeardNanos;
+        boolean alive;
+    }
+
+    public Cluster(InetSocketAddress self, List<InetSocketAddress> seeds, DatagramSocket socket, Fragmenter fragmenter,
+            int virtualNodes, long gossipIntervalNanos, long failureTimeoutNanos) {
+        this.self = self;
+        this.seeds = new ArrayList<>(seeds);
+        this.seeds.remove(self);
+        this.socket = socket;
+        this.fragmenter = fragmenter;
+        this.virtualNodes = virtualNodes;
+        this.gossipIntervalNanos = gossipIntervalNanos;
+        this.failureTimeoutNanos = failureTimeoutNanos;
+        this.ring = new HashRing(List.of(self), virtualNodes);
+    }
+
+    // Seeds come from the arguments when there are any, else from registry.cluster.seeds
+    public static Cluster fromConfig(int port, List<String> seedArgs, DatagramSocket socket, Fragmenter fragmenter) {
+        String host = AppConfig.getString("registry.cluster.host", "127.0.0.1");
+        List<String> seedSpecs = new ArrayList<>(seedArgs);
+        if (seedSpecs.isEmpty()) {
+            for (String seed : AppConfig.getString("registry.cluster.seeds", "").split(",")) {
+                if (!seed.isBlank()) {
+                    seedSpecs.add(seed.trim());
+                }
+            }
+        }
+        List<InetSocketAddress> seeds = new ArrayList<>();
+        for (String seed : seedSpecs) {
+            int colon = seed.lastIndexOf(':');
+            try {
+                seeds.add(new InetSocketAddress(InetAddress.getByName(seed.substring(0, Math.max(colon, 0))),
+                        Integer.parseInt(seed.substring(colon + 1))));
+            } catch (UnknownHostException | IllegalArgumentException e) {
+                System.err.println("⚠️ Ignoring cluster seed " + seed + ": " + e.getMessage());
+            }
+        }
+        try {
+            return new Cluster(new InetSocketAddress(InetAddress.getByName(host), port), seeds, socket, fragmenter,
+                    AppConfig.getInt("registry.cluster.virtualNodes", HashRing.DEFAULT_VIRTUAL_NODES),
+                    TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("registry.cluster.gossipIntervalMs", 500)),
+                    TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("registry.cluster.failureTimeoutMs", 3000)));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown registry.cluster.host " + host, e);
+        }
+    }
+
+    public void start() {
+        gossipTimer.scheduleWithFixedDelay(this::gossipRound, 0, gossipIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public InetSocketAddress self() {
+        return self;
+    }
+
+    public HashRing ring() {
+        return ring;
+    }
+
+    public boolean owns(String topic) {
+        HashRing current = ring;
+        return current.size() == 1 || current.ownerOf(topic).equals(self);
+    }
+
+    // Hands a PUBLISH or SUBSCRIBE to the owner of its topic. The owner processes forwarded
+    // frames whatever its own ring says, so two instances that briefly disagree on
+    // ownership cannot pass a frame back and forth.
+    public void forward(Frame frame, InetSocketAddress originalSender) {
+        InetSocketAddress owner = ring.ownerOf(frame.topic());
+        int size = WireCodec.BATCH_HEADER_SIZE + 2 + originalSender.getAddress().getAddress().length + 2
+                + frame.length();
+        ByteBuffer buffer = size <= forwardBuffer.capacity() ? forwardBuffer.clear() : ByteBuffer.allocate(size);
+        WireCodec.beginCluster(buffer, frame.priority());
+        buffer.put(Gossip.FORWARD);
+        Gossip.putAddress(buffer, originalSender);
+        buffer.put(buffer.position(), frame.buffer(), frame.start(), frame.length());
+        buffer.position(buffer.position() + frame.length());
+        WireCodec.endFrame(buffer, 0);
+        buffer.flip();
+        send(buffer, owner);
+        Trace.record(TraceEvent.OWNER_FORWARDED, owner, frame.topic(), frame.type().code(), frame.messageId());
+    }
+
+    // Records a subscription this instance accepted, to be gossiped to the others
+    public synchronized void recordSubscription(String topic, InetSocketAddress subscriber, String filter) {
+        store(new Gossip.Entry(self, nextStamp(), topic, subscriber, false, filter));
+    }
+
+    // Records the removal of a subscription, to be gossiped to the others as a tombstone
+    public synchronized void recordRemoval(String topic, InetSocketAddress subscriber) {
+        store(new Gossip.Entry(self, nextStamp(), topic, subscriber, true, ""));
+    }
+
+    // Handles a CLUSTER frame from another instance
+    public void onMessage(Frame frame, InetSocketAddress from, Listener listener) {
+        if (frame.payloadLength() == 0) {
+            return;
+        }
+        ByteBuffer payload = frame.buffer().duplicate();
+        payload.limit(frame.payloadOffset() + frame.payloadLength()).position(frame.payloadOffset());
+        if (payload.get(payload.position()) == Gossip.FORWARD) {
+            onForward(payload, listener);
+            return;
+        }
+        Gossip.Message message = Gossip.decode(payload);
+        if (message == null) {
+            return;
+        }
+        List<Gossip.Entry> learned = new ArrayList<>();
+        synchronized (this) {
+            mergeMembers(message.members);
+            for (Gossip.Entry entry : message.entries) {
+                lastStamp = Math.max(lastStamp, entry.stamp);
+                if (store(entry)) {
+                    learned.add(entry);
+                }
+            }
+            if (message.kind == Gossip.SYN) {
+                sendGossip(from, Gossip.ACK, new HashMap<>(digest), missingFrom(message.digest));
+            } else if (message.kind == Gossip.ACK) {
+                sendGossip(from, Gossip.PUSH, Collections.emptyMap(), missingFrom(message.digest));
+            }
+        }
+        for (Gossip.Entry entry : learned) {
+            if (entry.removed) {
+                listener.onUnsubscription(entry.topic, entry.subscriber);
+            } else {
+                listener.onSubscription(entry.topic, entry.subscriber, entry.filter);
+            }
+        }
+    }
+
+    private void onForward(ByteBuffer payload, Listener listener) {
+        try {
+            payload.get();
+            InetSocketAddress sender = Gossip.getAddress(payload);
+            if (WireCodec.decode(payload, forwarded)
+                    && (forwarded.type() == MessageType.PUBLISH || forwarded.type() == MessageType.SUBSCRIBE)) {
+                listener.onForwarded(forwarded, sender);
+            }
+        } catch (UnknownHostException | RuntimeException e) {
+            System.err.println("⚠️ Dropped malformed forwarded frame: " + e.getMessage());
+        }
+    }
+
+    private void gossipRound() {
+        try {
+            synchronized (this) {
+                heartbeat++;
+                refreshLiveness();
+                InetSocketAddress target = pickTarget();
+                if (target != null) {
+                    sendGossip(target, Gossip.SYN, new HashMap<>(digest), Collections.emptyList());
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("❌ Gossip round failed: " + e.getMessage());
+        }
+    }
+
+    // A random live peer; seeds that are not live get a turn too, so instances that
+    // started apart still find each other
+    private InetSocketAddress pickTarget() {
+        List<InetSocketAddress> live = new ArrayList<>();
+        for (Map.Entry<InetSocketAddress, Member> member : members.entrySet()) {
+            if (member.getValue().alive) {
+                live.add(member.getKey());
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (!seeds.isEmpty() && (live.isEmpty() || random.nextInt(live.size() + 1) == 0)) {
+            InetSocketAddress seed = seeds.get(random.nextInt(seeds.size()));
+            Member known = members.get(seed);
+            if (known == null || !known.alive || live.isEmpty()) {
+                return seed;
+            }
+        }
+        return live.isEmpty() ? null : live.get(random.nextInt(live.size()));
+    }
+
+    private void sendGossip(InetSocketAddress target, byte kind, Map<InetSocketAddress, Long> digestToSend,
+            List<Gossip.Entry> entriesToSend) {
+        // Only live members are passed on, so a member that died is never introduced to newcomers
+        Map<InetSocketAddress, Long> view = new LinkedHashMap<>();
+        view.put(self, heartbeat);
+        for (Map.Entry<InetSocketAddress, Member> member : members.entrySet()) {
+            if (member.getValue().alive) {
+                view.put(member.getKey(), member.getValue().heartbeat);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(WireCodec.BATCH_HEADER_SIZE
+                + Gossip.encodedSize(view, digestToSend, entriesToSend));
+        WireCodec.beginCluster(buffer, PriorityLevel.HIGH);
+        Gossip.encode(buffer, kind, view, digestToSend, entriesToSend);
+        WireCodec.endFrame(buffer, 0);
+        buffer.flip();
+        send(buffer, target);
+    }
+
+    private void send(ByteBuffer frame, InetSocketAddress target) {
+        try {
+            if (fragmenter.fits(frame.remaining())) {
+                socket.send(new DatagramPacket(frame.array(), frame.arrayOffset() + frame.position(),
+                        frame.remaining(), target));
+                return;
+            }
+            ByteBuffer fragments = fragmenter.split(frame);
+            for (int start = 0; start < fragments.limit(); start += fragmenter.mtu()) {
+                socket.send(new DatagramPacket(fragments.array(), start,
+                        Math.min(fragmenter.mtu(), fragments.limit() - start), target));
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Error sending to registry " + HashRing.id(target) + ": " + e.getMessage());
+        }
+    }
+
+    private void mergeMembers(Map<InetSocketAddress, Long> view) {
+        long now = System.nanoTime();
+        for (Map.Entry<InetSocketAddress, Long> entry : view.entrySet()) {
+            if (entry.getKey().equals(self)) {
+                continue;
+            }
+            Member member = members.get(entry.getKey());
+            if (member == null) {
+                member = new Member();
+                member.heartbeat = entry.getValue();
+                member.lastHeardNanos = now;
+                members.put(entry.getKey(), member);
+            } else if (entry.getValue() > member.heartbeat) {
+                member.heartbeat = entry.getValue();
+                member.lastHeardNanos = now;
+            }
+        }
+        refreshLiveness();
+    }
+
+    // A member is live while its heartbeat keeps rising; the ring follows the live set
+    private void refreshLiveness() {
+        long now = System.nanoTime();
+        boolean changed = false;
+        for (Member member : members.values()) {
+            boolean alive = now - member.lastHeardNanos < failureTimeoutNanos;
+            if (alive != member.alive) {
+                member.alive = alive;
+                changed = true;
+            }
+        }
+        if (changed) {
+            List<InetSocketAddress> live = new ArrayList<>();
+            live.add(self);
+            for (Map.Entry<InetSocketAddress, Member> member : members.entrySet()) {
+                if (member.getValue().alive) {
+                    live.add(member.getKey());
+                }
+            }
+            ring = new HashRing(live, virtualNodes);
+            System.out.println("🔄 Cluster membership changed: " + ring);
+        }
+    }
+
+    // Last writer wins per topic and subscriber; returns false for stale or repeated entries
+    private boolean store(Gossip.Entry entry) {
+        digest.merge(entry.origin, entry.stamp, Math::max);
+        String key = entry.key();
+        Gossip.Entry existing = entries.get(key);
+        if (existing != null && !entry.newerThan(existing)) {
+            return false;
+        }
+        if (existing != null) {
+            TreeMap<Long, Gossip.Entry> byStamp = entriesByOrigin.get(existing.origin);
+            if (byStamp != null) {
+                byStamp.remove(existing.stamp);
+            }
+            tombstones -= existing.removed ? 1 : 0;
+        }
+        tombstones += entry.removed ? 1 : 0;
+        entries.put(key, entry);
+        entriesByOrigin.computeIfAbsent(entry.origin, origin -> new TreeMap<>()).put(entry.stamp, entry);
+        return true;
+    }
+
+    // Entries newer than the peer's digest, oldest first per origin, so whatever part of
+    // them fits in one message still leaves the peer's digest exact
+    private List<Gossip.Entry> missingFrom(Map<InetSocketAddress, Long> peerDigest) {
+        List<Gossip.Entry> missing = new ArrayList<>();
+        for (Map.Entry<InetSocketAddress, TreeMap<Long, Gossip.Entry>> origin : entriesByOrigin.entrySet()) {
+            long known = peerDigest.getOrDefault(origin.getKey(), Long.MIN_VALUE);
+            for (Gossip.Entry entry : origin.getValue().tailMap(known, false).values()) {
+                if (missing.size() == MAX_ENTRIES_PER_MESSAGE) {
+                    return missing;
+                }
+                missing.add(entry);
+            }
+        }
+        return missing;
+    }
+
+    // Hybrid logical clock: wall-clock nanoseconds, but always past every stamp seen
+    private long nextStamp() {
+        lastStamp = Math.max(lastStamp + 1, EpochClock.nowNanos());
+        return lastStamp;
+    }
+
+    public synchronized int subscriptionCount() {
+        return entries.size() - tombstones;
+    }
+
+    public synchronized String describe() {
+        int live = 1;
+        for (Member member : members.values()) {
+            live += member.alive ? 1 : 0;
+        }
+        return ring + " live=" + live + "/" + (members.size() + 1) + " subscriptions=" + (entries.size() - tombstones);
+    }
+
+    @Override
+    public void close() {
+        gossipTimer.shutdownNow();
+    }
+}
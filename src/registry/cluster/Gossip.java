@@ -0,0 +1,195 @@
+package registry.cluster;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Payload layout of CLUSTER frames exchanged between registry instances.
+//   u8 kind
+//   gossip kinds:  u16 n, n x (address, i64 heartbeat)       members the sender believes alive
+//                  u16 n, n x (address, i64 stamp)           digest: newest stamp seen per origin
+//                  u16 n, n x (address origin, i64 stamp,    subscription entries
+//                              str topic, address subscriber,
+//                              u8 removed, str filter)
+//   FORWARD:       address original sender, then the forwarded frame's bytes
+// address = ip + u16 port; ip = u8 length (4 or 16) + bytes; str = u16 length + UTF-8
+final class Gossip {
+    // Opens a round: the sender's members and digest
+    static final byte SYN = 1;
+    // Answers a SYN: the receiver's members and digest, plus entries the SYN sender lacks
+    static final byte ACK = 2;
+    // Closes a round: entries the ACK sender lacks
+    static final byte PUSH = 3;
+    // A PUBLISH or SUBSCRIBE handed to the instance that owns its topic
+    static final byte FORWARD = 4;
+
+    // One subscriber's subscription to a topic filter, as replicated across the cluster, or a
+    // tombstone recording its removal. Stamps are hybrid logical clock readings, unique per
+    // origin and increasing.
+    static final class Entry {
+        final InetSocketAddress origin;
+        final long stamp;
+        final String topic;
+        final InetSocketAddress subscriber;
+        final boolean removed;
+        // "" for tombstones
+        final String filter;
+
+        Entry(InetSocketAddress origin, long stamp, String topic, InetSocketAddress subscriber, boolean removed,
+                String filter) {
+            this.origin = origin;
+            this.stamp = stamp;
+            this.topic = topic;
+            this.subscriber = subscriber;
+            this.removed = removed;
+            this.filter = filter;
+        }
+
+        String key() {
+            return topic + '\u0000' + subscriber.getAddress().getHostAddress() + ':' + subscriber.getPort();
+        }
+
+        // Last writer wins; equal stamps from different origins are ordered by origin
+        boolean newerThan(Entry other) {
+            if (stamp != other.stamp) {
+                return stamp > other.stamp;
+            }
+            return HashRing.id(origin).compareTo(HashRing.id(other.origin)) > 0;
+        }
+
+        int encodedSize() {
+            return 19 + 8 + 2 + utf8Length(topic) + 17 + 1 + 2 + utf8Length(filter);
+        }
+    }
+
+    // A decoded SYN, ACK or PUSH
+    static final class Message {
+        final byte kind;
+        final Map<InetSocketAddress, Long> members;
+        final Map<InetSocketAddress, Long> digest;
+        final List<Entry> entries;
+
+        Message(byte kind, Map<InetSocketAddress, Long> members, Map<InetSocketAddress, Long> digest, List<Entry> entries) {
+            this.kind = kind;
+            this.members = members;
+            this.digest = digest;
+            this.entries = entries;
+        }
+    }
+
+    private Gossip() {
+    }
+
+    static int encodedSize(Map<InetSocketAddress, Long> members, Map<InetSocketAddress, Long> digest, List<Entry> entries) {
+        int size = 1 + 2 + 2 + 2 + (members.size() + digest.size()) * 27;
+        for (Entry entry : entries) {
+            size += entry.encodedSize();
+        }
+        return size;
+    }
+
+    static void encode(ByteBuffer dst, byte kind, Map<InetSocketAddress, Long> members,
+            Map<InetSocketAddress, Long> digest, List<Entry> entries) {
+        dst.put(kind);
+        putStamps(dst, members);
+        putStamps(dst, digest);
+        dst.putShort((short) entries.size());
+        for (Entry entry : entries) {
+            putAddress(dst, entry.origin);
+            dst.putLong(entry.stamp);
+            putString(dst, entry.topic);
+            putAddress(dst, entry.subscriber);
+            dst.put((byte) (entry.removed ? 1 : 0));
+            putString(dst, entry.filter);
+        }
+    }
+
+    // Returns null when the payload is malformed
+    static Message decode(ByteBuffer src) {
+        try {
+            byte kind = src.get();
+            Map<InetSocketAddress, Long> members = getStamps(src);
+            Map<InetSocketAddress, Long> digest = getStamps(src);
+            int count = src.getShort() & 0xFFFF;
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                InetSocketAddress origin = getAddress(src);
+                long stamp = src.getLong();
+                String topic = getString(src);
+                InetSocketAddress subscriber = getAddress(src);
+                boolean removed = src.get() != 0;
+                entries.add(new Entry(origin, stamp, topic, subscriber, removed, getString(src)));
+            }
+            return new Message(kind, members, digest, entries);
+        } catch (BufferUnderflowException | IllegalArgumentException | UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static void putStamps(ByteBuffer dst, Map<InetSocketAddress, Long> stamps) {
+        dst.putShort((short) stamps.size());
+        for (Map.Entry<InetSocketAddress, Long> stamp : stamps.entrySet()) {
+            putAddress(dst, stamp.getKey());
+            dst.putLong(stamp.getValue());
+        }
+    }
+
+    private static Map<InetSocketAddress, Long> getStamps(ByteBuffer src) throws UnknownHostException {
+        int count = src.getShort() & 0xFFFF;
+        Map<InetSocketAddress, Long> stamps = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            InetSocketAddress address = getAddress(src);
+            stamps.put(address, src.getLong());
+        }
+        return stamps;
+    }
+
+    private static void putIp(ByteBuffer dst, InetAddress ip) {
+        byte[] bytes = ip.getAddress();
+        dst.put((byte) bytes.length);
+        dst.put(bytes);
+    }
+
+    private static InetAddress getIp(ByteBuffer src) throws UnknownHostException {
+        int length = src.get() & 0xFF;
+        if (length != 4 && length != 16) {
+            throw new IllegalArgumentException("Bad address length " + length);
+        }
+        byte[] bytes = new byte[length];
+        src.get(bytes);
+        return InetAddress.getByAddress(bytes);
+    }
+
+    static void putAddress(ByteBuffer dst, InetSocketAddress address) {
+        putIp(dst, address.getAddress());
+        dst.putShort((short) address.getPort());
+    }
+
+    static InetSocketAddress getAddress(ByteBuffer src) throws UnknownHostException {
+        InetAddress ip = getIp(src);
+        return new InetSocketAddress(ip, src.getShort() & 0xFFFF);
+    }
+
+    private static void putString(ByteBuffer dst, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        dst.putShort((short) bytes.length);
+        dst.put(bytes);
+    }
+
+    private static String getString(ByteBuffer src) {
+        byte[] bytes = new byte[src.getShort() & 0xFFFF];
+        src.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,106 @@
+package registry.cluster;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Immutable consistent-hash ring of registry instances. Each member is placed at many
+// virtual points, and a topic belongs to the first point at or after its hash, so adding
+// or removing one of N members only moves the topics next to its points (about 1/N).
+// Membership changes build a new ring; lookups are a binary search over a long[].
+public final class HashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final int MAX_CACHED_OWNERS = 1 << 16;
+
+    private final List<InetSocketAddress> members;
+    private final long[] points;
+    // Member index of each point
+    private final int[] owners;
+    // Topics repeat far more often than they change, so owners are looked up once per ring
+    private final ConcurrentHashMap<String, InetSocketAddress> ownerCache = new ConcurrentHashMap<>();
+
+    public HashRing(Collection<InetSocketAddress> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one member");
+        }
+        List<InetSocketAddress> sorted = new ArrayList<>(members);
+        // Same members, same ring, whatever order the membership view lists them in
+        sorted.sort((a, b) -> id(a).compareTo(id(b)));
+        this.members = Collections.unmodifiableList(sorted);
+
+        long[][] placed = new long[sorted.size() * virtualNodes][];
+        for (int m = 0; m < sorted.size(); m++) {
+            String id = id(sorted.get(m));
+            for (int v = 0; v < virtualNodes; v++) {
+                placed[m * virtualNodes + v] = new long[] {hash(id + "#" + v), m};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[placed.length];
+        this.owners = new int[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = (int) placed[i][1];
+        }
+    }
+
+    public InetSocketAddress ownerOf(String topic) {
+        InetSocketAddress owner = ownerCache.get(topic);
+        if (owner == null) {
+            owner = lookup(topic);
+            if (ownerCache.size() < MAX_CACHED_OWNERS) {
+                ownerCache.put(topic, owner);
+            }
+        }
+        return owner;
+    }
+
+    private InetSocketAddress lookup(String topic) {
+        int index = Arrays.binarySearch(points, hash(topic));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return members.get(owners[index == points.length ? 0 : index]);
+    }
+
+    public List<InetSocketAddress> members() {
+        return members;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    static String id(InetSocketAddress member) {
+        return member.getAddress().getHostAddress() + ":" + member.getPort();
+    }
+
+    // FNV-1a over the UTF-8 bytes, then the MurmurHash3 finalizer to spread nearby strings
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("ring[");
+        for (int i = 0; i < members.size(); i++) {
+            text.append(i == 0 ? "" : ", ").append(id(members.get(i)));
+        }
+        return text.append(']').toString();
+    }
+}
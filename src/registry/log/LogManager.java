@@ -0,0 +1,201 @@
+package registry.log;
+
+import common.EpochClock;
+import common.TopicTrie;
+import config.AppConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Owns one TopicLog per topic under a root directory. Callers only queue frames;
+// a writer thread creates the logs, maps segments and appends, so page faults and
+// file creation never hold up the caller. Mapped pages are forced to disk in the
+// background on a fixed interval instead of on every append, and retention runs on
+// the same thread.
+public final class LogManager implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LogManager.class.getName());
+    private static final long RETENTION_CHECK_MS = 10_000;
+    // Frames waiting for the writer; more than this and new ones are dropped
+    private static final int MAX_QUEUED = 1 << 16;
+
+    private final Path root;
+    private final int initialSegmentBytes;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionNanos;
+    private final ConcurrentHashMap<String, TopicLog> logs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintenance;
+    // Appends and tasks in the order they were queued
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // New topics start with a segment of initialSegmentBytes; each roll doubles it up to segmentBytes
+    public LogManager(Path root, int initialSegmentBytes, int segmentBytes, long retentionBytes,
+            long retentionMinutes, long flushIntervalMs) throws IOException {
+        this.root = root;
+        this.initialSegmentBytes = Math.min(initialSegmentBytes, segmentBytes);
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionNanos = retentionMinutes > 0 ? TimeUnit.MINUTES.toNanos(retentionMinutes) : 0;
+        Files.createDirectories(root);
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                String topic = URLDecoder.decode(dir.getFileName().toString(), StandardCharsets.UTF_8);
+                logs.put(topic, new TopicLog(topic, dir, this.initialSegmentBytes, segmentBytes));
+            }
+        }
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "topic-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer = new Thread(this::writeLoop, "topic-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        maintenance.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::enforceRetention, RETENTION_CHECK_MS, RETENTION_CHECK_MS,
+                TimeUnit.MILLISECONDS);
+        LOGGER.info("📂 Topic log opened at " + root.toAbsolutePath() + " with " + logs.size() + " topic(s)");
+    }
+
+    // Returns null when logging is disabled in config.properties
+    public static LogManager fromConfig() throws IOException {
+        return fromConfig("");
+    }
+
+    // Registry instances sharing a host and a config keep their logs apart with a suffix
+    public static LogManager fromConfig(String directorySuffix) throws IOException {
+        if (!AppConfig.getBoolean("registry.log.enabled", true)) {
+            return null;
+        }
+        return new LogManager(
+                Paths.get(AppConfig.getString("registry.log.dir", "data/topic-log") + directorySuffix),
+                AppConfig.getInt("registry.log.initialSegmentBytes", 64 * 1024),
+                AppConfig.getInt("registry.log.segmentBytes", 16 * 1024 * 1024),
+                AppConfig.getLong("registry.log.retentionBytes", 256L * 1024 * 1024),
+                AppConfig.getLong("registry.log.retentionMinutes", 24 * 60),
+                AppConfig.getLong("registry.log.flushIntervalMs", 1000));
+    }
+
+    // Copies the frame and queues it for the writer; never blocks. Frames are dropped,
+    // with a warning, while the writer is a full queue behind.
+    public void append(String topic, ByteBuffer src, int srcOffset, int length, long timestampNanos) {
+        if (queuedFrames.incrementAndGet() > MAX_QUEUED) {
+            queuedFrames.decrementAndGet();
+            if (dropped.getAndIncrement() % 10_000 == 0) {
+                LOGGER.warning("⚠️ Topic log is " + MAX_QUEUED + " frames behind; " + dropped.get()
+                        + " frame(s) not stored");
+            }
+            return;
+        }
+        byte[] frame = new byte[length];
+        src.get(srcOffset, frame);
+        queue.add(() -> {
+            queuedFrames.decrementAndGet();
+            logFor(topic).append(ByteBuffer.wrap(frame), 0, length, timestampNanos);
+        });
+    }
+
+    // Runs the task on the writer once every frame queued before it is in its log, so the
+    // task sees the logs exactly as they were when it was queued
+    public void afterQueued(Runnable task) {
+        queue.add(task);
+    }
+
+    private TopicLog logFor(String topic) {
+        TopicLog log = logs.get(topic);
+        if (log != null) {
+            return log;
+        }
+        return logs.computeIfAbsent(topic, t -> {
+            try {
+                return new TopicLog(t, root.resolve(URLEncoder.encode(t, StandardCharsets.UTF_8)),
+                        initialSegmentBytes, segmentBytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create log for topic " + t, e);
+            }
+        });
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Runnable next = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (next != null) {
+                    next.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.severe("🚨 Error writing the topic log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Existing logs whose topic matches the filter, which may contain wildcards
+    public List<TopicLog> logsMatching(String filter) {
+        if (!TopicTrie.isWildcard(filter)) {
+            TopicLog log = logs.get(filter);
+            return log == null ? List.of() : List.of(log);
+        }
+        List<TopicLog> matching = new ArrayList<>();
+        for (TopicLog log : logs.values()) {
+            if (TopicTrie.matches(filter, log.topic())) {
+                matching.add(log);
+            }
+        }
+        return matching;
+    }
+
+    private void flushAll() {
+        for (TopicLog log : logs.values()) {
+            log.flush();
+        }
+    }
+
+    private void enforceRetention() {
+        long minTimestamp = retentionNanos > 0 ? EpochClock.nowNanos() - retentionNanos : Long.MIN_VALUE;
+        for (TopicLog log : logs.values()) {
+            int dropped = log.enforceRetention(retentionBytes, minTimestamp);
+            if (dropped > 0) {
+                LOGGER.info("🧹 Dropped " + dropped + " old log segment(s) of " + log.topic());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        maintenance.shutdownNow();
+        for (TopicLog log : logs.values()) {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package registry.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// One memory-mapped, preallocated file of the topic log. Records are written
+// strictly sequentially:
+//   i32 frameLength | i64 offset | i64 appendTime (epoch nanos) | frame bytes
+// A zero length marks the end of the written data. The sparse index keeps one
+// entry per INDEX_INTERVAL bytes and lives in memory; it is rebuilt by scanning
+// the segment when the log is reopened.
+final class LogSegment {
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 8;
+    private static final int INDEX_INTERVAL = 4096;
+    private static final String SUFFIX = ".log";
+
+    private final long baseOffset;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+
+    private int writePosition;
+    // Readers only look at bytes below this mark
+    private volatile int committedPosition;
+    private volatile long nextOffset;
+    private volatile long lastTimestamp;
+    private long firstTimestamp;
+
+    private int[] indexOffsets = new int[64];
+    private int[] indexPositions = new int[64];
+    private long[] indexTimestamps = new long[64];
+    private int indexSize;
+    private int bytesSinceIndex = Integer.MAX_VALUE;
+
+    private LogSegment(long baseOffset, Path path, int segmentBytes) throws IOException {
+        this.baseOffset = baseOffset;
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        this.nextOffset = baseOffset;
+    }
+
+    static LogSegment create(Path dir, long baseOffset, int segmentBytes) throws IOException {
+        return new LogSegment(baseOffset, dir.resolve(fileName(baseOffset)), segmentBytes);
+    }
+
+    // Reopens an existing segment at the size it was created with and finds the end of its data;
+    // a file left empty is mapped at minBytes
+    static LogSegment open(Path file, int minBytes) throws IOException {
+        String name = file.getFileName().toString();
+        long baseOffset = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        long fileSize = Files.size(file);
+        int size = (int) (fileSize > 0 ? fileSize : minBytes);
+        LogSegment segment = new LogSegment(baseOffset, file, size);
+        segment.recover();
+        return segment;
+    }
+
+    static boolean isSegmentFile(Path file) {
+        return file.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    private static String fileName(long baseOffset) {
+        return String.format("%020d%s", baseOffset, SUFFIX);
+    }
+
+    private void recover() {
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= map.capacity()) {
+            int length = map.getInt(position);
+            int end = position + RECORD_HEADER_SIZE + length;
+            if (length <= 0 || end > map.capacity()) {
+                break;
+            }
+            long offset = map.getLong(position + 4);
+            long timestamp = map.getLong(position + 12);
+            maybeIndex(offset, position, timestamp);
+            if (firstTimestamp == 0) {
+                firstTimestamp = timestamp;
+            }
+            lastTimestamp = timestamp;
+            nextOffset = offset + 1;
+            position = end;
+        }
+        writePosition = position;
+        committedPosition = position;
+    }
+
+    // Returns false when the record does not fit and the segment must be rolled
+    boolean append(long offset, long timestampNanos, ByteBuffer src, int srcOffset, int length) {
+        int end = writePosition + RECORD_HEADER_SIZE + length;
+        if (end > map.capacity()) {
+            return false;
+        }
+        map.putLong(writePosition + 4, offset);
+        map.putLong(writePosition + 12, timestampNanos);
+        map.put(writePosition + RECORD_HEADER_SIZE, src, srcOffset, length);
+        // Length goes last so a torn write is never mistaken for a record
+        map.putInt(writePosition, length);
+        synchronized (this) {
+            maybeIndex(offset, writePosition, timestampNanos);
+        }
+        if (firstTimestamp == 0) {
+            firstTimestamp = timestampNanos;
+        }
+        lastTimestamp = timestampNanos;
+        writePosition = end;
+        nextOffset = offset + 1;
+        committedPosition = end;
+        return true;
+    }
+
+    int capacity() {
+        return map.capacity();
+    }
+
+    boolean canFit(int length) {
+        return writePosition + RECORD_HEADER_SIZE + length <= map.capacity();
+    }
+
+    private void maybeIndex(long offset, int position, long timestamp) {
+        if (bytesSinceIndex >= INDEX_INTERVAL) {
+            if (indexSize == indexOffsets.length) {
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+                indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+            }
+            indexOffsets[indexSize] = (int) (offset - baseOffset);
+            indexPositions[indexSize] = position;
+            indexTimestamps[indexSize] = timestamp;
+            indexSize++;
+            bytesSinceIndex = 0;
+        }
+        bytesSinceIndex += RECORD_HEADER_SIZE + map.getInt(position);
+    }
+
+    // Position of the first record with offset >= target
+    int positionOf(long targetOffset) {
+        int position;
+        synchronized (this) {
+            int relative = (int) Math.max(0, targetOffset - baseOffset);
+            int entry = floorEntry(indexOffsets, relative);
+            position = entry < 0 ? 0 : indexPositions[entry];
+        }
+        return scanForward(position, targetOffset, Long.MIN_VALUE);
+    }
+
+    // Position of the first record appended at or after the timestamp
+    int positionOfTime(long timestampNanos) {
+        int position = 0;
+        synchronized (this) {
+            // Append times only grow, so the index is sorted by time as well
+            for (int low = 0, high = indexSize - 1; low <= high; ) {
+                int mid = (low + high) >>> 1;
+                if (indexTimestamps[mid] < timestampNanos) {
+                    position = indexPositions[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+        return scanForward(position, Long.MIN_VALUE, timestampNanos);
+    }
+
+    private int floorEntry(int[] keys, int key) {
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private int scanForward(int position, long targetOffset, long targetTimestamp) {
+        int limit = committedPosition;
+        while (position < limit) {
+            if (map.getLong(position + 4) >= targetOffset && map.getLong(position + 12) >= targetTimestamp) {
+                return position;
+            }
+            position += RECORD_HEADER_SIZE + map.getInt(position);
+        }
+        return limit;
+    }
+
+    // Visits committed records from position until endOffset (exclusive). The frame
+    // buffer handed to the consumer is a shared view only valid during the call.
+    long read(int position, long endOffset, TopicLog.RecordConsumer consumer) {
+        ByteBuffer view = map.duplicate();
+        int limit = committedPosition;
+        long visited = 0;
+        while (position < limit) {
+            int length = view.getInt(position);
+            long offset = view.getLong(position + 4);
+            if (offset >= endOffset) {
+                break;
+            }
+            int frameStart = position + RECORD_HEADER_SIZE;
+            view.limit(frameStart + length).position(frameStart);
+            if (!consumer.accept(offset, view.getLong(position + 12), view)) {
+                return -1;
+            }
+            view.limit(view.capacity());
+            visited++;
+            position = frameStart + length;
+        }
+        return visited;
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    int sizeInBytes() {
+        return committedPosition;
+    }
+
+    void flush() {
+        map.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
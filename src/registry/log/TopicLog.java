@@ -0,0 +1,185 @@
+package registry.log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Append-only log of the frames published on one topic, split into memory-mapped
+// segments. Appends come from a single writer; replays read committed bytes
+// concurrently without taking the append lock. The first segment is small and each
+// roll doubles the size up to the limit, so a quiet topic does not reserve a full one.
+public final class TopicLog {
+    private static final Logger LOGGER = Logger.getLogger(TopicLog.class.getName());
+
+    // Receives one stored frame; return false to stop the read
+    @FunctionalInterface
+    public interface RecordConsumer {
+        boolean accept(long offset, long timestampNanos, ByteBuffer frame);
+    }
+
+    private final String topic;
+    private final Path dir;
+    private final int initialSegmentBytes;
+    private final int segmentBytes;
+    // Oldest first; replaced on roll and retention so readers can iterate a stable copy
+    private volatile List<LogSegment> segments;
+    private LogSegment active;
+
+    TopicLog(String topic, Path dir, int initialSegmentBytes, int segmentBytes) throws IOException {
+        this.topic = topic;
+        this.dir = dir;
+        this.initialSegmentBytes = initialSegmentBytes;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        List<LogSegment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(LogSegment::isSegmentFile).sorted().toList()) {
+                loaded.add(LogSegment.open(file, initialSegmentBytes));
+            }
+        }
+        if (loaded.isEmpty()) {
+            loaded.add(LogSegment.create(dir, 0L, initialSegmentBytes));
+        }
+        this.active = loaded.get(loaded.size() - 1);
+        this.segments = List.copyOf(loaded);
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    // Appends the frame bytes and returns the offset assigned to them
+    public synchronized long append(ByteBuffer src, int srcOffset, int length, long timestampNanos) {
+        if (LogSegment.RECORD_HEADER_SIZE + length > segmentBytes) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds the log segment size");
+        }
+        long offset = active.nextOffset();
+        if (!active.append(offset, timestampNanos, src, srcOffset, length)) {
+            roll(offset, length);
+            active.append(offset, timestampNanos, src, srcOffset, length);
+        }
+        return offset;
+    }
+
+    private void roll(long baseOffset, int length) {
+        try {
+            active.flush();
+            int size = (int) Math.min(segmentBytes,
+                    Math.max(2L * active.capacity(), LogSegment.RECORD_HEADER_SIZE + length));
+            LogSegment next = LogSegment.create(dir, baseOffset, size);
+            List<LogSegment> updated = new ArrayList<>(segments);
+            updated.add(next);
+            segments = List.copyOf(updated);
+            active = next;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot roll log segment for " + topic, e);
+        }
+    }
+
+    // Offset the next append will receive
+    public long nextOffset() {
+        List<LogSegment> current = segments;
+        return current.get(current.size() - 1).nextOffset();
+    }
+
+    // Oldest offset still retained
+    public long startOffset() {
+        return segments.get(0).baseOffset();
+    }
+
+    public long sizeInBytes() {
+        long total = 0;
+        for (LogSegment segment : segments) {
+            total += segment.sizeInBytes();
+        }
+        return total;
+    }
+
+    // Visits records in [fromOffset, endOffset) and returns how many were read
+    public long read(long fromOffset, long endOffset, RecordConsumer consumer) {
+        List<LogSegment> current = segments;
+        long visited = 0;
+        for (int i = 0; i < current.size(); i++) {
+            LogSegment segment = current.get(i);
+            boolean last = i == current.size() - 1;
+            if (!last && current.get(i + 1).baseOffset() <= fromOffset) {
+                continue;
+            }
+            if (segment.baseOffset() >= endOffset) {
+                break;
+            }
+            long read = segment.read(segment.positionOf(fromOffset), endOffset, consumer);
+            if (read < 0) {
+                break;
+            }
+            visited += read;
+        }
+        return visited;
+    }
+
+    // First offset appended at or after the timestamp, or nextOffset() when there is none
+    public long offsetForTime(long timestampNanos) {
+        for (LogSegment segment : segments) {
+            if (segment.lastTimestamp() >= timestampNanos) {
+                long[] found = {segment.nextOffset()};
+                int position = segment.positionOfTime(timestampNanos);
+                segment.read(position, Long.MAX_VALUE, (offset, timestamp, frame) -> {
+                    found[0] = offset;
+                    return false;
+                });
+                return found[0];
+            }
+        }
+        return nextOffset();
+    }
+
+    // Drops whole segments (never the active one) beyond the size or age limits
+    synchronized int enforceRetention(long maxBytes, long minTimestampNanos) {
+        List<LogSegment> current = segments;
+        long total = sizeInBytes();
+        int drop = 0;
+        while (drop < current.size() - 1) {
+            LogSegment oldest = current.get(drop);
+            boolean tooBig = maxBytes > 0 && total > maxBytes;
+            boolean tooOld = oldest.lastTimestamp() < minTimestampNanos;
+            if (!tooBig && !tooOld) {
+                break;
+            }
+            total -= oldest.sizeInBytes();
+            drop++;
+        }
+        if (drop == 0) {
+            return 0;
+        }
+        segments = List.copyOf(current.subList(drop, current.size()));
+        for (LogSegment segment : current.subList(0, drop)) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                LOGGER.warning("⚠️ Could not delete log segment of " + topic + ": " + e.getMessage());
+            }
+        }
+        return drop;
+    }
+
+    synchronized void flush() {
+        active.flush();
+    }
+
+    synchronized void close() {
+        for (LogSegment segment : segments) {
+            try {
+                segment.flush();
+                segment.close();
+            } catch (IOException e) {
+                LOGGER.warning("⚠️ Could not close log segment of " + topic + ": " + e.getMessage());
+            }
+        }
+    }
+}
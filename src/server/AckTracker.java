@@ -0,0 +1,152 @@
+package server;
+
+import config.ConfigSnapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Which forwarded messages have been acknowledged, per topic, over a sliding window of
+// message IDs. A topic keeps two bitmaps over its window (forwarded, acknowledged) and the
+// time each 64-ID word was first written, so it costs about window / 4 bytes however many
+// messages go through it. IDs that slide out of the window unacknowledged count as expired.
+// IDs are widened with serial-number arithmetic, so the window runs on across int wraparound.
+// The server's receive thread updates it; anything else may read it.
+public final class AckTracker {
+    public enum State {
+        // Never forwarded, or already out of the window
+        UNKNOWN,
+        OUTSTANDING,
+        ACKED,
+        // Unacknowledged for longer than server.ack.timeoutMs
+        EXPIRED
+    }
+
+    private static final int MAX_TOPICS = 1 << 12;
+
+    private final int windowWords;
+    private final long timeoutNanos;
+    private final Map<String, Window> topics = new HashMap<>();
+    private long expired;
+
+    // A ring of words; base is the lowest ID in the window and always a multiple of 64
+    private final class Window {
+        final long[] forwarded = new long[windowWords];
+        final long[] acked = new long[windowWords];
+        final long[] writtenNanos = new long[windowWords];
+        long base;
+        int startWord;
+        long highest;
+
+        Window(int firstId) {
+            highest = firstId;
+            // A quarter of the window stays below the first ID for ones that arrive out of order
+            base = Math.floorDiv((long) firstId, 64) * 64 - windowWords * 16L;
+        }
+
+        // The ID as a long: the one closest to the highest forwarded so far
+        long widen(int id) {
+            return highest + (id - (int) highest);
+        }
+
+        // Ring index of the ID's word, or -1 outside the window
+        int word(long id) {
+            long offset = id - base;
+            if (offset < 0 || offset >= windowWords * 64L) {
+                return -1;
+            }
+            return (int) ((offset / 64 + startWord) % windowWords);
+        }
+
+        // Moves the window up until it holds the ID
+        void reach(long id) {
+            long words = (id - base) / 64 - windowWords + 1;
+            if (words <= 0) {
+                return;
+            }
+            for (long i = 0; i < Math.min(words, windowWords); i++) {
+                int w = (int) ((startWord + i) % windowWords);
+                expired += Long.bitCount(forwarded[w] & ~acked[w]);
+                forwarded[w] = 0;
+                acked[w] = 0;
+            }
+            startWord = (int) ((startWord + words) % windowWords);
+            base += words * 64;
+        }
+    }
+
+    AckTracker(int window, long timeoutNanos) {
+        this.windowWords = Math.max(1, (window + 63) / 64);
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    static AckTracker fromConfig(ConfigSnapshot config) {
+        return new AckTracker(config.getInt("server.ack.window", 4096),
+                TimeUnit.MILLISECONDS.toNanos(config.getLong("server.ack.timeoutMs", 5000)));
+    }
+
+    synchronized void forwarded(String topic, int messageId) {
+        Window window = topics.get(topic);
+        if (window == null) {
+            if (topics.size() >= MAX_TOPICS) {
+                return;
+            }
+            window = new Window(messageId);
+            topics.put(topic, window);
+        }
+        long id = window.widen(messageId);
+        window.highest = Math.max(window.highest, id);
+        window.reach(id);
+        int word = window.word(id);
+        if (word < 0) {
+            return;  // Too old to track
+        }
+        if (window.forwarded[word] == 0) {
+            window.writtenNanos[word] = System.nanoTime();
+        }
+        window.forwarded[word] |= 1L << (messageId & 63);
+    }
+
+    // Returns how many outstanding messages from first to last this acknowledged
+    synchronized int acked(String topic, int first, int last) {
+        Window window = topics.get(topic);
+        if (window == null) {
+            return 0;
+        }
+        int span = last - first;
+        if (span < 0) {
+            return 0;
+        }
+        long start = window.widen(first);
+        long from = Math.max(start, window.base);
+        long to = Math.min(start + span, window.base + windowWords * 64L - 1);
+        int newlyAcked = 0;
+        for (long id = from; id <= to; id++) {
+            int word = window.word(id);
+            long mask = 1L << (id & 63);
+            if ((window.forwarded[word] & ~window.acked[word] & mask) != 0) {
+                window.acked[word] |= mask;
+                newlyAcked++;
+            }
+        }
+        return newlyAcked;
+    }
+
+    public synchronized State state(String topic, int messageId) {
+        Window window = topics.get(topic);
+        int word = window == null ? -1 : window.word(window.widen(messageId));
+        long mask = 1L << (messageId & 63);
+        if (word < 0 || (window.forwarded[word] & mask) == 0) {
+            return State.UNKNOWN;
+        }
+        if ((window.acked[word] & mask) != 0) {
+            return State.ACKED;
+        }
+        return System.nanoTime() - window.writtenNanos[word] > timeoutNanos ? State.EXPIRED : State.OUTSTANDING;
+    }
+
+    // Unacknowledged messages that slid out of their window
+    public synchronized long expired() {
+        return expired;
+    }
+}
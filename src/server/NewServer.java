@@ -1,32 +1,86 @@
 package server;
 
+import common.AckRanges;
+import common.Flow;
+import common.Frame;
+import common.MessageType;
+import common.RoutingTable;
+import common.WireCodec;
+import config.AppConfig;
+import metrics.Metrics;
+import metrics.StatsQuery;
+import trace.Trace;
+import trace.TraceEvent;
+
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class NewServer {
-    private static final int SERVER_PORT = 5007;
-    private static final int REGISTRY_PORT = 5001;
-    private static final Map<Integer, Boolean> pendingAcks = new HashMap<>();
+    // Listens on the port of endpoint.server and relays to endpoint.registry
+    private static final RoutingTable.Route REGISTRY = RoutingTable.registry();
+    // Which relayed messages have been acknowledged, in a window of IDs per topic
+    private static final AckTracker acks = AckTracker.fromConfig(AppConfig.snapshot());
+    // Where each topic's messages come from, so the registry's slow-down requests reach them
+    private static final Map<String, Set<SocketAddress>> publishers = new HashMap<>();
+    private static final int MAX_PUBLISHERS_PER_TOPIC = 16;
+    private static final int MAX_TOPICS = 1 << 16;
 
     public static void main(String[] args) {
-        try (DatagramSocket socket = new DatagramSocket(SERVER_PORT)) {
-            System.out.println("✅ Server started on port: " + SERVER_PORT);
-            byte[] buffer = new byte[1024];
+        int port = RoutingTable.shared().route(RoutingTable.SERVER).port();
+        try (DatagramSocket socket = new DatagramSocket(port)) {
+            System.out.println("✅ Server started on port: " + port + ", relaying to " + REGISTRY.address());
+            byte[] buffer = new byte[WireCodec.MAX_DATAGRAM_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(buffer);
+            Frame frame = new Frame();
+            Frame batchEntry = new Frame();
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
 
             while (true) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                packet.setData(buffer);
                 socket.receive(packet);
-                String received = new String(packet.getData(), 0, packet.getLength());
-                System.out.println("📥 Received: " + received);
-
-                String[] parts = received.split(":");
-                if (parts.length >= 4 && parts[0].equals("PUBLISH")) {
-                    int messageId = Integer.parseInt(parts[3]);
-                    forwardMessage(socket, received);
-                    pendingAcks.put(messageId, false);
-                } else if (parts.length == 2 && parts[0].equals("ACK")) {
-                    handleAck(Integer.parseInt(parts[1]));
+                view.limit(packet.getLength()).position(0);
+                if (!WireCodec.decode(view, frame)) {
+                    Trace.record(TraceEvent.SERVER_MALFORMED, null, packet.getSocketAddress(), packet.getLength());
+                    continue;
+                }
+                Trace.record(TraceEvent.SERVER_RECEIVED, null, frame.topic(), frame.type().code(), frame.messageId(),
+                        frame.payloadLength());
+
+                if (frame.type() == MessageType.PUBLISH) {
+                    recordPublisher(frame.topic(), packet.getSocketAddress());
+                    forwardMessage(socket, frame);
+                    acks.forwarded(frame.topic(), frame.messageId());
+                    Metrics.record(frame.topic(), Metrics.Event.FORWARDED, frame.priority());
+                } else if (frame.type() == MessageType.ACK) {
+                    handleAck(frame);
+                } else if (frame.type() == MessageType.STATS) {
+                    replyStats(socket, frame, packet.getSocketAddress());
+                } else if (frame.type() == MessageType.FLOW) {
+                    relaySlowDown(socket, frame);
+                } else if (frame.type() == MessageType.BATCH) {
+                    // Track every message in the batch but relay the datagram as one unit
+                    int cursor = frame.payloadOffset();
+                    while ((cursor = WireCodec.nextBatchEntry(frame, cursor, batchEntry)) >= 0) {
+                        if (batchEntry.type() == MessageType.PUBLISH) {
+                            recordPublisher(batchEntry.topic(), packet.getSocketAddress());
+                            acks.forwarded(batchEntry.topic(), batchEntry.messageId());
+                            Metrics.record(batchEntry.topic(), Metrics.Event.FORWARDED, batchEntry.priority());
+                        }
+                    }
+                    forwardMessage(socket, frame);
+                } else if (frame.type() == MessageType.FRAGMENT) {
+                    // Fragments are relayed as they come and rebuilt by the registry; the
+                    // first one carries the inner header, which is all the ACK tracking needs
+                    if (WireCodec.isWellFormedFragment(frame) && WireCodec.fragmentIndex(frame) == 0
+                            && WireCodec.fragmentChunkLength(frame) >= WireCodec.FIXED_HEADER_SIZE
+                            && WireCodec.fragmentedType(frame) == MessageType.PUBLISH) {
+                        acks.forwarded(frame.topic(), WireCodec.fragmentedMessageId(frame));
+                    }
+                    forwardMessage(socket, frame);
                 }
             }
         } catch (Exception e) {
@@ -34,24 +88,87 @@ public class NewServer {
         }
     }
 
-    private static void forwardMessage(DatagramSocket socket, String message) {
+    private static void forwardMessage(DatagramSocket socket, Frame frame) {
         try {
-            byte[] buffer = message.getBytes();
-            DatagramPacket forwardPacket = new DatagramPacket(buffer, buffer.length, InetAddress.getLocalHost(), REGISTRY_PORT);
+            // Relay the encoded frame unchanged
+            DatagramPacket forwardPacket = new DatagramPacket(frame.buffer().array(),
+                    frame.buffer().arrayOffset() + frame.start(), frame.length(), REGISTRY.address());
             socket.send(forwardPacket);
-            System.out.println("📤 Forwarded message to Registry: " + message);
+            Trace.record(TraceEvent.SERVER_FORWARDED, null, frame.topic(), frame.type().code(), frame.messageId(),
+                    frame.payloadLength());
         } catch (Exception e) {
             System.err.println("❌ Error forwarding message to registry: " + e.getMessage());
         }
     }
 
-    private static void handleAck(int messageId) {
-        if (pendingAcks.containsKey(messageId)) {
-            pendingAcks.put(messageId, true);
-            System.out.println("✅ ACK received for message ID: " + messageId);
-        } else {
-            System.err.println("⚠️ Unexpected ACK received for message ID: " + messageId);
+    private static void recordPublisher(String topic, SocketAddress publisher) {
+        Set<SocketAddress> known = publishers.get(topic);
+        if (known == null) {
+            if (publishers.size() >= MAX_TOPICS) {
+                return;
+            }
+            known = new HashSet<>();
+            publishers.put(topic, known);
+        }
+        if (known.size() < MAX_PUBLISHERS_PER_TOPIC) {
+            known.add(publisher);
+        }
+    }
+
+    // The registry sees this server as one publisher, so its rate is split among the real ones
+    private static void relaySlowDown(DatagramSocket socket, Frame frame) {
+        Set<SocketAddress> targets = publishers.get(frame.topic());
+        if (Flow.kind(frame) != Flow.SLOW_DOWN || targets == null || targets.isEmpty()) {
+            return;
+        }
+        int rate = Math.max(1, Flow.ratePerSecond(frame) / targets.size());
+        ByteBuffer request = Flow.encodeSlowDown(WireCodec.topicBytes(frame.topic()), rate, Flow.limit(frame));
+        for (SocketAddress publisher : targets) {
+            try {
+                socket.send(new DatagramPacket(request.array(), request.limit(), publisher));
+            } catch (Exception e) {
+                System.err.println("❌ Error relaying slow-down to " + publisher + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void replyStats(DatagramSocket socket, Frame request, SocketAddress requester) {
+        try {
+            ByteBuffer reply = StatsQuery.reply(request);
+            socket.send(new DatagramPacket(reply.array(), reply.limit(), requester));
+        } catch (Exception e) {
+            System.err.println("❌ Error answering STATS query: " + e.getMessage());
         }
     }
 
+    // Whether a relayed message is still waiting for its ACK, as far as this server has seen
+    public static AckTracker.State ackState(String topic, int messageId) {
+        return acks.state(topic, messageId);
+    }
+
+    // Relayed messages that left the tracking window without being acknowledged
+    public static long expiredAcks() {
+        return acks.expired();
+    }
+
+    // An ACK is either one message ID or, from subscribers that aggregate, a list of ranges
+    private static void handleAck(Frame frame) {
+        int acked = 0;
+        if (AckRanges.isAggregate(frame)) {
+            for (int i = 0; i < AckRanges.count(frame); i++) {
+                acked += acks.acked(frame.topic(), AckRanges.first(frame, i), AckRanges.last(frame, i));
+            }
+        } else {
+            acked = acks.acked(frame.topic(), frame.messageId(), frame.messageId());
+        }
+        if (acked == 0) {
+            if (acks.state(frame.topic(), frame.messageId()) == AckTracker.State.ACKED) {
+                return;  // A repeat of an ACK already counted, sent because its confirm was lost
+            }
+            Trace.record(TraceEvent.SERVER_UNEXPECTED_ACK, null, null, frame.messageId());
+            return;
+        }
+        Trace.record(TraceEvent.SERVER_ACK, null, null, frame.messageId());
+        Metrics.topic(frame.topic()).record(Metrics.Event.ACKED, frame.priority(), acked);
+    }
 }
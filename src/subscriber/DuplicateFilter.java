@@ -0,0 +1,166 @@
+package subscriber;
+
+// Bounded duplicate suppression for exactly-once delivery.
+//
+// Every publisher session gets a sliding window of WINDOW_BITS message ids kept
+// as a ring bitmap, so a stream costs a fixed 128 bytes no matter how long it
+// runs. Ids are compared with serial-number arithmetic, which keeps the window
+// correct across int wraparound. Streams live in a fixed open-addressed table;
+// when it is full the least recently used stream in the probe range is evicted.
+// A restarted publisher gets a new session id and therefore a fresh window.
+//
+// Not thread-safe: it is meant to be used from the node's receive thread.
+public final class DuplicateFilter {
+    public static final int WINDOW_BITS = 1024;
+    private static final int WORDS = WINDOW_BITS / 64;
+    private static final int PROBE_LIMIT = 8;
+
+    private final int mask;
+    private final long[] sessions;
+    private final int[] highest;
+    private final long[] lastUsed;
+    private final long[] bitmaps;
+    private long clock;
+    private long evictions;
+
+    public DuplicateFilter(int maxStreams) {
+        int capacity = Integer.highestOneBit(Math.max(PROBE_LIMIT, maxStreams - 1) << 1);
+        this.mask = capacity - 1;
+        this.sessions = new long[capacity];
+        this.highest = new int[capacity];
+        this.lastUsed = new long[capacity];
+        this.bitmaps = new long[capacity * WORDS];
+    }
+
+    // Records (sessionId, messageId) and reports whether it was already seen.
+    // Ids that fell behind the window are reported as duplicates, since the
+    // filter can no longer prove they were not delivered.
+    public boolean isDuplicate(long sessionId, int messageId) {
+        int slot = findOrClaim(sessionId, messageId);
+        if (slot < 0) {
+            return false;
+        }
+        lastUsed[slot] = ++clock;
+        int base = slot * WORDS;
+        int diff = messageId - highest[slot];
+        if (diff > 0) {
+            advance(base, highest[slot], diff);
+            highest[slot] = messageId;
+            setBit(base, messageId);
+            return false;
+        }
+        if (diff <= -WINDOW_BITS) {
+            return true;
+        }
+        if (testBit(base, messageId)) {
+            return true;
+        }
+        setBit(base, messageId);
+        return false;
+    }
+
+    // Whether (sessionId, messageId) was already recorded, without recording it; ids
+    // behind the window count as seen, as in isDuplicate
+    public boolean wasSeen(long sessionId, int messageId) {
+        int slot = find(sessionId);
+        if (slot < 0) {
+            return false;
+        }
+        int diff = messageId - highest[slot];
+        if (diff > 0) {
+            return false;
+        }
+        return diff <= -WINDOW_BITS || testBit(slot * WORDS, messageId);
+    }
+
+    private int find(long sessionId) {
+        int start = (int) mix(sessionId) & mask;
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int slot = (start + i) & mask;
+            if (sessions[slot] == sessionId) {
+                return slot;
+            }
+            if (sessions[slot] == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the stream slot, or -1 when a new stream was created for this message
+    private int findOrClaim(long sessionId, int messageId) {
+        int start = (int) mix(sessionId) & mask;
+        int victim = -1;
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int slot = (start + i) & mask;
+            if (sessions[slot] == sessionId) {
+                return slot;
+            }
+            if (sessions[slot] == 0) {
+                victim = slot;
+                break;
+            }
+            if (victim < 0 || lastUsed[slot] < lastUsed[victim]) {
+                victim = slot;
+            }
+        }
+        if (sessions[victim] != 0) {
+            evictions++;
+        }
+        sessions[victim] = sessionId;
+        highest[victim] = messageId;
+        lastUsed[victim] = ++clock;
+        int base = victim * WORDS;
+        for (int w = 0; w < WORDS; w++) {
+            bitmaps[base + w] = 0L;
+        }
+        setBit(base, messageId);
+        return -1;
+    }
+
+    // Clears the bits for ids (from, from + distance] as the window slides forward
+    private void advance(int base, int from, int distance) {
+        if (distance >= WINDOW_BITS) {
+            for (int w = 0; w < WORDS; w++) {
+                bitmaps[base + w] = 0L;
+            }
+            return;
+        }
+        // Word at a time, so a long jump costs at most WORDS + 1 iterations
+        int bit = (from + 1) & (WINDOW_BITS - 1);
+        int remaining = distance;
+        while (remaining > 0) {
+            int offset = bit & 63;
+            int count = Math.min(64 - offset, remaining);
+            long clear = count == 64 ? -1L : ((1L << count) - 1) << offset;
+            bitmaps[base + (bit >>> 6)] &= ~clear;
+            remaining -= count;
+            bit = (bit + count) & (WINDOW_BITS - 1);
+        }
+    }
+
+    private boolean testBit(int base, int messageId) {
+        int bit = messageId & (WINDOW_BITS - 1);
+        return (bitmaps[base + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    private void setBit(int base, int messageId) {
+        int bit = messageId & (WINDOW_BITS - 1);
+        bitmaps[base + (bit >>> 6)] |= 1L << bit;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+}
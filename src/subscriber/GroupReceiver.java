@@ -0,0 +1,208 @@
+package subscriber;
+
+import common.Frame;
+import common.Multicast;
+import common.WireCodec;
+import config.AppConfig;
+import node.Node;
+import trace.Trace;
+import trace.TraceEvent;
+
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+// Receiving side of the registry's multicast fan-out. A JOIN names the group that carries
+// a topic, the port its frames go to and the first sequence meant for this subscriber; the
+// node joins the group on a shared socket bound to that port, and frames then arrive from the
+// group, or directly when repaired, numbered per topic. A gap is NACKed to the registry as
+// soon as a later frame or a heartbeat reveals it, and whatever is still missing is NACKed
+// again on every heartbeat until it arrives, falls out of the repair window or
+// MAX_NACK_ROUNDS pass without any repair. Only heartbeats repeat requests, so repairs in
+// flight are not asked for twice. Frames are delivered once each, in the order they arrive.
+//
+// Not thread-safe: it is meant to be used from the node's receive thread.
+final class GroupReceiver {
+    private static final Logger LOGGER = Logger.getLogger(GroupReceiver.class.getName());
+    private static final int MAX_NACK_ROUNDS = 5;
+
+    // Receives the PUBLISH frames carried by group frames; the frame is only valid for the call
+    interface Delivery {
+        void deliver(Frame frame, InetSocketAddress sender);
+    }
+
+    private static final class Stream {
+        final String topic;
+        final byte[] topicBytes;
+        final int id;
+        final InetSocketAddress source;
+        final int window;
+        final TreeSet<Long> missing = new TreeSet<>();
+        long highest;
+        int nackRounds;
+
+        Stream(String topic, int id, InetSocketAddress source, Multicast.Join join) {
+            this.topic = topic;
+            this.topicBytes = WireCodec.topicBytes(topic);
+            this.id = id;
+            this.source = source;
+            this.window = Math.max(1, join.repairWindow);
+            this.highest = join.firstSequence - 1;
+        }
+    }
+
+    private final Node node;
+    private final NetworkInterface networkInterface;
+    private final Delivery delivery;
+    // One stream per topic; a JOIN from a new stream (another owner, a restarted registry) replaces it
+    private final Map<String, Stream> streams = new HashMap<>();
+    private final Frame carried = new Frame();
+    private final long[] firsts = new long[Multicast.MAX_NACK_RANGES];
+    private final long[] lasts = new long[Multicast.MAX_NACK_RANGES];
+
+    // Without an interface no group is joined, and the registry keeps sending unicast
+    GroupReceiver(Node node, NetworkInterface networkInterface, Delivery delivery) {
+        this.node = node;
+        this.networkInterface = networkInterface;
+        this.delivery = delivery;
+    }
+
+    static NetworkInterface interfaceFromConfig() {
+        String name = AppConfig.getString("multicast.interface", "lo");
+        try {
+            NetworkInterface networkInterface = name.isBlank() ? null : NetworkInterface.getByName(name);
+            if (networkInterface == null) {
+                LOGGER.warning("⚠️ No multicast.interface \"" + name + "\"; multicast topics will arrive by unicast");
+            }
+            return networkInterface;
+        } catch (SocketException e) {
+            LOGGER.warning("⚠️ Cannot look up multicast.interface " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void onFrame(Frame frame, InetSocketAddress sender) {
+        switch (Multicast.kind(frame)) {
+            case Multicast.JOIN:
+                onJoin(frame, sender);
+                break;
+            case Multicast.DATA:
+                onData(frame);
+                break;
+            case Multicast.HEARTBEAT:
+                onHeartbeat(frame);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Every JOIN is confirmed, so a lost JOINED only costs a repeated JOIN
+    private void onJoin(Frame frame, InetSocketAddress sender) {
+        Stream stream = streams.get(frame.topic());
+        if (stream == null || stream.id != frame.messageId()) {
+            Multicast.Join join = Multicast.decodeJoin(frame);
+            if (join == null || networkInterface == null || !node.joinGroup(join.group, join.port, networkInterface)) {
+                return;
+            }
+            stream = new Stream(frame.topic(), frame.messageId(), sender, join);
+            streams.put(stream.topic, stream);
+            LOGGER.info("📡 [Subscriber-" + node.getName() + "] Joined multicast group "
+                    + join.group.getHostAddress() + " for " + stream.topic);
+        }
+        node.send(Multicast.encodeJoined(stream.topicBytes, stream.id), sender);
+    }
+
+    private void onData(Frame frame) {
+        Stream stream = streamOf(frame);
+        long sequence = Multicast.sequence(frame);
+        if (stream == null || sequence < 0) {
+            return;  // A topic sharing the group that this subscriber did not join
+        }
+        if (sequence > stream.highest) {
+            long expected = stream.highest + 1;
+            stream.highest = sequence;
+            if (sequence > expected) {
+                addMissing(stream, expected, sequence - 1);
+            }
+        } else if (stream.missing.remove(sequence)) {
+            stream.nackRounds = 0;  // Repairs are still coming; only rounds without any count
+        } else {
+            Trace.record(TraceEvent.DUPLICATE, node.getName(), stream.topic, sequence);
+            return;
+        }
+        if (Multicast.decodeData(frame, carried)) {
+            delivery.deliver(carried, stream.source);
+        }
+    }
+
+    // The last sequence sent; anything up to it that has not arrived is missing
+    private void onHeartbeat(Frame frame) {
+        Stream stream = streamOf(frame);
+        long last = Multicast.sequence(frame);
+        if (stream == null || last < 0) {
+            return;
+        }
+        if (last > stream.highest) {
+            long expected = stream.highest + 1;
+            stream.highest = last;
+            addMissing(stream, expected, last);
+        } else if (!stream.missing.isEmpty()) {
+            if (++stream.nackRounds > MAX_NACK_ROUNDS) {
+                Trace.record(TraceEvent.MULTICAST_LOST, node.getName(), stream.topic, stream.missing.size());
+                stream.missing.clear();
+                stream.nackRounds = 0;
+            } else {
+                nack(stream);
+            }
+        }
+    }
+
+    private Stream streamOf(Frame frame) {
+        Stream stream = streams.get(frame.topic());
+        return stream != null && stream.id == frame.messageId() ? stream : null;
+    }
+
+    // Sequences that fell out of the registry's window can no longer be repaired and are given up
+    private void addMissing(Stream stream, long first, long last) {
+        long oldest = stream.highest - stream.window + 1;
+        long lost = Math.max(0, Math.min(oldest, last + 1) - first);
+        for (long sequence = Math.max(first, oldest); sequence <= last; sequence++) {
+            stream.missing.add(sequence);
+        }
+        while (!stream.missing.isEmpty() && stream.missing.first() < oldest) {
+            stream.missing.pollFirst();
+            lost++;
+        }
+        if (lost > 0) {
+            Trace.record(TraceEvent.MULTICAST_LOST, node.getName(), stream.topic, lost);
+        }
+        if (first <= last && last >= oldest) {
+            first = Math.max(first, oldest);
+            Trace.record(TraceEvent.MULTICAST_GAP, node.getName(), stream.topic, first, last);
+            firsts[0] = first;
+            lasts[0] = last;
+            node.send(Multicast.encodeNack(stream.topicBytes, stream.id, firsts, lasts, 1), stream.source);
+        }
+    }
+
+    // Asks for everything still missing, as ranges of consecutive sequences
+    private void nack(Stream stream) {
+        int count = 0;
+        for (long sequence : stream.missing) {
+            if (count > 0 && sequence == lasts[count - 1] + 1) {
+                lasts[count - 1] = sequence;
+            } else if (count == firsts.length) {
+                break;
+            } else {
+                firsts[count] = sequence;
+                lasts[count++] = sequence;
+            }
+        }
+        node.send(Multicast.encodeNack(stream.topicBytes, stream.id, firsts, lasts, count), stream.source);
+    }
+}
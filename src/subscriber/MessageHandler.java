@@ -0,0 +1,7 @@
+package subscriber;
+
+// Application callback for accepted messages. Runs on the node's callback executor, never on
+// its receive thread, and is called for one message at a time per subscriber, in arrival order.
+public interface MessageHandler {
+    void onMessage(ReceivedMessage message);
+}
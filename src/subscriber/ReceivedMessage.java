@@ -0,0 +1,76 @@
+package subscriber;
+
+import common.Frame;
+import common.Message.PriorityLevel;
+import common.compress.PayloadCodecs;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// A message a subscriber accepted, copied out of the receive buffer for its handler
+public final class ReceivedMessage {
+    private final String topic;
+    private final int messageId;
+    private final PriorityLevel priority;
+    private final long timestampNanos;
+    private final byte[] payload;
+    private final InetSocketAddress sender;
+
+    private ReceivedMessage(String topic, int messageId, PriorityLevel priority, long timestampNanos,
+            byte[] payload, InetSocketAddress sender) {
+        this.topic = topic;
+        this.messageId = messageId;
+        this.priority = priority;
+        this.timestampNanos = timestampNanos;
+        this.payload = payload;
+        this.sender = sender;
+    }
+
+    // Decompresses the payload if it was compressed; throws IllegalArgumentException if
+    // that fails
+    static ReceivedMessage copyOf(Frame frame, InetSocketAddress sender) {
+        ByteBuffer plain = PayloadCodecs.plainPayload(frame);
+        byte[] payload = new byte[plain.remaining()];
+        plain.get(payload);
+        return new ReceivedMessage(frame.topic(), frame.messageId(), frame.priority(), frame.timestampNanos(),
+                payload, sender);
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    public int messageId() {
+        return messageId;
+    }
+
+    public PriorityLevel priority() {
+        return priority;
+    }
+
+    // Epoch nanoseconds at which the publisher sent it
+    public long timestampNanos() {
+        return timestampNanos;
+    }
+
+    // The caller's own copy
+    public byte[] payload() {
+        return payload.clone();
+    }
+
+    public String content() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    // The registry, or the group's registry for multicast topics
+    public InetSocketAddress sender() {
+        return sender;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceivedMessage[topic=" + topic + ", id=" + messageId + ", priority=" + priority
+                + ", payload=" + payload.length + "B]";
+    }
+}
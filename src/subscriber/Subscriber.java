@@ -1,194 +1,560 @@
 package subscriber;
 
+import node.FrameListener;
 import node.Node;
+import common.EpochClock;
+import common.Flow;
+import common.Frame;
+import common.AckRanges;
+import common.HashedWheelTimer;
+import common.IdRangeSet;
 import common.Message;
+import common.MessageType;
+import common.RoutingTable;
+import common.SerialExecutor;
+import common.SubscribeRequest;
+import common.WireCodec;
+import config.AppConfig;
+import config.ConfigSnapshot;
+import common.filter.MessageFilter;
+import metrics.Metrics;
+import trace.Trace;
+import trace.TraceEvent;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.nio.charset.StandardCharsets;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.time.Duration;
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.util.Set;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
-public class Subscriber implements Runnable {
+public class Subscriber implements FrameListener {
     private static final Logger LOGGER = Logger.getLogger(Subscriber.class.getName());
     private final Node node;
     private final Set<String> topics;
-    private final DatagramSocket socket;
     private volatile boolean running;
-    private final int port;
-    private final String filterKeyword;
-    private final boolean highPriorityOnly;
-    private final Duration timeLimit;
-    private Thread receiveThread;
-    private final Map<Integer, RetryAck> pendingAcks = new ConcurrentHashMap<>();
-    private Thread ackRetryThread;
+    // Where SUBSCRIBE requests and receive credit go
+    private final RoutingTable.Route registry;
+    // Keywords, priority, topic and age checks compiled into one pass over the frame
+    private final MessageFilter filter;
     private static final int MAX_ACK_RETRIES = 5;
+    private static final int DEDUP_STREAMS = 1024;
+    private final DuplicateFilter duplicates = new DuplicateFilter(DEDUP_STREAMS);
+    // Topics the registry fans out over multicast arrive through here
+    private final GroupReceiver groups;
+    // Accepted messages are handed to the handler through a bounded per-subscriber queue
+    private final MessageHandler handler;
+    private final SerialExecutor mailbox;
     private static final long ACK_RETRY_DELAY = 1000; // 1 second
+    private static final int MAX_ACK_STREAMS = 4096;
 
-    private static class RetryAck {
-        final DatagramPacket packet;
-        final int attempts;
-        final LocalDateTime firstAttempt;
+    // ACKs owed to each sender, per topic. An ID goes out at once when nothing sent before is
+    // waiting for confirmation; otherwise it waits for the confirmation, subscriber.ack.every
+    // more IDs or subscriber.ack.delayMs, whichever comes first, and goes out with the rest
+    private final Map<InetSocketAddress, Map<String, AckStream>> ackStreams = new ConcurrentHashMap<>();
+    private final AtomicInteger ackStreamCount = new AtomicInteger();
+    private final int ackEvery = Math.max(1, AppConfig.getInt("subscriber.ack.every", 64));
+    private final long ackDelayNanos =
+            TimeUnit.MILLISECONDS.toNanos(Math.max(0, AppConfig.getLong("subscriber.ack.delayMs", 5)));
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+    // Publisher named by the last forwarded frame, so a steady stream resolves it once
+    private volatile Origin lastOrigin;
 
-        RetryAck(DatagramPacket packet) {
-            this.packet = packet;
-            this.attempts = 0;
-            this.firstAttempt = LocalDateTime.now();
+    private static final class Origin {
+        final byte[] address;
+        final InetSocketAddress socketAddress;
+
+        Origin(InetSocketAddress socketAddress) {
+            this.address = socketAddress.getAddress().getAddress();
+            this.socketAddress = socketAddress;
+        }
+    }
+
+    // Receive credit advertised to the registries this subscriber hears from
+    private static final int MAX_CREDIT_TARGETS = 16;
+    private static final double CAPACITY_WEIGHT = 0.2;
+    private static final double CREDIT_HEADROOM = 0.8;
+    private static final int MIN_CAPACITY_SAMPLE = 64;
+    private final Set<InetSocketAddress> creditTargets = ConcurrentHashMap.newKeySet();
+    private final CreditTimeout credit = new CreditTimeout();
+    private final RenewTimeout renewal = new RenewTimeout();
+    // Time spent handling deliveries and how many, written only on the receive thread
+    private volatile long busyNanos;
+    private volatile long handled;
+    // Time spent in the handler; the mailbox runs it on one thread at a time
+    private volatile long handlerNanos;
+
+    // Re-advertises credit every creditIntervalNanos; its fields belong to the timer thread
+    private final class CreditTimeout extends HashedWheelTimer.Timeout {
+        long lastBusyNanos;
+        long lastHandlerNanos;
+        long lastHandled;
+        // Deliveries per second of handler time, smoothed
+        double capacity;
+        // subscriber.credit.intervalMs, maxRate and creditBurst, re-read after a config reload
+        ConfigSnapshot config;
+        long intervalNanos;
+        int maxRate;
+        int burst;
+
+        void refresh() {
+            ConfigSnapshot snapshot = AppConfig.snapshot();
+            if (snapshot == config) {
+                return;
+            }
+            config = snapshot;
+            intervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(1, snapshot.getLong("subscriber.credit.intervalMs", 100)));
+            maxRate = snapshot.getInt("subscriber.maxRate", 0);
+            burst = Math.max(1, snapshot.getInt("subscriber.creditBurst", 256));
         }
 
-        RetryAck withIncrementedAttempts() {
-            return new RetryAck(this.packet, this.attempts + 1, this.firstAttempt);
+        @Override
+        protected void expire() {
+            sendCredit(this);
+        }
+    }
+
+    // Resends the live subscription every subscriber.renewMs, so the registry keeps routing
+    // to this subscriber (it drops those it has not heard from in a while) and a restarted
+    // registry without saved state learns it again
+    private final class RenewTimeout extends HashedWheelTimer.Timeout {
+        long intervalNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(1, AppConfig.getLong("subscriber.renewMs", 15_000)));
         }
 
-        private RetryAck(DatagramPacket packet, int attempts, LocalDateTime firstAttempt) {
-            this.packet = packet;
-            this.attempts = attempts;
-            this.firstAttempt = firstAttempt;
+        @Override
+        protected void expire() {
+            if (!running) {
+                return;
+            }
+            sendSubscribe(SubscribeRequest.live(), false);
+            timer.schedule(this, intervalNanos());
         }
     }
 
-    public Subscriber(Node node, Set<String> topics, String filterKeyword, int port, 
+    // The IDs of one topic received from one sender and not yet confirmed by it. They go out
+    // as one aggregated ACK, which is re-sent every ACK_RETRY_DELAY until a confirmation
+    // covers it; a new ID starts the attempts over. Guarded by itself.
+    private final class AckStream extends HashedWheelTimer.Timeout {
+        final InetSocketAddress target;
+        final String topic;
+        final byte[] topicBytes;
+        final IdRangeSet ids = new IdRangeSet(AckRanges.MAX_RANGES);
+        ByteBuffer frame = ByteBuffer.allocate(AckRanges.encodedSize(64, 1));
+        // IDs added since the last ACK went out
+        int unsent;
+        int attempts;
+        // The timeout is set to send the unsent IDs rather than to retry
+        boolean flushDue;
+        // Dropped from ackStreams; new IDs need a new stream
+        boolean closed;
+
+        AckStream(InetSocketAddress target, String topic) {
+            this.target = target;
+            this.topic = topic;
+            this.topicBytes = WireCodec.topicBytes(topic);
+        }
+
+        @Override
+        protected void expire() {
+            ackTimeout(this);
+        }
+    }
+
+    // A missing or zero time limit means messages never expire
+    public Subscriber(Node node, Set<String> topics, String filterKeyword, RoutingTable.Route registry,
             boolean highPriorityOnly, Duration timeLimit) {
+        this(node, topics, MessageFilter.of(filterKeyword, highPriorityOnly, timeLimit), registry);
+    }
+
+    public Subscriber(Node node, Set<String> topics, MessageFilter filter, RoutingTable.Route registry) {
+        this(node, topics, filter, registry, null);
+    }
+
+    // Without a handler accepted messages are only acknowledged, counted and traced
+    public Subscriber(Node node, Set<String> topics, MessageFilter filter, RoutingTable.Route registry,
+            MessageHandler handler) {
         this.node = node;
         this.topics = topics;
-        this.filterKeyword = filterKeyword;
-        this.port = port;
-        this.highPriorityOnly = highPriorityOnly;
-        this.timeLimit = timeLimit;
-        this.socket = node.getSocket();
+        this.filter = filter;
+        this.registry = registry;
+        this.handler = handler;
+        this.mailbox = handler == null ? null : new SerialExecutor(node.callbackExecutor(),
+                AppConfig.getInt("subscriber.mailboxMessages", 4096));
+        this.groups = new GroupReceiver(node, GroupReceiver.interfaceFromConfig(), this::deliver);
         this.running = true;
         LOGGER.info("👂 Subscriber created on node " + node.getName() + 
                 "\n📋 Configuration:" +
                 "\n   Topics: " + topics + 
-                "\n   Filter: '" + filterKeyword + "'" +
-                "\n   Port: " + port + 
-                "\n   High Priority Only: " + highPriorityOnly + 
-                "\n   Time Limit: " + timeLimit);
+                "\n   Filter: " + filter +
+                "\n   Registry: " + registry.address());
         registerWithRegistry();
         startReceiving();
-        startAckRetryThread();
+        credit.refresh();
+        timer.schedule(credit, credit.intervalNanos);
+        timer.schedule(renewal, renewal.intervalNanos());
     }
     
     private void registerWithRegistry() {
-        try {
-            for (String topic : topics) {
-                String message = "SUBSCRIBE:" + topic;
-                byte[] buffer = message.getBytes();
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, InetAddress.getLocalHost(), port);
-                socket.send(packet);
-                LOGGER.info("✅ " + node.getName() + " registered for topic: " + topic);
+        sendSubscribe(SubscribeRequest.live(), true);
+    }
+
+    // Asks the registry to replay its stored log for every topic from the given offset
+    // (0 = the oldest retained message) before live delivery continues
+    public void replayFromOffset(long offset) {
+        sendSubscribe(SubscribeRequest.fromOffset(offset), true);
+    }
+
+    // Asks the registry to replay every stored message published at or after the given time
+    public void replaySince(Instant since) {
+        sendSubscribe(SubscribeRequest.fromTime(TimeUnit.SECONDS.toNanos(since.getEpochSecond()) + since.getNano()),
+                true);
+    }
+
+    // Every request carries the filter, so the registry only forwards what this subscriber accepts.
+    // Renewals are not logged.
+    private void sendSubscribe(SubscribeRequest request, boolean log) {
+        request = request.withFilter(filter);
+        InetSocketAddress target = registry.address();
+        for (String topic : topics) {
+            byte[] topicBytes = WireCodec.topicBytes(topic);
+            ByteBuffer frame = ByteBuffer.allocate(request.encodedSize(topicBytes.length));
+            request.encode(frame, topicBytes);
+            frame.flip();
+            if (node.send(frame, target)) {
+                if (log) {
+                    LOGGER.info("✅ " + node.getName() + " registered for topic: " + topic + " (" + request + ")");
+                }
+            } else {
+                LOGGER.severe("❌ Error registering with registry " + target + " for topic: " + topic);
             }
-        } catch (IOException e) {
-            LOGGER.severe("❌ Error registering with registry: " + e.getMessage());
         }
     }
     
+    // Frames arrive on the node's receive thread instead of a thread per subscriber, and
+    // the node only hands over those for this subscriber's topics
     private void startReceiving() {
-        receiveThread = new Thread(this);
-        receiveThread.start();
+        for (String topic : topics) {
+            node.addListener(topic, this);
+        }
     }
     
     @Override
-    public void run() {
-        byte[] buffer = new byte[1024];
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-    
-        while (running) {
-            try {
-                socket.receive(packet);
-                String received = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-                LOGGER.info("📥 [Subscriber] Raw incoming message: \"" + received + "\"");
-                String[] parts = received.split(":");
-    
-                if (parts.length == 5 && parts[0].equals("PUBLISH") && topics.contains(parts[1])) {
-                    int messageId = Integer.parseInt(parts[3]);
-                    String content = parts[2];
-                    Message.PriorityLevel priority = Message.PriorityLevel.valueOf(parts[4]);
-    
-                    if (timeLimit != null && Duration.between(LocalDateTime.now(), LocalDateTime.now()).compareTo(timeLimit) > 0) {
-                        LOGGER.info("⏳ [Subscriber-" + node.getName() + "] Skipping ancient message: \"" + content + "\"");
-                        continue;
-                    }
-    
-                    if (highPriorityOnly && priority != Message.PriorityLevel.HIGH) {
-                        LOGGER.warning("⚠️ [Subscriber-" + node.getName() + "] Ditching low-power message: \"" + content + "\"");
-                        continue;
-                    }
-    
-                    if (filterKeyword == null || content.contains(filterKeyword)) {
-                        LOGGER.info("🎉 [Subscriber-" + node.getName() + "] Cheers! Accepted message: \"" + content + 
-                                "\" | Priority: " + priority + " (ID: " + messageId + ")");
-                        sendAck(messageId, packet);
-                    } else {
-                        LOGGER.warning("🚫 [Subscriber-" + node.getName() + "] Rejected message (filter mismatch): \"" + content + "\"");
-                    }
+    public void onFrame(Frame frame, InetSocketAddress sender) {
+        if (!running) {
+            return;
+        }
+        Trace.record(TraceEvent.FRAME_RECEIVED, node.getName(), frame.topic(), frame.type().code(),
+                frame.messageId(), frame.payloadLength());
+
+        if (frame.type() == MessageType.ACK_CONFIRM) {
+            confirmAck(frame, sender);
+            return;
+        }
+        if (frame.type() == MessageType.MULTICAST) {
+            groups.onFrame(frame, sender);
+            return;
+        }
+        deliver(frame, sender);
+    }
+
+    // PUBLISH frames sent to this subscriber or to a group it joined
+    private void deliver(Frame frame, InetSocketAddress sender) {
+        if (frame.type() == MessageType.PUBLISH) {
+            long start = System.nanoTime();
+            handle(frame, sender);
+            busyNanos += System.nanoTime() - start;
+            handled++;
+            if (creditTargets.size() < MAX_CREDIT_TARGETS) {
+                creditTargets.add(sender);
+            }
+        }
+    }
+
+    private void handle(Frame frame, InetSocketAddress sender) {
+        int messageId = frame.messageId();
+        Message.PriorityLevel priority = frame.priority();
+        boolean exactlyOnce = frame.hasSession();
+        InetSocketAddress ackTarget = ackTarget(frame, sender);
+
+        // A message is acknowledged, and for exactly-once marked seen, only once it is handed
+        // to the handler, so one dropped here is retransmitted. Retransmissions of exactly-once
+        // messages already handed over are only re-acknowledged, so a lost ACK cannot cause
+        // redelivery.
+        if (exactlyOnce && duplicates.wasSeen(frame.sessionId(), messageId)) {
+            sendAck(frame, ackTarget);
+            Metrics.record(frame.topic(), Metrics.Event.DROPPED, priority);
+            Trace.record(TraceEvent.DUPLICATE, node.getName(), frame.topic(), messageId);
+            return;
+        }
+
+        long now = EpochClock.nowNanos();
+        MessageFilter.Verdict verdict = filter.evaluate(frame, now);
+        if (verdict == MessageFilter.Verdict.ACCEPT) {
+            if (mailbox != null) {
+                ReceivedMessage message;
+                try {
+                    message = ReceivedMessage.copyOf(frame, sender);
+                } catch (IllegalArgumentException e) {
+                    Metrics.record(frame.topic(), Metrics.Event.DROPPED, priority);
+                    Trace.record(TraceEvent.UNREADABLE, node.getName(), frame.topic(), messageId);
+                    return;
                 }
-            } catch (IOException e) {
-                if (running)
-                    LOGGER.severe("🚨 [Subscriber-" + node.getName() + "] ERROR receiving message: " + e.getMessage());
+                if (!mailbox.offer(handlerTask(message))) {
+                    Metrics.record(frame.topic(), Metrics.Event.DROPPED, priority);
+                    Trace.record(TraceEvent.HANDLER_BACKLOG_FULL, node.getName(), frame.topic(), messageId,
+                            mailbox.backlog());
+                    return;
+                }
+            }
+            if (exactlyOnce) {
+                duplicates.isDuplicate(frame.sessionId(), messageId);
+            }
+            sendAck(frame, ackTarget);
+            Metrics.record(frame.topic(), Metrics.Event.DELIVERED, priority);
+            long latency = now - frame.timestampNanos();
+            Metrics.deliveryLatency().record(latency);
+            Trace.record(TraceEvent.DELIVERED, node.getName(), frame.topic(), messageId, priority.ordinal(), latency);
+        } else {
+            // Exactly-once publishers are told a filtered message arrived, so they stop sending it
+            if (exactlyOnce) {
+                duplicates.isDuplicate(frame.sessionId(), messageId);
+                sendAck(frame, ackTarget);
             }
+            Metrics.record(frame.topic(), Metrics.Event.FILTERED, priority);
+            Trace.record(TraceEvent.REJECTED, node.getName(), verdict, messageId);
         }
     }
     
-    private void sendAck(int messageId, DatagramPacket packet) {
-        try {
-            String ack = "ACK:" + messageId;
-            byte[] ackData = ack.getBytes(StandardCharsets.UTF_8);
-            // Use the sender address and port from the received packet instead of hardcoding port 5002.
-            DatagramPacket ackPacket = new DatagramPacket(ackData, ackData.length, packet.getAddress(), packet.getPort());
-            pendingAcks.put(messageId, new RetryAck(ackPacket));
-            socket.send(ackPacket);
-            LOGGER.info("✅ [Subscriber-" + node.getName() + "] Sent ACK for message ID: " + messageId);
-        } catch (IOException e) {
-            LOGGER.severe("🚨 [Subscriber-" + node.getName() + "] ERROR sending ACK for message ID " + messageId + ": " + e.getMessage());
+    // Runs on the timer thread. The rate offered is what the handler has been keeping up
+    // with, less some headroom, capped by subscriber.maxRate; nothing is offered until
+    // one of the two is known.
+    private void sendCredit(CreditTimeout credit) {
+        if (!running) {
+            return;
         }
+        credit.refresh();
+        long busy = busyNanos;
+        long inHandler = handlerNanos;
+        long count = handled;
+        long busyDelta = busy - credit.lastBusyNanos + inHandler - credit.lastHandlerNanos;
+        long countDelta = count - credit.lastHandled;
+        // A few deliveries say little, and the first ones carry one-off costs; wait for more
+        if (countDelta >= MIN_CAPACITY_SAMPLE && busyDelta > 0) {
+            credit.lastBusyNanos = busy;
+            credit.lastHandlerNanos = inHandler;
+            credit.lastHandled = count;
+            double sample = countDelta * 1e9 / busyDelta;
+            credit.capacity = credit.capacity == 0 ? sample
+                    : credit.capacity + CAPACITY_WEIGHT * (sample - credit.capacity);
+        }
+        double rate = credit.capacity * CREDIT_HEADROOM;
+        if (credit.maxRate > 0 && (rate == 0 || rate > credit.maxRate)) {
+            rate = credit.maxRate;
+        }
+        if (rate >= 1) {
+            ByteBuffer frame = Flow.encodeCredit((int) Math.min(Integer.MAX_VALUE, rate), credit.burst);
+            InetSocketAddress configured = registry.address();
+            if (!creditTargets.contains(configured)) {
+                node.send(frame.duplicate(), configured);
+            }
+            for (InetSocketAddress target : creditTargets) {
+                node.send(frame.duplicate(), target);
+            }
+        }
+        timer.schedule(credit, credit.intervalNanos);
     }
-    
-    private void startAckRetryThread() {
-        ackRetryThread = new Thread(() -> {
-            while (running) {
-                try {
-                    Thread.sleep(ACK_RETRY_DELAY);
-                    retryPendingAcks();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+
+    private Runnable handlerTask(ReceivedMessage message) {
+        return () -> {
+            if (!running) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                handler.onMessage(message);
+            } catch (RuntimeException e) {
+                LOGGER.severe("🚨 [Subscriber-" + node.getName() + "] Handler failed on message ID "
+                        + message.messageId() + ": " + e);
+            }
+            handlerNanos += System.nanoTime() - start;
+        };
+    }
+
+    // A registry names the publisher it forwards for, and the ACK goes straight there. Frames
+    // sent directly, or replayed from the registry's log, are acknowledged to their sender.
+    private InetSocketAddress ackTarget(Frame frame, InetSocketAddress sender) {
+        if (!frame.hasOrigin()) {
+            return sender;
+        }
+        Origin last = lastOrigin;
+        if (last != null && frame.originEquals(last.address, last.socketAddress.getPort())) {
+            return last.socketAddress;
+        }
+        InetSocketAddress origin = frame.origin();
+        if (origin == null) {
+            return sender;
+        }
+        lastOrigin = new Origin(origin);
+        return origin;
+    }
+
+    private void sendAck(Frame frame, InetSocketAddress sender) {
+        int messageId = frame.messageId();
+        while (true) {
+            AckStream stream = ackStream(sender, frame.topic());
+            if (stream == null) {
+                sendSingleAck(frame, sender);
+                return;
+            }
+            synchronized (stream) {
+                if (stream.closed) {
+                    continue;
+                }
+                boolean idle = stream.ids.isEmpty();
+                stream.ids.add(messageId);
+                stream.unsent++;
+                stream.attempts = 0;
+                if (idle || stream.unsent >= ackEvery) {
+                    transmit(stream);
+                } else if (!stream.flushDue) {
+                    stream.flushDue = true;
+                    timer.schedule(stream, ackDelayNanos);
                 }
+                return;
             }
-        });
-        ackRetryThread.setDaemon(true);
-        ackRetryThread.start();
+        }
     }
-    
-    private void retryPendingAcks() {
-        pendingAcks.forEach((messageId, retryAck) -> {
-            if (retryAck.attempts < MAX_ACK_RETRIES) {
-                try {
-                    socket.send(retryAck.packet);
-                    pendingAcks.put(messageId, retryAck.withIncrementedAttempts());
-                    LOGGER.info("🔄 [Subscriber-" + node.getName() + "] Retrying ACK for message ID " + messageId +
-                                " (Attempt " + (retryAck.attempts + 1) + " of " + MAX_ACK_RETRIES + ")");
-                } catch (IOException e) {
-                    LOGGER.severe("🚨 [Subscriber-" + node.getName() + "] ERROR retrying ACK for message ID " + messageId + ": " + e.getMessage());
+
+    // Null once MAX_ACK_STREAMS are open
+    private AckStream ackStream(InetSocketAddress sender, String topic) {
+        Map<String, AckStream> byTopic = ackStreams.computeIfAbsent(sender, s -> new ConcurrentHashMap<>());
+        AckStream stream = byTopic.get(topic);
+        if (stream != null) {
+            return stream;
+        }
+        if (ackStreamCount.incrementAndGet() > MAX_ACK_STREAMS) {
+            ackStreamCount.decrementAndGet();
+            return null;
+        }
+        AckStream created = new AckStream(sender, topic);
+        stream = byTopic.putIfAbsent(topic, created);
+        if (stream != null) {
+            ackStreamCount.decrementAndGet();
+            return stream;
+        }
+        return created;
+    }
+
+    // Sends the stream's IDs and waits ACK_RETRY_DELAY for a confirmation; called with it locked
+    private void transmit(AckStream stream) {
+        int size = AckRanges.encodedSize(stream.topicBytes.length, stream.ids.ranges());
+        if (stream.frame.capacity() < size) {
+            stream.frame = ByteBuffer.allocate(size);
+        }
+        stream.frame.clear();
+        AckRanges.encode(stream.frame, MessageType.ACK, stream.topicBytes, stream.ids);
+        stream.frame.flip();
+        stream.unsent = 0;
+        stream.flushDue = false;
+        timer.schedule(stream, TimeUnit.MILLISECONDS.toNanos(ACK_RETRY_DELAY));
+        if (node.send(stream.frame.duplicate(), stream.target)) {
+            Trace.record(TraceEvent.ACK_SENT, node.getName(), stream.topic, stream.ids.last(0));
+        } else {
+            LOGGER.severe("🚨 [Subscriber-" + node.getName() + "] ERROR sending ACK for " + stream.ids);
+        }
+    }
+
+    // Too many senders and topics to track; this ACK goes out once, on its own
+    private void sendSingleAck(Frame frame, InetSocketAddress sender) {
+        ByteBuffer ack = ByteBuffer.allocate(WireCodec.frameSize(frame.topicLength(), 0));
+        WireCodec.encodeAck(ack, WireCodec.topicBytes(frame.topic()), frame.messageId());
+        ack.flip();
+        node.send(ack, sender);
+    }
+
+    // The publisher got our ACK; stop re-sending what it confirmed
+    private void confirmAck(Frame frame, InetSocketAddress sender) {
+        Map<String, AckStream> byTopic = ackStreams.get(sender);
+        AckStream stream = byTopic == null ? null : byTopic.get(frame.topic());
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            if (AckRanges.isAggregate(frame)) {
+                for (int i = 0; i < AckRanges.count(frame); i++) {
+                    stream.ids.remove(AckRanges.first(frame, i), AckRanges.last(frame, i));
                 }
             } else {
-                LOGGER.severe("🛑 [Subscriber-" + node.getName() + "] Gave up on message ID " + messageId + " after max retries.");
-                pendingAcks.remove(messageId);
+                stream.ids.remove(frame.messageId(), frame.messageId());
             }
-        });
+            stream.attempts = 0;
+            if (stream.ids.isEmpty()) {
+                timer.cancel(stream);
+                close(stream);
+            } else if (stream.unsent > 0) {
+                transmit(stream);  // What arrived while this was in flight
+            }
+        }
     }
-    
+
+    // Runs on the timer thread: sends what is due, or re-sends what is unconfirmed until
+    // MAX_ACK_RETRIES attempts have gone by without a confirmation
+    private void ackTimeout(AckStream stream) {
+        synchronized (stream) {
+            if (stream.closed || stream.ids.isEmpty()) {
+                close(stream);
+                return;
+            }
+            if (stream.unsent > 0) {
+                transmit(stream);
+                return;
+            }
+            if (stream.attempts >= MAX_ACK_RETRIES) {
+                LOGGER.severe("🛑 [Subscriber-" + node.getName() + "] Gave up on message IDs " + stream.ids
+                        + " after max retries.");
+                close(stream);
+                return;
+            }
+            stream.attempts++;
+            Trace.record(TraceEvent.ACK_RETRIED, node.getName(), null, stream.ids.last(0), stream.attempts,
+                    MAX_ACK_RETRIES);
+            transmit(stream);
+        }
+    }
+
+    // Called with the stream locked
+    private void close(AckStream stream) {
+        if (stream.closed) {
+            return;
+        }
+        stream.closed = true;
+        stream.ids.clear();
+        Map<String, AckStream> byTopic = ackStreams.get(stream.target);
+        if (byTopic != null && byTopic.remove(stream.topic, stream)) {
+            ackStreamCount.decrementAndGet();
+        }
+    }
+
     public void stop() {
         LOGGER.info("🛑 Stopping subscriber..." );
         running = false;
-        if (ackRetryThread != null) {
-            ackRetryThread.interrupt();
+        for (String topic : topics) {
+            node.removeListener(topic, this);
+        }
+        timer.cancel(credit);
+        timer.cancel(renewal);
+        for (Map<String, AckStream> byTopic : ackStreams.values()) {
+            for (AckStream stream : byTopic.values()) {
+                timer.cancel(stream);
+            }
         }
+        ackStreams.clear();
+        ackStreamCount.set(0);
     }
 }
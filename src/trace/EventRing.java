@@ -0,0 +1,105 @@
+package trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded multi-producer, single-consumer ring of fixed-size event records.
+// A producer claims a slot with one CAS, fills in its fields and publishes it with an
+// ordered store. When the consumer is a full ring behind, new events are counted and
+// dropped instead of waited for, so a slow sink never stalls a recording thread.
+final class EventRing {
+    // Receives one event at a time, in claim order, on the consumer thread
+    interface Reader {
+        void read(int kind, long timestampNanos, Object source, Object subject, long first, long second, long third);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final int[] kinds;
+    private final long[] timestamps;
+    private final Object[] sources;
+    private final Object[] subjects;
+    // Three numeric arguments per slot, side by side
+    private final long[] values;
+    // published[slot] is claim + 1 once the producer of that claim has written the slot
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();
+    // Next claim the consumer reads; only the consumer writes it, once per drain
+    private volatile long head;
+    // Producers' last look at head. It only ever lags, which can only make the ring
+    // look fuller than it is, so the volatile head is read when the ring seems full.
+    private long cachedHead;
+    private final LongAdder dropped = new LongAdder();
+
+    EventRing(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.kinds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.sources = new Object[capacity];
+        this.subjects = new Object[capacity];
+        this.values = new long[capacity * 3];
+        this.published = new AtomicLongArray(capacity);
+    }
+
+    boolean offer(int kind, long timestampNanos, Object source, Object subject, long first, long second, long third) {
+        long claim;
+        do {
+            claim = tail.get();
+            if (claim - cachedHead >= capacity) {
+                cachedHead = head;
+                if (claim - cachedHead >= capacity) {
+                    dropped.increment();
+                    return false;
+                }
+            }
+        } while (!tail.compareAndSet(claim, claim + 1));
+        int slot = (int) claim & mask;
+        kinds[slot] = kind;
+        timestamps[slot] = timestampNanos;
+        sources[slot] = source;
+        subjects[slot] = subject;
+        values[slot * 3] = first;
+        values[slot * 3 + 1] = second;
+        values[slot * 3 + 2] = third;
+        published.lazySet(slot, claim + 1);
+        return true;
+    }
+
+    // Consumer thread only. Reads up to max published events and frees their slots;
+    // stops early at a slot whose producer has claimed but not yet published it
+    int drain(Reader reader, int max) {
+        long position = head;
+        int count = 0;
+        while (count < max) {
+            int slot = (int) position & mask;
+            if (published.get(slot) != position + 1) {
+                break;
+            }
+            reader.read(kinds[slot], timestamps[slot], sources[slot], subjects[slot],
+                    values[slot * 3], values[slot * 3 + 1], values[slot * 3 + 2]);
+            // Do not keep the referenced objects alive until the slot comes round again
+            sources[slot] = null;
+            subjects[slot] = null;
+            position++;
+            count++;
+        }
+        head = position;
+        return count;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    // Events claimed so far; every one of them is eventually drained
+    long claimed() {
+        return tail.get();
+    }
+}
@@ -0,0 +1,272 @@
+package trace;
+
+import common.EpochClock;
+import config.AppConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous event journal for the per-message paths. Recording stores an event kind,
+// a timestamp, two references and three numbers in a ring buffer slot: the recording
+// thread builds no string and takes no lock. The trace-writer thread formats events and
+// writes them in batches, one write per batch. Each category has its own level and an
+// optional 1-in-N sampling rate (WARN events are never sampled away), so tracing can
+// stay on under full load. When the writer falls behind, events are dropped and counted.
+public final class Trace {
+    public enum Level {
+        OFF, WARN, INFO, DEBUG
+    }
+
+    public enum Category {
+        PUBLISH, ACK, DELIVERY, REGISTRY, SERVER, TRANSPORT;
+
+        private final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final TraceEvent[] EVENTS = TraceEvent.values();
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int BATCH_EVENTS = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(1, AppConfig.getLong("trace.flushIntervalMs", 10)));
+
+    // Replaced as a whole on change, so recording threads read one volatile reference
+    private static volatile int[] levels = configuredLevels();
+    private static volatile int[] sampleEvery = configuredSampling();
+
+    private static final EventRing RING = new EventRing(AppConfig.getInt("trace.bufferEvents", 1 << 16));
+    private static final Writer WRITER = new Writer(openSink(AppConfig.getString("trace.file", "")));
+
+    static {
+        Thread thread = new Thread(WRITER, "trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+        // Whatever is still in the ring when the process exits gets written out
+        Runtime.getRuntime().addShutdownHook(new Thread(Trace::flush, "trace-flush"));
+    }
+
+    private Trace() {
+    }
+
+    // For callers that would otherwise compute arguments for an event nobody will see
+    public static boolean isEnabled(TraceEvent event) {
+        return event.level().ordinal() <= levels[event.category().ordinal()];
+    }
+
+    public static void record(TraceEvent event, Object source, Object subject, long first, long second, long third) {
+        int category = event.category().ordinal();
+        if (event.level().ordinal() > levels[category]) {
+            return;
+        }
+        int every = sampleEvery[category];
+        if (every > 1 && event.level() != Level.WARN && ThreadLocalRandom.current().nextInt(every) != 0) {
+            return;
+        }
+        RING.offer(event.ordinal(), EpochClock.nowNanos(), source, subject, first, second, third);
+    }
+
+    public static void record(TraceEvent event, Object source, Object subject, long first, long second) {
+        record(event, source, subject, first, second, 0);
+    }
+
+    public static void record(TraceEvent event, Object source, Object subject, long first) {
+        record(event, source, subject, first, 0, 0);
+    }
+
+    public static synchronized void setLevel(Category category, Level level) {
+        int[] updated = levels.clone();
+        updated[category.ordinal()] = level.ordinal();
+        levels = updated;
+    }
+
+    public static Level level(Category category) {
+        return Level.values()[levels[category.ordinal()]];
+    }
+
+    // Keeps one in every n events of the category below WARN; 1 keeps them all
+    public static synchronized void setSampleEvery(Category category, int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Sampling rate must be at least 1, got " + n);
+        }
+        int[] updated = sampleEvery.clone();
+        updated[category.ordinal()] = n;
+        sampleEvery = updated;
+    }
+
+    // Sends trace lines somewhere else from the next batch on; the old sink is flushed, not closed
+    public static void setSink(OutputStream sink) {
+        WRITER.flushSink();
+        WRITER.sink = sink;
+    }
+
+    // Events lost because the ring was full
+    public static long dropped() {
+        return RING.dropped();
+    }
+
+    // Waits until everything recorded so far is written
+    public static void flush() {
+        long target = RING.claimed();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (WRITER.written < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(WRITER.thread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        WRITER.flushSink();
+    }
+
+    // trace.level sets every category; trace.level.<category> overrides one
+    private static int[] configuredLevels() {
+        Level all = parseLevel(AppConfig.getString("trace.level", "INFO"), Level.INFO);
+        int[] configured = new int[CATEGORIES.length];
+        for (Category category : CATEGORIES) {
+            configured[category.ordinal()] = parseLevel(
+                    AppConfig.getString("trace.level." + category.key, all.name()), all).ordinal();
+        }
+        return configured;
+    }
+
+    private static int[] configuredSampling() {
+        int all = Math.max(1, AppConfig.getInt("trace.sampleEvery", 1));
+        int[] configured = new int[CATEGORIES.length];
+        for (Category category : CATEGORIES) {
+            configured[category.ordinal()] = Math.max(1, AppConfig.getInt("trace.sampleEvery." + category.key, all));
+        }
+        return configured;
+    }
+
+    private static Level parseLevel(String value, Level fallback) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ Invalid trace level: " + value + ". Using " + fallback);
+            return fallback;
+        }
+    }
+
+    // An empty path means standard output
+    private static OutputStream openSink(String path) {
+        if (path.isBlank()) {
+            return System.out;
+        }
+        try {
+            return new BufferedOutputStream(new FileOutputStream(path, true), 1 << 16);
+        } catch (IOException e) {
+            System.err.println("❌ Cannot open trace file " + path + ": " + e.getMessage() + ". Tracing to standard output");
+            return System.out;
+        }
+    }
+
+    // Drains the ring on its own thread. A batch of lines goes out in one write, so trace
+    // lines never interleave with other output on the same stream.
+    private static final class Writer implements Runnable, EventRing.Reader {
+        private volatile OutputStream sink;
+        private final StringBuilder text = new StringBuilder(1 << 16);
+        private final ZoneRules zone = ZoneId.systemDefault().getRules();
+        private volatile Thread thread;
+        // Events drained and handed to the sink, flushed or not
+        private volatile long written;
+        private long offsetMinute = Long.MIN_VALUE;
+        private long offsetSeconds;
+        private long reportedDrops;
+
+        Writer(OutputStream sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (true) {
+                int drained = RING.drain(this, BATCH_EVENTS);
+                if (drained > 0) {
+                    write();
+                    written += drained;
+                } else {
+                    reportDrops();
+                    write();
+                    flushSink();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        @Override
+        public void read(int kind, long timestampNanos, Object source, Object subject, long first, long second, long third) {
+            TraceEvent event = EVENTS[kind];
+            appendTime(timestampNanos);
+            text.append(' ').append(event.level().name());
+            for (int pad = event.level().name().length(); pad < 5; pad++) {
+                text.append(' ');
+            }
+            text.append(' ');
+            event.format(text, source, subject, first, second, third);
+            text.append('\n');
+        }
+
+        // Local wall-clock time with microseconds, e.g. 14:03:07.123456
+        private void appendTime(long epochNanos) {
+            long epochSeconds = Math.floorDiv(epochNanos, 1_000_000_000L);
+            if (epochSeconds / 60 != offsetMinute) {
+                offsetMinute = epochSeconds / 60;
+                offsetSeconds = zone.getOffset(Instant.ofEpochSecond(epochSeconds)).getTotalSeconds();
+            }
+            long secondOfDay = Math.floorMod(epochSeconds + offsetSeconds, 86_400L);
+            appendPadded(secondOfDay / 3600, 2);
+            text.append(':');
+            appendPadded(secondOfDay / 60 % 60, 2);
+            text.append(':');
+            appendPadded(secondOfDay % 60, 2);
+            text.append('.');
+            appendPadded(Math.floorMod(epochNanos, 1_000_000_000L) / 1000, 6);
+        }
+
+        private void appendPadded(long value, int digits) {
+            for (long limit = 10; --digits > 0; limit *= 10) {
+                if (value < limit) {
+                    text.append('0');
+                }
+            }
+            text.append(value);
+        }
+
+        private void reportDrops() {
+            long drops = RING.dropped();
+            if (drops != reportedDrops) {
+                appendTime(EpochClock.nowNanos());
+                text.append(" WARN  ⚠️ Trace buffer full, dropped ").append(drops - reportedDrops).append(" event(s)\n");
+                reportedDrops = drops;
+            }
+        }
+
+        private void write() {
+            if (text.length() == 0) {
+                return;
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            text.setLength(0);
+            try {
+                sink.write(bytes);
+            } catch (IOException e) {
+                System.err.println("❌ Error writing trace: " + e.getMessage());
+            }
+        }
+
+        private void flushSink() {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                System.err.println("❌ Error flushing trace: " + e.getMessage());
+            }
+        }
+    }
+}
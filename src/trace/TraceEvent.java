@@ -0,0 +1,145 @@
+package trace;
+
+import common.Message.PriorityLevel;
+import common.MessageType;
+
+import java.util.concurrent.TimeUnit;
+
+// Every event the hot paths can record. An event is its kind plus two object references
+// (node names, topics, addresses: objects that already exist, never built for the event)
+// and three numbers; the text is only put together on the trace writer thread.
+public enum TraceEvent {
+    // Publisher
+    PUBLISHED(Trace.Category.PUBLISH, Trace.Level.INFO, (out, source, subject, id, priority, unused) ->
+            out.append("📤 [Publisher] Zapped message (ID: ").append(id).append(") -> \"").append(subject)
+                    .append("\" on ").append(source).append(" | Priority: ").append(priority(priority))),
+    SEND_QUEUE_FULL(Trace.Category.PUBLISH, Trace.Level.WARN, (out, source, subject, id, unused, unused2) ->
+            out.append("⚠️ [Publisher] Send queue full, message ID ").append(id).append(" not sent")),
+    PUBLISH_FILTERED(Trace.Category.PUBLISH, Trace.Level.INFO, (out, source, subject, id, unused, unused2) ->
+            out.append("❌ Message failed filter: \"").append(subject).append("\" (ID: ").append(id).append(')')),
+    THROTTLED(Trace.Category.PUBLISH, Trace.Level.INFO, (out, source, subject, rate, holdMillis, unused) ->
+            out.append("🐢 [Publisher] Slowing ").append(source).append(" to ").append(rate)
+                    .append(" msg/s for ").append(holdMillis).append(" ms at the registry's request")),
+    RETRANSMITTED(Trace.Category.PUBLISH, Trace.Level.INFO, (out, source, subject, id, attempt, maxAttempts) ->
+            out.append("🔄 [Publisher] Re-sent message with ID: ").append(id).append(" on ").append(source)
+                    .append(" (attempt ").append(attempt).append(" of ").append(maxAttempts).append(')')),
+
+    // Acknowledgements
+    ACK_RECEIVED(Trace.Category.ACK, Trace.Level.INFO, (out, source, subject, id, rttNanos, unused) ->
+            out.append("✅ [Publisher] ACK received for message ID: ").append(id).append(" on ").append(source)
+                    .append(" (RTT ").append(TimeUnit.NANOSECONDS.toMicros(rttNanos) / 1000.0).append(" ms)")),
+    ACK_SENT(Trace.Category.ACK, Trace.Level.DEBUG, (out, source, subject, id, unused, unused2) ->
+            out.append("✅ [Subscriber-").append(source).append("] Sent ACK for message ID: ").append(id)),
+    ACK_RETRIED(Trace.Category.ACK, Trace.Level.INFO, (out, source, subject, id, attempt, maxAttempts) ->
+            out.append("🔄 [Subscriber-").append(source).append("] Retrying ACK for message ID ").append(id)
+                    .append(" (Attempt ").append(attempt).append(" of ").append(maxAttempts).append(')')),
+
+    // Subscriber
+    FRAME_RECEIVED(Trace.Category.DELIVERY, Trace.Level.DEBUG, (out, source, subject, type, id, payloadBytes) ->
+            out.append("📥 [Subscriber-").append(source).append("] Raw incoming frame: ").append(type(type))
+                    .append("[topic=").append(subject).append(", id=").append(id)
+                    .append(", payload=").append(payloadBytes).append("B]")),
+    DELIVERED(Trace.Category.DELIVERY, Trace.Level.INFO, (out, source, subject, id, priority, latencyNanos) ->
+            out.append("🎉 [Subscriber-").append(source).append("] Cheers! Accepted message ID ").append(id)
+                    .append(" on ").append(subject).append(" | Priority: ").append(priority(priority))
+                    .append(" | Latency: ").append(TimeUnit.NANOSECONDS.toMicros(latencyNanos)).append(" µs")),
+    DUPLICATE(Trace.Category.DELIVERY, Trace.Level.DEBUG, (out, source, subject, id, unused, unused2) ->
+            out.append("♻️ [Subscriber-").append(source).append("] Dropped duplicate message ID ").append(id)),
+    HANDLER_BACKLOG_FULL(Trace.Category.DELIVERY, Trace.Level.WARN, (out, source, subject, id, backlog, unused) ->
+            out.append("⚠️ [Subscriber-").append(source).append("] Handler is ").append(backlog)
+                    .append(" messages behind; dropped message ID ").append(id).append(" on ").append(subject)),
+    UNREADABLE(Trace.Category.DELIVERY, Trace.Level.WARN, (out, source, subject, id, unused, unused2) ->
+            out.append("⚠️ [Subscriber-").append(source).append("] Cannot decompress message ID ").append(id)
+                    .append(" on ").append(subject).append("; is its codec or dictionary configured here?")),
+    REJECTED(Trace.Category.DELIVERY, Trace.Level.DEBUG, (out, source, subject, id, unused, unused2) ->
+            out.append("🚫 [Subscriber-").append(source).append("] Rejected message ID ").append(id)
+                    .append(" (").append(subject).append(" filter)")),
+    MULTICAST_GAP(Trace.Category.DELIVERY, Trace.Level.INFO, (out, source, subject, first, last, unused) ->
+            out.append("🕳️ [Subscriber-").append(source).append("] Missing multicast frames ").append(first)
+                    .append("..").append(last).append(" on ").append(subject).append(", requesting repair")),
+    MULTICAST_LOST(Trace.Category.DELIVERY, Trace.Level.WARN, (out, source, subject, count, unused, unused2) ->
+            out.append("⚠️ [Subscriber-").append(source).append("] Gave up on ").append(count)
+                    .append(" multicast frames on ").append(subject)),
+
+    // Registry
+    REGISTRY_RECEIVED(Trace.Category.REGISTRY, Trace.Level.INFO, (out, source, subject, id, priority, payloadBytes) ->
+            out.append("📥 Registry received message ").append(id).append(" on ").append(subject)
+                    .append(" | Priority: ").append(priority(priority)).append(" (").append(payloadBytes).append("B)")),
+    NO_SUBSCRIBERS(Trace.Category.REGISTRY, Trace.Level.INFO, (out, source, subject, id, unused, unused2) ->
+            out.append("⚠️ No subscribers for topic: ").append(subject)),
+    REGISTRY_FORWARDED(Trace.Category.REGISTRY, Trace.Level.DEBUG, (out, source, subject, id, unused, unused2) ->
+            out.append("📤 Forwarded to Subscriber ").append(subject).append(": message ").append(id)),
+    OWNER_FORWARDED(Trace.Category.REGISTRY, Trace.Level.DEBUG, (out, source, subject, type, id, unused) ->
+            out.append("↪️ Forwarded ").append(type(type)).append(' ').append(id).append(" on ").append(subject)
+                    .append(" to owner ").append(source)),
+    MULTICAST_SENT(Trace.Category.REGISTRY, Trace.Level.DEBUG, (out, source, subject, id, sequence, unused) ->
+            out.append("📡 Multicast message ").append(id).append(" on ").append(subject).append(" to group ")
+                    .append(source).append(" as #").append(sequence)),
+    FLOW_SHED(Trace.Category.REGISTRY, Trace.Level.DEBUG, (out, source, subject, id, priority, unused) ->
+            out.append("🪣 Shed message ").append(id).append(" on ").append(subject).append(" (")
+                    .append(priority(priority)).append(") queued for slow subscriber ").append(source)),
+    SLOW_DOWN_SENT(Trace.Category.REGISTRY, Trace.Level.INFO, (out, source, subject, rate, publishers, unused) ->
+            out.append("🐢 Subscriber ").append(source).append(" is falling behind on ").append(subject)
+                    .append("; asked ").append(publishers).append(" publisher(s) to slow to ").append(rate)
+                    .append(" msg/s each")),
+    MULTICAST_REPAIRED(Trace.Category.REGISTRY, Trace.Level.DEBUG, (out, source, subject, sequence, unused, unused2) ->
+            out.append("🩹 Re-sent multicast frame #").append(sequence).append(" on ").append(subject)
+                    .append(" to ").append(source)),
+
+    // Server
+    SERVER_RECEIVED(Trace.Category.SERVER, Trace.Level.INFO, (out, source, subject, type, id, payloadBytes) ->
+            out.append("📥 Received: ").append(type(type)).append("[topic=").append(subject)
+                    .append(", id=").append(id).append(", payload=").append(payloadBytes).append("B]")),
+    SERVER_FORWARDED(Trace.Category.SERVER, Trace.Level.DEBUG, (out, source, subject, type, id, payloadBytes) ->
+            out.append("📤 Forwarded message to Registry: ").append(type(type)).append("[topic=").append(subject)
+                    .append(", id=").append(id).append(", payload=").append(payloadBytes).append("B]")),
+    SERVER_ACK(Trace.Category.SERVER, Trace.Level.INFO, (out, source, subject, id, unused, unused2) ->
+            out.append("✅ ACK received for message ID: ").append(id)),
+    SERVER_UNEXPECTED_ACK(Trace.Category.SERVER, Trace.Level.WARN, (out, source, subject, id, unused, unused2) ->
+            out.append("⚠️ Unexpected ACK received for message ID: ").append(id)),
+    SERVER_MALFORMED(Trace.Category.SERVER, Trace.Level.WARN, (out, source, subject, length, unused, unused2) ->
+            out.append("⚠️ Dropped malformed datagram from ").append(subject).append(" (").append(length).append(" bytes)")),
+
+    // Transport
+    MALFORMED(Trace.Category.TRANSPORT, Trace.Level.DEBUG, (out, source, subject, length, unused, unused2) ->
+            out.append("⚠️ Node ").append(source).append(" dropped malformed datagram from ").append(subject)
+                    .append(" (").append(length).append(" bytes)"));
+
+    // Builds the text of one event on the writer thread
+    interface Formatter {
+        void format(StringBuilder out, Object source, Object subject, long first, long second, long third);
+    }
+
+    private final Trace.Category category;
+    private final Trace.Level level;
+    private final Formatter formatter;
+
+    TraceEvent(Trace.Category category, Trace.Level level, Formatter formatter) {
+        this.category = category;
+        this.level = level;
+        this.formatter = formatter;
+    }
+
+    public Trace.Category category() {
+        return category;
+    }
+
+    public Trace.Level level() {
+        return level;
+    }
+
+    void format(StringBuilder out, Object source, Object subject, long first, long second, long third) {
+        formatter.format(out, source, subject, first, second, third);
+    }
+
+    private static final PriorityLevel[] PRIORITIES = PriorityLevel.values();
+
+    private static Object priority(long ordinal) {
+        return ordinal >= 0 && ordinal < PRIORITIES.length ? PRIORITIES[(int) ordinal] : ordinal;
+    }
+
+    private static Object type(long code) {
+        MessageType type = MessageType.fromCode((byte) code);
+        return type != null ? type : "TYPE" + code;
+    }
+}
@@ -0,0 +1,164 @@
+package common.compress;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class LzCodecTest {
+    private final LzCodec codec = new LzCodec();
+
+    @Test
+    void emptyInputCompressesToNothing() {
+        assertEquals(0, codec.compress(new byte[0], 0, 0, new byte[8], 0, 8, null));
+        codec.decompress(new byte[0], 0, 0, new byte[0], 0, 0, null);
+    }
+
+    @Test
+    void inputShorterThanMinMatchIsOneLiteralSequence() {
+        byte[] input = bytes("abc");
+        byte[] compressed = compress(input);
+        assertArrayEquals(new byte[] {0x30, 'a', 'b', 'c'}, compressed);
+        assertArrayEquals(input, decompress(compressed, input.length));
+    }
+
+    @Test
+    void literalRunsContinueAfterNibble15() {
+        Random random = new Random(1);
+        // 15 needs one continuation byte of 0, 270 one of 255 and one of 0, 300 one of 255 and one of 30
+        for (int count : new int[] {14, 15, 16, 269, 270, 271, 300, 1000}) {
+            byte[] input = randomBytes(random, count);
+            byte[] compressed = compress(input);
+            if (count >= 15) {
+                assertEquals(0xF0, compressed[0] & 0xFF);
+                assertEquals(Math.min(count - 15, 255), compressed[1] & 0xFF);
+            }
+            assertArrayEquals(input, decompress(compressed, input.length), "literal count " + count);
+        }
+    }
+
+    @Test
+    void matchRunsContinueAfterNibble15() {
+        for (int repeats : new int[] {2, 5, 6, 70, 71, 72, 1000}) {
+            byte[] input = bytes("wxyz".repeat(repeats));
+            byte[] compressed = compress(input);
+            assertArrayEquals(input, decompress(compressed, input.length), repeats + " repeats");
+        }
+    }
+
+    @Test
+    void overlappingMatchRepeatsItsOwnOutput() {
+        byte[] input = new byte[500];
+        Arrays.fill(input, (byte) 'a');
+        // One literal, then a match at offset 1 of 499 bytes: 495 = 15 + 255 + 225 past MIN_MATCH
+        byte[] compressed = compress(input);
+        assertArrayEquals(new byte[] {0x1F, 'a', 1, 0, (byte) 255, (byte) 225}, compressed);
+        assertArrayEquals(input, decompress(compressed, input.length));
+    }
+
+    @Test
+    void roundTripsAtOffsets() {
+        byte[] text = bytes("{\"topic\":\"sports/goals\",\"score\":\"2-1\",\"topic\":\"sports/goals\",\"minute\":90}");
+        byte[] src = new byte[text.length + 7];
+        System.arraycopy(text, 0, src, 7, text.length);
+        byte[] dst = new byte[5 + text.length * 2];
+        int length = codec.compress(src, 7, text.length, dst, 5, dst.length - 5, null);
+        if (length < 0) {
+            fail("text did not fit");
+        }
+        byte[] restored = new byte[3 + text.length];
+        codec.decompress(dst, 5, length, restored, 3, text.length, null);
+        assertArrayEquals(text, Arrays.copyOfRange(restored, 3, restored.length));
+    }
+
+    @Test
+    void incompressibleInputReturnsMinusOne() {
+        byte[] input = randomBytes(new Random(2), 1000);
+        assertEquals(-1, codec.compress(input, 0, input.length, new byte[input.length], 0, input.length, null));
+    }
+
+    @Test
+    void truncatedPayloadsAreRejected() {
+        byte[] overlapping = new byte[500];
+        Arrays.fill(overlapping, (byte) 'a');
+        byte[][] inputs = {
+                bytes("abc"),
+                overlapping,
+                randomBytes(new Random(3), 300),
+                bytes("the quick brown fox jumps over the quick brown dog ".repeat(20)),
+        };
+        for (byte[] input : inputs) {
+            byte[] compressed = compress(input);
+            for (int length = 0; length < compressed.length; length++) {
+                byte[] prefix = Arrays.copyOf(compressed, length);
+                assertThrows(IllegalArgumentException.class, () -> decompress(prefix, input.length),
+                        length + " of " + compressed.length + " bytes");
+            }
+        }
+    }
+
+    @Test
+    void corruptPayloadsAreRejected() {
+        // Offset of 0
+        assertRejected(new byte[] {0x10, 'a', 0, 0}, 5);
+        // Offset reaching back before the start of the output
+        assertRejected(new byte[] {0x10, 'a', 2, 0}, 5);
+        // More literals than the payload holds
+        assertRejected(new byte[] {0x50, 'a', 'b'}, 5);
+        // More literals than the original length
+        assertRejected(new byte[] {0x30, 'a', 'b', 'c'}, 2);
+        // A match running past the original length
+        assertRejected(new byte[] {0x1F, 'a', 1, 0, (byte) 255, (byte) 225}, 100);
+        // Fewer bytes restored than the original length
+        assertRejected(new byte[] {0x30, 'a', 'b', 'c'}, 4);
+    }
+
+    @Test
+    void garbageNeverFailsOutsideIllegalArgument() {
+        Random random = new Random(4);
+        byte[] restored = new byte[64];
+        for (int i = 0; i < 10_000; i++) {
+            byte[] garbage = randomBytes(random, 1 + random.nextInt(32));
+            try {
+                codec.decompress(garbage, 0, garbage.length, restored, 0, restored.length, null);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as it should be; anything else escapes and fails the test
+            }
+        }
+    }
+
+    private void assertRejected(byte[] payload, int originalLength) {
+        assertThrows(IllegalArgumentException.class, () -> decompress(payload, originalLength));
+    }
+
+    private byte[] compress(byte[] input) {
+        byte[] dst = new byte[input.length + input.length / 255 + 16];
+        int length = codec.compress(input, 0, input.length, dst, 0, dst.length, null);
+        if (length < 0) {
+            fail("worst-case output did not fit");
+        }
+        return Arrays.copyOf(dst, length);
+    }
+
+    private byte[] decompress(byte[] payload, int originalLength) {
+        byte[] restored = new byte[originalLength];
+        codec.decompress(payload, 0, payload.length, restored, 0, originalLength, null);
+        return restored;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}